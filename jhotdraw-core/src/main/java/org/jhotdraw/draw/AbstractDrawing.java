@@ -10,13 +10,21 @@ package org.jhotdraw.draw;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.figure.AbstractAttributedCompositeFigure;
 import java.awt.font.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.undo.*;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.figure.AbstractCompositeFigure;
 import org.jhotdraw.draw.io.InputFormat;
 import org.jhotdraw.draw.io.OutputFormat;
+import org.jhotdraw.geom.Geom;
 import org.jhotdraw.xml.*;
 
 /**
@@ -28,11 +36,25 @@ import org.jhotdraw.xml.*;
 public abstract class AbstractDrawing extends AbstractAttributedCompositeFigure implements Drawing {
 
     private static final long serialVersionUID = 1L;
-    private static final Object LOCK = new JPanel().getTreeLock();
+    private transient DrawingLock lock = new DrawingLock();
     private transient FontRenderContext fontRenderContext;
     private LinkedList<InputFormat> inputFormats = new LinkedList<>();
     private LinkedList<OutputFormat> outputFormats = new LinkedList<>();
     private static boolean debugMode = false;
+    /**
+     * The nesting depth of {@link #beginUpdate}.
+     */
+    private transient int updateDepth;
+    /**
+     * Holds the area which has been invalidated by the children during a
+     * batch of changes. This is null if nothing has been invalidated.
+     */
+    private transient Rectangle2D.Double updatedArea;
+    /**
+     * Holds the children which have changed during a batch of changes.
+     */
+    private transient LinkedHashSet<Figure> updatedFigures;
+    private transient ConnectionGraph connectionGraph;
 
     /**
      * Creates a new instance.
@@ -87,28 +109,292 @@ public abstract class AbstractDrawing extends AbstractAttributedCompositeFigure
     @Override
     public void read(DOMInput in) throws IOException {
         in.openElement("figures");
-        for (int i = 0; i < in.getElementCount(); i++) {
-            Figure f;
-            add(f = (Figure) in.readObject(i));
+        beginUpdate();
+        try {
+            for (int i = 0; i < in.getElementCount(); i++) {
+                Figure f;
+                add(f = (Figure) in.readObject(i));
+            }
+        } finally {
+            commitUpdate();
         }
         in.closeElement();
     }
 
     @Override
     public void write(DOMOutput out) throws IOException {
-        out.openElement("figures");
-        for (Figure f : getChildren()) {
-            out.writeObject(f);
+        Lock readLock = getLock().readLock();
+        readLock.lock();
+        try {
+            out.openElement("figures");
+            for (Figure f : getChildren()) {
+                out.writeObject(f);
+            }
+            out.closeElement();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void transformAll(Collection<? extends Figure> figures, AffineTransform tx) {
+        Lock writeLock = getLock().writeLock();
+        writeLock.lock();
+        try {
+            beginUpdate();
+            try {
+                for (Figure f : figures) {
+                    f.willChange();
+                    f.transform(tx);
+                    f.changed();
+                }
+            } finally {
+                commitUpdate();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the figures in one batch of changes, so that their connections
+     * are laid out only once.
+     */
+    @Override
+    public void addAll(Collection<? extends Figure> figures) {
+        beginUpdate();
+        try {
+            super.addAll(figures);
+        } finally {
+            commitUpdate();
+        }
+    }
+
+    @Override
+    public void beginUpdate() {
+        if (updateDepth++ == 0) {
+            updatedFigures = new LinkedHashSet<>();
+            updatedArea = null;
+        }
+    }
+
+    @Override
+    public void commitUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException("commitUpdate was called without a prior call to beginUpdate.");
+        }
+        if (updateDepth > 1) {
+            updateDepth--;
+            return;
+        }
+        try {
+            // Lay out the connections while the batch is still in progress,
+            // so that their events are coalesced as well
+            if (connectionGraph != null) {
+                connectionGraph.layoutDirtyConnections();
+            }
+        } finally {
+            updateDepth = 0;
+        }
+        LinkedHashSet<Figure> figures = updatedFigures;
+        Rectangle2D.Double area = updatedArea;
+        updatedFigures = null;
+        updatedArea = null;
+        if (!figures.isEmpty()) {
+            updateCommitted(figures);
+            invalidate();
         }
-        out.closeElement();
+        if (area != null) {
+            fireAreaInvalidated(area);
+            if (!figures.isEmpty()) {
+                fireFigureChanged(area);
+            }
+        }
+    }
+
+    @Override
+    public boolean isUpdating() {
+        return updateDepth != 0;
+    }
+
+    @Override
+    public ConnectionGraph getConnectionGraph() {
+        if (connectionGraph == null) {
+            connectionGraph = new ConnectionGraph();
+        }
+        return connectionGraph;
     }
 
     /**
-     * The drawing view synchronizes on the lock when drawing a drawing.
+     * This method is invoked by {@link #commitUpdate}, before the coalesced
+     * events are fired. Subclasses can override this method, to update their
+     * data structures for all changed children at once.
+     *
+     * @param changedFigures the children which have changed during the
+     * batch, in the sequence of their first change.
      */
+    protected void updateCommitted(Set<Figure> changedFigures) {
+    }
+
+    private void addUpdatedArea(Rectangle2D.Double r) {
+        if (updatedArea == null) {
+            updatedArea = (Rectangle2D.Double) r.clone();
+        } else {
+            updatedArea.add(r);
+        }
+    }
+
     @Override
-    public Object getLock() {
-        return LOCK;
+    protected EventHandler createEventHandler() {
+        return new DrawingEventHandler();
+    }
+
+    /**
+     * Handles all figure events fired by Figures contained in the Drawing.
+     * While a batch of changes is in progress, the events are collected
+     * instead of being forwarded.
+     */
+    protected class DrawingEventHandler extends AbstractCompositeFigure.EventHandler {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void areaInvalidated(FigureEvent e) {
+            if (isUpdating()) {
+                addUpdatedArea(e.getInvalidatedArea());
+            } else {
+                super.areaInvalidated(e);
+            }
+        }
+
+        @Override
+        public void figureChanged(FigureEvent e) {
+            if (isUpdating()) {
+                if (!isChanging()) {
+                    updatedFigures.add(e.getFigure());
+                    addUpdatedArea(e.getInvalidatedArea());
+                }
+            } else {
+                super.figureChanged(e);
+            }
+        }
+    }
+
+    /**
+     * Each drawing has its own lock, so that threads which work on different
+     * drawings do not block each other.
+     */
+    @Override
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Returns true, if the current thread holds the read lock of the drawing
+     * but not its write lock. Such a thread must not change the data
+     * structures of the drawing, because it can not acquire the write lock.
+     */
+    protected boolean isReadLockedByCurrentThread() {
+        return lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread();
+    }
+
+    /**
+     * This method is invoked, when a thread has released its last hold of
+     * the read lock. Subclasses, which had to defer changes of their data
+     * structures while the thread was reading, can override this method to
+     * apply them.
+     * <p>
+     * The current thread holds no lock of the drawing, when this method is
+     * invoked.
+     */
+    protected void readLockReleased() {
+    }
+
+    /**
+     * The lock of a drawing. It invokes {@link #readLockReleased} when a
+     * thread has released its last hold of the read lock.
+     */
+    private class DrawingLock extends ReentrantReadWriteLock {
+
+        private static final long serialVersionUID = 1L;
+        private final ReentrantReadWriteLock.ReadLock readLock = new ReentrantReadWriteLock.ReadLock(this) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void unlock() {
+                super.unlock();
+                if (getReadHoldCount() == 0 && !isWriteLockedByCurrentThread()) {
+                    readLockReleased();
+                }
+            }
+        };
+
+        @Override
+        public ReentrantReadWriteLock.ReadLock readLock() {
+            return readLock;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        lock = new DrawingLock();
+    }
+
+    /**
+     * Returns true, if the figure is visible and lies inside the specified
+     * bounds. The bounds of the figure are transformed with its
+     * {@code TRANSFORM} attribute before they are compared.
+     */
+    protected static boolean isWithin(Figure f, Rectangle2D.Double bounds) {
+        if (!f.isVisible()) {
+            return false;
+        }
+        Rectangle2D.Double r = f.getBounds();
+        AffineTransform tx = f.get(AttributeKeys.TRANSFORM);
+        if (tx != null) {
+            return Geom.contains(bounds, tx.createTransformedShape(r).getBounds2D());
+        }
+        return Geom.contains(bounds, r);
+    }
+
+    /**
+     * Returns the index nearest to the specified index, at which the figure
+     * can be inserted into the children list without breaking the sequence
+     * of the layers.
+     * <p>
+     * The children must be sorted by layer.
+     *
+     * @param index the desired index.
+     * @param figure the figure to be inserted.
+     * @return the index at which the figure shall be inserted.
+     */
+    protected int getLayerIndex(int index, Figure figure) {
+        int layer = figure.getLayer();
+        // Find the first child on the same or a higher layer
+        int low = 0;
+        int high = children.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (children.get(mid).getLayer() < layer) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (index <= low) {
+            return low;
+        }
+        // Find the first child on a higher layer
+        high = children.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (children.get(mid).getLayer() <= layer) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Math.min(index, low);
     }
 
     @Override
@@ -173,6 +459,11 @@ public abstract class AbstractDrawing extends AbstractAttributedCompositeFigure
     @SuppressWarnings("unchecked")
     public AbstractDrawing clone() {
         AbstractDrawing that = (AbstractDrawing) super.clone();
+        that.lock = that.new DrawingLock();
+        that.updateDepth = 0;
+        that.updatedArea = null;
+        that.updatedFigures = null;
+        that.connectionGraph = null;
         that.inputFormats = (this.inputFormats == null) ? null : (LinkedList<InputFormat>) this.inputFormats.clone();
         that.outputFormats = (this.outputFormats == null) ? null : (LinkedList<OutputFormat>) this.outputFormats.clone();
         return that;
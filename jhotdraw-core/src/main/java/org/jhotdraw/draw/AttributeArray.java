@@ -0,0 +1,323 @@
+/*
+ * @(#)AttributeArray.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.jhotdraw.draw.figure.AbstractAttributedCompositeFigure;
+import org.jhotdraw.draw.figure.AbstractAttributedFigure;
+import org.jhotdraw.draw.figure.CompositeFigure;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * A compact map from {@link AttributeKey}s to attribute values.
+ * <p>
+ * The attributes are stored in two arrays which are sorted by the ordinals
+ * of the attribute keys. Looking up an attribute performs a binary search
+ * over an {@code int} array, and does neither hash the key nor allocate
+ * objects. The arrays have exactly the size of the number of attributes.
+ * <p>
+ * Attributes can be iterated by index, using {@link #size},
+ * {@link #getKey} and {@link #getValue}.
+ * <p>
+ * An attribute array can be shared by many figures. A shared array is
+ * immutable, and its owners must replace it by a {@link #clone} before they
+ * change an attribute (copy-on-write). Method {@link #intern} returns a
+ * canonical shared instance for all arrays with equal content, so that the
+ * figures of a large drawing with identical stroke, fill and font attributes
+ * hold only one attribute array.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class AttributeArray implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int[] NO_ORDINALS = new int[0];
+    private static final Object[] NO_VALUES = new Object[0];
+    /**
+     * The ordinals of the attribute keys in ascending order.
+     */
+    private transient int[] ordinals = NO_ORDINALS;
+    /**
+     * The attribute values in the same sequence as the ordinals.
+     */
+    private transient Object[] values = NO_VALUES;
+    /**
+     * Set to true, when this instance is shared, and thus can not be changed
+     * anymore. This flag is serialized, because the figures which share this
+     * instance still share it after deserialization.
+     */
+    private boolean shared;
+    /**
+     * The pool of interned attribute arrays. The arrays are weakly
+     * referenced, so that they can be garbage collected when they are not
+     * used by any figure anymore.
+     */
+    private static final WeakHashMap<AttributeArray, WeakReference<AttributeArray>> POOL = new WeakHashMap<>();
+
+    /**
+     * Creates a new empty instance.
+     */
+    public AttributeArray() {
+    }
+
+    /**
+     * Creates a new instance with the entries of the specified map.
+     */
+    public AttributeArray(Map<AttributeKey<?>, Object> map) {
+        for (Map.Entry<AttributeKey<?>, Object> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of attributes.
+     */
+    public int size() {
+        return ordinals.length;
+    }
+
+    /**
+     * Returns the attribute key at the specified index.
+     */
+    public AttributeKey<?> getKey(int index) {
+        return AttributeKey.forOrdinal(ordinals[index]);
+    }
+
+    /**
+     * Returns the attribute value at the specified index.
+     */
+    public Object getValue(int index) {
+        return values[index];
+    }
+
+    public boolean containsKey(AttributeKey<?> key) {
+        return Arrays.binarySearch(ordinals, key.getOrdinal()) >= 0;
+    }
+
+    /**
+     * Returns the value of the specified attribute, or the default value
+     * of the key if the attribute is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(AttributeKey<T> key) {
+        int index = Arrays.binarySearch(ordinals, key.getOrdinal());
+        return (index >= 0) ? (T) values[index] : key.getDefaultValue();
+    }
+
+    /**
+     * Sets the value of the specified attribute.
+     *
+     * @return the old value, or null if the attribute was not present.
+     */
+    public Object put(AttributeKey<?> key, Object value) {
+        checkNotShared();
+        int index = Arrays.binarySearch(ordinals, key.getOrdinal());
+        if (index >= 0) {
+            Object oldValue = values[index];
+            values[index] = value;
+            return oldValue;
+        }
+        index = -index - 1;
+        int n = ordinals.length;
+        int[] newOrdinals = new int[n + 1];
+        Object[] newValues = new Object[n + 1];
+        System.arraycopy(ordinals, 0, newOrdinals, 0, index);
+        System.arraycopy(values, 0, newValues, 0, index);
+        newOrdinals[index] = key.getOrdinal();
+        newValues[index] = value;
+        System.arraycopy(ordinals, index, newOrdinals, index + 1, n - index);
+        System.arraycopy(values, index, newValues, index + 1, n - index);
+        ordinals = newOrdinals;
+        values = newValues;
+        return null;
+    }
+
+    /**
+     * Removes the specified attribute.
+     *
+     * @return the old value, or null if the attribute was not present.
+     */
+    public Object remove(AttributeKey<?> key) {
+        checkNotShared();
+        int index = Arrays.binarySearch(ordinals, key.getOrdinal());
+        if (index < 0) {
+            return null;
+        }
+        Object oldValue = values[index];
+        int n = ordinals.length;
+        if (n == 1) {
+            ordinals = NO_ORDINALS;
+            values = NO_VALUES;
+        } else {
+            int[] newOrdinals = new int[n - 1];
+            Object[] newValues = new Object[n - 1];
+            System.arraycopy(ordinals, 0, newOrdinals, 0, index);
+            System.arraycopy(values, 0, newValues, 0, index);
+            System.arraycopy(ordinals, index + 1, newOrdinals, index, n - index - 1);
+            System.arraycopy(values, index + 1, newValues, index, n - index - 1);
+            ordinals = newOrdinals;
+            values = newValues;
+        }
+        return oldValue;
+    }
+
+    public void clear() {
+        checkNotShared();
+        ordinals = NO_ORDINALS;
+        values = NO_VALUES;
+    }
+
+    /**
+     * Returns the attributes as a new map.
+     */
+    public HashMap<AttributeKey<?>, Object> toMap() {
+        HashMap<AttributeKey<?>, Object> map = new HashMap<>();
+        for (int i = 0; i < ordinals.length; i++) {
+            map.put(getKey(i), values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Returns true if this instance is shared. A shared instance can not be
+     * changed.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Marks this instance as shared, and returns it. This is an O(1)
+     * operation. From now on, this instance can not be changed anymore.
+     */
+    public AttributeArray share() {
+        shared = true;
+        return this;
+    }
+
+    private void checkNotShared() {
+        if (shared) {
+            throw new UnsupportedOperationException("Shared attribute arrays can not be changed.");
+        }
+    }
+
+    /**
+     * Returns a shared attribute array with the same content as the specified
+     * array. All arrays with equal content are interned to the same instance.
+     * <p>
+     * The attribute values are compared with {@code equals}. Interning is
+     * only safe for values which are not changed in place, which is true for
+     * all attribute values which are set with {@link AttributeKey#set}.
+     */
+    public static AttributeArray intern(AttributeArray a) {
+        synchronized (POOL) {
+            WeakReference<AttributeArray> ref = POOL.get(a);
+            AttributeArray interned = (ref == null) ? null : ref.get();
+            if (interned == null) {
+                interned = a.isShared() ? a : a.clone();
+                interned.share();
+                POOL.put(interned, new WeakReference<>(interned));
+            }
+            return interned;
+        }
+    }
+
+    /**
+     * Interns the attributes of the specified figures and of all their
+     * descendants.
+     *
+     * @see AbstractAttributedFigure#internAttributes
+     * @see AbstractAttributedCompositeFigure#internAttributes
+     */
+    public static void internAttributes(Collection<? extends Figure> figures) {
+        for (Figure f : figures) {
+            if (f instanceof AbstractAttributedFigure) {
+                ((AbstractAttributedFigure) f).internAttributes();
+            } else if (f instanceof AbstractAttributedCompositeFigure) {
+                ((AbstractAttributedCompositeFigure) f).internAttributes();
+            }
+            if (f instanceof CompositeFigure) {
+                internAttributes(((CompositeFigure) f).getChildren());
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof AttributeArray)) {
+            return false;
+        }
+        AttributeArray that = (AttributeArray) o;
+        return Arrays.equals(ordinals, that.ordinals)
+                && Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ordinals) * 31 + Arrays.hashCode(values);
+    }
+
+    /**
+     * Returns a copy of this instance. The copy is not shared, even if
+     * this instance is shared.
+     */
+    @Override
+    public AttributeArray clone() {
+        try {
+            AttributeArray that = (AttributeArray) super.clone();
+            // The arrays are replaced on structural changes, but values are
+            // set in place, so we need our own copy of the values.
+            that.values = values.clone();
+            that.shared = false;
+            return that;
+        } catch (CloneNotSupportedException ex) {
+            InternalError error = new InternalError(ex.getMessage());
+            error.initCause(ex);
+            throw error;
+        }
+    }
+
+    /**
+     * Writes the attribute keys instead of the ordinals, because the
+     * ordinals are assigned at runtime.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(ordinals.length);
+        for (int i = 0; i < ordinals.length; i++) {
+            out.writeObject(getKey(i));
+            out.writeObject(values[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        boolean isShared = shared;
+        shared = false;
+        ordinals = NO_ORDINALS;
+        values = NO_VALUES;
+        for (int i = 0, n = in.readInt(); i < n; i++) {
+            AttributeKey<?> key = (AttributeKey<?>) in.readObject();
+            put(key, in.readObject());
+        }
+        shared = isShared;
+    }
+}
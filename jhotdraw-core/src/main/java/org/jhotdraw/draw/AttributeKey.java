@@ -8,6 +8,7 @@
 package org.jhotdraw.draw;
 
 import org.jhotdraw.draw.figure.Figure;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.*;
 import javax.swing.undo.*;
@@ -28,6 +29,14 @@ import org.jhotdraw.util.*;
  * </pre>
  * <p>
  * See {@link AttributeKeys} for a list of useful attribute keys.
+ * <p>
+ * Each attribute key is assigned a dense integer ordinal when it is created.
+ * The ordinals are used by {@link AttributeArray} to store attributes
+ * compactly. Attribute keys with the same key string have different
+ * ordinals, because they may have different types (for example the fill
+ * gradients of the SVG and the ODG samples). A deserialized attribute key is
+ * resolved to the existing attribute key with the same key string, type and
+ * default value.
  *
  * @author Werner Randelshofer
  * @version $Id$
@@ -56,6 +65,16 @@ public class AttributeKey<T> implements Serializable {
      * assignability of attribute values at runtime.
      */
     private Class<T> clazz;
+    /**
+     * The ordinal of the attribute key. The ordinals are assigned at runtime,
+     * so they are not serialized.
+     */
+    private transient int ordinal;
+    /**
+     * Maps ordinals to attribute keys. This array is replaced when a new
+     * ordinal is assigned, so that it can be read without synchronization.
+     */
+    private static volatile AttributeKey<?>[] keysByOrdinal = new AttributeKey<?>[0];
 
     /**
      * Creates a new instance with the specified attribute key, type token class,
@@ -99,6 +118,58 @@ public class AttributeKey<T> implements Serializable {
         this.defaultValue = defaultValue;
         this.isNullValueAllowed = isNullValueAllowed;
         this.labels = (labels == null) ? ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels") : labels;
+        register(this);
+    }
+
+    /**
+     * Assigns a new ordinal to the specified attribute key.
+     */
+    private static synchronized void register(AttributeKey<?> key) {
+        int value = keysByOrdinal.length;
+        AttributeKey<?>[] newKeys = Arrays.copyOf(keysByOrdinal, value + 1);
+        newKeys[value] = key;
+        key.ordinal = value;
+        keysByOrdinal = newKeys;
+    }
+
+    /**
+     * Resolves a deserialized attribute key to the existing attribute key
+     * with the same key string, type and default value. Registers the
+     * deserialized key if there is no such key.
+     */
+    protected Object readResolve() throws ObjectStreamException {
+        synchronized (AttributeKey.class) {
+            for (AttributeKey<?> k : keysByOrdinal) {
+                if (k.getClass() == getClass()
+                        && k.key.equals(key)
+                        && k.clazz == clazz
+                        && k.isNullValueAllowed == isNullValueAllowed
+                        && Objects.equals(k.defaultValue, defaultValue)) {
+                    return k;
+                }
+            }
+            register(this);
+            return this;
+        }
+    }
+
+    /**
+     * Returns the ordinal of the attribute key.
+     *
+     * @return the ordinal.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Returns the attribute key with the specified ordinal.
+     *
+     * @param ordinal an ordinal.
+     * @return the attribute key.
+     */
+    public static AttributeKey<?> forOrdinal(int ordinal) {
+        return keysByOrdinal[ordinal];
     }
 
     /**
@@ -53,6 +53,11 @@ public class AttributeKeys {
      * the content of the drawing.
      */
     public static final AttributeKey<Double> CANVAS_HEIGHT = new AttributeKey<Double>("canvasHeight", Double.class, null, true, LABELS);
+    /**
+     * Overall opacity of a figure. The value of this attribute is a Double object. This is a value
+     * between 0 and 1 whereas 0 is translucent and 1 is fully opaque.
+     */
+    public static final AttributeKey<Double> OPACITY = new AttributeKey<Double>("opacity", Double.class, 1d, false, LABELS);
     /**
      * Figure fill color. The value of this attribute is a Color object.
      */
@@ -0,0 +1,248 @@
+/*
+ * @(#)ConnectionGraph.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.jhotdraw.draw.figure.CompositeFigure;
+import org.jhotdraw.draw.figure.ConnectionFigure;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * Tracks which connections of a drawing depend on which figures, and lays
+ * out changed connections in dependency order.
+ * <p>
+ * While a batch of changes is in progress, see {@link Drawing#beginUpdate},
+ * a connection does not update itself when its start or end figure changes.
+ * Instead, it is marked dirty in the connection graph of its drawing. Marking
+ * a connection dirty also marks all connections which are attached to it, or
+ * to one of its children, such as the labels of a
+ * {@link org.jhotdraw.draw.figure.LabeledLineConnectionFigure}.
+ * <p>
+ * When the batch is committed, the drawing invokes
+ * {@link #layoutDirtyConnections}, which updates each dirty connection once.
+ * A connection is updated after the connections it is attached to. Large
+ * numbers of dirty connections, for example after a drawing has been read,
+ * are laid out concurrently by the {@link ConnectionLayoutService}.
+ * <p>
+ * This class is not thread safe. It must only be used by the thread which
+ * changes the drawing.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ConnectionGraph {
+
+    /**
+     * A connection which is marked dirty again after it has been laid out,
+     * because it takes part in a cycle of connections, is laid out at most
+     * this number of times during one commit.
+     */
+    private static final int MAX_LAYOUTS_PER_COMMIT = 2;
+    /**
+     * If at least this number of connections is dirty, they are laid out
+     * concurrently by the {@link ConnectionLayoutService}.
+     */
+    private static final int PARALLEL_LAYOUT_THRESHOLD = 256;
+    private static final Figure[] NO_FIGURES = new Figure[0];
+    /**
+     * Maps a figure to the connections which are attached to it.
+     */
+    private final HashMap<Figure, LinkedHashSet<ConnectionFigure>> dependents = new HashMap<>();
+    /**
+     * Maps a connection to the start and end figure it is attached to.
+     */
+    private final HashMap<ConnectionFigure, Figure[]> dependencies = new HashMap<>();
+    private final LinkedHashSet<ConnectionFigure> dirty = new LinkedHashSet<>();
+
+    /**
+     * Creates a new instance.
+     */
+    public ConnectionGraph() {
+    }
+
+    /**
+     * Adds a connection to the graph, or updates the figures it depends on,
+     * if it is already in the graph. This method must be called when the
+     * start or end connector of the connection has been changed.
+     */
+    public void addConnection(ConnectionFigure c) {
+        removeDependencies(c);
+        Figure start = c.getStartFigure();
+        Figure end = c.getEndFigure();
+        Figure[] figures;
+        if (start == null && end == null) {
+            figures = NO_FIGURES;
+        } else if (start == null || end == null || start == end) {
+            figures = new Figure[]{(start == null) ? end : start};
+        } else {
+            figures = new Figure[]{start, end};
+        }
+        dependencies.put(c, figures);
+        for (Figure f : figures) {
+            LinkedHashSet<ConnectionFigure> set = dependents.get(f);
+            if (set == null) {
+                set = new LinkedHashSet<>();
+                dependents.put(f, set);
+            }
+            set.add(c);
+        }
+    }
+
+    /**
+     * Removes a connection from the graph.
+     */
+    public void removeConnection(ConnectionFigure c) {
+        removeDependencies(c);
+        dirty.remove(c);
+    }
+
+    private void removeDependencies(ConnectionFigure c) {
+        Figure[] figures = dependencies.remove(c);
+        if (figures != null) {
+            for (Figure f : figures) {
+                LinkedHashSet<ConnectionFigure> set = dependents.get(f);
+                if (set != null) {
+                    set.remove(c);
+                    if (set.isEmpty()) {
+                        dependents.remove(f);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the connections which are attached to the specified figure.
+     */
+    public Set<ConnectionFigure> getDependents(Figure f) {
+        LinkedHashSet<ConnectionFigure> set = dependents.get(f);
+        return (set == null) ? Collections.<ConnectionFigure>emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Marks a connection and all connections which depend on it dirty.
+     */
+    public void markDirty(ConnectionFigure c) {
+        if (!dependencies.containsKey(c)) {
+            addConnection(c);
+        }
+        ArrayDeque<ConnectionFigure> queue = new ArrayDeque<>();
+        queue.add(c);
+        while (!queue.isEmpty()) {
+            ConnectionFigure d = queue.poll();
+            if (dirty.add(d)) {
+                queue.addAll(getDependents(d));
+                if (d instanceof CompositeFigure) {
+                    for (Figure child : ((CompositeFigure) d).getChildren()) {
+                        queue.addAll(getDependents(child));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true, if the connection is dirty.
+     */
+    public boolean isDirty(ConnectionFigure c) {
+        return dirty.contains(c);
+    }
+
+    /**
+     * Returns the dirty connections, sorted so that each connection comes
+     * after the dirty connections it is attached to.
+     */
+    public List<ConnectionFigure> getDirtyConnections() {
+        // Children of dirty connections stand for their connection
+        HashMap<Figure, ConnectionFigure> owners = new HashMap<>();
+        for (ConnectionFigure c : dirty) {
+            owners.put(c, c);
+            if (c instanceof CompositeFigure) {
+                for (Figure child : ((CompositeFigure) c).getChildren()) {
+                    owners.put(child, c);
+                }
+            }
+        }
+        ArrayList<ConnectionFigure> sorted = new ArrayList<>(dirty.size());
+        HashSet<ConnectionFigure> visited = new HashSet<>();
+        for (ConnectionFigure c : dirty) {
+            addInDependencyOrder(c, owners, visited, sorted);
+        }
+        return sorted;
+    }
+
+    private void addInDependencyOrder(ConnectionFigure c, HashMap<Figure, ConnectionFigure> owners,
+            HashSet<ConnectionFigure> visited, ArrayList<ConnectionFigure> sorted) {
+        if (visited.add(c)) {
+            Figure[] figures = dependencies.get(c);
+            if (figures != null) {
+                for (Figure f : figures) {
+                    ConnectionFigure owner = owners.get(f);
+                    if (owner != null) {
+                        addInDependencyOrder(owner, owners, visited, sorted);
+                    }
+                }
+            }
+            sorted.add(c);
+        }
+    }
+
+    /**
+     * Updates all dirty connections in dependency order. Connections which
+     * are marked dirty while this method runs are updated as well.
+     */
+    public void layoutDirtyConnections() {
+        HashMap<ConnectionFigure, Integer> layoutCounts = new HashMap<>();
+        while (!dirty.isEmpty()) {
+            List<ConnectionFigure> sorted = getDirtyConnections();
+            if (sorted.size() >= PARALLEL_LAYOUT_THRESHOLD) {
+                dirty.clear();
+                ArrayList<ConnectionFigure> toLayout = new ArrayList<>(sorted.size());
+                for (ConnectionFigure c : sorted) {
+                    Integer count = layoutCounts.get(c);
+                    int n = (count == null) ? 1 : count + 1;
+                    if (n <= MAX_LAYOUTS_PER_COMMIT) {
+                        layoutCounts.put(c, n);
+                        toLayout.add(c);
+                    }
+                }
+                if (!toLayout.isEmpty()) {
+                    ConnectionLayoutService.getDefault().layout(toLayout);
+                }
+                // The connections have been marked dirty again by the
+                // connections they are attached to
+                for (ConnectionFigure c : sorted) {
+                    dirty.remove(c);
+                }
+                continue;
+            }
+            for (ConnectionFigure c : sorted) {
+                if (!dirty.remove(c)) {
+                    // The connection has been removed from the graph
+                    continue;
+                }
+                Integer count = layoutCounts.get(c);
+                int n = (count == null) ? 1 : count + 1;
+                if (n > MAX_LAYOUTS_PER_COMMIT) {
+                    continue;
+                }
+                layoutCounts.put(c, n);
+                c.willChange();
+                c.updateConnection();
+                c.changed();
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * @(#)ConnectionLayoutService.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.Lock;
+import org.jhotdraw.draw.figure.CompositeFigure;
+import org.jhotdraw.draw.figure.ConnectionFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.geom.BezierPath;
+
+/**
+ * Lays out many connections at once, using a fork-join pool.
+ * <p>
+ * The connections are processed in levels. The first level holds the
+ * connections which are not attached to another connection of the batch, the
+ * next level holds the connections which are attached to the first level,
+ * and so on. For each level, the paths of the {@link LineConnectionFigure}s
+ * are computed concurrently with
+ * {@link LineConnectionFigure#computeConnectionPath}. Then the paths are
+ * applied one after the other on the calling thread. Other connection
+ * figures, and connections whose liner does not support
+ * {@link org.jhotdraw.draw.liner.Liner#isDetachedLineoutSupported detached
+ * lineouts}, are updated on the calling thread.
+ * <p>
+ * The drawing must not be changed by other threads while a layout is in
+ * progress. The service holds the write lock of the drawing, so that
+ * threads which use the lock, such as the renderers, are blocked.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ConnectionLayoutService {
+
+    private static final ConnectionLayoutService DEFAULT = new ConnectionLayoutService(ForkJoinPool.commonPool());
+    /**
+     * A task computes at most this number of paths without forking.
+     */
+    private static final int TASK_SIZE = 64;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pool the pool which computes the paths.
+     */
+    public ConnectionLayoutService(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the service which uses the common fork-join pool.
+     */
+    public static ConnectionLayoutService getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Computes the paths of a range of connections.
+     */
+    private static class ComputeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<ConnectionFigure> connections;
+        private final BezierPath[] paths;
+        private final int from;
+        private final int to;
+
+        public ComputeTask(List<ConnectionFigure> connections, BezierPath[] paths, int from, int to) {
+            this.connections = connections;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    ConnectionFigure c = connections.get(i);
+                    if (c instanceof LineConnectionFigure) {
+                        paths[i] = ((LineConnectionFigure) c).computeConnectionPath();
+                    }
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ComputeTask(connections, paths, from, mid),
+                        new ComputeTask(connections, paths, mid, to));
+            }
+        }
+    }
+
+    /**
+     * Lays out all connections among the specified figures in one batch
+     * of changes.
+     *
+     * @param drawing the drawing which holds the figures.
+     * @param figures the figures.
+     */
+    public void layout(Drawing drawing, Collection<? extends Figure> figures) {
+        Lock lock = drawing.getLock().writeLock();
+        lock.lock();
+        try {
+            drawing.beginUpdate();
+            try {
+                ConnectionGraph graph = drawing.getConnectionGraph();
+                for (Figure f : figures) {
+                    if (f instanceof ConnectionFigure) {
+                        graph.markDirty((ConnectionFigure) f);
+                    }
+                }
+            } finally {
+                // The dirty connections are laid out on commit
+                drawing.commitUpdate();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lays out the specified connections. The caller must hold the write
+     * lock of the drawing, and should do this inside a batch of changes.
+     *
+     * @param connections the connections, sorted so that each connection
+     * comes after the connections it is attached to, as returned by
+     * {@link ConnectionGraph#getDirtyConnections}.
+     */
+    public void layout(List<? extends ConnectionFigure> connections) {
+        if (pool.getParallelism() <= 1) {
+            // Computing the paths up front does not pay off on a single core
+            for (ConnectionFigure c : connections) {
+                c.willChange();
+                c.updateConnection();
+                c.changed();
+            }
+            return;
+        }
+        for (List<ConnectionFigure> level : getLevels(connections)) {
+            BezierPath[] paths = new BezierPath[level.size()];
+            pool.invoke(new ComputeTask(level, paths, 0, level.size()));
+            for (int i = 0, n = level.size(); i < n; i++) {
+                ConnectionFigure c = level.get(i);
+                if (paths[i] != null) {
+                    ((LineConnectionFigure) c).applyConnectionPath(paths[i]);
+                } else {
+                    c.willChange();
+                    c.updateConnection();
+                    c.changed();
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the connections into levels, so that a connection is in a
+     * higher level than the connections it is attached to.
+     */
+    private List<List<ConnectionFigure>> getLevels(List<? extends ConnectionFigure> connections) {
+        // Children of connections stand for their connection
+        HashMap<Figure, ConnectionFigure> owners = new HashMap<>();
+        for (ConnectionFigure c : connections) {
+            owners.put(c, c);
+            if (c instanceof CompositeFigure) {
+                for (Figure child : ((CompositeFigure) c).getChildren()) {
+                    owners.put(child, c);
+                }
+            }
+        }
+        HashMap<ConnectionFigure, Integer> levelMap = new HashMap<>();
+        ArrayList<List<ConnectionFigure>> levels = new ArrayList<>();
+        for (ConnectionFigure c : connections) {
+            int level = 0;
+            for (Figure f : new Figure[]{c.getStartFigure(), c.getEndFigure()}) {
+                ConnectionFigure owner = (f == null) ? null : owners.get(f);
+                Integer ownerLevel = (owner == null) ? null : levelMap.get(owner);
+                if (ownerLevel != null) {
+                    level = Math.max(level, ownerLevel + 1);
+                }
+            }
+            levelMap.put(c, level);
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<ConnectionFigure>());
+            }
+            levels.get(level).add(c);
+        }
+        return levels;
+    }
+}
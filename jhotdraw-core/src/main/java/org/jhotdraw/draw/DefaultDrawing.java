@@ -15,13 +15,12 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import static org.jhotdraw.draw.AttributeKeys.*;
-import org.jhotdraw.geom.Geom;
 import org.jhotdraw.util.ReversedList;
 
 /**
@@ -42,7 +41,6 @@ public class DefaultDrawing
         extends AbstractDrawing {
 
     private static final long serialVersionUID = 1L;
-    private boolean needsSorting = false;
 
     /**
      * Creates a new instance.
@@ -52,14 +50,31 @@ public class DefaultDrawing
 
     @Override
     public void basicAdd(int index, Figure figure) {
-        super.basicAdd(index, figure);
-        invalidateSortOrder();
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            super.basicAdd(getLayerIndex(index, figure), figure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Figure basicRemoveChild(int index) {
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            return super.basicRemoveChild(index);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void draw(Graphics2D g) {
-        synchronized (getLock()) {
-            ensureSorted();
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
             List<Figure> toDraw = new ArrayList<>(getChildren().size());
             Rectangle clipRect = g.getClipBounds();
             double scale = AttributeKeys.getScaleFactorFromGraphics(g);
@@ -69,25 +84,31 @@ public class DefaultDrawing
                 }
             }
             draw(g, toDraw);
+        } finally {
+            lock.unlock();
         }
     }
 
     public void draw(Graphics2D g, Collection<Figure> children) {
         Rectangle2D clipBounds = g.getClipBounds();
         double scale = AttributeKeys.getScaleFactorFromGraphics(g);
-        if (clipBounds != null) {
-            for (Figure f : children) {
-                if (f.isVisible() && f.getDrawingArea(scale).intersects(clipBounds)) {
-                    f.draw(g);
-                }
-            }
-        } else {
-            for (Figure f : children) {
-                if (f.isVisible()) {
-                    f.draw(g);
+        LevelOfDetailPolicy lod = LevelOfDetailPolicy.get(g);
+        LevelOfDetailPolicy.Batch batch = (lod == null) ? null : lod.createBatch(g);
+        for (Figure f : children) {
+            if (f.isVisible()
+                    && (clipBounds == null || f.getDrawingArea(scale).intersects(clipBounds))) {
+                if (batch != null) {
+                    if (batch.add(f)) {
+                        continue;
+                    }
+                    batch.flush();
                 }
+                f.draw(g);
             }
         }
+        if (batch != null) {
+            batch.flush();
+        }
     }
 
     @Override
@@ -176,7 +197,9 @@ public class DefaultDrawing
     public List<Figure> findFigures(Rectangle2D.Double bounds) {
         List<Figure> intersection = new LinkedList<>();
         for (Figure f : getChildren()) {
-            if (f.isVisible() && f.getBounds().intersects(bounds)) {
+            // Like QuadTreeDrawing, match the drawing area, so that the
+            // result includes figures whose stroke or decorations intersect
+            if (f.isVisible() && f.getDrawingArea().intersects(bounds)) {
                 intersection.add(f);
             }
         }
@@ -185,14 +208,9 @@ public class DefaultDrawing
 
     @Override
     public List<Figure> findFiguresWithin(Rectangle2D.Double bounds) {
-        List<Figure> contained = new LinkedList<>();
+        List<Figure> contained = new ArrayList<>();
         for (Figure f : getChildren()) {
-            Rectangle2D.Double r = f.getBounds();
-            if (f.get(TRANSFORM) != null) {
-                Rectangle2D rt = f.get(TRANSFORM).createTransformedShape(r).getBounds2D();
-                r = (rt instanceof Rectangle2D.Double) ? (Rectangle2D.Double) rt : new Rectangle2D.Double(rt.getX(), rt.getY(), rt.getWidth(), rt.getHeight());
-            }
-            if (f.isVisible() && Geom.contains(bounds, r)) {
+            if (isWithin(f, bounds)) {
                 contained.add(f);
             }
         }
@@ -211,28 +229,9 @@ public class DefaultDrawing
      */
     @Override
     public List<Figure> getFiguresFrontToBack() {
-        ensureSorted();
         return new ReversedList<>(getChildren());
     }
 
-    /**
-     * Invalidates the sort order.
-     */
-    private void invalidateSortOrder() {
-        needsSorting = true;
-    }
-
-    /**
-     * Ensures that the children are sorted in z-order sequence from back to
-     * front.
-     */
-    private void ensureSorted() {
-        if (needsSorting) {
-            Collections.sort(children, FigureLayerComparator.INSTANCE);
-            needsSorting = false;
-        }
-    }
-
     @Override
     protected <T> void setAttributeOnChildren(AttributeKey<T> key, T newValue) {
         // empty
@@ -56,6 +56,16 @@ public class DefaultDrawingView
      */
     private Set<Figure> selectedFigures = new LinkedHashSet<>();
     private LinkedList<Handle> selectionHandles = new LinkedList<>();
+    /**
+     * Holds the selected figures for which no handles have been created yet.
+     * Handles are created lazily, when the figures become visible.
+     */
+    private LinkedHashSet<Figure> figuresWithoutHandles = new LinkedHashSet<>();
+    /**
+     * Handles are created for figures, whose drawing area is within this
+     * number of pixels of the visible rectangle.
+     */
+    private static final int HANDLE_MARGIN = 32;
     private boolean isConstrainerVisible = false;
     private Constrainer visibleConstrainer = new GridConstrainer(8, 8);
     private Constrainer invisibleConstrainer = new GridConstrainer();
@@ -82,6 +92,26 @@ public class DefaultDrawingView
      * Whether the drawing is double buffered
      */
     private boolean isDrawingDoubleBuffered = true;
+    public static final String TILED_RENDERING_PROPERTY = "tiledRendering";
+    /**
+     * Whether the drawing is rendered into tiles.
+     */
+    private boolean isTiledRendering = false;
+    /**
+     * Renders the drawing into tiles, if tiled rendering is turned on.
+     */
+    private transient TiledDrawingRenderer tiledRenderer;
+    public static final String LEVEL_OF_DETAIL_POLICY_PROPERTY = "levelOfDetailPolicy";
+    /**
+     * The level-of-detail policy. This is null, if all figures are drawn in
+     * full detail.
+     */
+    private LevelOfDetailPolicy levelOfDetailPolicy;
+    /**
+     * The time in nanoseconds which was needed for painting the drawing
+     * during the last call of paintComponent.
+     */
+    private long drawingPaintTime;
     /**
      * The drawingBuffer holds a rendered image of the drawing (in view coordinates).
      */
@@ -362,7 +392,10 @@ public class DefaultDrawingView
         drawBackground(g);
         drawCanvas(g);
         drawConstrainer(g);
-        if (isDrawingDoubleBuffered()) {
+        long start = System.nanoTime();
+        if (isTiledRendering()) {
+            drawDrawingTiled(g);
+        } else if (isDrawingDoubleBuffered()) {
             if (IS_WINDOWS) {
                 drawDrawingNonvolatileBuffered(g);
             } else {
@@ -371,6 +404,7 @@ public class DefaultDrawingView
         } else {
             drawDrawing(g);
         }
+        drawingPaintTime = System.nanoTime() - start;
         drawHandles(g);
         drawTool(g);
     }
@@ -555,6 +589,48 @@ public class DefaultDrawingView
         dirtyArea.setSize(-1, -1);
     }
 
+    /**
+     * Draws the drawing using cached tiles, which are rendered in parallel
+     * on worker threads. The view is repainted when a tile has been
+     * rendered.
+     */
+    protected void drawDrawingTiled(Graphics2D g) {
+        if (drawing == null
+                || drawing.getChildCount() == 0 && emptyDrawingLabel != null) {
+            drawDrawing(g);
+            return;
+        }
+        if (tiledRenderer == null) {
+            tiledRenderer = new TiledDrawingRenderer();
+            tiledRenderer.setListener(new TiledDrawingRenderer.Listener() {
+                @Override
+                public void tileRendered(final double scale, final Rectangle bounds) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (scale == scaleFactor) {
+                                bounds.translate(-translation.x, -translation.y);
+                                repaint(bounds);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        Graphics2D gFrc = (Graphics2D) g.create();
+        gFrc.scale(scaleFactor, scaleFactor);
+        drawing.setFontRenderContext(gFrc.getFontRenderContext());
+        gFrc.dispose();
+        Rectangle clip = g.getClipBounds();
+        Rectangle vr = getVisibleRect();
+        if (clip != null) {
+            vr = vr.intersection(clip);
+        }
+        if (!vr.isEmpty()) {
+            tiledRenderer.paint(g, drawing, scaleFactor, translation, vr, getGraphicsConfiguration());
+        }
+    }
+
     /**
      * Prints the drawing view. Uses high quality rendering hints for printing. Only prints the
      * drawing. Doesn't print the canvasColor, the grid, the handles and the tool.
@@ -582,6 +658,10 @@ public class DefaultDrawingView
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
         g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
         g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        if (levelOfDetailPolicy != null) {
+            g.setRenderingHint(LevelOfDetailPolicy.KEY_LEVEL_OF_DETAIL, levelOfDetailPolicy);
+        }
+        g.setRenderingHint(ImageCache.KEY_ASYNCHRONOUS_DECODING, Boolean.TRUE);
     }
 
     /**
@@ -686,6 +766,9 @@ public class DefaultDrawingView
             this.drawing.addFigureListener(eventHandler);
         }
         dirtyArea.add(bufferedArea);
+        if (tiledRenderer != null) {
+            tiledRenderer.invalidateAll();
+        }
         firePropertyChange(DRAWING_PROPERTY, oldValue, newValue);
         // Revalidate without flickering
         revalidate();
@@ -713,6 +796,9 @@ public class DefaultDrawingView
         Rectangle vr = drawingToView(r);
         vr.grow(2, 2);
         dirtyArea.add(vr);
+        if (tiledRenderer != null) {
+            tiledRenderer.invalidate(r);
+        }
         repaint(vr);
     }
 
@@ -733,6 +819,10 @@ public class DefaultDrawingView
             drawingBufferV.flush();
             drawingBufferV = null;
         }
+        if (tiledRenderer != null) {
+            tiledRenderer.dispose();
+            tiledRenderer = null;
+        }
     }
 
     /**
@@ -743,63 +833,34 @@ public class DefaultDrawingView
         if (DEBUG) {
             System.out.println("DefaultDrawingView" + ".addToSelection(" + figure + ")");
         }
-        Set<Figure> oldSelection = new HashSet<>(selectedFigures);
-        if (selectedFigures.add(figure)) {
-            figure.addFigureListener(handleInvalidator);
-            Set<Figure> newSelection = new HashSet<>(selectedFigures);
-            Rectangle invalidatedArea = null;
-            if (handlesAreValid && getEditor() != null) {
-                for (Handle h : figure.createHandles(detailLevel)) {
-                    h.setView(this);
-                    selectionHandles.add(h);
-                    h.addHandleListener(eventHandler);
-                    if (invalidatedArea == null) {
-                        invalidatedArea = h.getDrawingArea();
-                    } else {
-                        invalidatedArea.add(h.getDrawingArea());
-                    }
-                }
-            }
-            fireSelectionChanged(oldSelection, newSelection);
-            if (invalidatedArea != null) {
-                repaint(invalidatedArea);
-            }
-        }
+        addToSelection(Collections.singleton(figure));
     }
 
     /**
      * Adds a collection of figures to the current selection.
+     * <p>
+     * This method computes the change of the selection in a single pass, and
+     * fires one selection event. The handles of the added figures are
+     * created lazily, when the figures become visible.
      */
     @Override
     public void addToSelection(Collection<Figure> figures) {
-        Set<Figure> oldSelection = new HashSet<>(selectedFigures);
-        Set<Figure> newSelection = new HashSet<>(selectedFigures);
-        boolean selectionChanged = false;
-        Rectangle invalidatedArea = null;
+        Set<Figure> oldSelection = null;
         for (Figure figure : figures) {
-            if (selectedFigures.add(figure)) {
-                selectionChanged = true;
-                newSelection.add(figure);
+            if (!selectedFigures.contains(figure)) {
+                if (oldSelection == null) {
+                    oldSelection = getSelectionSnapshot();
+                }
+                selectedFigures.add(figure);
                 figure.addFigureListener(handleInvalidator);
-                if (handlesAreValid && getEditor() != null) {
-                    for (Handle h : figure.createHandles(detailLevel)) {
-                        h.setView(this);
-                        selectionHandles.add(h);
-                        h.addHandleListener(eventHandler);
-                        if (invalidatedArea == null) {
-                            invalidatedArea = h.getDrawingArea();
-                        } else {
-                            invalidatedArea.add(h.getDrawingArea());
-                        }
-                    }
+                if (handlesAreValid) {
+                    figuresWithoutHandles.add(figure);
                 }
             }
         }
-        if (selectionChanged) {
-            fireSelectionChanged(oldSelection, newSelection);
-            if (invalidatedArea != null) {
-                repaint(invalidatedArea);
-            }
+        if (oldSelection != null) {
+            fireSelectionChanged(oldSelection, getSelectionSnapshot());
+            createVisibleHandles();
         }
     }
 
@@ -808,9 +869,10 @@ public class DefaultDrawingView
      */
     @Override
     public void removeFromSelection(Figure figure) {
-        Set<Figure> oldSelection = new HashSet<>(selectedFigures);
-        if (selectedFigures.remove(figure)) {
-            Set<Figure> newSelection = new HashSet<>(selectedFigures);
+        if (selectedFigures.contains(figure)) {
+            Set<Figure> oldSelection = getSelectionSnapshot();
+            selectedFigures.remove(figure);
+            Set<Figure> newSelection = getSelectionSnapshot();
             invalidateHandles();
             figure.removeFigureListener(handleInvalidator);
             fireSelectionChanged(oldSelection, newSelection);
@@ -818,6 +880,13 @@ public class DefaultDrawingView
         }
     }
 
+    /**
+     * Returns an immutable copy of the current selection.
+     */
+    private Set<Figure> getSelectionSnapshot() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(selectedFigures));
+    }
+
     /**
      * If a figure isn't selected it is added to the selection. Otherwise it is removed from the
      * selection.
@@ -842,14 +911,18 @@ public class DefaultDrawingView
      */
     @Override
     public void selectAll() {
-        Set<Figure> oldSelection = new HashSet<>(selectedFigures);
+        Set<Figure> oldSelection = getSelectionSnapshot();
+        for (Figure figure : selectedFigures) {
+            figure.removeFigureListener(handleInvalidator);
+        }
         selectedFigures.clear();
         for (Figure figure : drawing.getChildren()) {
             if (figure.isSelectable()) {
                 selectedFigures.add(figure);
+                figure.addFigureListener(handleInvalidator);
             }
         }
-        Set<Figure> newSelection = new HashSet<>(selectedFigures);
+        Set<Figure> newSelection = getSelectionSnapshot();
         invalidateHandles();
         fireSelectionChanged(oldSelection, newSelection);
         repaint();
@@ -861,11 +934,13 @@ public class DefaultDrawingView
     @Override
     public void clearSelection() {
         if (getSelectionCount() > 0) {
-            Set<Figure> oldSelection = new HashSet<>(selectedFigures);
+            Set<Figure> oldSelection = getSelectionSnapshot();
+            for (Figure figure : selectedFigures) {
+                figure.removeFigureListener(handleInvalidator);
+            }
             selectedFigures.clear();
-            Set<Figure> newSelection = new HashSet<>(selectedFigures);
             invalidateHandles();
-            fireSelectionChanged(oldSelection, newSelection);
+            fireSelectionChanged(oldSelection, Collections.<Figure>emptySet());
         }
     }
 
@@ -936,6 +1011,7 @@ public class DefaultDrawingView
                 handle.dispose();
             }
             selectionHandles.clear();
+            figuresWithoutHandles.clear();
             secondaryHandles.clear();
             setActiveHandle(null);
             if (invalidatedArea != null) {
@@ -946,6 +1022,10 @@ public class DefaultDrawingView
 
     /**
      * Validates the handles.
+     * <p>
+     * Handles are only created for the selected figures which are visible.
+     * The handles of the other figures are created when they become visible,
+     * or when all handles are needed.
      */
     private void validateHandles() {
         // Validate handles only, if they are invalid, and if
@@ -953,32 +1033,63 @@ public class DefaultDrawingView
         if (!handlesAreValid && getEditor() != null) {
             handlesAreValid = true;
             selectionHandles.clear();
-            Rectangle invalidatedArea = null;
-            while (true) {
-                for (Figure figure : getSelectedFigures()) {
-                    for (Handle handle : figure.createHandles(detailLevel)) {
-                        handle.setView(this);
-                        selectionHandles.add(handle);
-                        handle.addHandleListener(eventHandler);
-                        if (invalidatedArea == null) {
-                            invalidatedArea = handle.getDrawingArea();
-                        } else {
-                            invalidatedArea.add(handle.getDrawingArea());
-                        }
+            figuresWithoutHandles.clear();
+            figuresWithoutHandles.addAll(selectedFigures);
+        }
+        createVisibleHandles();
+    }
+
+    /**
+     * Creates the handles for the selected figures which are visible.
+     */
+    private void createVisibleHandles() {
+        if (!figuresWithoutHandles.isEmpty() && handlesAreValid && getEditor() != null) {
+            Rectangle visibleRect = getVisibleRect();
+            if (visibleRect.isEmpty()) {
+                createHandles(null);
+            } else {
+                visibleRect.grow(HANDLE_MARGIN, HANDLE_MARGIN);
+                createHandles(viewToDrawing(visibleRect));
+            }
+        }
+    }
+
+    /**
+     * Creates the handles for the selected figures which intersect with the
+     * specified area, or for all selected figures if the area is null.
+     */
+    private void createHandles(Rectangle2D.Double area) {
+        Rectangle invalidatedArea = null;
+        boolean hasCreatedHandles = false;
+        for (Iterator<Figure> i = figuresWithoutHandles.iterator(); i.hasNext();) {
+            Figure figure = i.next();
+            if (area == null || figure.getDrawingArea().intersects(area)) {
+                i.remove();
+                for (Handle handle : figure.createHandles(detailLevel)) {
+                    handle.setView(this);
+                    selectionHandles.add(handle);
+                    handle.addHandleListener(eventHandler);
+                    hasCreatedHandles = true;
+                    if (invalidatedArea == null) {
+                        invalidatedArea = handle.getDrawingArea();
+                    } else {
+                        invalidatedArea.add(handle.getDrawingArea());
                     }
                 }
-                if (selectionHandles.size() == 0 && detailLevel != 0) {
-                    // No handles are available at the desired detail level.
-                    // Retry with detail level 0.
-                    detailLevel = 0;
-                    continue;
-                }
-                break;
-            }
-            if (invalidatedArea != null) {
-                repaint(invalidatedArea);
             }
         }
+        if (!hasCreatedHandles && selectionHandles.isEmpty() && detailLevel != 0
+                && figuresWithoutHandles.size() < selectedFigures.size()) {
+            // No handles are available at the desired detail level.
+            // Retry with detail level 0.
+            detailLevel = 0;
+            handlesAreValid = false;
+            validateHandles();
+            return;
+        }
+        if (invalidatedArea != null) {
+            repaint(invalidatedArea);
+        }
     }
 
     /**
@@ -1011,6 +1122,10 @@ public class DefaultDrawingView
     @Override
     public Collection<Handle> getCompatibleHandles(Handle master) {
         validateHandles();
+        if (handlesAreValid && getEditor() != null) {
+            // All selected figures can be affected, even if they are not visible
+            createHandles(null);
+        }
         HashSet<Figure> owners = new HashSet<>();
         LinkedList<Handle> compatibleHandles = new LinkedList<>();
         owners.add(master.getOwner());
@@ -1464,6 +1579,79 @@ public class DefaultDrawingView
         return isDrawingDoubleBuffered;
     }
 
+    /**
+     * Sets whether the drawing is rendered into a cache of tiles.
+     * <p>
+     * The default value is false.
+     * <p>
+     * This is a bound property.
+     * <p>
+     * Tiled rendering is useful for large drawings, because only the tiles
+     * which are affected by a change need to be rendered again, and they are
+     * rendered in parallel on worker threads, without blocking the event
+     * dispatch thread. A figure is drawn by one worker at a time, see
+     * {@link TiledDrawingRenderer}.
+     * If tiled rendering is turned on, the drawing is not double buffered.
+     */
+    public void setTiledRendering(boolean newValue) {
+        boolean oldValue = isTiledRendering;
+        isTiledRendering = newValue;
+        if (!isTiledRendering && tiledRenderer != null) {
+            tiledRenderer.dispose();
+            tiledRenderer = null;
+        }
+        dirtyArea.setBounds(bufferedArea);
+        firePropertyChange(TILED_RENDERING_PROPERTY, oldValue, newValue);
+        repaint();
+    }
+
+    /**
+     * Returns true, if the drawing is rendered into a cache of tiles.
+     */
+    public boolean isTiledRendering() {
+        return isTiledRendering;
+    }
+
+    /**
+     * Sets the level-of-detail policy, which decides how figures which are
+     * small on the screen are drawn. Set this to null, to draw all figures in
+     * full detail.
+     * <p>
+     * The default value is null.
+     * <p>
+     * This is a bound property.
+     * <p>
+     * The policy is only used for painting the view, but not for printing.
+     */
+    public void setLevelOfDetailPolicy(LevelOfDetailPolicy newValue) {
+        LevelOfDetailPolicy oldValue = levelOfDetailPolicy;
+        levelOfDetailPolicy = newValue;
+        dirtyArea.setBounds(bufferedArea);
+        if (tiledRenderer != null) {
+            tiledRenderer.invalidateAll();
+        }
+        firePropertyChange(LEVEL_OF_DETAIL_POLICY_PROPERTY, oldValue, newValue);
+        repaint();
+    }
+
+    /**
+     * Returns the level-of-detail policy, or null if all figures are drawn in
+     * full detail.
+     */
+    public LevelOfDetailPolicy getLevelOfDetailPolicy() {
+        return levelOfDetailPolicy;
+    }
+
+    /**
+     * Returns the time in nanoseconds which was needed to paint the drawing
+     * the last time the view was painted. This includes the time for
+     * updating the drawing buffer, but not the time for painting the
+     * background, the handles and the tool.
+     */
+    public long getDrawingPaintTime() {
+        return drawingPaintTime;
+    }
+
     /**
      * Returns a paint for drawing the background of the drawing area.
      *
@@ -0,0 +1,129 @@
+/*
+ * @(#)DerivedAttributeCache.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Font;
+import java.awt.Stroke;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * Caches objects which are derived from the attributes of a figure, such as
+ * {@code Stroke}, {@code Paint} and {@code Font} objects.
+ * <p>
+ * Each entry is stored under a key and the scale factor for which it has been
+ * computed. The figure must call {@link #clear} when one of its attributes
+ * changes, and when it has been invalidated, if an entry depends on the
+ * bounds of the figure.
+ * <p>
+ * The cache can be used by multiple threads which draw the same figure
+ * concurrently. The entries are kept in an immutable array, which is replaced
+ * when an entry is added.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class DerivedAttributeCache {
+
+    /**
+     * This value is returned by {@link #get} if there is no entry for the
+     * specified key and scale factor.
+     */
+    public static final Object MISSING = new Object();
+    private static final Object STROKE = "stroke";
+    private static final Object FONT = "font";
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static class Entry {
+
+        private final Object key;
+        private final double factor;
+        private final Object value;
+
+        public Entry(Object key, double factor, Object value) {
+            this.key = key;
+            this.factor = factor;
+            this.value = value;
+        }
+    }
+    private volatile Entry[] entries = NO_ENTRIES;
+
+    /**
+     * Creates a new instance.
+     */
+    public DerivedAttributeCache() {
+    }
+
+    /**
+     * Returns the cached value for the specified key and scale factor.
+     *
+     * @return the value, which may be null, or {@link #MISSING}.
+     */
+    public Object get(Object key, double factor) {
+        for (Entry e : entries) {
+            if (e.key == key && e.factor == factor) {
+                return e.value;
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Caches a value for the specified key and scale factor. A value for the
+     * same key but a different scale factor is replaced.
+     */
+    public void put(Object key, double factor, Object value) {
+        Entry[] oldEntries = entries;
+        int n = oldEntries.length;
+        int index = n;
+        for (int i = 0; i < n; i++) {
+            if (oldEntries[i].key == key) {
+                index = i;
+                break;
+            }
+        }
+        Entry[] newEntries = new Entry[Math.max(n, index + 1)];
+        System.arraycopy(oldEntries, 0, newEntries, 0, n);
+        newEntries[index] = new Entry(key, factor, value);
+        entries = newEntries;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries = NO_ENTRIES;
+    }
+
+    /**
+     * Returns the stroke of the specified figure.
+     *
+     * @see AttributeKeys#getStroke
+     */
+    public Stroke getStroke(Figure f, double factor) {
+        Object value = get(STROKE, factor);
+        if (value == MISSING) {
+            value = AttributeKeys.getStroke(f, factor);
+            put(STROKE, factor, value);
+        }
+        return (Stroke) value;
+    }
+
+    /**
+     * Returns the font of the specified figure.
+     *
+     * @see AttributeKeys#getFont
+     */
+    public Font getFont(Figure f) {
+        Object value = get(FONT, 1d);
+        if (value == MISSING) {
+            value = AttributeKeys.getFont(f);
+            put(FONT, 1d, value);
+        }
+        return (Font) value;
+    }
+}
@@ -12,6 +12,7 @@ import java.awt.font.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
 import javax.swing.event.*;
 import javax.swing.undo.*;
 import org.jhotdraw.draw.figure.CompositeFigure;
@@ -316,6 +317,56 @@ public interface Drawing extends CompositeFigure, Serializable, DOMStorable {
      */
     List<Figure> sort(Collection<? extends Figure> figures);
 
+    /**
+     * Transforms the specified figures.
+     * <p>
+     * This is equivalent to invoking {@code willChange()},
+     * {@code transform(tx)} and {@code changed()} on each figure between
+     * {@link #beginUpdate} and {@link #commitUpdate}.
+     *
+     * @param figures figures which are part of the drawing
+     * @param tx the transform
+     */
+    void transformAll(Collection<? extends Figure> figures, AffineTransform tx);
+
+    /**
+     * Begins a batch of changes.
+     * <p>
+     * Until the matching call to {@link #commitUpdate}, the drawing does not
+     * forward the {@code areaInvalidated} and {@code figureChanged} events of
+     * its children to its listeners. Instead, it merges the invalidated areas
+     * into one dirty region, and collects the changed children. On commit,
+     * the drawing updates its internal data structures for all changed
+     * children at once, and fires a single {@code areaInvalidated} and
+     * {@code figureChanged} event for the dirty region. Connections, whose
+     * start or end figure has changed, are marked dirty in the
+     * {@link #getConnectionGraph connection graph}, and are laid out once
+     * on commit.
+     * <p>
+     * Batches can be nested. Only the outermost commit delivers the events.
+     * The commit must be done on the same thread in a {@code finally} block.
+     */
+    void beginUpdate();
+
+    /**
+     * Ends a batch of changes, which has been started with
+     * {@link #beginUpdate}.
+     *
+     * @throws IllegalStateException if there is no batch in progress.
+     */
+    void commitUpdate();
+
+    /**
+     * Returns true, if a batch of changes is in progress.
+     */
+    boolean isUpdating();
+
+    /**
+     * Returns the graph which tracks the dependencies between the connections
+     * of this drawing and the figures they are attached to.
+     */
+    ConnectionGraph getConnectionGraph();
+
     /**
      * Adds a listener for undooable edit events.
      */
@@ -343,10 +394,15 @@ public interface Drawing extends CompositeFigure, Serializable, DOMStorable {
     void setFontRenderContext(FontRenderContext frc);
 
     /**
-     * Returns the lock object on which all threads acting on Figures in this
-     * drawing synchronize to prevent race conditions.
+     * Returns the lock which all threads acting on Figures in this
+     * drawing use to prevent race conditions.
+     * <p>
+     * Threads which only read the drawing, for example for drawing,
+     * finding figures or exporting, acquire the read lock. Threads which
+     * change the drawing acquire the write lock. The read lock can not be
+     * upgraded to a write lock.
      */
-    Object getLock();
+    ReadWriteLock getLock();
 
     /**
      * Adds an input format to the drawing.
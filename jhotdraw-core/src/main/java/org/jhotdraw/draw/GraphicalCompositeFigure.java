@@ -212,6 +212,11 @@ public class GraphicalCompositeFigure extends AbstractCompositeFigure {
         }
     }
 
+    @Override
+    public boolean isTransformingPointsDirectly() {
+        return false;
+    }
+
     /**
      * Draw the figure. This method is delegated to the encapsulated presentation figure.
      */
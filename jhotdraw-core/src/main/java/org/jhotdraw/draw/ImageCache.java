@@ -0,0 +1,568 @@
+/*
+ * @(#)ImageCache.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import org.jhotdraw.io.Blob;
+
+/**
+ * Decodes and caches the rasters of images which are embedded in figures.
+ * <p>
+ * A figure holds a {@link CachedImage} for its image data. Figures which
+ * hold the same {@link Blob} share one cached image. The cached image
+ * decodes the data on first use, and keeps a pyramid of downscaled rasters,
+ * from which it draws the level which best matches the current scale. For
+ * an image which is drawn with an affine transform, it also keeps one
+ * raster which has been rendered with the transform, so that the image only
+ * needs to be resampled again when the scale or rotation changes.
+ * <p>
+ * All decoded rasters count against a memory budget which is shared by all
+ * images of the cache. When the budget is exceeded, the rasters of the least
+ * recently drawn images are discarded. The image data is kept, so that the
+ * image can be decoded again when it is needed.
+ * <p>
+ * A drawing view turns on background decoding by putting
+ * {@code Boolean.TRUE} into the rendering hints with the key
+ * {@link #KEY_ASYNCHRONOUS_DECODING}. An image which has not been decoded yet
+ * is then drawn as a placeholder, and the figure is repainted when the
+ * decoder is done. Without the hint, for example when printing or exporting
+ * a drawing, images are decoded on the drawing thread.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ImageCache {
+
+    /**
+     * Rendering hint key for background decoding. The value is a
+     * {@code Boolean}.
+     */
+    public static final RenderingHints.Key KEY_ASYNCHRONOUS_DECODING = new RenderingHints.Key(0x494d47) {
+        @Override
+        public boolean isCompatibleValue(Object val) {
+            return val instanceof Boolean;
+        }
+
+        @Override
+        public String toString() {
+            return "Asynchronous image decoding key";
+        }
+    };
+    private static final ImageCache DEFAULT = new ImageCache(128L << 20);
+    /**
+     * Transformed rasters with more pixels than this are not cached. The
+     * image is drawn with the transform instead.
+     */
+    private static final long MAX_TRANSFORMED_PIXELS = 4 << 20;
+    private static final Color PLACEHOLDER_COLOR = new Color(0x40808080, true);
+    private final long maxBytes;
+    private long bytes;
+    /**
+     * The rasters of all images in the order in which they have been used,
+     * least recently used first.
+     */
+    private final LinkedHashMap<Rasters, Rasters> lru = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The cached images by their image data.
+     */
+    private final WeakHashMap<Blob, WeakReference<CachedImage>> images = new WeakHashMap<>();
+    private ExecutorService decoder;
+
+    /**
+     * The decoded rasters of an image.
+     * <p>
+     * This object does not reference the image data, so that the data of a
+     * figure which has been discarded can be garbage collected, while its
+     * rasters are still in the cache. All fields are guarded by the lock
+     * of the cache.
+     */
+    private static class Rasters {
+
+        /**
+         * Level 0 holds the full resolution image, level n holds the image
+         * downscaled by 2^n.
+         */
+        private BufferedImage[] levels = new BufferedImage[1];
+        private BufferedImage transformed;
+        private AffineTransform transformedKey;
+        private int transformedLevel;
+        private Rectangle transformedBounds;
+        private long bytes;
+    }
+
+    /**
+     * An image in the cache.
+     */
+    public static class CachedImage {
+
+        private final ImageCache cache;
+        /**
+         * The image data, or null if the image has been created from a
+         * buffered image.
+         */
+        private final Blob data;
+        /**
+         * The image if it has been created from a buffered image. This image
+         * is never discarded.
+         */
+        private final BufferedImage pinned;
+        private Rasters rasters;
+        private Future<?> decoding;
+        private ArrayList<Runnable> whenDecoded;
+        private volatile boolean failed;
+
+        private CachedImage(ImageCache cache, Blob data, BufferedImage pinned) {
+            this.cache = cache;
+            this.data = data;
+            this.pinned = pinned;
+        }
+
+        /**
+         * Returns the image data, or null if the image has been created from
+         * a buffered image.
+         */
+        public Blob getData() {
+            return data;
+        }
+
+        /**
+         * Returns true if the image data could not be decoded.
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the full resolution image. If necessary, this method
+         * decodes the image data on the calling thread, or waits until the
+         * background decoder is done.
+         *
+         * @return the image, or null if the image data can not be decoded.
+         */
+        public BufferedImage getImage() {
+            if (pinned != null) {
+                return pinned;
+            }
+            BufferedImage image = cache.getLevel(this, 0);
+            if (image != null || failed) {
+                return image;
+            }
+            Future<?> pending;
+            synchronized (cache) {
+                pending = decoding;
+            }
+            if (pending != null) {
+                try {
+                    pending.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ExecutionException e) {
+                    // The decoder has marked the image as failed
+                }
+                image = cache.getLevel(this, 0);
+                if (image != null || failed) {
+                    return image;
+                }
+            }
+            return decode();
+        }
+
+        /**
+         * Decodes the image data and puts the image into the cache. If the
+         * data can not be decoded, the image is marked as failed, so that
+         * it is not decoded again.
+         */
+        private BufferedImage decode() {
+            BufferedImage image = null;
+            try {
+                image = ImageIO.read(data.openStream());
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(ImageCache.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            if (image == null) {
+                failed = true;
+            } else {
+                cache.putLevel(this, 0, image);
+            }
+            return image;
+        }
+
+        /**
+         * Draws the image into the specified rectangle.
+         * <p>
+         * If background decoding is turned on in the rendering hints and the
+         * image has not been decoded yet, this method draws a placeholder,
+         * starts the decoder, and invokes {@code repaint} on the event
+         * dispatch thread when the decoder is done.
+         *
+         * @param g the graphics.
+         * @param r the rectangle into which the image is drawn.
+         * @param transform a transform which is applied to the rectangle, or
+         * null.
+         * @param repaint invoked when the image has been decoded in the
+         * background.
+         * @return false if the image data can not be decoded.
+         */
+        public boolean draw(Graphics2D g, Rectangle2D.Double r, AffineTransform transform, Runnable repaint) {
+            int x = (int) r.x;
+            int y = (int) r.y;
+            int w = (int) r.width;
+            int h = (int) r.height;
+            BufferedImage image = (pinned != null) ? pinned : cache.getLevel(this, 0);
+            if (image == null) {
+                if (failed) {
+                    return false;
+                }
+                if (Boolean.TRUE.equals(g.getRenderingHint(KEY_ASYNCHRONOUS_DECODING))) {
+                    decodeLater(repaint);
+                    drawPlaceholder(g, r, transform);
+                    return true;
+                }
+                image = getImage();
+                if (image == null) {
+                    return false;
+                }
+            }
+            if (w <= 0 || h <= 0) {
+                return true;
+            }
+
+            // Compute the transform from image pixels to device pixels
+            AffineTransform tx = g.getTransform();
+            if (transform != null) {
+                tx.concatenate(transform);
+            }
+            tx.translate(x, y);
+            double scale = Math.max(
+                    Math.hypot(tx.getScaleX(), tx.getShearY()) * w / image.getWidth(),
+                    Math.hypot(tx.getShearX(), tx.getScaleY()) * h / image.getHeight());
+            int level = 0;
+            while (scale * 2 <= 1 && image.getWidth() >> (level + 1) > 0 && image.getHeight() >> (level + 1) > 0) {
+                scale *= 2;
+                level++;
+            }
+            BufferedImage levelImage = (level == 0) ? image : cache.getOrCreateLevel(this, image, level);
+
+            if (transform == null) {
+                g.drawImage(levelImage, x, y, w, h, null);
+                return true;
+            }
+            tx.scale(w / (double) levelImage.getWidth(), h / (double) levelImage.getHeight());
+            if (!cache.drawTransformed(this, g, levelImage, level, tx)) {
+                Graphics2D gx = (Graphics2D) g.create();
+                gx.transform(transform);
+                gx.drawImage(levelImage, x, y, w, h, null);
+                gx.dispose();
+            }
+            return true;
+        }
+
+        private void drawPlaceholder(Graphics2D g, Rectangle2D.Double r, AffineTransform transform) {
+            Color savedColor = g.getColor();
+            g.setColor(PLACEHOLDER_COLOR);
+            g.fill((transform == null) ? r : transform.createTransformedShape(r));
+            g.setColor(savedColor);
+        }
+
+        /**
+         * Starts the background decoder, if it is not already running.
+         */
+        private void decodeLater(Runnable repaint) {
+            synchronized (cache) {
+                if (repaint != null) {
+                    if (whenDecoded == null) {
+                        whenDecoded = new ArrayList<>(1);
+                    }
+                    if (!whenDecoded.contains(repaint)) {
+                        whenDecoded.add(repaint);
+                    }
+                }
+                if (decoding != null) {
+                    return;
+                }
+                decoding = cache.getDecoder().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cache.getLevel(CachedImage.this, 0) == null) {
+                            decode();
+                        }
+                        final ArrayList<Runnable> callbacks;
+                        synchronized (cache) {
+                            decoding = null;
+                            callbacks = whenDecoded;
+                            whenDecoded = null;
+                        }
+                        if (callbacks != null) {
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    for (Runnable r : callbacks) {
+                                        r.run();
+                                    }
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxBytes the maximal number of bytes of all decoded rasters.
+     */
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cache which is shared by all image figures.
+     */
+    public static ImageCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the cached image for the specified image data, or creates a
+     * cached image for a buffered image.
+     * <p>
+     * If image data is provided, the buffered image is put into the cache
+     * and may be discarded later. Otherwise, the buffered image is kept
+     * for the lifetime of the cached image.
+     *
+     * @param data The image data. If this is null, a buffered image must be
+     * provided.
+     * @param image An image constructed from the data, or null.
+     */
+    public CachedImage create(Blob data, BufferedImage image) {
+        if (data == null) {
+            if (image == null) {
+                throw new IllegalArgumentException("data or image must be provided");
+            }
+            return new CachedImage(this, null, image);
+        }
+        CachedImage c;
+        synchronized (this) {
+            WeakReference<CachedImage> ref = images.get(data);
+            c = (ref == null) ? null : ref.get();
+            if (c == null) {
+                c = new CachedImage(this, data, null);
+                images.put(data, new WeakReference<>(c));
+            }
+            if (image != null) {
+                putLevel(c, 0, image);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Returns the number of bytes of all decoded rasters.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Discards all decoded rasters.
+     */
+    public synchronized void clear() {
+        for (Rasters r : lru.keySet()) {
+            clearRasters(r);
+        }
+        lru.clear();
+        bytes = 0;
+    }
+
+    private synchronized ExecutorService getDecoder() {
+        if (decoder == null) {
+            decoder = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1)),
+                    new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ImageCache");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+        }
+        return decoder;
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private synchronized BufferedImage getLevel(CachedImage c, int level) {
+        Rasters r = c.rasters;
+        if (r == null || level >= r.levels.length || r.levels[level] == null) {
+            return null;
+        }
+        lru.get(r);
+        return r.levels[level];
+    }
+
+    private synchronized void putLevel(CachedImage c, int level, BufferedImage image) {
+        Rasters r = c.rasters;
+        if (r == null) {
+            r = c.rasters = new Rasters();
+        }
+        if (level >= r.levels.length) {
+            BufferedImage[] levels = new BufferedImage[level + 1];
+            System.arraycopy(r.levels, 0, levels, 0, r.levels.length);
+            r.levels = levels;
+        }
+        if (r.levels[level] == null) {
+            r.levels[level] = image;
+            add(r, sizeOf(image));
+        }
+    }
+
+    /**
+     * Returns the specified level of the pyramid, downscaling the next
+     * larger level if necessary.
+     */
+    private BufferedImage getOrCreateLevel(CachedImage c, BufferedImage image, int level) {
+        BufferedImage levelImage = getLevel(c, level);
+        if (levelImage == null) {
+            BufferedImage larger = (level == 1) ? image : getOrCreateLevel(c, image, level - 1);
+            int w = Math.max(1, larger.getWidth() / 2);
+            int h = Math.max(1, larger.getHeight() / 2);
+            levelImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = levelImage.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(larger, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            putLevel(c, level, levelImage);
+        }
+        return levelImage;
+    }
+
+    /**
+     * Draws an image with the specified transform from image pixels to
+     * device pixels, using a cached raster which has been rendered with the
+     * same scale, rotation and shear.
+     *
+     * @return false if the raster would be too large to be cached.
+     */
+    private boolean drawTransformed(CachedImage c, Graphics2D g, BufferedImage image, int level, AffineTransform tx) {
+        AffineTransform key = new AffineTransform(tx.getScaleX(), tx.getShearY(), tx.getShearX(), tx.getScaleY(), 0, 0);
+        BufferedImage raster = null;
+        Rectangle bounds = null;
+        synchronized (this) {
+            Rasters r = c.rasters;
+            if (r != null && r.transformed != null && r.transformedLevel == level && key.equals(r.transformedKey)) {
+                lru.get(r);
+                raster = r.transformed;
+                bounds = r.transformedBounds;
+            }
+        }
+        if (raster == null) {
+            Rectangle2D b = key.createTransformedShape(
+                    new Rectangle(0, 0, image.getWidth(), image.getHeight())).getBounds2D();
+            bounds = new Rectangle((int) Math.floor(b.getX()), (int) Math.floor(b.getY()), 0, 0);
+            bounds.width = (int) Math.ceil(b.getMaxX()) - bounds.x;
+            bounds.height = (int) Math.ceil(b.getMaxY()) - bounds.y;
+            if (bounds.isEmpty() || (long) bounds.width * bounds.height > MAX_TRANSFORMED_PIXELS) {
+                return false;
+            }
+            raster = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D rg = raster.createGraphics();
+            try {
+                rg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                rg.translate(-bounds.x, -bounds.y);
+                rg.transform(key);
+                rg.drawImage(image, 0, 0, null);
+            } finally {
+                rg.dispose();
+            }
+            synchronized (this) {
+                Rasters r = c.rasters;
+                if (r != null) {
+                    if (r.transformed != null) {
+                        r.bytes -= sizeOf(r.transformed);
+                        bytes -= sizeOf(r.transformed);
+                    }
+                    r.transformed = raster;
+                    r.transformedKey = key;
+                    r.transformedLevel = level;
+                    r.transformedBounds = bounds;
+                    add(r, sizeOf(raster));
+                }
+            }
+        }
+        Graphics2D gx = (Graphics2D) g.create();
+        try {
+            gx.setTransform(new AffineTransform());
+            gx.drawImage(raster,
+                    (int) Math.round(tx.getTranslateX()) + bounds.x,
+                    (int) Math.round(tx.getTranslateY()) + bounds.y, null);
+        } finally {
+            gx.dispose();
+        }
+        return true;
+    }
+
+    /**
+     * Adds bytes to the specified rasters, and discards the least recently
+     * used rasters of other images until the cache is within its budget.
+     * Must be called while holding the lock.
+     */
+    private void add(Rasters r, long n) {
+        r.bytes += n;
+        bytes += n;
+        lru.put(r, r);
+        for (Iterator<Rasters> i = lru.keySet().iterator(); bytes > maxBytes && i.hasNext();) {
+            Rasters eldest = i.next();
+            if (eldest != r) {
+                bytes -= eldest.bytes;
+                clearRasters(eldest);
+                i.remove();
+            }
+        }
+    }
+
+    private static void clearRasters(Rasters r) {
+        r.levels = new BufferedImage[1];
+        r.transformed = null;
+        r.transformedKey = null;
+        r.transformedBounds = null;
+        r.bytes = 0;
+    }
+}
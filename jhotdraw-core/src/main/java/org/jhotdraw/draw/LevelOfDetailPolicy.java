@@ -0,0 +1,254 @@
+/*
+ * @(#)LevelOfDetailPolicy.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.jhotdraw.draw.AttributeKeys.*;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * Decides how much detail is drawn for figures which are small on the screen.
+ * <p>
+ * A drawing view turns on level-of-detail rendering by putting a policy into
+ * the rendering hints of the {@code Graphics2D} object with the key
+ * {@link #KEY_LEVEL_OF_DETAIL}. The drawings and figures look up the policy
+ * with {@link #get}:
+ * <ul>
+ * <li>Figures whose drawing area is smaller than {@code minFigureSize} pixels
+ * are drawn as a filled box.</li>
+ * <li>Text which is smaller than {@code minTextSize} pixels is drawn as
+ * greeked bars.</li>
+ * <li>Line decorations which are smaller than {@code minDecorationSize}
+ * pixels are not drawn.</li>
+ * </ul>
+ * Instances of this class are immutable.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class LevelOfDetailPolicy {
+
+    /**
+     * Rendering hint key for the level-of-detail policy. The value is an
+     * instance of {@code LevelOfDetailPolicy}.
+     */
+    public static final RenderingHints.Key KEY_LEVEL_OF_DETAIL = new RenderingHints.Key(0x4c4f44) {
+        @Override
+        public boolean isCompatibleValue(Object val) {
+            return val instanceof LevelOfDetailPolicy;
+        }
+
+        @Override
+        public String toString() {
+            return "Level of detail policy key";
+        }
+    };
+    private final double minFigureSize;
+    private final double minTextSize;
+    private final double minDecorationSize;
+
+    /**
+     * Creates a new instance with a minimal figure size of 4 pixels, a
+     * minimal text size of 6 pixels and a minimal decoration size of 4 pixels.
+     */
+    public LevelOfDetailPolicy() {
+        this(4, 6, 4);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param minFigureSize figures whose drawing area is smaller than this
+     * number of pixels are drawn as a box.
+     * @param minTextSize text whose font size is smaller than this number of
+     * pixels is drawn as greeked bars.
+     * @param minDecorationSize line decorations whose diameter is smaller
+     * than this number of pixels are not drawn.
+     */
+    public LevelOfDetailPolicy(double minFigureSize, double minTextSize, double minDecorationSize) {
+        this.minFigureSize = minFigureSize;
+        this.minTextSize = minTextSize;
+        this.minDecorationSize = minDecorationSize;
+    }
+
+    public double getMinFigureSize() {
+        return minFigureSize;
+    }
+
+    public double getMinTextSize() {
+        return minTextSize;
+    }
+
+    public double getMinDecorationSize() {
+        return minDecorationSize;
+    }
+
+    /**
+     * Returns the level-of-detail policy of the specified graphics, or null
+     * if level-of-detail rendering is turned off.
+     */
+    public static LevelOfDetailPolicy get(Graphics2D g) {
+        Object value = g.getRenderingHint(KEY_LEVEL_OF_DETAIL);
+        return (value instanceof LevelOfDetailPolicy) ? (LevelOfDetailPolicy) value : null;
+    }
+
+    /**
+     * Creates a batch for drawing the figures of a drawing onto the specified
+     * graphics.
+     */
+    public Batch createBatch(Graphics2D g) {
+        return new Batch(g);
+    }
+
+    /**
+     * Draws figures which are too small on the screen as filled boxes.
+     * <p>
+     * The batch collects the boxes per color, and fills them when
+     * {@link #flush} is called. The boxes are only a few pixels wide, so they
+     * are filled without antialiasing, which is considerably faster. A batch
+     * must be flushed before a figure is drawn in full detail, so that the
+     * z-order of the figures is preserved.
+     * The z-order of the boxes among each other is not preserved.
+     * <p>
+     * The color of a box is the fill, stroke or text color of the figure,
+     * with its alpha multiplied by the {@code OPACITY} of the figure.
+     */
+    public class Batch {
+
+        private final Graphics2D g;
+        private final double scale;
+        private final LinkedHashMap<Color, Boxes> boxes = new LinkedHashMap<>();
+
+        private Batch(Graphics2D g) {
+            this.g = g;
+            this.scale = getScale(g);
+        }
+
+        /**
+         * Adds the figure to the batch, if it is too small on the screen.
+         *
+         * @param f the figure.
+         * @return true if the figure has been added to the batch, false if the
+         * figure needs to be drawn in full detail.
+         */
+        public boolean add(Figure f) {
+            Rectangle2D.Double r = f.getDrawingArea();
+            if (Math.max(r.width, r.height) * scale >= minFigureSize) {
+                return false;
+            }
+            Color c = f.get(FILL_COLOR);
+            if (c == null) {
+                c = f.get(STROKE_COLOR);
+            }
+            if (c == null) {
+                c = f.get(TEXT_COLOR);
+            }
+            double opacity = f.get(OPACITY);
+            if (c != null && opacity < 1) {
+                c = new Color(c.getRed(), c.getGreen(), c.getBlue(),
+                        (int) (c.getAlpha() * Math.max(0, opacity) + 0.5));
+            }
+            if (c != null && c.getAlpha() != 0) {
+                Boxes b = boxes.get(c);
+                if (b == null) {
+                    b = new Boxes();
+                    boxes.put(c, b);
+                }
+                // Use at least one pixel, so that the figure does not vanish
+                double min = 1 / scale;
+                b.add(r.x, r.y, Math.max(min, r.width), Math.max(min, r.height));
+            }
+            return true;
+        }
+
+        /**
+         * Fills the boxes which have been collected so far.
+         */
+        public void flush() {
+            if (!boxes.isEmpty()) {
+                Object antialiasing = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                Rectangle2D.Double box = new Rectangle2D.Double();
+                for (Map.Entry<Color, Boxes> entry : boxes.entrySet()) {
+                    g.setColor(entry.getKey());
+                    Boxes b = entry.getValue();
+                    for (int i = 0; i < b.size; i += 4) {
+                        box.setRect(b.coords[i], b.coords[i + 1], b.coords[i + 2], b.coords[i + 3]);
+                        g.fill(box);
+                    }
+                }
+                if (antialiasing != null) {
+                    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+                }
+                boxes.clear();
+            }
+        }
+    }
+
+    /**
+     * Holds boxes as four consecutive values x, y, width and height.
+     */
+    private static class Boxes {
+
+        private double[] coords = new double[64];
+        private int size;
+
+        private void add(double x, double y, double width, double height) {
+            if (size + 4 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            coords[size] = x;
+            coords[size + 1] = y;
+            coords[size + 2] = width;
+            coords[size + 3] = height;
+            size += 4;
+        }
+    }
+
+    /**
+     * Returns the factor by which the graphics scales drawing coordinates
+     * to pixels.
+     */
+    private static double getScale(Graphics2D g) {
+        return Math.sqrt(Math.abs(g.getTransform().getDeterminant()));
+    }
+
+    /**
+     * Returns true if text with the specified font size is drawn as greeked
+     * bars.
+     */
+    public boolean isGreeked(Graphics2D g, double fontSize) {
+        return fontSize * getScale(g) < minTextSize;
+    }
+
+    /**
+     * Draws a greeked bar for a line of text.
+     *
+     * @param g the graphics. The color must have been set to the text color.
+     * @param x the x coordinate of the start of the line.
+     * @param y the y coordinate of the top of the line.
+     * @param width the width of the line.
+     * @param fontSize the font size.
+     */
+    public void drawGreekedLine(Graphics2D g, double x, double y, double width, double fontSize) {
+        g.fill(new Rectangle2D.Double(x, y + fontSize * 0.25, width, fontSize * 0.5));
+    }
+
+    /**
+     * Returns true if a line decoration with the specified radius is drawn.
+     */
+    public boolean isDecorationVisible(Graphics2D g, double radius) {
+        return radius * 2 * getScale(g) >= minDecorationSize;
+    }
+}
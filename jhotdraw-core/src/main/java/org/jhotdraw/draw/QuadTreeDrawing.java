@@ -8,20 +8,38 @@
 package org.jhotdraw.draw;
 
 import org.jhotdraw.draw.figure.Figure;
-import org.jhotdraw.draw.figure.AbstractCompositeFigure;
 import java.awt.*;
 import java.awt.geom.*;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.event.FigureEvent;
-import org.jhotdraw.geom.Geom;
-import org.jhotdraw.geom.QuadTree;
+import org.jhotdraw.geom.RTree;
 import org.jhotdraw.util.*;
 
 /**
- * An implementation of {@link Drawing} which uses a
- * {@link org.jhotdraw.geom.QuadTree} to provide a good responsiveness for
- * drawings which contain many figures.
+ * An implementation of {@link Drawing} which uses a spatial index to provide
+ * a good responsiveness for drawings which contain many figures.
+ * <p>
+ * The spatial index is an {@link org.jhotdraw.geom.RTree}. Unlike
+ * {@link org.jhotdraw.geom.QuadTree}, it does not depend on initial root
+ * bounds, and thus stays efficient no matter how far the drawing grows.
+ * <p>
+ * Each child carries a z-order key in the spatial index. The keys increase
+ * from back to front in the same sequence as the children list. Thus, the
+ * candidates of a spatial query can be sorted into z-order without scanning
+ * all children.
+ * <p>
+ * The children are kept sorted by layer at all times. Queries acquire the
+ * read lock of the drawing, and methods which change the children acquire
+ * its write lock. If a child changes while the current thread holds the read
+ * lock, for example when a connection is laid out while the drawing is
+ * drawn, its entry in the spatial index is updated when the thread has
+ * released the read lock.
+ * <p>
+ * During a batch of changes, see {@link #beginUpdate}, the spatial index is
+ * updated only once on commit. Until then, queries see the drawing areas
+ * which the changed children had at the beginning of the batch.
  *
  * @author Werner Randelshofer
  * @version $Id$
@@ -29,39 +47,88 @@ import org.jhotdraw.util.*;
 public class QuadTreeDrawing extends AbstractDrawing {
 
     private static final long serialVersionUID = 1L;
-    private QuadTree<Figure> quadTree = new QuadTree<>();
-    private boolean needsSorting = false;
+    /**
+     * The distance between the z-order keys of adjacent children after the
+     * keys have been renumbered.
+     */
+    private static final long ORDER_GAP = 1L << 20;
+    private RTree<Figure> spatialIndex = new RTree<>();
+    /**
+     * Holds the children which have changed while the thread, which changed
+     * them, held the read lock. Access to this field is synchronized on the
+     * drawing.
+     */
+    private transient LinkedHashSet<Figure> deferredFigures;
 
     @Override
     public int indexOf(Figure figure) {
-        return children.indexOf(figure);
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            if (!spatialIndex.contains(figure)) {
+                return -1;
+            }
+            final long order = spatialIndex.getOrder(figure);
+            int low = 0;
+            int high = children.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midOrder = spatialIndex.getOrder(children.get(mid));
+                if (midOrder < order) {
+                    low = mid + 1;
+                } else if (midOrder > order) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return children.indexOf(figure);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void basicAdd(int index, Figure figure) {
-        super.basicAdd(index, figure);
-        quadTree.add(figure, figure.getDrawingArea());
-        needsSorting = true;
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            index = getLayerIndex(index, figure);
+            super.basicAdd(index, figure);
+            spatialIndex.add(figure, figure.getDrawingArea());
+            updateOrder(index);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public Figure basicRemoveChild(int index) {
-        Figure figure = getChild(index);
-        quadTree.remove(figure);
-        needsSorting = true;
-        super.basicRemoveChild(index);
-        return figure;
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            Figure figure = getChild(index);
+            spatialIndex.remove(figure);
+            super.basicRemoveChild(index);
+            return figure;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void draw(Graphics2D g) {
-        Rectangle2D clipBounds = g.getClipBounds();
-        if (clipBounds != null) {
-            Collection<Figure> c = quadTree.findIntersects(clipBounds);
-            Collection<Figure> toDraw = sort(c);
-            draw(g, toDraw);
-        } else {
-            draw(g, children);
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            Rectangle2D clipBounds = g.getClipBounds();
+            if (clipBounds != null) {
+                draw(g, spatialIndex.findIntersects(clipBounds));
+            } else {
+                draw(g, children);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -70,20 +137,45 @@ public class QuadTreeDrawing extends AbstractDrawing {
      */
     @Override
     public java.util.List<Figure> sort(Collection<? extends Figure> c) {
-        ensureSorted();
-        ArrayList<Figure> sorted = new ArrayList<>(c.size());
-        for (Figure f : children) {
-            if (c.contains(f)) {
-                sorted.add(f);
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            ArrayList<Figure> sorted = new ArrayList<>(c.size());
+            for (Figure f : c) {
+                if (spatialIndex.contains(f)) {
+                    sorted.add(f);
+                }
             }
+            Collections.sort(sorted, new Comparator<Figure>() {
+                @Override
+                public int compare(Figure f1, Figure f2) {
+                    return Long.compare(spatialIndex.getOrder(f1), spatialIndex.getOrder(f2));
+                }
+            });
+            // Remove duplicates, they are adjacent because they have the same key
+            for (int i = sorted.size() - 1; i > 0; i--) {
+                if (sorted.get(i) == sorted.get(i - 1)) {
+                    sorted.remove(i);
+                }
+            }
+            return sorted;
+        } finally {
+            lock.unlock();
         }
-        return sorted;
     }
 
     public void draw(Graphics2D g, Collection<Figure> c) {
         double factor = AttributeKeys.getScaleFactorFromGraphics(g);
+        LevelOfDetailPolicy lod = LevelOfDetailPolicy.get(g);
+        LevelOfDetailPolicy.Batch batch = (lod == null) ? null : lod.createBatch(g);
         for (Figure f : c) {
             if (f.isVisible()) {
+                if (batch != null) {
+                    if (batch.add(f)) {
+                        continue;
+                    }
+                    batch.flush();
+                }
                 f.draw(g);
                 if (isDebugMode()) {
                     Graphics2D g2 = (Graphics2D) g.create();
@@ -98,10 +190,19 @@ public class QuadTreeDrawing extends AbstractDrawing {
                 }
             }
         }
+        if (batch != null) {
+            batch.flush();
+        }
     }
 
     public java.util.List<Figure> getChildren(Rectangle2D.Double bounds) {
-        return new LinkedList<>(quadTree.findInside(bounds));
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            return new LinkedList<>(spatialIndex.findInside(bounds));
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -111,13 +212,26 @@ public class QuadTreeDrawing extends AbstractDrawing {
 
     @Override
     public Figure findFigureInside(Point2D.Double p) {
-        Collection<Figure> c = quadTree.findContains(p);
-        for (Figure f : getFiguresFrontToBack()) {
-            if (c.contains(f) && f.contains(p)) {
-                return f.findFigureInside(p);
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            for (Figure f : findCandidatesFrontToBack(p)) {
+                if (f.contains(p)) {
+                    return f.findFigureInside(p);
+                }
             }
+            return null;
+        } finally {
+            lock.unlock();
         }
-        return null;
+    }
+
+    /**
+     * Returns the children whose drawing area contains the specified point
+     * in Z-order front to back.
+     */
+    private java.util.List<Figure> findCandidatesFrontToBack(Point2D.Double p) {
+        return new ReversedList<>(spatialIndex.findContains(p));
     }
 
     /**
@@ -126,158 +240,283 @@ public class QuadTreeDrawing extends AbstractDrawing {
      */
     @Override
     public java.util.List<Figure> getFiguresFrontToBack() {
-        ensureSorted();
         return new ReversedList<>(children);
     }
 
     @Override
     public Figure findFigure(Point2D.Double p) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1:
-                Figure f = c.iterator().next();
-                return (f.contains(p)) ? f : null;
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (c.contains(f2) && f2.contains(p)) {
-                        return f2;
-                    }
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            for (Figure f : findCandidatesFrontToBack(p)) {
+                if (f.contains(p)) {
+                    return f;
                 }
-                return null;
+            }
+            return null;
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public Figure findFigureExcept(Point2D.Double p, Figure ignore) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1: 
-                Figure f = c.iterator().next();
-                return (f == ignore || !f.contains(p)) ? null : f;
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (f2 != ignore && f2.contains(p)) {
-                        return f2;
-                    }
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            for (Figure f : findCandidatesFrontToBack(p)) {
+                if (f != ignore && f.contains(p)) {
+                    return f;
                 }
-                return null;
+            }
+            return null;
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public Figure findFigureExcept(Point2D.Double p, Collection<? extends Figure> ignore) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1:
-                Figure f = c.iterator().next();
-                return (!ignore.contains(f) || !f.contains(p)) ? null : f;
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (!ignore.contains(f2) && f2.contains(p)) {
-                        return f2;
-                    }
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            for (Figure f : findCandidatesFrontToBack(p)) {
+                if (!ignore.contains(f) && f.contains(p)) {
+                    return f;
                 }
-                return null;
+            }
+            return null;
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public Figure findFigureBehind(Point2D.Double p, Figure figure) {
-        boolean isBehind = false;
-        for (Figure f : getFiguresFrontToBack()) {
-            if (isBehind) {
-                if (f.isVisible() && f.contains(p)) {
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            if (!spatialIndex.contains(figure)) {
+                return null;
+            }
+            java.util.List<Figure> candidates = findCandidatesFrontToBack(p);
+            long order = spatialIndex.getOrder(figure);
+            for (Figure f : candidates) {
+                if (spatialIndex.getOrder(f) < order && f.isVisible() && f.contains(p)) {
                     return f;
                 }
-            } else {
-                isBehind = figure == f;
             }
+            return null;
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
     @Override
     public Figure findFigureBehind(Point2D.Double p, Collection<? extends Figure> children) {
-        int inFrontOf = children.size();
-        for (Figure f : getFiguresFrontToBack()) {
-            if (inFrontOf == 0) {
-                if (f.isVisible() && f.contains(p)) {
-                    return f;
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            java.util.List<Figure> candidates = findCandidatesFrontToBack(p);
+            long order = Long.MAX_VALUE;
+            for (Figure f : children) {
+                if (!spatialIndex.contains(f)) {
+                    return null;
                 }
-            } else {
-                if (children.contains(f)) {
-                    inFrontOf--;
+                order = Math.min(order, spatialIndex.getOrder(f));
+            }
+            for (Figure f : candidates) {
+                if (spatialIndex.getOrder(f) < order && f.isVisible() && f.contains(p)) {
+                    return f;
                 }
             }
+            return null;
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
     @Override
     public java.util.List<Figure> findFigures(Rectangle2D.Double r) {
-        LinkedList<Figure> c = new LinkedList<>(quadTree.findIntersects(r));
-        switch (c.size()) {
-            case 0:
-            // fall through
-            case 1:
-                return c;
-            default:
-                return sort(c);
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            return spatialIndex.findIntersects(r);
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Returns the visible children which lie inside the specified bounds, in
+     * z-order back to front.
+     * <p>
+     * The drawing area of a child, which is stored in the spatial index,
+     * encloses its transformed bounds. Thus only the children whose drawing
+     * area intersects or touches the bounds need to be tested. This includes
+     * children with an empty drawing area, so that the result is the same
+     * as the one of {@link DefaultDrawing#findFiguresWithin}.
+     */
     @Override
     public java.util.List<Figure> findFiguresWithin(Rectangle2D.Double bounds) {
-        LinkedList<Figure> contained = new LinkedList<>();
-        for (Figure f : children) {
-            Rectangle2D.Double r = f.getBounds();
-            if (f.get(TRANSFORM) != null) {
-                Rectangle2D rt = f.get(TRANSFORM).createTransformedShape(r).getBounds2D();
-                r = (rt instanceof Rectangle2D.Double) ? (Rectangle2D.Double) rt : new Rectangle2D.Double(rt.getX(), rt.getY(), rt.getWidth(), rt.getHeight());
-            }
-            if (f.isVisible() && Geom.contains(bounds, r)) {
-                contained.add(f);
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            // Geom.contains treats a negative size as zero
+            Rectangle2D.Double query = new Rectangle2D.Double(
+                    bounds.x, bounds.y, Math.max(0, bounds.width), Math.max(0, bounds.height));
+            java.util.List<Figure> candidates = spatialIndex.findTouches(query);
+            ArrayList<Figure> contained = new ArrayList<>(candidates.size());
+            for (Figure f : candidates) {
+                if (isWithin(f, bounds)) {
+                    contained.add(f);
+                }
             }
+            return contained;
+        } finally {
+            lock.unlock();
         }
-        return contained;
     }
 
     @Override
     public void bringToFront(Figure figure) {
-        if (children.remove(figure)) {
-            children.add(figure);
-            needsSorting = true;
-            fireAreaInvalidated(figure.getDrawingArea());
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            int index = indexOf(figure);
+            if (index == -1) {
+                return;
+            }
+            children.remove(index);
+            moveChild(figure, children.size());
+        } finally {
+            lock.unlock();
         }
+        fireAreaInvalidated(figure.getDrawingArea());
     }
 
     @Override
     public void sendToBack(Figure figure) {
-        if (children.remove(figure)) {
-            children.add(0, figure);
-            needsSorting = true;
-            fireAreaInvalidated(figure.getDrawingArea());
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            int index = indexOf(figure);
+            if (index == -1) {
+                return;
+            }
+            children.remove(index);
+            moveChild(figure, 0);
+        } finally {
+            lock.unlock();
         }
+        fireAreaInvalidated(figure.getDrawingArea());
+    }
+
+    /**
+     * Inserts a child which has been taken out of the children list again, as
+     * close as possible to the specified index, and updates its z-order key.
+     */
+    private void moveChild(Figure figure, int index) {
+        index = getLayerIndex(index, figure);
+        children.add(index, figure);
+        updateOrder(index);
     }
 
     @Override
     public boolean contains(Figure f) {
-        return children.contains(f);
+        Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            return spatialIndex.contains(f);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the spatial index for all children which have changed during a
+     * batch of changes in one step.
+     */
+    @Override
+    protected void updateCommitted(Set<Figure> changedFigures) {
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            HashMap<Figure, Rectangle2D.Double> updates = new HashMap<>();
+            for (Figure f : changedFigures) {
+                if (spatialIndex.contains(f)) {
+                    updates.put(f, f.getDrawingArea());
+                }
+            }
+            spatialIndex.updateAll(updates);
+            for (Figure f : updates.keySet()) {
+                checkLayer(f);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Ensures that the children are sorted in z-order sequence.
+     * Assigns equidistant z-order keys to all children.
      */
-    private void ensureSorted() {
-        if (needsSorting) {
-            Collections.sort(children, FigureLayerComparator.INSTANCE);
-            needsSorting = false;
+    private void renumberOrders() {
+        long order = 0;
+        for (Figure f : children) {
+            spatialIndex.setOrder(f, order);
+            order += ORDER_GAP;
+        }
+    }
+
+    /**
+     * Assigns a z-order key to the child at the specified index, which lies
+     * between the keys of its neighbours.
+     */
+    private void updateOrder(int index) {
+        Figure prev = (index > 0) ? children.get(index - 1) : null;
+        Figure next = (index < children.size() - 1) ? children.get(index + 1) : null;
+        long order;
+        if (prev == null && next == null) {
+            order = 0;
+        } else if (next == null) {
+            long prevOrder = spatialIndex.getOrder(prev);
+            if (prevOrder > Long.MAX_VALUE - ORDER_GAP) {
+                renumberOrders();
+                return;
+            }
+            order = prevOrder + ORDER_GAP;
+        } else if (prev == null) {
+            long nextOrder = spatialIndex.getOrder(next);
+            if (nextOrder < Long.MIN_VALUE + ORDER_GAP) {
+                renumberOrders();
+                return;
+            }
+            order = nextOrder - ORDER_GAP;
+        } else {
+            long prevOrder = spatialIndex.getOrder(prev);
+            long nextOrder = spatialIndex.getOrder(next);
+            if (nextOrder - prevOrder < 2) {
+                renumberOrders();
+                return;
+            }
+            order = prevOrder + (nextOrder - prevOrder) / 2;
+        }
+        spatialIndex.setOrder(children.get(index), order);
+    }
+
+    /**
+     * Checks if the layer of a child has changed, and moves the child to
+     * its new layer if necessary.
+     */
+    private void checkLayer(Figure f) {
+        int index = indexOf(f);
+        if (index != -1) {
+            int layer = f.getLayer();
+            if ((index > 0 && children.get(index - 1).getLayer() > layer)
+                    || (index < children.size() - 1 && children.get(index + 1).getLayer() < layer)) {
+                children.remove(index);
+                moveChild(f, index);
+            }
         }
     }
 
@@ -286,13 +525,52 @@ public class QuadTreeDrawing extends AbstractDrawing {
         // empty
     }
 
+    /**
+     * Updates the spatial index for the children which have changed while
+     * the current thread held the read lock.
+     */
+    @Override
+    protected void readLockReleased() {
+        applyDeferredChanges();
+    }
+
+    /**
+     * Updates the entries of the deferred children in the spatial index.
+     * The current thread must not hold the read lock.
+     */
+    private void applyDeferredChanges() {
+        LinkedHashSet<Figure> figures;
+        synchronized (this) {
+            if (deferredFigures == null) {
+                return;
+            }
+            figures = deferredFigures;
+            deferredFigures = null;
+        }
+        Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            for (Figure f : figures) {
+                if (spatialIndex.contains(f)) {
+                    spatialIndex.update(f, f.getDrawingArea());
+                    checkLayer(f);
+                }
+            }
+            invalidate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public QuadTreeDrawing clone() {
         QuadTreeDrawing that = (QuadTreeDrawing) super.clone();
-        that.quadTree = new QuadTree<>();
-        for (Figure f : getChildren()) {
-            quadTree.add(f, f.getDrawingArea());
+        that.deferredFigures = null;
+        that.spatialIndex = new RTree<>();
+        for (Figure f : that.getChildren()) {
+            that.spatialIndex.add(f, f.getDrawingArea());
         }
+        that.renumberOrders();
         return that;
     }
 
@@ -304,17 +582,31 @@ public class QuadTreeDrawing extends AbstractDrawing {
     /**
      * Handles all figure events fired by Figures contained in the Drawing.
      */
-    protected class QuadTreeEventHandler extends AbstractCompositeFigure.EventHandler {
+    protected class QuadTreeEventHandler extends DrawingEventHandler {
 
         private static final long serialVersionUID = 1L;
 
+        /**
+         * Records the changed child, instead of updating the spatial index
+         * right away. The read lock of the current thread can not be
+         * upgraded to the write lock, which the update needs. Thus, if the
+         * current thread is reading the drawing, the update is applied when
+         * it has released the read lock.
+         */
         @Override
         public void figureChanged(FigureEvent e) {
-            if (!isChanging()) {
-                quadTree.remove(e.getFigure());
-                quadTree.add(e.getFigure(), e.getFigure().getDrawingArea());
-                needsSorting = true;
-                invalidate();
+            if (isUpdating()) {
+                super.figureChanged(e);
+            } else if (!isChanging()) {
+                synchronized (QuadTreeDrawing.this) {
+                    if (deferredFigures == null) {
+                        deferredFigures = new LinkedHashSet<>();
+                    }
+                    deferredFigures.add(e.getFigure());
+                }
+                if (!isReadLockedByCurrentThread()) {
+                    applyDeferredChanges();
+                }
                 fireAreaInvalidated(e);
             }
         }
@@ -0,0 +1,481 @@
+/*
+ * @(#)TiledDrawingRenderer.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * Renders a drawing into a cache of fixed-size image tiles.
+ * <p>
+ * The tiles are laid out in scaled drawing coordinates, that is in drawing
+ * coordinates multiplied by the scale factor of the view. Thus, scrolling the
+ * view does not invalidate any tiles. Each tile is keyed by the scale factor
+ * and by its tile coordinates, and the least recently used tiles are
+ * discarded when the cache is full.
+ * <p>
+ * Invalidating an area of the drawing only marks the tiles as dirty which
+ * intersect with the area. Painting never waits for tiles to be rendered:
+ * {@link #paint} blits the tiles which have an image, and hands the dirty
+ * visible tiles to a pool of worker threads. A dirty tile shows its previous
+ * image until it has been rendered again. When a tile has been rendered, the
+ * {@link Listener} is notified, so that the view can repaint the tile.
+ * <p>
+ * A worker holds the read lock of the drawing while it renders a tile. A
+ * figure acquires the write lock of its drawing from {@code willChange} until
+ * {@code changed}, and the drawing acquires it when figures are added or
+ * removed. Thus, a worker never draws a figure in the middle of a change.
+ * Figures must only be changed between {@code willChange} and
+ * {@code changed}, as the tools and handles do.
+ * <p>
+ * A worker also holds the monitor of each figure while it draws the figure.
+ * Thus, a figure is never drawn by two workers at the same time, and figures
+ * do not need to make their caches thread safe. A figure which is drawn by a
+ * worker must not share mutable state with other figures, unless the state is
+ * guarded.
+ * <p>
+ * The cache of tiles is guarded by the monitor of the renderer.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class TiledDrawingRenderer {
+
+    /**
+     * Is notified when a tile has been rendered.
+     */
+    public interface Listener {
+
+        /**
+         * Is invoked on a worker thread, when a tile has been rendered.
+         *
+         * @param scale the scale factor of the tile.
+         * @param bounds the bounds of the tile in scaled drawing
+         * coordinates.
+         */
+        void tileRendered(double scale, Rectangle bounds);
+    }
+
+    /**
+     * The width and height of a tile in pixels.
+     */
+    private final int tileSize;
+    /**
+     * The number of worker threads.
+     */
+    private final int threadCount;
+    private final LinkedHashMap<TileKey, Tile> tiles;
+    private ExecutorService executor;
+    private Listener listener;
+
+    /**
+     * The key of a tile.
+     */
+    private static class TileKey {
+
+        private final double scale;
+        private final int x;
+        private final int y;
+
+        public TileKey(double scale, int x, int y) {
+            this.scale = scale;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey that = (TileKey) o;
+            return that.x == x && that.y == y
+                    && Double.doubleToLongBits(that.scale) == Double.doubleToLongBits(scale);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(scale);
+            return ((int) (bits ^ (bits >>> 32)) * 31 + x) * 31 + y;
+        }
+    }
+
+    /**
+     * A cached tile. All fields are guarded by the monitor of the renderer.
+     */
+    private static class Tile {
+
+        private final TileKey key;
+        /**
+         * The last rendered image, or null.
+         */
+        private BufferedImage image;
+        private boolean dirty = true;
+        /**
+         * Is true, while the tile is queued or rendered by a worker.
+         */
+        private boolean rendering;
+        /**
+         * Is incremented when the tile is invalidated. A worker only clears
+         * the dirty flag, if the tile has not been invalidated while it was
+         * rendered.
+         */
+        private int version;
+        private boolean evicted;
+
+        public Tile(TileKey key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Creates a new instance with tiles of 256 by 256 pixels, and with one
+     * worker thread per available processor.
+     */
+    public TiledDrawingRenderer() {
+        this(256, Runtime.getRuntime().availableProcessors(), 256);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param tileSize the width and height of a tile in pixels.
+     * @param threadCount the number of worker threads.
+     * @param maxCachedTiles the maximal number of tiles in the cache. This
+     * should be larger than the number of tiles which are visible at the same
+     * time.
+     */
+    public TiledDrawingRenderer(int tileSize, int threadCount, final int maxCachedTiles) {
+        if (tileSize < 1 || threadCount < 1 || maxCachedTiles < 1) {
+            throw new IllegalArgumentException("tileSize, threadCount and maxCachedTiles must be positive");
+        }
+        this.tileSize = tileSize;
+        this.threadCount = threadCount;
+        this.tiles = new LinkedHashMap<TileKey, Tile>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> eldest) {
+                if (size() > maxCachedTiles) {
+                    Tile tile = eldest.getValue();
+                    tile.evicted = true;
+                    if (tile.image != null) {
+                        tile.image.flush();
+                        tile.image = null;
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the listener which is notified when a tile has been rendered.
+     */
+    public synchronized void setListener(Listener newValue) {
+        listener = newValue;
+    }
+
+    /**
+     * Returns the range of tiles which cover the specified area of the view.
+     *
+     * @param visibleRect an area in view coordinates.
+     * @param translation the translation of the view in pixels. A point in
+     * view coordinates plus the translation yields the point in scaled
+     * drawing coordinates.
+     * @return the tile coordinates of the first tile in x and y, and the
+     * number of tiles in width and height.
+     */
+    public Rectangle getTileRange(Rectangle visibleRect, Point translation) {
+        int x0 = Math.floorDiv(visibleRect.x + translation.x, tileSize);
+        int y0 = Math.floorDiv(visibleRect.y + translation.y, tileSize);
+        int x1 = Math.floorDiv(visibleRect.x + visibleRect.width - 1 + translation.x, tileSize);
+        int y1 = Math.floorDiv(visibleRect.y + visibleRect.height - 1 + translation.y, tileSize);
+        return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    /**
+     * Returns the bounds of the specified tile in scaled drawing coordinates.
+     * Subtract the translation of the view, to get view coordinates.
+     */
+    public Rectangle getTileBounds(int x, int y) {
+        return new Rectangle(x * tileSize, y * tileSize, tileSize, tileSize);
+    }
+
+    /**
+     * Returns true, if the specified tile is in the cache.
+     */
+    public synchronized boolean isCached(double scale, int x, int y) {
+        return tiles.containsKey(new TileKey(scale, x, y));
+    }
+
+    /**
+     * Returns true, if the specified tile is not in the cache, or if it needs
+     * to be rendered again.
+     */
+    public synchronized boolean isDirty(double scale, int x, int y) {
+        Tile tile = tiles.get(new TileKey(scale, x, y));
+        return tile == null || tile.dirty;
+    }
+
+    /**
+     * Returns the number of tiles in the cache.
+     */
+    public synchronized int getCachedTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Marks all tiles as dirty which intersect with the specified area.
+     *
+     * @param r an area in drawing coordinates.
+     */
+    public synchronized void invalidate(Rectangle2D.Double r) {
+        for (Tile tile : tiles.values()) {
+            double scale = tile.key.scale;
+            // Grow the area by 2 pixels to cover antialiasing
+            double x0 = Math.floor(r.x * scale) - 2;
+            double y0 = Math.floor(r.y * scale) - 2;
+            double x1 = Math.ceil((r.x + r.width) * scale) + 2;
+            double y1 = Math.ceil((r.y + r.height) * scale) + 2;
+            double tx = (double) tile.key.x * tileSize;
+            double ty = (double) tile.key.y * tileSize;
+            if (x0 < tx + tileSize && x1 > tx && y0 < ty + tileSize && y1 > ty) {
+                tile.dirty = true;
+                tile.version++;
+            }
+        }
+    }
+
+    /**
+     * Marks all tiles as dirty.
+     */
+    public synchronized void invalidateAll() {
+        for (Tile tile : tiles.values()) {
+            tile.dirty = true;
+            tile.version++;
+        }
+    }
+
+    /**
+     * Paints the drawing onto the specified graphics, using cached tiles.
+     * Dirty tiles are rendered on the worker threads; this method does not
+     * wait for them.
+     *
+     * @param g the graphics of the view.
+     * @param drawing the drawing.
+     * @param scale the scale factor of the view.
+     * @param translation the translation of the view in pixels.
+     * @param visibleRect the area of the view which needs to be painted.
+     * @param gc the graphics configuration for creating tile images.
+     */
+    public void paint(Graphics2D g, Drawing drawing, double scale, Point translation,
+            Rectangle visibleRect, GraphicsConfiguration gc) {
+        Rectangle range = getTileRange(visibleRect, translation);
+        ArrayList<BufferedImage> images = new ArrayList<>(range.width * range.height);
+        ArrayList<Point> locations = new ArrayList<>(range.width * range.height);
+        Map<?, ?> hints = g.getRenderingHints();
+        synchronized (this) {
+            for (int y = range.y; y < range.y + range.height; y++) {
+                for (int x = range.x; x < range.x + range.width; x++) {
+                    TileKey key = new TileKey(scale, x, y);
+                    Tile tile = tiles.get(key);
+                    if (tile == null) {
+                        tile = new Tile(key);
+                        tiles.put(key, tile);
+                    }
+                    if (tile.dirty && !tile.rendering) {
+                        schedule(drawing, tile, hints, gc);
+                    }
+                    if (tile.image != null) {
+                        images.add(tile.image);
+                        locations.add(new Point(x * tileSize - translation.x, y * tileSize - translation.y));
+                    }
+                }
+            }
+        }
+        for (int i = 0, n = images.size(); i < n; i++) {
+            Point p = locations.get(i);
+            g.drawImage(images.get(i), p.x, p.y, null);
+        }
+    }
+
+    /**
+     * Hands a tile to the worker threads. Must be called while holding the
+     * monitor of the renderer.
+     */
+    private void schedule(final Drawing drawing, final Tile tile, final Map<?, ?> hints, final GraphicsConfiguration gc) {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "TiledDrawingRenderer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        final int version = tile.version;
+        tile.rendering = true;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    renderTile(drawing, tile, version, hints, gc);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            tile.rendering = false;
+        }
+    }
+
+    /**
+     * Renders a tile on a worker thread into a new image, and replaces the
+     * image of the tile.
+     */
+    private void renderTile(Drawing drawing, Tile tile, int version, Map<?, ?> hints, GraphicsConfiguration gc) {
+        BufferedImage image = null;
+        boolean isDone = false;
+        try {
+            image = (gc == null)
+                    ? new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB_PRE)
+                    : gc.createCompatibleImage(tileSize, tileSize, Transparency.TRANSLUCENT);
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setRenderingHints(hints);
+                g.setComposite(AlphaComposite.SrcOver);
+                g.clipRect(0, 0, tileSize, tileSize);
+                g.translate(-tile.key.x * tileSize, -tile.key.y * tileSize);
+                g.scale(tile.key.scale, tile.key.scale);
+                double scale = tile.key.scale;
+                // Grow the area by 2 pixels to cover antialiasing
+                Rectangle2D.Double area = new Rectangle2D.Double(
+                        (tile.key.x * tileSize - 2) / scale, (tile.key.y * tileSize - 2) / scale,
+                        (tileSize + 4) / scale, (tileSize + 4) / scale);
+                drawFigures(g, drawing, area, scale);
+            } finally {
+                g.dispose();
+            }
+            isDone = true;
+        } finally {
+            if (!isDone && image != null) {
+                image.flush();
+                image = null;
+            }
+            tileRendered(tile, version, image);
+        }
+    }
+
+    /**
+     * Replaces the image of a tile, and notifies the listener.
+     *
+     * @param image the new image, or null if rendering has failed.
+     */
+    private void tileRendered(Tile tile, int version, BufferedImage image) {
+        Listener l;
+        synchronized (this) {
+            tile.rendering = false;
+            if (image == null) {
+                return;
+            }
+            if (tile.evicted) {
+                image.flush();
+                return;
+            }
+            if (tile.image != null) {
+                tile.image.flush();
+            }
+            tile.image = image;
+            if (tile.version == version) {
+                tile.dirty = false;
+            }
+            l = listener;
+        }
+        if (l != null) {
+            l.tileRendered(tile.key.scale, getTileBounds(tile.key.x, tile.key.y));
+        }
+    }
+
+    /**
+     * Draws the figures of the drawing which intersect with the specified
+     * area, while holding the read lock of the drawing, and the monitor of
+     * each figure. The read lock keeps out figure changes, because figures
+     * acquire the write lock in {@code willChange}.
+     *
+     * @param area an area in drawing coordinates.
+     * @param scale the scale factor.
+     */
+    private void drawFigures(Graphics2D g, Drawing drawing, Rectangle2D.Double area, double scale) {
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            List<Figure> candidates = drawing.findFigures(area);
+            LevelOfDetailPolicy lod = LevelOfDetailPolicy.get(g);
+            LevelOfDetailPolicy.Batch batch = (lod == null) ? null : lod.createBatch(g);
+            for (Figure f : candidates) {
+                synchronized (f) {
+                    if (!f.isVisible() || !f.getDrawingArea(scale).intersects(area)) {
+                        continue;
+                    }
+                    if (batch != null) {
+                        if (batch.add(f)) {
+                            continue;
+                        }
+                        batch.flush();
+                    }
+                    f.draw(g);
+                }
+            }
+            if (batch != null) {
+                batch.flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards all tiles and stops the worker threads. Tiles which are being
+     * rendered are discarded when they are done.
+     */
+    public synchronized void dispose() {
+        for (Tile tile : tiles.values()) {
+            tile.evicted = true;
+            if (tile.image != null) {
+                tile.image.flush();
+                tile.image = null;
+            }
+        }
+        tiles.clear();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+}
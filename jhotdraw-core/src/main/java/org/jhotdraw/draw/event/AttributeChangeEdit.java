@@ -10,6 +10,8 @@ package org.jhotdraw.draw.event;
 import org.jhotdraw.draw.figure.Figure;
 import javax.swing.undo.*;
 import org.jhotdraw.draw.*;
+import org.jhotdraw.undo.MergeableEdit;
+import org.jhotdraw.undo.SizedEdit;
 
 /**
  * An {@code UndoableEdit} event which can undo a change of a {@link Figure}
@@ -18,7 +20,7 @@ import org.jhotdraw.draw.*;
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class AttributeChangeEdit<T> extends AbstractUndoableEdit {
+public class AttributeChangeEdit<T> extends AbstractUndoableEdit implements SizedEdit, MergeableEdit {
 
     private static final long serialVersionUID = 1L;
     private Figure owner;
@@ -42,6 +44,30 @@ public class AttributeChangeEdit<T> extends AbstractUndoableEdit {
         return "Eigenschaft \u00e4ndern";
     }
 
+    /**
+     * Merges a change of the same attribute of the same figure, by keeping
+     * the new value of the later edit.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean merge(UndoableEdit nextEdit) {
+        if (nextEdit instanceof AttributeChangeEdit) {
+            AttributeChangeEdit<?> that = (AttributeChangeEdit<?>) nextEdit;
+            if (that.owner == this.owner && that.name == this.name) {
+                this.newValue = (T) that.newValue;
+                that.die();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return EditSizeEstimator.EDIT_SIZE + EditSizeEstimator.estimate(oldValue)
+                + EditSizeEstimator.estimate(newValue);
+    }
+
     @Override
     public void redo() throws CannotRedoException {
         super.redo();
@@ -13,6 +13,8 @@ import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoableEdit;
 import org.jhotdraw.draw.figure.BezierFigure;
 import org.jhotdraw.geom.BezierPath;
+import org.jhotdraw.undo.MergeableEdit;
+import org.jhotdraw.undo.SizedEdit;
 import org.jhotdraw.util.ResourceBundleUtil;
 
 /**
@@ -22,7 +24,7 @@ import org.jhotdraw.util.ResourceBundleUtil;
  * @version $Id: BezierNodeEdit.java -1 $
  * @author Werner Randelshofer
  */
-public class BezierNodeEdit extends AbstractUndoableEdit {
+public class BezierNodeEdit extends AbstractUndoableEdit implements SizedEdit, MergeableEdit {
 
     private static final long serialVersionUID = 1L;
     private BezierFigure owner;
@@ -79,4 +81,15 @@ public class BezierNodeEdit extends AbstractUndoableEdit {
         }
         return false;
     }
+
+    @Override
+    public boolean merge(UndoableEdit nextEdit) {
+        return addEdit(nextEdit);
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return EditSizeEstimator.EDIT_SIZE + EditSizeEstimator.estimate(oldValue)
+                + EditSizeEstimator.estimate(newValue);
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * @(#)EditSizeEstimator.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.event;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+import java.util.Map;
+import org.jhotdraw.draw.AttributeArray;
+import org.jhotdraw.geom.BezierPath;
+
+/**
+ * Estimates the number of bytes retained by the data of an undoable edit,
+ * such as the transform restore data and the attribute values of a figure.
+ * <p>
+ * The estimates are rough, they assume a 64-bit virtual machine with
+ * compressed references. Objects of unknown classes are counted with a fixed
+ * size.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+final class EditSizeEstimator {
+
+    /**
+     * The estimated size of an edit object without its data.
+     */
+    static final long EDIT_SIZE = 48;
+    private static final long UNKNOWN_OBJECT_SIZE = 32;
+    private static final long NODE_SIZE = 24 + 2 * (16 + 3 * 8);
+
+    /**
+     * Prevent instance creation.
+     */
+    private EditSizeEstimator() {
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by the specified object.
+     */
+    static long estimate(Object o) {
+        if (o == null || o instanceof Enum || o instanceof Boolean) {
+            return 0;
+        } else if (o instanceof Number) {
+            return 16;
+        } else if (o instanceof String) {
+            return 40 + 2 * ((String) o).length();
+        } else if (o instanceof BezierPath) {
+            return 48 + ((BezierPath) o).size() * (NODE_SIZE + 8);
+        } else if (o instanceof BezierPath.Node) {
+            return NODE_SIZE;
+        } else if (o instanceof Point2D) {
+            return 32;
+        } else if (o instanceof Rectangle2D) {
+            return 48;
+        } else if (o instanceof AffineTransform) {
+            return 72;
+        } else if (o instanceof AttributeArray) {
+            AttributeArray a = (AttributeArray) o;
+            long size = 32 + 8L * a.size();
+            for (int i = 0, n = a.size(); i < n; i++) {
+                size += estimate(a.getValue(i));
+            }
+            return size;
+        } else if (o instanceof Collection) {
+            long size = 40;
+            for (Object e : (Collection<?>) o) {
+                size += 24 + estimate(e);
+            }
+            return size;
+        } else if (o instanceof Map) {
+            long size = 48;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet()) {
+                size += 40 + estimate(e.getValue());
+            }
+            return size;
+        } else if (o instanceof Object[]) {
+            Object[] a = (Object[]) o;
+            long size = 16 + 4L * a.length;
+            for (Object e : a) {
+                size += estimate(e);
+            }
+            return size;
+        } else if (o instanceof double[]) {
+            return 16 + 8L * ((double[]) o).length;
+        } else {
+            return UNKNOWN_OBJECT_SIZE;
+        }
+    }
+}
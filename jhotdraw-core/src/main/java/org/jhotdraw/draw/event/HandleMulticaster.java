@@ -84,8 +84,14 @@ public class HandleMulticaster {
     }
 
     public void trackStep(Point anchor, Point lead, int modifiersEx, DrawingView view) {
-        for (Handle h : handles) {
-            h.trackStep(anchor, lead, modifiersEx);
+        Drawing drawing = view.getDrawing();
+        drawing.beginUpdate();
+        try {
+            for (Handle h : handles) {
+                h.trackStep(anchor, lead, modifiersEx);
+            }
+        } finally {
+            drawing.commitUpdate();
         }
     }
 }
@@ -11,6 +11,8 @@ import org.jhotdraw.draw.figure.AbstractFigure;
 import java.awt.geom.*;
 import javax.swing.undo.*;
 import org.jhotdraw.draw.*;
+import org.jhotdraw.undo.MergeableEdit;
+import org.jhotdraw.undo.SizedEdit;
 
 /**
  * SetBoundsEdit.
@@ -18,7 +20,7 @@ import org.jhotdraw.draw.*;
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class SetBoundsEdit extends AbstractUndoableEdit {
+public class SetBoundsEdit extends AbstractUndoableEdit implements SizedEdit, MergeableEdit {
 
     private static final long serialVersionUID = 1L;
     private AbstractFigure owner;
@@ -70,6 +72,18 @@ public class SetBoundsEdit extends AbstractUndoableEdit {
         return false;
     }
 
+    @Override
+    public boolean merge(UndoableEdit nextEdit) {
+        return addEdit(nextEdit);
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return EditSizeEstimator.EDIT_SIZE
+                + EditSizeEstimator.estimate(oldAnchor) + EditSizeEstimator.estimate(oldLead)
+                + EditSizeEstimator.estimate(newAnchor) + EditSizeEstimator.estimate(newLead);
+    }
+
     @Override
     public void redo() throws CannotRedoException {
         super.redo();
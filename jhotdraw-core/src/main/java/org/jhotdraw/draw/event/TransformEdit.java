@@ -12,6 +12,8 @@ import java.awt.geom.*;
 import java.util.*;
 import javax.swing.undo.*;
 import org.jhotdraw.draw.*;
+import org.jhotdraw.undo.MergeableEdit;
+import org.jhotdraw.undo.SizedEdit;
 import org.jhotdraw.util.*;
 
 /**
@@ -28,11 +30,16 @@ import org.jhotdraw.util.*;
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class TransformEdit extends AbstractUndoableEdit {
+public class TransformEdit extends AbstractUndoableEdit implements SizedEdit, MergeableEdit {
 
     private static final long serialVersionUID = 1L;
     private Collection<Figure> figures;
     private AffineTransform tx;
+    /**
+     * The drawing which contains the figures, or null if the figures are
+     * transformed one by one.
+     */
+    private Drawing drawing;
 
     /**
      * Creates a new instance.
@@ -48,6 +55,15 @@ public class TransformEdit extends AbstractUndoableEdit {
         this.tx = (AffineTransform) tx.clone();
     }
 
+    /**
+     * Creates a new instance which uses {@link Drawing#transformAll} on undo
+     * and redo.
+     */
+    public TransformEdit(Drawing drawing, Collection<Figure> figures, AffineTransform tx) {
+        this(figures, tx);
+        this.drawing = drawing;
+    }
+
     @Override
     public String getPresentationName() {
         ResourceBundleUtil labels = ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels");
@@ -80,28 +96,60 @@ public class TransformEdit extends AbstractUndoableEdit {
         return false;
     }
 
+    /**
+     * Merges a transform edit of the same figures, by concatenating the
+     * transforms.
+     */
+    @Override
+    public boolean merge(UndoableEdit nextEdit) {
+        if (nextEdit instanceof TransformEdit) {
+            TransformEdit that = (TransformEdit) nextEdit;
+            if (that.drawing == this.drawing && isSameFigures(that.figures)) {
+                this.tx.preConcatenate(that.tx);
+                that.die();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSameFigures(Collection<Figure> that) {
+        return that == figures
+                || that.size() == figures.size() && new HashSet<>(figures).equals(new HashSet<>(that));
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        // The figures are retained by the drawing, only count the references
+        return EditSizeEstimator.EDIT_SIZE + 40 + 24L * figures.size()
+                + EditSizeEstimator.estimate(tx);
+    }
+
     @Override
     public void redo() throws CannotRedoException {
         super.redo();
-        for (Figure f : figures) {
-            f.willChange();
-            f.transform(tx);
-            f.changed();
-        }
+        transformAll(tx);
     }
 
     @Override
     public void undo() throws CannotUndoException {
         super.undo();
         try {
-            AffineTransform inverse = tx.createInverse();
+            transformAll(tx.createInverse());
+        } catch (NoninvertibleTransformException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void transformAll(AffineTransform tx) {
+        if (drawing != null) {
+            drawing.transformAll(figures, tx);
+        } else {
             for (Figure f : figures) {
                 f.willChange();
-                f.transform(inverse);
+                f.transform(tx);
                 f.changed();
             }
-        } catch (NoninvertibleTransformException e) {
-            e.printStackTrace();
         }
     }
 
@@ -8,8 +8,12 @@
 package org.jhotdraw.draw.event;
 
 import org.jhotdraw.draw.figure.Figure;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import org.jhotdraw.draw.*;
 import javax.swing.undo.*;
+import org.jhotdraw.undo.MergeableEdit;
+import org.jhotdraw.undo.SizedEdit;
 import org.jhotdraw.util.*;
 
 /**
@@ -21,16 +25,35 @@ import org.jhotdraw.util.*;
  * <p>
  * The transform restore data may consume a lot of memory. Undos of lossless
  * transforms, such as translations of a figure, should use {@link TransformEdit}.
+ * <p>
+ * If the edit is created with the transform, which has been applied to the
+ * figure, it stores as little data as possible. If the transform is
+ * invertible, and the figure transforms its points directly, see
+ * {@link Figure#isTransformingPointsDirectly}, the edit only stores the
+ * transform, and undoes it with the inverse transform. Otherwise
+ * the edit stores the restore data from before the transform, and redoes the
+ * edit by restoring the figure and applying the transform again.
  *
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class TransformRestoreEdit extends AbstractUndoableEdit {
+public class TransformRestoreEdit extends AbstractUndoableEdit implements SizedEdit, MergeableEdit {
 
     private static final long serialVersionUID = 1L;
     private Figure owner;
     private Object oldTransformRestoreData;
     private Object newTransformRestoreData;
+    private long oldDataSize;
+    private long newDataSize;
+    /**
+     * The transform which has been applied to the figure, or null if the
+     * edit stores the restore data from before and after the transform.
+     */
+    private AffineTransform tx;
+    /**
+     * True if the edit is undone with the inverse of {@code tx}.
+     */
+    private boolean isInvertible;
 
     /**
      * Creates a new instance.
@@ -39,6 +62,25 @@ public class TransformRestoreEdit extends AbstractUndoableEdit {
         this.owner = owner;
         this.oldTransformRestoreData = oldTransformRestoreData;
         this.newTransformRestoreData = newTransformRestoreData;
+        this.oldDataSize = EditSizeEstimator.estimate(oldTransformRestoreData);
+        this.newDataSize = EditSizeEstimator.estimate(newTransformRestoreData);
+    }
+
+    /**
+     * Creates a new instance for a figure, which has been restored to the
+     * specified restore data, and then has been transformed with the
+     * specified transform.
+     */
+    public TransformRestoreEdit(Figure owner, Object oldTransformRestoreData, AffineTransform tx) {
+        this.owner = owner;
+        this.tx = (AffineTransform) tx.clone();
+        double det = tx.getDeterminant();
+        isInvertible = det != 0 && !Double.isNaN(det) && !Double.isInfinite(det)
+                && owner.isTransformingPointsDirectly();
+        if (!isInvertible) {
+            this.oldTransformRestoreData = oldTransformRestoreData;
+            this.oldDataSize = EditSizeEstimator.estimate(oldTransformRestoreData);
+        }
     }
 
     @Override
@@ -47,11 +89,53 @@ public class TransformRestoreEdit extends AbstractUndoableEdit {
         return labels.getString("edit.transform.text");
     }
 
+    /**
+     * Merges a transform restore edit of the same figure. Edits with restore
+     * data keep the restore data of the later edit. Edits with a transform
+     * concatenate the transforms, if the later transform is invertible.
+     */
+    @Override
+    public boolean merge(UndoableEdit nextEdit) {
+        if (nextEdit instanceof TransformRestoreEdit) {
+            TransformRestoreEdit that = (TransformRestoreEdit) nextEdit;
+            if (that.owner != this.owner) {
+                return false;
+            }
+            if (this.tx == null && that.tx == null) {
+                this.newTransformRestoreData = that.newTransformRestoreData;
+                this.newDataSize = that.newDataSize;
+                that.die();
+                return true;
+            }
+            if (this.tx != null && that.tx != null && that.isInvertible) {
+                this.tx.preConcatenate(that.tx);
+                that.die();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return EditSizeEstimator.EDIT_SIZE + oldDataSize + newDataSize
+                + EditSizeEstimator.estimate(tx);
+    }
+
     @Override
     public void undo() throws CannotUndoException {
         super.undo();
         owner.willChange();
-        owner.restoreTransformTo(oldTransformRestoreData);
+        if (isInvertible) {
+            try {
+                owner.transform(tx.createInverse());
+            } catch (NoninvertibleTransformException e) {
+                // We checked the determinant in the constructor
+                throw new CannotUndoException();
+            }
+        } else {
+            owner.restoreTransformTo(oldTransformRestoreData);
+        }
         owner.changed();
     }
 
@@ -59,7 +143,14 @@ public class TransformRestoreEdit extends AbstractUndoableEdit {
     public void redo() throws CannotRedoException {
         super.redo();
         owner.willChange();
-        owner.restoreTransformTo(newTransformRestoreData);
+        if (tx == null) {
+            owner.restoreTransformTo(newTransformRestoreData);
+        } else {
+            if (!isInvertible) {
+                owner.restoreTransformTo(oldTransformRestoreData);
+            }
+            owner.transform(tx);
+        }
         owner.changed();
     }
 }
@@ -11,8 +11,10 @@ import java.awt.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.util.*;
+import org.jhotdraw.draw.AttributeArray;
 import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.DerivedAttributeCache;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.geom.Dimension2DDouble;
 import org.jhotdraw.geom.Geom;
@@ -29,7 +31,16 @@ import org.jhotdraw.xml.DOMOutput;
 public abstract class AbstractAttributedCompositeFigure extends AbstractCompositeFigure {
 
     private static final long serialVersionUID = 1L;
-    private HashMap<AttributeKey<?>, Object> attributes = new HashMap<>();
+    /**
+     * Holds the attributes of the figure. The array may be shared with other
+     * figures. Use {@link #getMutableAttributes} before changing it.
+     */
+    private AttributeArray attributes = new AttributeArray();
+    /**
+     * Caches the stroke, paint and font objects which are derived from the
+     * attributes. This field is created lazily.
+     */
+    private transient DerivedAttributeCache derivedAttributes;
     /**
      * Forbidden attributes can't be put by the put() operation.
      * They can only be changed by put().
@@ -66,7 +77,57 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
 
     @Override
     public Map<AttributeKey<?>, Object> getAttributes() {
-        return (Map<AttributeKey<?>, Object>) new HashMap<>(attributes);
+        return attributes.toMap();
+    }
+
+    /**
+     * Returns the attributes of this figure in a form which can be changed.
+     * If the attributes are shared with other figures, they are copied first.
+     */
+    private AttributeArray getMutableAttributes() {
+        if (attributes.isShared()) {
+            attributes = attributes.clone();
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns the cache for objects which are derived from the attributes of
+     * this figure. The cache is cleared when an attribute changes, and when
+     * the figure is invalidated.
+     */
+    protected DerivedAttributeCache getDerivedAttributeCache() {
+        DerivedAttributeCache cache = derivedAttributes;
+        if (cache == null) {
+            cache = new DerivedAttributeCache();
+            derivedAttributes = cache;
+        }
+        return cache;
+    }
+
+    @Override
+    protected <T> void fireAttributeChanged(AttributeKey<T> attribute, T oldValue, T newValue) {
+        if (derivedAttributes != null) {
+            derivedAttributes.clear();
+        }
+        super.fireAttributeChanged(attribute, oldValue, newValue);
+    }
+
+    @Override
+    protected void invalidate() {
+        super.invalidate();
+        if (derivedAttributes != null) {
+            derivedAttributes.clear();
+        }
+    }
+
+    /**
+     * Replaces the attributes of this figure by an interned attribute array,
+     * which is shared with all other figures that have the same attributes.
+     * The attributes are copied again, when they are changed.
+     */
+    public void internAttributes() {
+        attributes = AttributeArray.intern(attributes);
     }
 
     /**
@@ -77,8 +138,16 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
     @Override
     public <T> void set(AttributeKey<T> key, T newValue) {
         if (forbiddenAttributes == null || !forbiddenAttributes.contains(key)) {
-            @SuppressWarnings("unchecked")
-            T oldValue = (T) attributes.put(key, newValue);
+            T oldValue;
+            if (attributes.isShared() && attributes.containsKey(key)
+                    && attributes.get(key) == newValue) {
+                // Keep sharing the attributes if the value does not change
+                oldValue = newValue;
+            } else {
+                @SuppressWarnings("unchecked")
+                T v = (T) getMutableAttributes().put(key, newValue);
+                oldValue = v;
+            }
             setAttributeOnChildren(key, newValue);
             fireAttributeChanged(key, oldValue, newValue);
         }
@@ -95,13 +164,13 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
      */
     @Override
     public <T> T get(AttributeKey<T> key) {
-        return key.get(attributes);
+        return attributes.get(key);
     }
 
     @Override
     public Object getAttributesRestoreData() {
         LinkedList<Object> list = new LinkedList<>();
-        list.add(new HashMap<>(getAttributes()));
+        list.add(attributes.share());
         for (Figure child : getChildren()) {
             list.add(child.getAttributesRestoreData());
         }
@@ -112,8 +181,11 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
     @SuppressWarnings("unchecked")
     public void restoreAttributesTo(Object restoreData) {
         Iterator<Object> i = ((LinkedList<Object>) restoreData).iterator();
-        attributes.clear();
-        setAttributes((Map<AttributeKey<?>, Object>) i.next());
+        AttributeArray restoreAttributes = (AttributeArray) i.next();
+        attributes = new AttributeArray();
+        for (int j = 0, n = restoreAttributes.size(); j < n; j++) {
+            set((AttributeKey<Object>) restoreAttributes.getKey(j), restoreAttributes.getValue(j));
+        }
         for (Figure child : getChildren()) {
             child.restoreAttributesTo(i.next());
         }
@@ -126,7 +198,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
             drawFill(g);
         }
         if (get(STROKE_COLOR) != null && get(STROKE_WIDTH) >= 0d) {
-            g.setStroke(AttributeKeys.getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
+            g.setStroke(getDerivedAttributeCache().getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
             g.setColor(get(STROKE_COLOR));
             drawStroke(g);
         }
@@ -151,7 +223,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
     }
 
     public Stroke getStroke() {
-        return AttributeKeys.getStroke(this, 1.0);
+        return getDerivedAttributeCache().getStroke(this, 1.0);
     }
 
     public double getStrokeMiterLimitFactor() {
@@ -198,7 +270,9 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
     @Override
     public AbstractAttributedCompositeFigure clone() {
         AbstractAttributedCompositeFigure that = (AbstractAttributedCompositeFigure) super.clone();
-        that.attributes = new HashMap<>(this.attributes);
+        // The attributes are copied when one of the figures changes them
+        that.attributes = this.attributes.share();
+        that.derivedAttributes = null;
         if (this.forbiddenAttributes != null) {
             that.forbiddenAttributes = new HashSet<>(this.forbiddenAttributes);
         }
@@ -208,8 +282,8 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
     protected void writeAttributes(DOMOutput out) throws IOException {
         Figure prototype = (Figure) out.getPrototype();
         boolean isElementOpen = false;
-        for (Map.Entry<AttributeKey<?>, Object> entry : attributes.entrySet()) {
-            AttributeKey<?> key = entry.getKey();
+        for (int i = 0, n = attributes.size(); i < n; i++) {
+            AttributeKey<?> key = attributes.getKey(i);
             if (forbiddenAttributes == null || !forbiddenAttributes.contains(key)) {
                 @SuppressWarnings("unchecked")
                 Object prototypeValue = prototype.get(key);
@@ -223,7 +297,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
                         isElementOpen = true;
                     }
                     out.openElement(key.getKey());
-                    out.writeObject(entry.getValue());
+                    out.writeObject(attributes.getValue(i));
                     out.closeElement();
                 }
             }
@@ -262,8 +336,8 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
      */
     @SuppressWarnings("unchecked")
     protected void applyAttributesTo(Figure that) {
-        for (Map.Entry<AttributeKey<?>, Object> entry : attributes.entrySet()) {
-            that.set((AttributeKey<Object>) entry.getKey(), entry.getValue());
+        for (int i = 0, n = attributes.size(); i < n; i++) {
+            that.set((AttributeKey<Object>) attributes.getKey(i), attributes.getValue(i));
         }
     }
 
@@ -282,7 +356,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
     public <T> void removeAttribute(AttributeKey<T> key) {
         if (hasAttribute(key)) {
             T oldValue = get(key);
-            attributes.remove(key);
+            getMutableAttributes().remove(key);
             fireAttributeChanged(key, oldValue, key.getDefaultValue());
         }
     }
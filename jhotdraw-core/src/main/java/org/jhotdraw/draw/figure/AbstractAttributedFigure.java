@@ -11,8 +11,10 @@ import java.awt.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.util.*;
+import org.jhotdraw.draw.AttributeArray;
 import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.DerivedAttributeCache;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.geom.Dimension2DDouble;
 import org.jhotdraw.geom.Geom;
@@ -32,9 +34,15 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
 
     private static final long serialVersionUID = 1L;
     /**
-     * Holds the attributes of the figure.
+     * Holds the attributes of the figure. The array may be shared with other
+     * figures. Use {@link #getMutableAttributes} before changing it.
      */
-    private HashMap<AttributeKey<?>, Object> attributes = new HashMap<>();
+    private AttributeArray attributes = new AttributeArray();
+    /**
+     * Caches the stroke, paint and font objects which are derived from the
+     * attributes. This field is created lazily.
+     */
+    private transient DerivedAttributeCache derivedAttributes;
     /**
      * Forbidden attributes can't be put by the put() operation. They can only
      * be changed by put().
@@ -71,20 +79,72 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
 
     @Override
     public Map<AttributeKey<?>, Object> getAttributes() {
-        return (Map<AttributeKey<?>, Object>) new HashMap<>(attributes);
+        return attributes.toMap();
+    }
+
+    /**
+     * Returns the attributes of this figure in a form which can be changed.
+     * If the attributes are shared with other figures, they are copied first.
+     */
+    private AttributeArray getMutableAttributes() {
+        if (attributes.isShared()) {
+            attributes = attributes.clone();
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns the cache for objects which are derived from the attributes of
+     * this figure. The cache is cleared when an attribute changes, and when
+     * the figure is invalidated.
+     */
+    protected DerivedAttributeCache getDerivedAttributeCache() {
+        DerivedAttributeCache cache = derivedAttributes;
+        if (cache == null) {
+            cache = new DerivedAttributeCache();
+            derivedAttributes = cache;
+        }
+        return cache;
+    }
+
+    @Override
+    protected <T> void fireAttributeChanged(AttributeKey<T> attribute, T oldValue, T newValue) {
+        if (derivedAttributes != null) {
+            derivedAttributes.clear();
+        }
+        super.fireAttributeChanged(attribute, oldValue, newValue);
+    }
+
+    @Override
+    protected void invalidate() {
+        super.invalidate();
+        if (derivedAttributes != null) {
+            derivedAttributes.clear();
+        }
+    }
+
+    /**
+     * Replaces the attributes of this figure by an interned attribute array,
+     * which is shared with all other figures that have the same attributes.
+     * The attributes are copied again, when they are changed.
+     */
+    public void internAttributes() {
+        attributes = AttributeArray.intern(attributes);
     }
 
     @Override
     public Object getAttributesRestoreData() {
-        return getAttributes();
+        return attributes.share();
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void restoreAttributesTo(Object restoreData) {
-        attributes.clear();
-        @SuppressWarnings("unchecked")
-        HashMap<AttributeKey<?>, Object> restoreDataHashMap = (HashMap<AttributeKey<?>, Object>) restoreData;
-        setAttributes(restoreDataHashMap);
+        attributes = new AttributeArray();
+        AttributeArray restoreAttributes = (AttributeArray) restoreData;
+        for (int i = 0, n = restoreAttributes.size(); i < n; i++) {
+            set((AttributeKey<Object>) restoreAttributes.getKey(i), restoreAttributes.getValue(i));
+        }
     }
 
     /**
@@ -95,8 +155,19 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
     public <T> void set(AttributeKey<T> key, T newValue) {
         if (forbiddenAttributes == null
                 || !forbiddenAttributes.contains(key)) {
-            @SuppressWarnings("unchecked")
-            T oldValue = key.put(attributes, newValue);
+            if (newValue == null && !key.isNullValueAllowed()) {
+                throw new NullPointerException("Null value not allowed for AttributeKey " + key.getKey());
+            }
+            T oldValue;
+            if (attributes.isShared() && attributes.containsKey(key)
+                    && attributes.get(key) == newValue) {
+                // Keep sharing the attributes if the value does not change
+                oldValue = newValue;
+            } else {
+                @SuppressWarnings("unchecked")
+                T v = (T) getMutableAttributes().put(key, newValue);
+                oldValue = v;
+            }
             fireAttributeChanged(key, oldValue, newValue);
         }
     }
@@ -106,7 +177,7 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
      */
     @Override
     public <T> T get(AttributeKey<T> key) {
-        return key.get(attributes);
+        return attributes.get(key);
     }
 
     @Override
@@ -116,7 +187,7 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
             drawFill(g);
         }
         if (get(STROKE_COLOR) != null && get(STROKE_WIDTH) >= 0d) {
-            g.setStroke(AttributeKeys.getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
+            g.setStroke(getDerivedAttributeCache().getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
             g.setColor(get(STROKE_COLOR));
             drawStroke(g);
         }
@@ -187,7 +258,9 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
     @Override
     public AbstractAttributedFigure clone() {
         AbstractAttributedFigure that = (AbstractAttributedFigure) super.clone();
-        that.attributes = new HashMap<>(this.attributes);
+        // The attributes are copied when one of the figures changes them
+        that.attributes = this.attributes.share();
+        that.derivedAttributes = null;
         if (this.forbiddenAttributes != null) {
             that.forbiddenAttributes = new HashSet<>(this.forbiddenAttributes);
         }
@@ -197,8 +270,8 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
     protected void writeAttributes(DOMOutput out) throws IOException {
         Figure prototype = (Figure) out.getPrototype();
         boolean isElementOpen = false;
-        for (Map.Entry<AttributeKey<?>, Object> entry : attributes.entrySet()) {
-            AttributeKey<?> key = entry.getKey();
+        for (int i = 0, n = attributes.size(); i < n; i++) {
+            AttributeKey<?> key = attributes.getKey(i);
             if (forbiddenAttributes == null
                     || !forbiddenAttributes.contains(key)) {
                 @SuppressWarnings("unchecked")
@@ -213,7 +286,7 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
                         isElementOpen = true;
                     }
                     out.openElement(key.getKey());
-                    out.writeObject(entry.getValue());
+                    out.writeObject(attributes.getValue(i));
                     out.closeElement();
                 }
             }
@@ -253,8 +326,8 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
      */
     @SuppressWarnings("unchecked")
     protected void applyAttributesTo(Figure that) {
-        for (Map.Entry<AttributeKey<?>, Object> entry : attributes.entrySet()) {
-            that.set((AttributeKey<Object>) entry.getKey(), entry.getValue());
+        for (int i = 0, n = attributes.size(); i < n; i++) {
+            that.set((AttributeKey<Object>) attributes.getKey(i), attributes.getValue(i));
         }
     }
 
@@ -281,7 +354,7 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
     public <T> void removeAttribute(AttributeKey<T> key) {
         if (hasAttribute(key)) {
             T oldValue = get(key);
-            attributes.remove(key);
+            getMutableAttributes().remove(key);
             fireAttributeChanged(key, oldValue, key.getDefaultValue());
         }
     }
@@ -226,7 +226,11 @@ public abstract class AbstractCompositeFigure
     public void removeAll(Collection<? extends Figure> figures) {
         willChange();
         for (Figure f : new LinkedList<Figure>(figures)) {
-            remove(f);
+            if (remove(f)) {
+                // willChange has been propagated to the removed child, but
+                // changed will not be
+                f.changed();
+            }
         }
         changed();
     }
@@ -545,22 +549,33 @@ public abstract class AbstractCompositeFigure
 
     @Override
     public void restoreTransformTo(Object geometry) {
-        @SuppressWarnings("unchecked")
-        LinkedList<Object> list = (LinkedList<Object>) geometry;
-        Iterator<Object> i = list.iterator();
-        for (Figure child : getChildren()) {
-            child.restoreTransformTo(i.next());
+        Object[] array = (Object[]) geometry;
+        for (int i = 0, n = children.size(); i < n; i++) {
+            children.get(i).restoreTransformTo(array[i]);
         }
         invalidate();
     }
 
     @Override
     public Object getTransformRestoreData() {
-        LinkedList<Object> list = new LinkedList<>();
-        for (Figure child : getChildren()) {
-            list.add(child.getTransformRestoreData());
+        Object[] array = new Object[children.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = children.get(i).getTransformRestoreData();
         }
-        return list;
+        return array;
+    }
+
+    /**
+     * Returns true if all children transform their points directly.
+     */
+    @Override
+    public boolean isTransformingPointsDirectly() {
+        for (Figure child : children) {
+            if (!child.isTransformingPointsDirectly()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
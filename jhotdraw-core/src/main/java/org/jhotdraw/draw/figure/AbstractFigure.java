@@ -12,6 +12,9 @@ import java.awt.event.*;
 import java.awt.font.*;
 import java.awt.geom.*;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.undo.*;
@@ -49,11 +52,21 @@ public abstract class AbstractFigure
     private boolean isVisible = true;
     private boolean isTransformable = true;
     private boolean isConnectable = true;
+    /**
+     * The lock of this figure, while it is not part of a drawing.
+     */
+    private transient ReadWriteLock lock;
     /**
      * This variable is used to prevent endless change loops. We increase its value on each
      * invocation of willChange() and decrease it on each invocation of changed().
      */
     protected int changingDepth = 0;
+    /**
+     * The write lock of the drawing, which is held from the outermost
+     * invocation of willChange() until the matching invocation of changed(),
+     * or null.
+     */
+    private transient Lock changeLock;
 
     /**
      * Creates a new instance.
@@ -95,8 +108,22 @@ public abstract class AbstractFigure
         return drawing;
     }
 
-    protected Object getLock() {
-        return (getDrawing() == null) ? this : getDrawing().getLock();
+    /**
+     * Returns the lock of the drawing, or a lock of this figure, if the
+     * figure is not part of a drawing. Acquire the read lock for reading
+     * the figure, and the write lock for changing it.
+     */
+    protected ReadWriteLock getLock() {
+        Drawing d = getDrawing();
+        if (d != null) {
+            return d.getLock();
+        }
+        synchronized (this) {
+            if (lock == null) {
+                lock = new ReentrantReadWriteLock();
+            }
+            return lock;
+        }
     }
 
     /**
@@ -325,6 +352,8 @@ public abstract class AbstractFigure
         AbstractFigure that = (AbstractFigure) super.clone();
         that.listenerList = new EventListenerList();
         that.drawing = null; // Clones need to be explictly added to a drawing
+        that.lock = null;
+        that.changeLock = null;
         return that;
     }
 
@@ -389,16 +418,66 @@ public abstract class AbstractFigure
     /**
      * Informs that a figure is about to change something that affects the contents of its display
      * box.
+     * <p>
+     * If the figure is part of a drawing, the outermost invocation acquires the write lock of the
+     * drawing, and the matching invocation of {@link #changed} releases it. Thus, both methods must
+     * be invoked on the same thread.
      */
     @Override
     public void willChange() {
         if (changingDepth == 0) {
-            fireAreaInvalidated();
-            invalidate();
+            changeLock = lockForChange();
+            boolean isDone = false;
+            try {
+                fireAreaInvalidated();
+                invalidate();
+                isDone = true;
+            } finally {
+                if (!isDone) {
+                    unlockAfterChange();
+                }
+            }
         }
         changingDepth++;
     }
 
+    /**
+     * Acquires the write lock of the drawing before the figure is changed, so
+     * that threads which hold the read lock, like the workers of a
+     * {@link org.jhotdraw.draw.TiledDrawingRenderer}, never see a figure in
+     * the middle of a change.
+     * <p>
+     * Returns null, if the figure is not part of a drawing, or if the current
+     * thread holds the read lock of the drawing, because a read lock can not
+     * be upgraded to the write lock.
+     *
+     * @return the acquired write lock, or null.
+     */
+    private Lock lockForChange() {
+        Drawing d = getDrawing();
+        if (d == null) {
+            return null;
+        }
+        ReadWriteLock rwLock = d.getLock();
+        if (rwLock instanceof ReentrantReadWriteLock) {
+            ReentrantReadWriteLock r = (ReentrantReadWriteLock) rwLock;
+            if (r.getReadHoldCount() > 0 && !r.isWriteLockedByCurrentThread()) {
+                return null;
+            }
+        }
+        Lock writeLock = rwLock.writeLock();
+        writeLock.lock();
+        return writeLock;
+    }
+
+    private void unlockAfterChange() {
+        if (changeLock != null) {
+            Lock l = changeLock;
+            changeLock = null;
+            l.unlock();
+        }
+    }
+
     protected void validate() {
     }
 
@@ -407,13 +486,19 @@ public abstract class AbstractFigure
      */
     @Override
     public void changed() {
-        if (changingDepth == 1) {
-            validate();
-            fireFigureChanged(getDrawingArea());
-        } else if (changingDepth < 1) {
+        if (changingDepth < 1) {
             throw new IllegalStateException("changed was called without a prior call to willChange. " + changingDepth);
+        } else if (changingDepth == 1) {
+            try {
+                validate();
+                fireFigureChanged(getDrawingArea());
+            } finally {
+                changingDepth--;
+                unlockAfterChange();
+            }
+        } else {
+            changingDepth--;
         }
-        changingDepth--;
     }
 
     /**
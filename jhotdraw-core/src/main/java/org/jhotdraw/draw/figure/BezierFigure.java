@@ -15,6 +15,7 @@ import java.util.*;
 import javax.swing.undo.*;
 import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.LevelOfDetailPolicy;
 import org.jhotdraw.draw.DrawingView;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.connector.ChopBezierConnector;
@@ -131,7 +132,9 @@ public class BezierFigure extends AbstractAttributedFigure {
 
     protected void drawCaps(Graphics2D g) {
         if (getNodeCount() > 1) {
-            if (get(START_DECORATION) != null) {
+            LevelOfDetailPolicy lod = LevelOfDetailPolicy.get(g);
+            if (get(START_DECORATION) != null
+                    && (lod == null || lod.isDecorationVisible(g, get(START_DECORATION).getDecorationRadius(this)))) {
                 BezierPath cp = getCappedPath();
                 Point2D.Double p1 = path.get(0, 0);
                 Point2D.Double p2 = cp.get(0, 0);
@@ -140,7 +143,8 @@ public class BezierFigure extends AbstractAttributedFigure {
                 }
                 get(START_DECORATION).draw(g, this, p1, p2);
             }
-            if (get(END_DECORATION) != null) {
+            if (get(END_DECORATION) != null
+                    && (lod == null || lod.isDecorationVisible(g, get(END_DECORATION).getDecorationRadius(this)))) {
                 BezierPath cp = getCappedPath();
                 Point2D.Double p1 = path.get(path.size() - 1, 0);
                 Point2D.Double p2 = cp.get(path.size() - 1, 0);
@@ -579,12 +583,26 @@ public class BezierFigure extends AbstractAttributedFigure {
 
     @Override
     public void restoreTransformTo(Object geometry) {
-        path.setTo((BezierPath) geometry);
+        if (geometry instanceof double[]) {
+            path.setTo((double[]) geometry);
+        } else {
+            path.setTo((BezierPath) geometry);
+        }
     }
 
+    /**
+     * Returns the nodes of the bezier path packed into an array of doubles.
+     *
+     * @see BezierPath#toPackedArray
+     */
     @Override
     public Object getTransformRestoreData() {
-        return path.clone();
+        return path.toPackedArray();
+    }
+
+    @Override
+    public boolean isTransformingPointsDirectly() {
+        return true;
     }
 
     public Point2D.Double chop(Point2D.Double p) {
@@ -270,6 +270,19 @@ public interface Figure extends Cloneable, Serializable {
      */
     public void restoreTransformTo(Object restoreData);
 
+    /**
+     * Returns true if {@link #transform} transforms the points of the figure
+     * directly, and does nothing else. A transform of such a figure can be
+     * undone by transforming it with the inverse transform, so that undo
+     * does not need to keep its transform restore data.
+     * <p>
+     * Subclasses which override {@code transform} must override this method
+     * as well. The default implementation returns false.
+     */
+    default boolean isTransformingPointsDirectly() {
+        return false;
+    }
+
     /**
      * Transforms the shape of the Figure. Transformations using double
      * precision arithmethics are inherently lossy operations. Therefore it is
@@ -15,12 +15,15 @@ import java.util.*;
 import javax.imageio.*;
 import javax.swing.*;
 import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.ImageCache;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.connector.ChopRectangleConnector;
 import org.jhotdraw.draw.connector.Connector;
 import org.jhotdraw.geom.Dimension2DDouble;
 import org.jhotdraw.geom.Geom;
 import org.jhotdraw.io.Base64;
+import org.jhotdraw.io.Blob;
+import org.jhotdraw.io.BlobStore;
 import org.jhotdraw.util.*;
 import org.jhotdraw.xml.*;
 
@@ -41,11 +44,15 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
     /**
      * The image data. This can be null, if the image was created from a BufferedImage.
      */
-    private byte[] imageData;
+    private Blob imageData;
     /**
-     * The buffered image. This can be null, if we haven't yet parsed the imageData.
+     * The cached image. This can be null, if we haven't yet parsed the imageData.
      */
-    private transient BufferedImage bufferedImage;
+    private transient ImageCache.CachedImage cachedImage;
+    /**
+     * Repaints the figure when the image has been decoded in the background.
+     */
+    private transient Runnable repaintHandler;
 
     /**
      * Creates a new instance.
@@ -67,7 +74,7 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
         }
         drawImage(g);
         if (get(STROKE_COLOR) != null && get(STROKE_WIDTH) > 0d) {
-            g.setStroke(AttributeKeys.getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
+            g.setStroke(getDerivedAttributeCache().getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
             g.setColor(get(STROKE_COLOR));
             drawStroke(g);
         }
@@ -94,10 +101,8 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
     }
 
     protected void drawImage(Graphics2D g) {
-        BufferedImage image = getBufferedImage();
-        if (image != null) {
-            g.drawImage(image, (int) rectangle.x, (int) rectangle.y, (int) rectangle.width, (int) rectangle.height, null);
-        } else {
+        ImageCache.CachedImage image = getCachedImage();
+        if (image == null || !image.draw(g, rectangle, null, getRepaintHandler())) {
             g.setStroke(new BasicStroke());
             g.setColor(Color.red);
             g.draw(rectangle);
@@ -114,6 +119,18 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
         g.draw(r);
     }
 
+    private Runnable getRepaintHandler() {
+        if (repaintHandler == null) {
+            repaintHandler = new Runnable() {
+                @Override
+                public void run() {
+                    fireAreaInvalidated();
+                }
+            };
+        }
+        return repaintHandler;
+    }
+
     // SHAPE AND BOUNDS
     @Override
     public Rectangle2D.Double getBounds() {
@@ -199,6 +216,7 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
     public ImageFigure clone() {
         ImageFigure that = (ImageFigure) super.clone();
         that.rectangle = (Rectangle2D.Double) this.rectangle.clone();
+        that.repaintHandler = null;
         return that;
     }
 
@@ -218,9 +236,10 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
     @Override
     public void write(DOMOutput out) throws IOException {
         super.write(out);
-        if (getImageData() != null) {
+        Blob blob = getImageBlob();
+        if (blob != null) {
             out.openElement("imageData");
-            out.addText(Base64.encodeBytes(getImageData()));
+            out.addText(Base64.encodeToString(blob.asByteBuffer(), Base64.NO_OPTIONS));
             out.closeElement();
         }
     }
@@ -234,9 +253,22 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
      */
     @Override
     public void setImage(byte[] imageData, BufferedImage bufferedImage) {
+        setImageBlob((imageData == null) ? null : BlobStore.getDefault().put(imageData), bufferedImage);
+    }
+
+    /**
+     * Sets the image.
+     *
+     * @param imageData The image data. If this is null, a buffered image must be provided.
+     * @param bufferedImage An image constructed from the imageData. If this is null, imageData must
+     * be provided.
+     */
+    @Override
+    public void setImageBlob(Blob imageData, BufferedImage bufferedImage) {
         willChange();
         this.imageData = imageData;
-        this.bufferedImage = bufferedImage;
+        this.cachedImage = (imageData == null && bufferedImage == null) ? null
+                : ImageCache.getDefault().create(imageData, bufferedImage);
         changed();
     }
 
@@ -248,8 +280,8 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
      */
     public void setImageData(byte[] imageData) {
         willChange();
-        this.imageData = imageData;
-        this.bufferedImage = null;
+        this.imageData = (imageData == null) ? null : BlobStore.getDefault().put(imageData);
+        this.cachedImage = null;
         changed();
     }
 
@@ -260,7 +292,7 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
     public void setBufferedImage(BufferedImage image) {
         willChange();
         this.imageData = null;
-        this.bufferedImage = image;
+        this.cachedImage = (image == null) ? null : ImageCache.getDefault().create(null, image);
         changed();
     }
 
@@ -270,18 +302,27 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
      */
     @Override
     public BufferedImage getBufferedImage() {
-        if (bufferedImage == null && imageData != null) {
-            try {
-                bufferedImage = ImageIO.read(new ByteArrayInputStream(imageData));
-            } catch (IOException e) {
-                e.printStackTrace();
-                // If we can't create a buffered image from the image data,
-                // there is no use to keep the image data and try again, so
-                // we drop the image data.
-                imageData = null;
-            }
+        ImageCache.CachedImage image = getCachedImage();
+        return (image == null) ? null : image.getImage();
+    }
+
+    /**
+     * Gets the cached image. If necessary, this method creates the cached image for the image
+     * data. The cached image decodes the image data lazily.
+     */
+    protected ImageCache.CachedImage getCachedImage() {
+        ImageCache.CachedImage image = cachedImage;
+        if (image == null && imageData != null) {
+            image = cachedImage = ImageCache.getDefault().create(imageData, null);
         }
-        return bufferedImage;
+        if (image != null && image.isFailed()) {
+            // If we can't create a buffered image from the image data,
+            // there is no use to keep the image data and try again, so
+            // we drop the image data.
+            imageData = null;
+            cachedImage = image = null;
+        }
+        return image;
     }
 
     /**
@@ -289,22 +330,38 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
      * image.
      * <p>
      * Note: For performance reasons this method returns a reference to the internally used image
-     * data array instead of cloning it. Do not modify this array.
+     * data array instead of cloning it. If the data is kept in a memory-mapped file, the blob
+     * copies it once and returns the same copy until it is garbage collected. Do not modify this
+     * array. Use {@link #getImageBlob} to stream the data without copying it.
      */
     @Override
     public byte[] getImageData() {
-        if (bufferedImage != null && imageData == null) {
+        Blob blob = getImageBlob();
+        return (blob == null) ? null : blob.getBytes();
+    }
+
+    /**
+     * Gets the image data. If necessary, this method creates the image data from the buffered
+     * image.
+     */
+    @Override
+    public Blob getImageBlob() {
+        if (cachedImage != null && imageData == null) {
             try {
+                BufferedImage image = cachedImage.getImage();
                 ByteArrayOutputStream bout = new ByteArrayOutputStream();
-                ImageIO.write(bufferedImage, "PNG", bout);
+                ImageIO.write(image, "PNG", bout);
                 bout.close();
-                imageData = bout.toByteArray();
+                imageData = BlobStore.getDefault().put(bout.toByteArray());
+                // Now that we have image data, the cache may discard the
+                // decoded image.
+                cachedImage = ImageCache.getDefault().create(imageData, image);
             } catch (IOException e) {
                 e.printStackTrace();
                 // If we can't create image data from the buffered image,
                 // there is no use to keep the buffered image and try again, so
                 // we drop the buffered image.
-                bufferedImage = null;
+                cachedImage = null;
             }
         }
         return imageData;
@@ -330,19 +387,20 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure
         while ((bytesRead = in.read(buf)) > 0) {
             baos.write(buf, 0, bytesRead);
         }
-        BufferedImage img = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+        byte[] data = baos.toByteArray();
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
         if (img == null) {
             ResourceBundleUtil labels = ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels");
             throw new IOException(labels.getFormatted("file.failedToLoadImage.message", in.toString()));
         }
-        imageData = baos.toByteArray();
-        bufferedImage = img;
+        imageData = BlobStore.getDefault().put(data);
+        cachedImage = ImageCache.getDefault().create(imageData, img);
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
-        // The call to getImageData() ensures that we have serializable data
-        // in the imageData array.
-        getImageData();
+        // The call to getImageBlob() ensures that we have serializable data
+        // in the imageData blob.
+        getImageBlob();
         out.defaultWriteObject();
     }
 }
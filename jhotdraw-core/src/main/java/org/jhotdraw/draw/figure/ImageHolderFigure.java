@@ -9,6 +9,8 @@ package org.jhotdraw.draw.figure;
 
 import java.awt.image.*;
 import java.io.*;
+import org.jhotdraw.io.Blob;
+import org.jhotdraw.io.BlobStore;
 
 /**
  * The interface of a {@link Figure} which has some editable image contents.
@@ -84,4 +86,36 @@ public interface ImageHolderFigure extends Figure {
      * not have an image.
      */
     public byte[] getImageData();
+
+    /**
+     * Sets the image.
+     * <p>
+     * Figures which hold the same blob share the image data, and the
+     * decoded image.
+     * <p>
+     * The default implementation passes the content of the blob to
+     * {@link #setImage}.
+     *
+     * @param imageData The image data. If this is null, a buffered image must
+     * be provided.
+     * @param bufferedImage An image constructed from the imageData. If this
+     * is null, imageData must be provided.
+     */
+    public default void setImageBlob(Blob imageData, BufferedImage bufferedImage) throws IOException {
+        setImage((imageData == null) ? null : imageData.getBytes(), bufferedImage);
+    }
+
+    /**
+     * Gets the image data as a blob, without copying it.
+     * <p>
+     * The default implementation puts the array returned by
+     * {@link #getImageData} into the default {@link BlobStore}.
+     *
+     * @return imageData The image data, or null, if the ImageHolderFigure does
+     * not have an image.
+     */
+    public default Blob getImageBlob() {
+        byte[] imageData = getImageData();
+        return (imageData == null) ? null : BlobStore.getDefault().put(imageData);
+    }
 }
@@ -53,6 +53,11 @@ public class LineConnectionFigure extends LineFigure
      * end figure.
      */
     private ConnectionHandler connectionHandler = new ConnectionHandler(this);
+    /**
+     * This is set to true by {@link #applyConnectionPath}, so that
+     * {@link #validate} does not line out the applied path again.
+     */
+    private transient boolean isPathApplied;
 
     private static class ConnectionHandler extends FigureAdapter implements Serializable {
 
@@ -82,9 +87,15 @@ public class LineConnectionFigure extends LineFigure
             if (!owner.isChanging()) {
                 if (e.getSource() == owner.getStartFigure()
                         || e.getSource() == owner.getEndFigure()) {
-                    owner.willChange();
-                    owner.updateConnection();
-                    owner.changed();
+                    Drawing drawing = owner.getDrawing();
+                    if (drawing != null && drawing.isUpdating()) {
+                        // The connection is laid out when the batch is committed
+                        drawing.getConnectionGraph().markDirty(owner);
+                    } else {
+                        owner.willChange();
+                        owner.updateConnection();
+                        owner.changed();
+                    }
                 }
             }
         }
@@ -108,6 +119,15 @@ public class LineConnectionFigure extends LineFigure
         updateConnection(); // make sure that we are still connected
     }
 
+    /**
+     * Returns false, because the connection moves its end points back to
+     * its connectors after a transform.
+     */
+    @Override
+    public boolean isTransformingPointsDirectly() {
+        return false;
+    }
+
     // ATTRIBUTES
     // EDITING
     /**
@@ -164,10 +184,65 @@ public class LineConnectionFigure extends LineFigure
         changed();
     }
 
+    /**
+     * Computes the path which this connection gets from
+     * {@link #updateConnection}, without changing the connection.
+     * <p>
+     * This method only reads the state of the connection and of the figures
+     * it is connected to. Thus it may be invoked concurrently for different
+     * connections, as long as the drawing is not changed.
+     *
+     * @return the path, or null if the connection is not connected at both
+     * ends, or if its liner can not line out a detached path. Such a
+     * connection must be updated with {@link #updateConnection}.
+     */
+    public BezierPath computeConnectionPath() {
+        if (getStartConnector() == null || getEndConnector() == null || path.size() < 2
+                || (liner != null && !liner.isDetachedLineoutSupported())) {
+            return null;
+        }
+        BezierPath p = path.clone();
+        Point2D.Double start = getStartConnector().findStart(this);
+        if (start != null) {
+            BezierPath.Node node = new BezierPath.Node(p.get(0));
+            node.setControlPoint(0, start);
+            p.set(0, node);
+        }
+        Point2D.Double end = getEndConnector().findEnd(this);
+        if (end != null) {
+            BezierPath.Node node = new BezierPath.Node(p.get(p.size() - 1));
+            node.setControlPoint(0, end);
+            p.set(p.size() - 1, node);
+        }
+        if (liner != null) {
+            liner.lineout(this, p);
+        }
+        p.invalidatePath();
+        return p;
+    }
+
+    /**
+     * Sets a path, which has been computed with
+     * {@link #computeConnectionPath}.
+     */
+    public void applyConnectionPath(BezierPath newValue) {
+        willChange();
+        path = newValue;
+        invalidate();
+        isPathApplied = true;
+        try {
+            changed();
+        } finally {
+            isPathApplied = false;
+        }
+    }
+
     @Override
     public void validate() {
         super.validate();
-        lineout();
+        if (!isPathApplied) {
+            lineout();
+        }
     }
 
     @Override
@@ -207,6 +282,7 @@ public class LineConnectionFigure extends LineFigure
                 }
             }
             endConnector = newEnd;
+            updateConnectionGraph();
             if (endConnector != null) {
                 getEndFigure().addFigureListener(connectionHandler);
                 if (getStartFigure() != null && getEndFigure() != null) {
@@ -229,6 +305,7 @@ public class LineConnectionFigure extends LineFigure
                 }
             }
             startConnector = newStart;
+            updateConnectionGraph();
             if (startConnector != null) {
                 getStartFigure().addFigureListener(connectionHandler);
                 if (getStartFigure() != null && getEndFigure() != null) {
@@ -239,6 +316,16 @@ public class LineConnectionFigure extends LineFigure
         }
     }
 
+    /**
+     * Tells the connection graph of the drawing which figures this connection
+     * is attached to.
+     */
+    private void updateConnectionGraph() {
+        if (getDrawing() != null) {
+            getDrawing().getConnectionGraph().addConnection(this);
+        }
+    }
+
     // COMPOSITE FIGURES
     // LAYOUT
     /*
@@ -287,9 +374,14 @@ public class LineConnectionFigure extends LineFigure
     @Override
     public void addNotify(Drawing drawing) {
         super.addNotify(drawing);
+        drawing.getConnectionGraph().addConnection(this);
         if (getStartConnector() != null && getEndConnector() != null) {
             handleConnect(getStartConnector(), getEndConnector());
-            updateConnection();
+            if (drawing.isUpdating()) {
+                drawing.getConnectionGraph().markDirty(this);
+            } else {
+                updateConnection();
+            }
         }
     }
 
@@ -304,6 +396,7 @@ public class LineConnectionFigure extends LineFigure
         if (getStartConnector() != null && getEndConnector() != null) {
             handleDisconnect(getStartConnector(), getEndConnector());
         }
+        drawing.getConnectionGraph().removeConnection(this);
         // Note: we do not set the connectors to null here, because we
         // need them when we are added back to a drawing again. For example,
         // when an undo is performed, after the LineConnection has been
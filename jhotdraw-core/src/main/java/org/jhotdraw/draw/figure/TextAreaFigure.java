@@ -13,7 +13,7 @@ import java.awt.geom.*;
 import java.io.*;
 import java.text.*;
 import java.util.*;
-import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.LevelOfDetailPolicy;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.handle.FontSizeHandle;
 import org.jhotdraw.draw.handle.Handle;
@@ -95,6 +95,19 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
             float rightMargin = (float) Math.max(leftMargin + 1, textRect.x + textRect.width + 1);
             float verticalPos = (float) textRect.y;
             float maxVerticalPos = (float) (textRect.y + textRect.height);
+            LevelOfDetailPolicy lod = LevelOfDetailPolicy.get(g);
+            if (lod != null && lod.isGreeked(g, getFontSize())) {
+                if (getText() != null) {
+                    // Draw one bar for each line of text which fits into the text rect
+                    double lineHeight = getFontSize() * 1.2;
+                    int lineCount = getText().split("\n").length;
+                    for (int i = 0; i < lineCount && verticalPos + lineHeight <= maxVerticalPos; i++) {
+                        lod.drawGreekedLine(g, leftMargin, verticalPos, textRect.width, getFontSize());
+                        verticalPos += lineHeight;
+                    }
+                }
+                return;
+            }
             if (leftMargin < rightMargin) {
                 //float tabWidth = (float) (getTabSize() * g.getFontMetrics(font).charWidth('m'));
                 float tabWidth = (float) (getTabSize() * font.getStringBounds("m", getFontRenderContext()).getWidth());
@@ -350,7 +363,7 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
 
     @Override
     public Font getFont() {
-        return AttributeKeys.getFont(this);
+        return getDerivedAttributeCache().getFont(this);
     }
 
     @Override
@@ -12,7 +12,7 @@ import java.awt.font.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.util.*;
-import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.LevelOfDetailPolicy;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.handle.BoundsOutlineHandle;
 import org.jhotdraw.draw.handle.FontSizeHandle;
@@ -70,6 +70,18 @@ public class TextFigure extends AbstractAttributedDecoratedFigure
     @Override
     protected void drawText(java.awt.Graphics2D g) {
         if (getText() != null || isEditable()) {
+            LevelOfDetailPolicy lod = LevelOfDetailPolicy.get(g);
+            if (lod != null && lod.isGreeked(g, getFontSize())) {
+                if (getText() != null) {
+                    // Do not create a text layout just for greeking. Use the
+                    // cached layout, or estimate half an em per character.
+                    double width = (textLayout != null)
+                            ? textLayout.getAdvance()
+                            : getText().length() * getFontSize() * 0.5;
+                    lod.drawGreekedLine(g, origin.x, origin.y, width, getFontSize());
+                }
+                return;
+            }
             TextLayout layout = getTextLayout();
             Graphics2D g2 = (Graphics2D) g.create();
             try {
@@ -226,7 +238,7 @@ public class TextFigure extends AbstractAttributedDecoratedFigure
 
     @Override
     public Font getFont() {
-        return AttributeKeys.getFont(this);
+        return getDerivedAttributeCache().getFont(this);
     }
 
     @Override
@@ -158,7 +158,7 @@ public class BezierScaleHandle extends AbstractHandle {
     @Override
     public void trackEnd(Point anchor, Point lead, int modifiersEx) {
         view.getDrawing().fireUndoableEditHappened(
-                new TransformRestoreEdit(getOwner(), restoreData, getOwner().getTransformRestoreData()));
+                new TransformRestoreEdit(getOwner(), restoreData, transform));
         location = null;
     }
 }
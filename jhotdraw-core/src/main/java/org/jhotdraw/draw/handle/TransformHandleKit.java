@@ -144,6 +144,11 @@ public class TransformHandleKit {
 
         private int dx, dy;
         private Object geometry;
+        /**
+         * The transform which has been applied to the owner since the
+         * tracking has started.
+         */
+        private AffineTransform transform = new AffineTransform();
         /**
          * Caches the value returned by getOwner().isTransformable():
          */
@@ -202,6 +207,7 @@ public class TransformHandleKit {
                 return;
             }
             geometry = getOwner().getTransformRestoreData();
+            transform.setToIdentity();
             Point location = getLocation();
             dx = -anchor.x + location.x;
             dy = -anchor.y + location.y;
@@ -225,7 +231,7 @@ public class TransformHandleKit {
                 return;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geometry, getOwner().getTransformRestoreData()));
+                    new TransformRestoreEdit(getOwner(), geometry, transform));
         }
 
         protected void trackStepNormalized(Point2D.Double p) {
@@ -248,13 +254,16 @@ public class TransformHandleKit {
                     && (sx != 1d || sy != 1d)
                     && !(sx < 0.0001) && !(sy < 0.0001)) {
                 f.transform(tx);
+                transform.preConcatenate(tx);
                 tx.setToIdentity();
                 tx.scale(sx, sy);
                 f.transform(tx);
+                transform.preConcatenate(tx);
                 tx.setToIdentity();
             }
             tx.translate(newBounds.x, newBounds.y);
             f.transform(tx);
+            transform.preConcatenate(tx);
             f.changed();
         }
     }
@@ -16,6 +16,7 @@ import java.net.URI;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 import javax.swing.JComponent;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.jhotdraw.datatransfer.InputStreamTransferable;
@@ -209,8 +210,14 @@ public class DOMStorableInputOutputFormat implements OutputFormat, InputFormat {
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
         JavaxDOMOutput domo = new JavaxDOMOutput(factory);
         domo.openElement("Drawing-Clip");
-        for (Figure f : figures) {
-            domo.writeObject(f);
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            for (Figure f : figures) {
+                domo.writeObject(f);
+            }
+        } finally {
+            lock.unlock();
         }
         domo.closeElement();
         domo.save(buf);
@@ -14,6 +14,7 @@ import java.awt.geom.*;
 import java.awt.image.*;
 import java.io.*;
 import java.net.URI;
+import java.util.concurrent.locks.Lock;
 import javax.imageio.*;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -176,41 +177,47 @@ public class ImageOutputFormat implements OutputFormat {
     public BufferedImage toImage(Drawing drawing,
             java.util.List<Figure> figures,
             double scaleFactor, boolean clipToFigures) {
-        // Return a transparent 1-pixel image if the drawing is empty.
-        if (drawing.getChildCount() == 0) {
-            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-        }
-        // Determine the draw bounds of the figures
-        Rectangle2D.Double drawBounds = null;
-        for (Figure f : figures) {
-            if (drawBounds == null) {
-                drawBounds = f.getDrawingArea();
-            } else {
-                drawBounds.add(f.getDrawingArea());
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            // Return a transparent 1-pixel image if the drawing is empty.
+            if (drawing.getChildCount() == 0) {
+                return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
             }
-        }
-        if (clipToFigures) {
-            AffineTransform transform = new AffineTransform();
-            transform.translate(-drawBounds.x * scaleFactor,
-                    -drawBounds.y * scaleFactor);
-            transform.scale(scaleFactor, scaleFactor);
-            return toImage(drawing, figures, transform,
-                    new Dimension(
-                            (int) (drawBounds.width * scaleFactor),
-                            (int) (drawBounds.height * scaleFactor)));
-        } else {
-            AffineTransform transform = new AffineTransform();
-            if (drawBounds.x < 0) {
-                transform.translate(-drawBounds.x * scaleFactor, 0);
+            // Determine the draw bounds of the figures
+            Rectangle2D.Double drawBounds = null;
+            for (Figure f : figures) {
+                if (drawBounds == null) {
+                    drawBounds = f.getDrawingArea();
+                } else {
+                    drawBounds.add(f.getDrawingArea());
+                }
             }
-            if (drawBounds.y < 0) {
-                transform.translate(0, -drawBounds.y * scaleFactor);
+            if (clipToFigures) {
+                AffineTransform transform = new AffineTransform();
+                transform.translate(-drawBounds.x * scaleFactor,
+                        -drawBounds.y * scaleFactor);
+                transform.scale(scaleFactor, scaleFactor);
+                return toImage(drawing, figures, transform,
+                        new Dimension(
+                                (int) (drawBounds.width * scaleFactor),
+                                (int) (drawBounds.height * scaleFactor)));
+            } else {
+                AffineTransform transform = new AffineTransform();
+                if (drawBounds.x < 0) {
+                    transform.translate(-drawBounds.x * scaleFactor, 0);
+                }
+                if (drawBounds.y < 0) {
+                    transform.translate(0, -drawBounds.y * scaleFactor);
+                }
+                transform.scale(scaleFactor, scaleFactor);
+                return toImage(drawing, figures, transform,
+                        new Dimension(
+                                (int) ((Math.max(0, drawBounds.x) + drawBounds.width) * scaleFactor),
+                                (int) ((Math.max(0, drawBounds.y) + drawBounds.height) * scaleFactor)));
             }
-            transform.scale(scaleFactor, scaleFactor);
-            return toImage(drawing, figures, transform,
-                    new Dimension(
-                            (int) ((Math.max(0, drawBounds.x) + drawBounds.width) * scaleFactor),
-                            (int) ((Math.max(0, drawBounds.y) + drawBounds.height) * scaleFactor)));
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -249,8 +256,14 @@ public class ImageOutputFormat implements OutputFormat {
         // Draw the figures onto the buffered image
         setRenderingHints(g);
         g.transform(transform);
-        for (Figure f : figures) {
-            f.draw(g);
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            for (Figure f : figures) {
+                f.draw(g);
+            }
+        } finally {
+            lock.unlock();
         }
         g.dispose();
         // Convert the image, if it does not have the specified image type
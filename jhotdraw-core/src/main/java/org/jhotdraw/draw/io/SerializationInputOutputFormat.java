@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import javax.swing.JComponent;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -182,7 +183,13 @@ public class SerializationInputOutputFormat implements InputFormat, OutputFormat
     @Override
     public void write(OutputStream out, Drawing drawing) throws IOException {
         ObjectOutputStream oout = new ObjectOutputStream(out);
-        oout.writeObject(drawing);
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            oout.writeObject(drawing);
+        } finally {
+            lock.unlock();
+        }
         oout.flush();
     }
 
@@ -192,11 +199,17 @@ public class SerializationInputOutputFormat implements InputFormat, OutputFormat
         final Drawing d = (Drawing) prototype.clone();
         HashMap<Figure, Figure> originalToDuplicateMap = new HashMap<>(figures.size());
         final ArrayList<Figure> duplicates = new ArrayList<>(figures.size());
-        for (Figure f : figures) {
-            Figure df = f.clone();
-            d.add(df);
-            duplicates.add(df);
-            originalToDuplicateMap.put(f, df);
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            for (Figure f : figures) {
+                Figure df = f.clone();
+                d.add(df);
+                duplicates.add(df);
+                originalToDuplicateMap.put(f, df);
+            }
+        } finally {
+            lock.unlock();
         }
         for (Figure f : duplicates) {
             f.remap(originalToDuplicateMap, true);
@@ -49,7 +49,16 @@ public class ElbowLiner
 
     @Override
     public void lineout(ConnectionFigure figure) {
-        BezierPath path = ((LineConnectionFigure) figure).getBezierPath();
+        lineout(figure, ((LineConnectionFigure) figure).getBezierPath());
+    }
+
+    @Override
+    public boolean isDetachedLineoutSupported() {
+        return true;
+    }
+
+    @Override
+    public void lineout(ConnectionFigure figure, BezierPath path) {
         Connector start = figure.getStartConnector();
         Connector end = figure.getEndConnector();
         if (start == null || end == null || path == null) {
@@ -39,6 +39,39 @@ public interface Liner extends Cloneable {
      */
     public void lineout(ConnectionFigure figure);
 
+    /**
+     * Layouts the specified path for the ConnectionFigure, without changing
+     * the ConnectionFigure. The path must have the start and end point of the
+     * connection.
+     * <p>
+     * If {@link #isDetachedLineoutSupported} returns true, this method only
+     * reads the state of the ConnectionFigure and of the figures it is
+     * connected to. Thus it may be invoked concurrently for different
+     * connections, as long as the drawing is not changed.
+     * <p>
+     * The default implementation delegates to {@link #lineout(ConnectionFigure)},
+     * and thus lines out the path of the ConnectionFigure instead of the
+     * specified path.
+     *
+     * @param figure The ConnectionFigure to be lined out.
+     * @param path The path which is lined out.
+     */
+    default void lineout(ConnectionFigure figure, BezierPath path) {
+        lineout(figure);
+    }
+
+    /**
+     * Returns true, if {@link #lineout(ConnectionFigure, BezierPath)} lines
+     * out the specified path without changing the ConnectionFigure.
+     * <p>
+     * The default implementation returns false. Liners which override
+     * {@code lineout(ConnectionFigure, BezierPath)} should override this
+     * method as well.
+     */
+    default boolean isDetachedLineoutSupported() {
+        return false;
+    }
+
     /**
      * Creates Handle's for the Liner.
      * The ConnectionFigure can provide these handles to the user, in order
@@ -143,11 +143,7 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
             tx.translate(
                     constrainedRect.x - previousOrigin.x,
                     constrainedRect.y - previousOrigin.y);
-            for (Figure f : transformedFigures) {
-                f.willChange();
-                f.transform(tx);
-                f.changed();
-            }
+            getDrawing().transformAll(transformedFigures, tx);
             previousPoint = currentPoint;
             previousOrigin = new Point2D.Double(constrainedRect.x, constrainedRect.y);
         }
@@ -171,11 +167,7 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
                     tx.translate(
                             anchorOrigin.x - previousOrigin.x,
                             anchorOrigin.y - previousOrigin.y);
-                    for (Figure f : transformedFigures) {
-                        f.willChange();
-                        f.transform(tx);
-                        f.changed();
-                    }
+                    getDrawing().transformAll(transformedFigures, tx);
                     Rectangle r = new Rectangle(anchor.x, anchor.y, 0, 0);
                     r.add(evt.getX(), evt.getY());
                     maybeFireBoundsInvalidated(r);
@@ -189,7 +181,7 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
                     -anchorOrigin.y + previousOrigin.y);
             if (!tx.isIdentity()) {
                 getDrawing().fireUndoableEditHappened(new TransformEdit(
-                        transformedFigures, tx));
+                        getDrawing(), transformedFigures, tx));
             }
         }
         Rectangle r = new Rectangle(anchor.x, anchor.y, 0, 0);
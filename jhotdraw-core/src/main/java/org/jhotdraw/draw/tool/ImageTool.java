@@ -113,9 +113,9 @@ public class ImageTool extends CreationTool {
                     try {
                         get();  //will throw an ExecutionException if in doInBackground something went wrong.
                         if (createdFigure == null) {
-                            ((ImageHolderFigure) prototype).setImage(loaderFigure.getImageData(), loaderFigure.getBufferedImage());
+                            ((ImageHolderFigure) prototype).setImageBlob(loaderFigure.getImageBlob(), loaderFigure.getBufferedImage());
                         } else {
-                            ((ImageHolderFigure) createdFigure).setImage(loaderFigure.getImageData(), loaderFigure.getBufferedImage());
+                            ((ImageHolderFigure) createdFigure).setImageBlob(loaderFigure.getImageBlob(), loaderFigure.getBufferedImage());
                         }
                     } catch (IOException ex) {
                         JOptionPane.showMessageDialog(v.getComponent(),
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import static org.jhotdraw.draw.AttributeKeys.*;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link AttributeArray}.
+ */
+public class AttributeArrayNGTest {
+
+    public AttributeArrayNGTest() {
+    }
+
+    @Test
+    public void testOrdinalLookup() {
+        AttributeArray a = new AttributeArray();
+        a.put(STROKE_WIDTH, 2d);
+        a.put(FILL_COLOR, Color.RED);
+        a.put(STROKE_COLOR, Color.BLUE);
+        assertEquals(a.size(), 3);
+        for (int i = 1; i < a.size(); i++) {
+            assertTrue(a.getKey(i - 1).getOrdinal() < a.getKey(i).getOrdinal());
+        }
+        for (int i = 0; i < a.size(); i++) {
+            AttributeKey<?> key = a.getKey(i);
+            assertSame(AttributeKey.forOrdinal(key.getOrdinal()), key);
+            assertSame(a.getValue(i), a.get(key));
+        }
+        assertEquals(a.get(FILL_COLOR), Color.RED);
+        assertEquals(a.get(TEXT_COLOR), TEXT_COLOR.getDefaultValue());
+        assertEquals(a.remove(FILL_COLOR), Color.RED);
+        assertFalse(a.containsKey(FILL_COLOR));
+        assertEquals(a.size(), 2);
+    }
+
+    @Test
+    public void testKeysWithSameNameAreDistinct() {
+        AttributeKey<String> stringKey = new AttributeKey<>("attributeArrayTest", String.class, "a");
+        AttributeKey<Integer> intKey = new AttributeKey<>("attributeArrayTest", Integer.class, 1);
+        assertNotEquals(stringKey.getOrdinal(), intKey.getOrdinal());
+        assertSame(AttributeKey.forOrdinal(stringKey.getOrdinal()), stringKey);
+        assertSame(AttributeKey.forOrdinal(intKey.getOrdinal()), intKey);
+
+        AttributeArray a = new AttributeArray();
+        a.put(stringKey, "b");
+        a.put(intKey, 2);
+        assertEquals(a.size(), 2);
+        assertEquals(a.get(stringKey), "b");
+        assertEquals(a.get(intKey), Integer.valueOf(2));
+        for (int i = 0; i < a.size(); i++) {
+            AttributeKey<?> key = a.getKey(i);
+            assertTrue(key.isAssignable(a.getValue(i)));
+        }
+    }
+
+    @Test
+    public void testSerializationResolvesKeys() throws Exception {
+        AttributeArray a = new AttributeArray();
+        a.put(FILL_COLOR, Color.RED);
+        a.put(STROKE_WIDTH, 3d);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+            out.writeObject(a);
+        }
+        AttributeArray b;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+            b = (AttributeArray) in.readObject();
+        }
+        assertEquals(b, a);
+        assertSame(b.getKey(0), a.getKey(0));
+        assertSame(b.getKey(1), a.getKey(1));
+    }
+
+    @Test
+    public void testCopyOnWriteAfterClone() {
+        AttributeArray a = new AttributeArray();
+        a.put(FILL_COLOR, Color.RED);
+        AttributeArray b = a.clone();
+        b.put(FILL_COLOR, Color.GREEN);
+        b.put(STROKE_WIDTH, 5d);
+        assertEquals(a.get(FILL_COLOR), Color.RED);
+        assertFalse(a.containsKey(STROKE_WIDTH));
+
+        a.share();
+        assertTrue(a.isShared());
+        try {
+            a.put(FILL_COLOR, Color.BLUE);
+            fail("shared attribute arrays must not be changeable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        AttributeArray c = a.clone();
+        assertFalse(c.isShared());
+        c.put(FILL_COLOR, Color.BLUE);
+        assertEquals(a.get(FILL_COLOR), Color.RED);
+    }
+
+    @Test
+    public void testIntern() {
+        AttributeArray a = new AttributeArray();
+        a.put(FILL_COLOR, Color.RED);
+        a.put(STROKE_WIDTH, 2d);
+        AttributeArray b = new AttributeArray();
+        b.put(STROKE_WIDTH, 2d);
+        b.put(FILL_COLOR, Color.RED);
+        AttributeArray ia = AttributeArray.intern(a);
+        AttributeArray ib = AttributeArray.intern(b);
+        assertSame(ia, ib);
+        assertTrue(ia.isShared());
+        assertFalse(a.isShared());
+        b.put(FILL_COLOR, Color.GREEN);
+        assertNotSame(AttributeArray.intern(b), ia);
+    }
+
+    @Test
+    public void testFiguresCopyInternedAttributesOnWrite() {
+        RectangleFigure f1 = new RectangleFigure(0, 0, 10, 10);
+        RectangleFigure f2 = new RectangleFigure(20, 0, 10, 10);
+        f1.set(FILL_COLOR, Color.RED);
+        f2.set(FILL_COLOR, Color.RED);
+        f1.internAttributes();
+        f2.internAttributes();
+        f2.set(FILL_COLOR, Color.GREEN);
+        assertEquals(f1.get(FILL_COLOR), Color.RED);
+        assertEquals(f2.get(FILL_COLOR), Color.GREEN);
+
+        RectangleFigure f3 = f1.clone();
+        f3.set(FILL_COLOR, Color.BLUE);
+        assertEquals(f1.get(FILL_COLOR), Color.RED);
+        assertEquals(f3.get(FILL_COLOR), Color.BLUE);
+    }
+}
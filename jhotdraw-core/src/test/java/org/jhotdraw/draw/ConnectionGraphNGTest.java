@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.undo.UndoableEdit;
+import org.jhotdraw.draw.connector.ChopRectangleConnector;
+import org.jhotdraw.draw.event.FigureAdapter;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.event.TransformEdit;
+import org.jhotdraw.draw.figure.ConnectionFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.handle.Handle;
+import org.jhotdraw.draw.liner.Liner;
+import org.jhotdraw.geom.BezierPath;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link ConnectionGraph} and {@link ConnectionLayoutService}.
+ */
+public class ConnectionGraphNGTest {
+
+    public ConnectionGraphNGTest() {
+    }
+
+    private static LineConnectionFigure connect(Figure start, Figure end) {
+        LineConnectionFigure c = new LineConnectionFigure();
+        c.setStartPoint(start.getStartPoint());
+        c.setEndPoint(end.getStartPoint());
+        c.setStartConnector(new ChopRectangleConnector(start));
+        c.setEndConnector(new ChopRectangleConnector(end));
+        return c;
+    }
+
+    /**
+     * Asserts that the end point of the connection touches the figure.
+     */
+    private static void assertEndsAt(ConnectionFigure c, Figure f) {
+        Rectangle2D.Double r = f.getBounds();
+        r.add(r.x - 1, r.y - 1);
+        r.add(r.x + r.width + 2, r.y + r.height + 2);
+        assertTrue(r.contains(c.getEndPoint()), c.getEndPoint() + " not at " + f.getBounds());
+    }
+
+    @Test
+    public void testConnectAndDisconnect() {
+        Drawing drawing = new DefaultDrawing();
+        RectangleFigure a = new RectangleFigure(0, 0, 10, 10);
+        RectangleFigure b = new RectangleFigure(100, 0, 10, 10);
+        drawing.add(a);
+        drawing.add(b);
+        LineConnectionFigure c = connect(a, b);
+        drawing.add(c);
+        ConnectionGraph graph = drawing.getConnectionGraph();
+        assertEquals(graph.getDependents(a), Collections.singleton(c));
+        assertEquals(graph.getDependents(b), Collections.singleton(c));
+
+        c.setEndConnector(null);
+        assertEquals(graph.getDependents(a), Collections.singleton(c));
+        assertTrue(graph.getDependents(b).isEmpty());
+
+        c.setEndConnector(new ChopRectangleConnector(b));
+        assertEquals(graph.getDependents(b), Collections.singleton(c));
+
+        drawing.remove(c);
+        assertTrue(graph.getDependents(a).isEmpty());
+        assertTrue(graph.getDependents(b).isEmpty());
+        assertFalse(graph.isDirty(c));
+    }
+
+    @Test
+    public void testDeleteAndUndo() {
+        Drawing drawing = new DefaultDrawing();
+        RectangleFigure a = new RectangleFigure(0, 0, 10, 10);
+        RectangleFigure b = new RectangleFigure(100, 0, 10, 10);
+        drawing.add(a);
+        drawing.add(b);
+        LineConnectionFigure c = connect(a, b);
+        drawing.add(c);
+        final List<UndoableEdit> edits = new ArrayList<>();
+        drawing.addUndoableEditListener(new UndoableEditListener() {
+            @Override
+            public void undoableEditHappened(UndoableEditEvent e) {
+                edits.add(e.getEdit());
+            }
+        });
+        DefaultDrawingView view = new DefaultDrawingView();
+        view.setDrawing(drawing);
+        view.addToSelection(c);
+        view.delete();
+        assertEquals(edits.size(), 1);
+        ConnectionGraph graph = drawing.getConnectionGraph();
+        assertTrue(graph.getDependents(a).isEmpty());
+
+        edits.get(0).undo();
+        assertTrue(drawing.contains(c));
+        assertEquals(graph.getDependents(a), Collections.singleton(c));
+        assertEquals(graph.getDependents(b), Collections.singleton(c));
+
+        // The connection follows its end figure again
+        drawing.transformAll(Arrays.asList((Figure) b), AffineTransform.getTranslateInstance(0, 50));
+        assertEndsAt(c, b);
+        assertFalse(graph.isDirty(c));
+
+        edits.get(0).redo();
+        assertTrue(graph.getDependents(a).isEmpty());
+        assertTrue(graph.getDependents(b).isEmpty());
+    }
+
+    @Test
+    public void testTransformAndUndo() {
+        Drawing drawing = new DefaultDrawing();
+        RectangleFigure a = new RectangleFigure(0, 0, 10, 10);
+        RectangleFigure b = new RectangleFigure(100, 0, 10, 10);
+        drawing.add(a);
+        drawing.add(b);
+        LineConnectionFigure c1 = connect(a, b);
+        drawing.add(c1);
+        // A connection which is attached to another connection
+        LineConnectionFigure c2 = connect(a, c1);
+        drawing.add(c2);
+        ConnectionGraph graph = drawing.getConnectionGraph();
+        assertEquals(graph.getDependents(c1), Collections.singleton(c2));
+
+        AffineTransform tx = AffineTransform.getTranslateInstance(0, 200);
+        drawing.transformAll(Arrays.asList((Figure) b), tx);
+        TransformEdit edit = new TransformEdit(drawing, Arrays.asList((Figure) b), tx);
+        assertEndsAt(c1, b);
+        assertEndsAt(c2, c1);
+        assertFalse(graph.isDirty(c1));
+        assertFalse(graph.isDirty(c2));
+
+        edit.undo();
+        assertEquals(b.getBounds(), new Rectangle2D.Double(100, 0, 10, 10));
+        assertEndsAt(c1, b);
+        assertEndsAt(c2, c1);
+        assertTrue(graph.getDirtyConnections().isEmpty());
+        assertEquals(graph.getDependents(b), Collections.singleton(c1));
+
+        edit.redo();
+        assertEndsAt(c1, b);
+        assertEndsAt(c2, c1);
+    }
+
+    @Test
+    public void testDirtyConnectionsAreSortedByDependency() {
+        Drawing drawing = new DefaultDrawing();
+        RectangleFigure a = new RectangleFigure(0, 0, 10, 10);
+        RectangleFigure b = new RectangleFigure(100, 0, 10, 10);
+        drawing.add(a);
+        drawing.add(b);
+        LineConnectionFigure c1 = connect(a, b);
+        drawing.add(c1);
+        LineConnectionFigure c2 = connect(b, c1);
+        drawing.add(c2);
+        LineConnectionFigure c3 = connect(c2, a);
+        drawing.add(c3);
+        ConnectionGraph graph = drawing.getConnectionGraph();
+
+        graph.markDirty(c3);
+        assertEquals(graph.getDirtyConnections(), Arrays.asList(c3));
+        // Marking c1 dirty also marks its dependents c2 and c3
+        graph.markDirty(c1);
+        assertEquals(graph.getDirtyConnections(), Arrays.asList(c1, c2, c3));
+        graph.layoutDirtyConnections();
+        assertTrue(graph.getDirtyConnections().isEmpty());
+
+        // Removing c2 also removes c3, which is attached to c2
+        graph.markDirty(c1);
+        drawing.remove(c2);
+        assertFalse(drawing.contains(c3));
+        assertFalse(graph.isDirty(c2));
+        assertFalse(graph.isDirty(c3));
+        assertEquals(graph.getDependents(b), Collections.singleton(c1));
+        assertEquals(graph.getDirtyConnections(), Arrays.asList(c1));
+        graph.layoutDirtyConnections();
+        assertTrue(graph.getDirtyConnections().isEmpty());
+    }
+
+    @Test
+    public void testParallelLayout() {
+        Drawing drawing = new DefaultDrawing();
+        RectangleFigure hub = new RectangleFigure(0, 0, 10, 10);
+        drawing.add(hub);
+        List<RectangleFigure> nodes = new ArrayList<>();
+        List<LineConnectionFigure> connections = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            RectangleFigure node = new RectangleFigure(100 + i * 20, 100, 10, 10);
+            nodes.add(node);
+            drawing.add(node);
+            LineConnectionFigure c = connect(node, hub);
+            connections.add(c);
+            drawing.add(c);
+        }
+        // Move the hub without updating the connections
+        ConnectionGraph graph = drawing.getConnectionGraph();
+        drawing.beginUpdate();
+        try {
+            drawing.transformAll(Arrays.asList((Figure) hub), AffineTransform.getTranslateInstance(500, 500));
+            for (LineConnectionFigure c : connections) {
+                assertTrue(graph.isDirty(c));
+            }
+            List<ConnectionFigure> dirty = graph.getDirtyConnections();
+            assertEquals(dirty.size(), connections.size());
+
+            Lock lock = drawing.getLock().writeLock();
+            lock.lock();
+            try {
+                new ConnectionLayoutService(new ForkJoinPool(4)).layout(dirty);
+            } finally {
+                lock.unlock();
+            }
+            for (LineConnectionFigure c : connections) {
+                assertEndsAt(c, hub);
+            }
+        } finally {
+            drawing.commitUpdate();
+        }
+        assertTrue(graph.getDirtyConnections().isEmpty());
+
+        // Laying out the connections in the service and on commit yields the
+        // same points
+        ConnectionLayoutService.getDefault().layout(drawing, connections);
+        for (LineConnectionFigure c : connections) {
+            assertEndsAt(c, hub);
+            Point2D.Double p = c.getStartPoint();
+            assertTrue(p.y <= 111, "start point " + p);
+        }
+    }
+
+    /**
+     * A liner which only implements the method which lines out the figure.
+     */
+    private static class StraightLiner implements Liner {
+
+        private int lineoutCount;
+
+        @Override
+        public void lineout(ConnectionFigure figure) {
+            lineoutCount++;
+        }
+
+        @Override
+        public Collection<Handle> createHandles(BezierPath path) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Liner clone() {
+            return new StraightLiner();
+        }
+    }
+
+    @Test
+    public void testLinerWithoutDetachedLineout() {
+        Drawing drawing = new DefaultDrawing();
+        RectangleFigure a = new RectangleFigure(0, 0, 10, 10);
+        RectangleFigure b = new RectangleFigure(100, 0, 10, 10);
+        drawing.add(a);
+        drawing.add(b);
+        LineConnectionFigure c = connect(a, b);
+        StraightLiner liner = new StraightLiner();
+        c.setLiner(liner);
+        drawing.add(c);
+        assertFalse(liner.isDetachedLineoutSupported());
+        // The connection can not be laid out concurrently
+        assertNull(c.computeConnectionPath());
+
+        b.willChange();
+        b.transform(AffineTransform.getTranslateInstance(0, 100));
+        b.changed();
+        liner.lineoutCount = 0;
+        Lock lock = drawing.getLock().writeLock();
+        lock.lock();
+        try {
+            new ConnectionLayoutService(new ForkJoinPool(4)).layout(Arrays.asList(c));
+        } finally {
+            lock.unlock();
+        }
+        assertTrue(liner.lineoutCount > 0);
+        assertEndsAt(c, b);
+    }
+
+    @Test(timeOut = 30000)
+    public void testLargeCycleIsLaidOutAtMostTwice() {
+        final Drawing drawing = new DefaultDrawing();
+        int n = 300;
+        List<LineConnectionFigure> ring = new ArrayList<>();
+        List<StraightLiner> liners = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            RectangleFigure node = new RectangleFigure(i * 20, 0, 10, 10);
+            drawing.add(node);
+            LineConnectionFigure c = new LineConnectionFigure();
+            c.setStartPoint(node.getStartPoint());
+            c.setEndPoint(new Point2D.Double(i * 20, 100));
+            c.setStartConnector(new ChopRectangleConnector(node));
+            StraightLiner liner = new StraightLiner();
+            c.setLiner(liner);
+            ring.add(c);
+            liners.add(liner);
+            drawing.add(c);
+        }
+        // Close the cycle: each connection ends at the next connection
+        for (int i = 0; i < n; i++) {
+            ring.get(i).setEndConnector(new ChopRectangleConnector(ring.get((i + 1) % n)));
+        }
+        // A figure which moves whenever the first connection changes, and a
+        // connection from this figure, to which the cycle is attached. Each
+        // layout of the cycle marks the connection dirty, and the layout of
+        // the connection marks the cycle dirty again.
+        final RectangleFigure follower = new RectangleFigure(0, 200, 10, 10);
+        drawing.add(follower);
+        RectangleFigure anchor = new RectangleFigure(100, 200, 10, 10);
+        drawing.add(anchor);
+        LineConnectionFigure feedback = connect(follower, anchor);
+        drawing.add(feedback);
+        ring.get(0).addFigureListener(new FigureAdapter() {
+            @Override
+            public void figureChanged(FigureEvent e) {
+                follower.willChange();
+                follower.transform(AffineTransform.getTranslateInstance(1, 0));
+                follower.changed();
+            }
+        });
+        ring.get(5).setStartConnector(new ChopRectangleConnector(feedback));
+        for (StraightLiner liner : liners) {
+            liner.lineoutCount = 0;
+        }
+
+        // The connections are laid out concurrently on commit
+        ConnectionGraph graph = drawing.getConnectionGraph();
+        Lock lock = drawing.getLock().writeLock();
+        lock.lock();
+        try {
+            drawing.beginUpdate();
+            try {
+                graph.markDirty(ring.get(0));
+                assertEquals(graph.getDirtyConnections().size(), n);
+            } finally {
+                drawing.commitUpdate();
+            }
+        } finally {
+            lock.unlock();
+        }
+        assertTrue(graph.getDirtyConnections().isEmpty());
+        for (int i = 0; i < n; i++) {
+            int count = liners.get(i).lineoutCount;
+            assertTrue(count >= 1 && count <= 2, "connection " + i + " laid out " + count + " times");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.jhotdraw.io.Blob;
+import org.jhotdraw.io.BlobStore;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests decoding, downscaling and eviction of {@link ImageCache}.
+ */
+public class ImageCacheNGTest {
+
+    private final BlobStore store = new BlobStore(Integer.MAX_VALUE, 1 << 20);
+
+    public ImageCacheNGTest() {
+    }
+
+    /**
+     * Returns the PNG data of an image with the specified size and color.
+     */
+    private Blob createImageData(int width, int height, Color color) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setColor(color);
+            g.fillRect(0, 0, width, height);
+        } finally {
+            g.dispose();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "PNG", out);
+        return store.put(out.toByteArray());
+    }
+
+    /**
+     * Draws the image into a rectangle of the specified size on the drawing
+     * thread.
+     */
+    private static void draw(ImageCache.CachedImage image, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            assertTrue(image.draw(g, new Rectangle2D.Double(0, 0, width, height), null, null), "drawn");
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Test
+    public void testDecodesOnFirstUse() throws IOException {
+        ImageCache cache = new ImageCache(1L << 20);
+        Blob data = createImageData(40, 30, Color.RED);
+        ImageCache.CachedImage image = cache.create(data, null);
+        assertEquals(cache.getBytes(), 0L, "not decoded before use");
+        assertSame(cache.create(data, null), image, "shared by blob");
+
+        BufferedImage decoded = image.getImage();
+        assertNotNull(decoded, "decoded");
+        assertEquals(decoded.getWidth(), 40);
+        assertEquals(decoded.getHeight(), 30);
+        assertEquals(cache.getBytes(), 40L * 30 * 4, "decoded raster");
+        assertSame(image.getImage(), decoded, "decoded only once");
+    }
+
+    @Test
+    public void testDrawDownscalesToPyramidLevel() throws IOException {
+        ImageCache cache = new ImageCache(1L << 20);
+        ImageCache.CachedImage image = cache.create(createImageData(64, 64, Color.BLUE), null);
+
+        draw(image, 64, 64);
+        assertEquals(cache.getBytes(), 64L * 64 * 4, "full resolution only");
+
+        // A quarter of the size is drawn from level 2, which is
+        // downscaled from level 1
+        draw(image, 16, 16);
+        assertEquals(cache.getBytes(), (64L * 64 + 32 * 32 + 16 * 16) * 4, "levels 0 to 2");
+
+        // Drawing at a size in between reuses level 1
+        draw(image, 40, 40);
+        assertEquals(cache.getBytes(), (64L * 64 + 32 * 32 + 16 * 16) * 4, "no new level");
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedImage() throws IOException {
+        long imageBytes = 64L * 64 * 4;
+        ImageCache cache = new ImageCache(imageBytes + imageBytes / 2);
+        ImageCache.CachedImage a = cache.create(createImageData(64, 64, Color.RED), null);
+        ImageCache.CachedImage b = cache.create(createImageData(64, 64, Color.GREEN), null);
+
+        assertNotNull(a.getImage(), "a decoded");
+        assertEquals(cache.getBytes(), imageBytes);
+        assertNotNull(b.getImage(), "b decoded");
+        assertEquals(cache.getBytes(), imageBytes, "a evicted");
+
+        // The data is kept, so that an evicted image is decoded again
+        BufferedImage decoded = a.getImage();
+        assertNotNull(decoded, "a decoded again");
+        assertEquals(decoded.getRGB(0, 0), Color.RED.getRGB());
+        assertEquals(cache.getBytes(), imageBytes, "b evicted");
+        assertFalse(a.isFailed());
+    }
+
+    @Test
+    public void testUndecodableDataIsMarkedFailed() {
+        ImageCache cache = new ImageCache(1L << 20);
+        ImageCache.CachedImage image = cache.create(store.put(new byte[]{1, 2, 3, 4}), null);
+        assertNull(image.getImage(), "no image");
+        assertTrue(image.isFailed(), "failed");
+        assertEquals(cache.getBytes(), 0L);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the locking and the queries of {@link QuadTreeDrawing}.
+ */
+public class QuadTreeDrawingNGTest {
+
+    public QuadTreeDrawingNGTest() {
+    }
+
+    @Test(timeOut = 10000)
+    public void testFigureChangedWhileReadLocked() {
+        QuadTreeDrawing drawing = new QuadTreeDrawing();
+        RectangleFigure f = new RectangleFigure(0, 0, 10, 10);
+        drawing.add(f);
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            // Must not try to upgrade the read lock
+            f.willChange();
+            f.setBounds(new Point2D.Double(100, 100), new Point2D.Double(110, 110));
+            f.changed();
+            lock.lock();
+            lock.unlock();
+        } finally {
+            lock.unlock();
+        }
+        assertSame(drawing.findFigure(new Point2D.Double(105, 105)), f);
+        assertNull(drawing.findFigure(new Point2D.Double(5, 5)));
+    }
+
+    @Test
+    public void testFigureChangedWithoutLock() {
+        QuadTreeDrawing drawing = new QuadTreeDrawing();
+        RectangleFigure f = new RectangleFigure(0, 0, 10, 10);
+        drawing.add(f);
+        f.willChange();
+        f.setBounds(new Point2D.Double(100, 100), new Point2D.Double(110, 110));
+        f.changed();
+        assertSame(drawing.findFigure(new Point2D.Double(105, 105)), f);
+        assertEquals(drawing.findFigures(new Rectangle2D.Double(0, 0, 20, 20)).size(), 0);
+        assertTrue(drawing.contains(f));
+    }
+
+    @Test(timeOut = 10000)
+    public void testReaderOnOtherThread() throws Exception {
+        final QuadTreeDrawing drawing = new QuadTreeDrawing();
+        final RectangleFigure f = new RectangleFigure(0, 0, 10, 10);
+        drawing.add(f);
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    drawing.findFigures(new Rectangle2D.Double(0, 0, 1000, 1000));
+                }
+            }
+        };
+        reader.start();
+        for (int i = 0; i < 1000; i++) {
+            f.willChange();
+            f.setBounds(new Point2D.Double(i, i), new Point2D.Double(i + 10, i + 10));
+            f.changed();
+        }
+        reader.join();
+        assertSame(drawing.findFigure(new Point2D.Double(1004, 1004)), f);
+    }
+
+    /**
+     * A figure whose drawing area is its bounds, which are empty if its width
+     * or height is zero.
+     */
+    private static class TightRectangleFigure extends RectangleFigure {
+
+        private static final long serialVersionUID = 1L;
+
+        public TightRectangleFigure(double x, double y, double width, double height) {
+            super(x, y, width, height);
+        }
+
+        @Override
+        public Rectangle2D.Double getDrawingArea() {
+            return getBounds();
+        }
+    }
+
+    @Test
+    public void testFindFiguresWithinMatchesDefaultDrawing() {
+        QuadTreeDrawing quadTree = new QuadTreeDrawing();
+        DefaultDrawing plain = new DefaultDrawing();
+        double[][] rects = {
+            // Points, lines and a rectangle inside, on the border and outside
+            {20, 20, 0, 0}, {10, 10, 0, 0}, {30, 30, 0, 0}, {31, 31, 0, 0},
+            {10, 15, 0, 10}, {15, 10, 10, 0}, {30, 10, 0, 20}, {10, 9, 20, 0},
+            {12, 12, 5, 5}, {25, 25, 5, 5}, {28, 28, 5, 5}
+        };
+        for (double[] r : rects) {
+            quadTree.add(new TightRectangleFigure(r[0], r[1], r[2], r[3]));
+            plain.add(new TightRectangleFigure(r[0], r[1], r[2], r[3]));
+        }
+        Rectangle2D.Double[] queries = {
+            new Rectangle2D.Double(10, 10, 20, 20),
+            new Rectangle2D.Double(10, 10, 0, 20),
+            new Rectangle2D.Double(20, 20, 0, 0),
+            new Rectangle2D.Double(10, 10, -5, 20),
+            new Rectangle2D.Double(0, 0, 100, 100)
+        };
+        for (Rectangle2D.Double q : queries) {
+            List<Figure> expected = plain.findFiguresWithin(q);
+            List<Figure> actual = quadTree.findFiguresWithin(q);
+            assertEquals(actual.size(), expected.size(), "query " + q);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(actual.get(i).getBounds(), expected.get(i).getBounds(), "query " + q);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the tile cache of {@link TiledDrawingRenderer}.
+ */
+public class TiledDrawingRendererNGTest {
+
+    public TiledDrawingRendererNGTest() {
+    }
+
+    /**
+     * Paints the visible rectangle and waits until all scheduled tiles have
+     * been rendered.
+     */
+    private static void paintAndWait(TiledDrawingRenderer renderer, Drawing drawing,
+            Point translation, Rectangle visibleRect) throws InterruptedException {
+        Rectangle range = renderer.getTileRange(visibleRect, translation);
+        int dirty = 0;
+        for (int y = range.y; y < range.y + range.height; y++) {
+            for (int x = range.x; x < range.x + range.width; x++) {
+                if (renderer.isDirty(1.0, x, y)) {
+                    dirty++;
+                }
+            }
+        }
+        final CountDownLatch latch = new CountDownLatch(dirty);
+        renderer.setListener(new TiledDrawingRenderer.Listener() {
+            @Override
+            public void tileRendered(double scale, Rectangle bounds) {
+                latch.countDown();
+            }
+        });
+        BufferedImage img = new BufferedImage(visibleRect.width, visibleRect.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            renderer.paint(g, drawing, 1.0, translation, visibleRect, null);
+        } finally {
+            g.dispose();
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS), "tiles rendered");
+        renderer.setListener(null);
+    }
+
+    @Test
+    public void testTileRangeAndBounds() {
+        TiledDrawingRenderer renderer = new TiledDrawingRenderer(100, 1, 16);
+        try {
+            assertEquals(renderer.getTileRange(new Rectangle(0, 0, 100, 100), new Point(0, 0)),
+                    new Rectangle(0, 0, 1, 1));
+            assertEquals(renderer.getTileRange(new Rectangle(0, 0, 101, 250), new Point(0, 0)),
+                    new Rectangle(0, 0, 2, 3));
+            assertEquals(renderer.getTileRange(new Rectangle(10, 20, 100, 100), new Point(50, 0)),
+                    new Rectangle(0, 0, 2, 2));
+            // Negative translations must round towards negative infinity
+            assertEquals(renderer.getTileRange(new Rectangle(0, 0, 100, 100), new Point(-1, -150)),
+                    new Rectangle(-1, -2, 2, 2));
+            assertEquals(renderer.getTileBounds(-1, 2), new Rectangle(-100, 200, 100, 100));
+        } finally {
+            renderer.dispose();
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void testPaintDrawsTilesAtViewLocation() throws Exception {
+        Drawing drawing = new QuadTreeDrawing();
+        RectangleFigure f = new RectangleFigure(120, 130, 20, 20);
+        f.set(AttributeKeys.FILL_COLOR, java.awt.Color.RED);
+        f.set(AttributeKeys.STROKE_COLOR, null);
+        drawing.add(f);
+        TiledDrawingRenderer renderer = new TiledDrawingRenderer(64, 2, 64);
+        try {
+            Point translation = new Point(100, 100);
+            Rectangle visibleRect = new Rectangle(0, 0, 200, 200);
+            paintAndWait(renderer, drawing, translation, visibleRect);
+
+            BufferedImage img = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = img.createGraphics();
+            renderer.paint(g, drawing, 1.0, translation, visibleRect, null);
+            g.dispose();
+            // The figure is at drawing (120,130)-(140,150), i.e. at view (20,30)-(40,50)
+            assertEquals(img.getRGB(30, 40), 0xffff0000);
+            assertEquals(img.getRGB(10, 40), 0);
+            assertEquals(img.getRGB(30, 60), 0);
+        } finally {
+            renderer.dispose();
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void testWorkersWaitUntilFigureHasChanged() throws Exception {
+        Drawing drawing = new DefaultDrawing();
+        RectangleFigure f = new RectangleFigure(10, 10, 20, 20);
+        f.set(AttributeKeys.FILL_COLOR, java.awt.Color.RED);
+        f.set(AttributeKeys.STROKE_COLOR, null);
+        drawing.add(f);
+        TiledDrawingRenderer renderer = new TiledDrawingRenderer(64, 2, 64);
+        try {
+            Point translation = new Point(0, 0);
+            Rectangle visibleRect = new Rectangle(0, 0, 64, 64);
+            final CountDownLatch latch = new CountDownLatch(1);
+            renderer.setListener(new TiledDrawingRenderer.Listener() {
+                @Override
+                public void tileRendered(double scale, Rectangle bounds) {
+                    latch.countDown();
+                }
+            });
+            BufferedImage img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+            f.willChange();
+            f.set(AttributeKeys.FILL_COLOR, java.awt.Color.BLUE);
+            Graphics2D g = img.createGraphics();
+            renderer.paint(g, drawing, 1.0, translation, visibleRect, null);
+            g.dispose();
+            // The worker must not draw the figure in the middle of a change
+            assertFalse(latch.await(200, TimeUnit.MILLISECONDS), "tile rendered during change");
+            f.setBounds(new Point2D.Double(30, 30), new Point2D.Double(50, 50));
+            f.changed();
+            assertTrue(latch.await(10, TimeUnit.SECONDS), "tile rendered");
+            renderer.setListener(null);
+
+            g = img.createGraphics();
+            renderer.paint(g, drawing, 1.0, translation, visibleRect, null);
+            g.dispose();
+            assertEquals(img.getRGB(40, 40), 0xff0000ff);
+            assertEquals(img.getRGB(20, 20), 0);
+        } finally {
+            renderer.dispose();
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void testInvalidate() throws Exception {
+        Drawing drawing = new QuadTreeDrawing();
+        drawing.add(new RectangleFigure(10, 10, 300, 300));
+        TiledDrawingRenderer renderer = new TiledDrawingRenderer(100, 2, 64);
+        try {
+            Rectangle visibleRect = new Rectangle(0, 0, 300, 300);
+            Point translation = new Point(0, 0);
+            paintAndWait(renderer, drawing, translation, visibleRect);
+            for (int y = 0; y < 3; y++) {
+                for (int x = 0; x < 3; x++) {
+                    assertTrue(renderer.isCached(1.0, x, y));
+                    assertFalse(renderer.isDirty(1.0, x, y));
+                }
+            }
+
+            renderer.invalidate(new Rectangle2D.Double(150, 50, 10, 10));
+            for (int y = 0; y < 3; y++) {
+                for (int x = 0; x < 3; x++) {
+                    assertEquals(renderer.isDirty(1.0, x, y), x == 1 && y == 0, "tile " + x + "," + y);
+                }
+            }
+
+            paintAndWait(renderer, drawing, translation, visibleRect);
+            assertFalse(renderer.isDirty(1.0, 1, 0));
+
+            renderer.invalidateAll();
+            for (int y = 0; y < 3; y++) {
+                for (int x = 0; x < 3; x++) {
+                    assertTrue(renderer.isDirty(1.0, x, y));
+                }
+            }
+        } finally {
+            renderer.dispose();
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void testLeastRecentlyUsedTilesAreEvicted() throws Exception {
+        Drawing drawing = new QuadTreeDrawing();
+        drawing.add(new RectangleFigure(0, 0, 1000, 1000));
+        TiledDrawingRenderer renderer = new TiledDrawingRenderer(100, 2, 4);
+        try {
+            Point translation = new Point(0, 0);
+            paintAndWait(renderer, drawing, translation, new Rectangle(0, 0, 200, 200));
+            assertEquals(renderer.getCachedTileCount(), 4);
+
+            paintAndWait(renderer, drawing, translation, new Rectangle(400, 400, 200, 200));
+            assertEquals(renderer.getCachedTileCount(), 4);
+            for (int y = 0; y < 2; y++) {
+                for (int x = 0; x < 2; x++) {
+                    assertFalse(renderer.isCached(1.0, x, y));
+                    assertTrue(renderer.isCached(1.0, x + 4, y + 4));
+                }
+            }
+        } finally {
+            renderer.dispose();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.event;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import static org.jhotdraw.draw.AttributeKeys.FILL_COLOR;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.geom.BezierPath;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@code merge} methods of the edits which implement
+ * {@link org.jhotdraw.undo.MergeableEdit}. Undoing a merged edit must restore
+ * the state from before the first edit, and redoing it must restore the state
+ * after the last edit.
+ *
+ * @author Werner Randelshofer
+ */
+public class MergeableEditsNGTest {
+
+    private static BezierFigure createBezierFigure() {
+        BezierFigure f = new BezierFigure();
+        f.willChange();
+        f.addNode(new BezierPath.Node(0, 0));
+        f.addNode(new BezierPath.Node(BezierPath.C1C2_MASK, 10, 0, 5, -5, 15, 5));
+        f.addNode(new BezierPath.Node(10, 10));
+        f.changed();
+        return f;
+    }
+
+    private static void assertNodes(BezierFigure f, double[] expected) {
+        assertEquals(f.getNodeCount() * 6, expected.length);
+        for (int i = 0; i < f.getNodeCount(); i++) {
+            BezierPath.Node n = f.getNode(i);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(n.x[c], expected[i * 6 + c * 2], 1e-9, "node " + i + " x" + c);
+                assertEquals(n.y[c], expected[i * 6 + c * 2 + 1], 1e-9, "node " + i + " y" + c);
+            }
+        }
+    }
+
+    private static double[] getNodes(BezierFigure f) {
+        double[] coords = new double[f.getNodeCount() * 6];
+        for (int i = 0; i < f.getNodeCount(); i++) {
+            BezierPath.Node n = f.getNode(i);
+            for (int c = 0; c < 3; c++) {
+                coords[i * 6 + c * 2] = n.x[c];
+                coords[i * 6 + c * 2 + 1] = n.y[c];
+            }
+        }
+        return coords;
+    }
+
+    private static void transform(Figure f, AffineTransform tx) {
+        f.willChange();
+        f.transform(tx);
+        f.changed();
+    }
+
+    @Test
+    public void testMergeAttributeChangeEdit() {
+        RectangleFigure f = new RectangleFigure(0, 0, 10, 10);
+        f.set(FILL_COLOR, Color.RED);
+        AttributeChangeEdit<Color> e1 = new AttributeChangeEdit<>(f, FILL_COLOR, Color.RED, Color.GREEN);
+        f.set(FILL_COLOR, Color.GREEN);
+        AttributeChangeEdit<Color> e2 = new AttributeChangeEdit<>(f, FILL_COLOR, Color.GREEN, Color.BLUE);
+        f.set(FILL_COLOR, Color.BLUE);
+
+        assertTrue(e1.merge(e2));
+        assertFalse(e2.canUndo());
+        e1.undo();
+        assertEquals(f.get(FILL_COLOR), Color.RED);
+        e1.redo();
+        assertEquals(f.get(FILL_COLOR), Color.BLUE);
+    }
+
+    @Test
+    public void testAttributeChangeEditDoesNotMergeOtherFigure() {
+        RectangleFigure f1 = new RectangleFigure();
+        RectangleFigure f2 = new RectangleFigure();
+        AttributeChangeEdit<Color> e1 = new AttributeChangeEdit<>(f1, FILL_COLOR, Color.RED, Color.GREEN);
+        AttributeChangeEdit<Color> e2 = new AttributeChangeEdit<>(f2, FILL_COLOR, Color.RED, Color.GREEN);
+        assertFalse(e1.merge(e2));
+        assertTrue(e2.canUndo());
+    }
+
+    @Test
+    public void testMergeSetBoundsEdit() {
+        RectangleFigure f = new RectangleFigure(0, 0, 10, 10);
+        Point2D.Double a0 = new Point2D.Double(0, 0), l0 = new Point2D.Double(10, 10);
+        Point2D.Double a1 = new Point2D.Double(5, 5), l1 = new Point2D.Double(20, 20);
+        Point2D.Double a2 = new Point2D.Double(-5, 1), l2 = new Point2D.Double(3, 4);
+        SetBoundsEdit e1 = new SetBoundsEdit(f, a0, l0, a1, l1);
+        SetBoundsEdit e2 = new SetBoundsEdit(f, a1, l1, a2, l2);
+        f.willChange();
+        f.setBounds(a2, l2);
+        f.changed();
+
+        assertTrue(e1.merge(e2));
+        e1.undo();
+        assertEquals(f.getBounds(), new Rectangle2D.Double(0, 0, 10, 10));
+        e1.redo();
+        assertEquals(f.getBounds(), new Rectangle2D.Double(-5, 1, 8, 3));
+    }
+
+    @Test
+    public void testMergeBezierNodeEdit() {
+        BezierFigure f = createBezierFigure();
+        BezierPath.Node n0 = f.getNode(1);
+        BezierPath.Node n1 = new BezierPath.Node(20, 20);
+        BezierPath.Node n2 = new BezierPath.Node(30, 40);
+        BezierNodeEdit e1 = new BezierNodeEdit(f, 1, n0, n1);
+        BezierNodeEdit e2 = new BezierNodeEdit(f, 1, n1, n2);
+        f.willChange();
+        f.setNode(1, n2);
+        f.changed();
+
+        assertTrue(e1.merge(e2));
+        assertFalse(e1.merge(new BezierNodeEdit(f, 2, n0, n1)));
+        e1.undo();
+        assertEquals(f.getNode(1).x[0], 10d);
+        assertEquals(f.getNode(1).x[1], 5d);
+        assertEquals(f.getNode(1).mask, BezierPath.C1C2_MASK);
+        e1.redo();
+        assertEquals(f.getNode(1).x[0], 30d);
+        assertEquals(f.getNode(1).y[0], 40d);
+    }
+
+    @Test
+    public void testMergeTransformEdit() {
+        RectangleFigure f = new RectangleFigure(0, 0, 10, 10);
+        List<Figure> figures = new ArrayList<>();
+        figures.add(f);
+        AffineTransform t1 = AffineTransform.getTranslateInstance(5, 0);
+        AffineTransform t2 = AffineTransform.getScaleInstance(2, 3);
+        transform(f, t1);
+        TransformEdit e1 = new TransformEdit(figures, t1);
+        transform(f, t2);
+        TransformEdit e2 = new TransformEdit(new ArrayList<>(figures), t2);
+
+        assertTrue(e1.merge(e2));
+        assertFalse(e2.canUndo());
+        e1.undo();
+        assertEquals(f.getBounds(), new Rectangle2D.Double(0, 0, 10, 10));
+        e1.redo();
+        assertEquals(f.getBounds(), new Rectangle2D.Double(10, 0, 20, 30));
+    }
+
+    @Test
+    public void testTransformEditDoesNotMergeOtherFigures() {
+        List<Figure> figures1 = new ArrayList<>();
+        figures1.add(new RectangleFigure());
+        List<Figure> figures2 = new ArrayList<>();
+        figures2.add(new RectangleFigure());
+        TransformEdit e1 = new TransformEdit(figures1, new AffineTransform());
+        TransformEdit e2 = new TransformEdit(figures2, new AffineTransform());
+        assertFalse(e1.merge(e2));
+    }
+
+    @Test
+    public void testMergeTransformRestoreEditWithRestoreData() {
+        BezierFigure f = createBezierFigure();
+        double[] original = getNodes(f);
+        Object d0 = f.getTransformRestoreData();
+        transform(f, AffineTransform.getRotateInstance(0.3));
+        Object d1 = f.getTransformRestoreData();
+        transform(f, AffineTransform.getTranslateInstance(7, -3));
+        Object d2 = f.getTransformRestoreData();
+        double[] transformed = getNodes(f);
+        TransformRestoreEdit e1 = new TransformRestoreEdit(f, d0, d1);
+        TransformRestoreEdit e2 = new TransformRestoreEdit(f, d1, d2);
+
+        assertTrue(e1.merge(e2));
+        e1.undo();
+        assertNodes(f, original);
+        e1.redo();
+        assertNodes(f, transformed);
+    }
+
+    @Test
+    public void testMergeTransformRestoreEditWithTransform() {
+        BezierFigure f = createBezierFigure();
+        double[] original = getNodes(f);
+        AffineTransform t1 = AffineTransform.getRotateInstance(0.3);
+        AffineTransform t2 = AffineTransform.getScaleInstance(2, 0.5);
+        TransformRestoreEdit e1 = new TransformRestoreEdit(f, f.getTransformRestoreData(), t1);
+        transform(f, t1);
+        TransformRestoreEdit e2 = new TransformRestoreEdit(f, f.getTransformRestoreData(), t2);
+        transform(f, t2);
+        double[] transformed = getNodes(f);
+
+        assertTrue(e1.merge(e2));
+        e1.undo();
+        assertNodes(f, original);
+        e1.redo();
+        assertNodes(f, transformed);
+    }
+
+    @Test
+    public void testTransformRestoreEditDoesNotMergeMixedEdits() {
+        BezierFigure f = createBezierFigure();
+        Object d0 = f.getTransformRestoreData();
+        TransformRestoreEdit e1 = new TransformRestoreEdit(f, d0, d0);
+        TransformRestoreEdit e2 = new TransformRestoreEdit(f, d0, new AffineTransform());
+        assertFalse(e1.merge(e2));
+        assertFalse(new TransformRestoreEdit(createBezierFigure(), d0, d0).merge(e1));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.event;
+
+import java.awt.geom.AffineTransform;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.GroupFigure;
+import org.jhotdraw.geom.BezierPath;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link TransformRestoreEdit} with figures which transform their points
+ * directly, and with figures which do not.
+ *
+ * @author Werner Randelshofer
+ */
+public class TransformRestoreEditNGTest {
+
+    /**
+     * A figure which stores rotations in a transform, like the SVG and ODG
+     * bezier figures do with their TRANSFORM attribute.
+     */
+    private static class TransformingFigure extends BezierFigure {
+
+        private static final long serialVersionUID = 1L;
+        private AffineTransform transform;
+
+        @Override
+        public void transform(AffineTransform tx) {
+            if (transform == null) {
+                transform = (AffineTransform) tx.clone();
+            } else {
+                transform.preConcatenate(tx);
+            }
+        }
+
+        @Override
+        public Object getTransformRestoreData() {
+            return new Object[]{super.getTransformRestoreData(),
+                transform == null ? null : transform.clone()};
+        }
+
+        @Override
+        public void restoreTransformTo(Object geometry) {
+            Object[] data = (Object[]) geometry;
+            super.restoreTransformTo(data[0]);
+            transform = data[1] == null ? null : (AffineTransform) ((AffineTransform) data[1]).clone();
+        }
+
+        @Override
+        public boolean isTransformingPointsDirectly() {
+            return false;
+        }
+    }
+
+    private static <T extends BezierFigure> T addNodes(T f) {
+        f.willChange();
+        f.addNode(new BezierPath.Node(0, 0));
+        f.addNode(new BezierPath.Node(10, 0));
+        f.addNode(new BezierPath.Node(10, 10));
+        f.changed();
+        return f;
+    }
+
+    private static TransformRestoreEdit transform(BezierFigure f, AffineTransform tx) {
+        TransformRestoreEdit edit = new TransformRestoreEdit(f, f.getTransformRestoreData(), tx);
+        f.willChange();
+        f.transform(tx);
+        f.changed();
+        return edit;
+    }
+
+    @Test
+    public void testCompactEditOfBezierFigure() {
+        BezierFigure f = addNodes(new BezierFigure());
+        TransformRestoreEdit edit = transform(f, AffineTransform.getRotateInstance(1));
+        assertEquals(edit.getEstimatedSize(), EditSizeEstimator.EDIT_SIZE
+                + EditSizeEstimator.estimate(new AffineTransform()));
+        edit.undo();
+        assertEquals(f.getNode(1).x[0], 10, 1e-9);
+        assertEquals(f.getNode(1).y[0], 0, 1e-9);
+    }
+
+    @Test
+    public void testEditOfFigureWhichDoesNotTransformItsPoints() {
+        TransformingFigure f = addNodes(new TransformingFigure());
+        TransformRestoreEdit edit = transform(f, AffineTransform.getRotateInstance(1));
+        assertNotNull(f.transform);
+        edit.undo();
+        // The undo must restore the state from before the transform, instead
+        // of concatenating the inverse transform
+        assertNull(f.transform);
+        edit.redo();
+        assertEquals(f.transform, AffineTransform.getRotateInstance(1));
+    }
+
+    @Test
+    public void testEditOfGroupWithFigureWhichDoesNotTransformItsPoints() {
+        GroupFigure group = new GroupFigure();
+        group.basicAdd(addNodes(new BezierFigure()));
+        assertTrue(group.isTransformingPointsDirectly());
+        TransformingFigure f = addNodes(new TransformingFigure());
+        group.basicAdd(f);
+        assertFalse(group.isTransformingPointsDirectly());
+
+        TransformRestoreEdit edit = new TransformRestoreEdit(group, group.getTransformRestoreData(),
+                AffineTransform.getScaleInstance(2, 3));
+        group.willChange();
+        group.transform(AffineTransform.getScaleInstance(2, 3));
+        group.changed();
+        edit.undo();
+        assertNull(f.transform);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.undo;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.UndoableEdit;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the size tracking, the compaction and the memory limit of
+ * {@link UndoRedoManager}.
+ *
+ * @author Werner Randelshofer
+ */
+public class UndoRedoManagerNGTest {
+
+    /**
+     * An edit with a fixed size, which merges edits with the same key.
+     */
+    private static class TestEdit extends AbstractUndoableEdit implements SizedEdit, MergeableEdit {
+
+        private static final long serialVersionUID = 1L;
+        private final String key;
+        private long size;
+        private int count = 1;
+
+        TestEdit(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+
+        @Override
+        public boolean merge(UndoableEdit nextEdit) {
+            if (nextEdit instanceof TestEdit && ((TestEdit) nextEdit).key.equals(key)) {
+                TestEdit that = (TestEdit) nextEdit;
+                size += that.size;
+                count += that.count;
+                that.die();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Gives the tests access to the edits of the manager.
+     */
+    private static class TestManager extends UndoRedoManager {
+
+        private static final long serialVersionUID = 1L;
+
+        int getEditCount() {
+            return edits.size();
+        }
+
+        TestEdit getEdit(int index) {
+            return (TestEdit) edits.get(index);
+        }
+
+        long sumOfEditSizes() {
+            long sum = 0;
+            for (UndoableEdit edit : edits) {
+                sum += estimateSize(edit);
+            }
+            return sum;
+        }
+    }
+
+    @Test
+    public void testEstimatedSizeIsRunningTotal() {
+        TestManager m = new TestManager();
+        for (int i = 0; i < 20; i++) {
+            m.addEdit(new TestEdit("a", 100 + i));
+        }
+        assertEquals(m.getEditCount(), 20);
+        assertEquals(m.getEstimatedSize(), m.sumOfEditSizes());
+        assertEquals(m.getEstimatedSize(), 20 * 100 + 190);
+    }
+
+    @Test
+    public void testEstimatedSizeAfterRedoEditsAreDiscarded() {
+        TestManager m = new TestManager();
+        for (int i = 0; i < 5; i++) {
+            m.addEdit(new TestEdit("a", 100));
+        }
+        m.undo();
+        m.undo();
+        m.addEdit(new TestEdit("b", 7));
+        assertEquals(m.getEditCount(), 4);
+        assertEquals(m.getEstimatedSize(), 307);
+        assertEquals(m.getEstimatedSize(), m.sumOfEditSizes());
+    }
+
+    @Test
+    public void testEstimatedSizeAfterLimitIsReached() {
+        TestManager m = new TestManager();
+        m.setLimit(10);
+        for (int i = 0; i < 25; i++) {
+            m.addEdit(new TestEdit("a" + i, 10));
+        }
+        assertEquals(m.getEditCount(), 10);
+        assertEquals(m.getEstimatedSize(), 100);
+        assertEquals(m.getEstimatedSize(), m.sumOfEditSizes());
+    }
+
+    @Test
+    public void testEstimatedSizeAfterDiscardAllEdits() {
+        TestManager m = new TestManager();
+        m.addEdit(new TestEdit("a", 10));
+        m.discardAllEdits();
+        assertEquals(m.getEstimatedSize(), 0);
+        m.addEdit(new TestEdit("a", 10));
+        assertEquals(m.getEstimatedSize(), 10);
+    }
+
+    @Test
+    public void testCompactMergesRunsOfOlderEdits() {
+        TestManager m = new TestManager();
+        for (int i = 0; i < 30; i++) {
+            m.addEdit(new TestEdit(i < 15 ? "a" : "b", 10));
+        }
+        m.compact();
+        // The 10 most recent edits are not merged
+        assertEquals(m.getEditCount(), 12);
+        assertEquals(m.getEdit(0).count, 15);
+        assertEquals(m.getEdit(1).count, 5);
+        for (int i = 2; i < 12; i++) {
+            assertEquals(m.getEdit(i).count, 1);
+        }
+        assertEquals(m.getEstimatedSize(), 300);
+        assertEquals(m.getEstimatedSize(), m.sumOfEditSizes());
+        assertTrue(m.canUndo());
+    }
+
+    @Test
+    public void testCompactKeepsEditsWhichCannotBeMerged() {
+        TestManager m = new TestManager();
+        for (int i = 0; i < 30; i++) {
+            m.addEdit(new TestEdit("a" + i, 10));
+        }
+        m.compact();
+        assertEquals(m.getEditCount(), 30);
+        assertEquals(m.getEstimatedSize(), 300);
+    }
+
+    @Test
+    public void testMemoryLimitCompactsBeforeDiscarding() {
+        TestManager m = new TestManager();
+        m.setMemoryLimit(1000);
+        for (int i = 0; i < 50; i++) {
+            m.addEdit(new TestEdit("a", 10));
+        }
+        // All edits fit into the limit, after the older edits have been merged
+        assertEquals(m.getEstimatedSize(), 500);
+        assertEquals(m.getEstimatedSize(), m.sumOfEditSizes());
+        int count = 0;
+        for (int i = 0; i < m.getEditCount(); i++) {
+            count += m.getEdit(i).count;
+        }
+        assertEquals(count, 50);
+    }
+
+    @Test
+    public void testMemoryLimitDiscardsOldestEdits() {
+        TestManager m = new TestManager();
+        m.setMemoryLimit(1000);
+        for (int i = 0; i < 50; i++) {
+            m.addEdit(new TestEdit("a" + i, 100));
+        }
+        assertEquals(m.getEditCount(), 10);
+        assertEquals(m.getEdit(0).key, "a40");
+        assertEquals(m.getEstimatedSize(), 1000);
+        assertEquals(m.getEstimatedSize(), m.sumOfEditSizes());
+    }
+
+    @Test
+    public void testMemoryLimitKeepsLastEdit() {
+        TestManager m = new TestManager();
+        m.setMemoryLimit(10);
+        m.addEdit(new TestEdit("a", 100));
+        m.addEdit(new TestEdit("b", 100));
+        assertEquals(m.getEditCount(), 1);
+        assertEquals(m.getEdit(0).key, "b");
+        assertTrue(m.canUndo());
+        assertEquals(m.getEstimatedSize(), 100);
+    }
+
+    @Test
+    public void testLoweringMemoryLimitTrimsEdits() {
+        TestManager m = new TestManager();
+        for (int i = 0; i < 20; i++) {
+            m.addEdit(new TestEdit("a" + i, 100));
+        }
+        m.setMemoryLimit(500);
+        assertEquals(m.getEditCount(), 5);
+        assertEquals(m.getEstimatedSize(), 500);
+        assertEquals(m.getEstimatedSize(), m.sumOfEditSizes());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * @(#)FindFiguresWithinBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.draw;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import static org.jhotdraw.draw.AttributeKeys.*;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.geom.Geom;
+
+/**
+ * Compares the time needed by a rubber-band selection on a large drawing,
+ * using a linear scan over all children, and using the spatial index of the
+ * {@link QuadTreeDrawing}.
+ * <p>
+ * The linear scan is the implementation of {@code findFiguresWithin}, which
+ * was used before the query was routed through the spatial index. The number
+ * of figures can be passed as the first argument.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class FindFiguresWithinBenchmark {
+
+    private static final int QUERY_COUNT = 200;
+    private static final double DRAWING_SIZE = 20000;
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        QuadTreeDrawing drawing = createDrawing(count);
+        List<Rectangle2D.Double> queries = createQueries();
+
+        for (int round = 0; round < 3; round++) {
+            long found = 0;
+            long start = System.nanoTime();
+            for (Rectangle2D.Double q : queries) {
+                found += findFiguresWithinByScan(drawing, q).size();
+            }
+            long scanTime = System.nanoTime() - start;
+
+            long indexedFound = 0;
+            start = System.nanoTime();
+            for (Rectangle2D.Double q : queries) {
+                indexedFound += drawing.findFiguresWithin(q).size();
+            }
+            long indexedTime = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.ENGLISH,
+                    "figures=%d queries=%d scan=%.3f ms/query (%d found) index=%.3f ms/query (%d found)",
+                    count, QUERY_COUNT,
+                    scanTime / 1e6 / QUERY_COUNT, found,
+                    indexedTime / 1e6 / QUERY_COUNT, indexedFound));
+        }
+    }
+
+    private static QuadTreeDrawing createDrawing(int count) {
+        Random r = new Random(0);
+        ArrayList<Figure> figures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double x = r.nextDouble() * DRAWING_SIZE;
+            double y = r.nextDouble() * DRAWING_SIZE;
+            RectangleFigure f = new RectangleFigure();
+            f.setBounds(new Point2D.Double(x, y),
+                    new Point2D.Double(x + 5 + r.nextDouble() * 40, y + 5 + r.nextDouble() * 40));
+            figures.add(f);
+        }
+        QuadTreeDrawing drawing = new QuadTreeDrawing();
+        drawing.addAll(figures);
+        return drawing;
+    }
+
+    /**
+     * Creates rubber-band rectangles of various sizes.
+     */
+    private static List<Rectangle2D.Double> createQueries() {
+        Random r = new Random(1);
+        ArrayList<Rectangle2D.Double> queries = new ArrayList<>(QUERY_COUNT);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            double w = 100 + r.nextDouble() * 1900;
+            double h = 100 + r.nextDouble() * 1900;
+            queries.add(new Rectangle2D.Double(
+                    r.nextDouble() * (DRAWING_SIZE - w), r.nextDouble() * (DRAWING_SIZE - h), w, h));
+        }
+        return queries;
+    }
+
+    private static List<Figure> findFiguresWithinByScan(QuadTreeDrawing drawing, Rectangle2D.Double bounds) {
+        LinkedList<Figure> contained = new LinkedList<>();
+        for (Figure f : drawing.getChildren()) {
+            Rectangle2D.Double r = f.getBounds();
+            if (f.get(TRANSFORM) != null) {
+                Rectangle2D rt = f.get(TRANSFORM).createTransformedShape(r).getBounds2D();
+                r = (rt instanceof Rectangle2D.Double) ? (Rectangle2D.Double) rt : new Rectangle2D.Double(rt.getX(), rt.getY(), rt.getWidth(), rt.getHeight());
+            }
+            if (f.isVisible() && Geom.contains(bounds, r)) {
+                contained.add(f);
+            }
+        }
+        return contained;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * @(#)UndoMemoryBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.draw;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import javax.swing.undo.UndoableEdit;
+import org.jhotdraw.draw.event.TransformRestoreEdit;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.GroupFigure;
+import org.jhotdraw.geom.BezierPath;
+import org.jhotdraw.undo.UndoRedoManager;
+
+/**
+ * Measures the memory retained by the undo edits of scaling a group of
+ * bezier figures.
+ * <p>
+ * The benchmark compares edits, which store a clone of every bezier path
+ * before and after the transform, as {@code TransformRestoreEdit} did before
+ * the undo data was packed, with edits which store the transform, and with
+ * edits which store a packed snapshot because the transform is not
+ * invertible. The total number of nodes can be passed as the first argument.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class UndoMemoryBenchmark {
+
+    private static final int EDIT_COUNT = 20;
+    private static final int NODES_PER_FIGURE = 100;
+
+    public static void main(String[] args) {
+        int nodeCount = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        GroupFigure group = createGroup(nodeCount);
+
+        AffineTransform scale = AffineTransform.getScaleInstance(1.01, 1.01);
+        AffineTransform flatten = AffineTransform.getScaleInstance(1, 0);
+
+        ArrayList<UndoableEdit> edits = new ArrayList<>(EDIT_COUNT);
+        long base = usedMemory();
+        for (int i = 0; i < EDIT_COUNT; i++) {
+            Object oldData = getCloneRestoreData(group);
+            group.transform(scale);
+            edits.add(new TransformRestoreEdit(group, oldData, getCloneRestoreData(group)));
+        }
+        print("clones", edits, usedMemory() - base);
+        edits.clear();
+
+        base = usedMemory();
+        for (int i = 0; i < EDIT_COUNT; i++) {
+            Object oldData = group.getTransformRestoreData();
+            group.transform(scale);
+            edits.add(new TransformRestoreEdit(group, oldData, scale));
+        }
+        print("transform", edits, usedMemory() - base);
+        edits.clear();
+
+        base = usedMemory();
+        for (int i = 0; i < EDIT_COUNT; i++) {
+            Object oldData = group.getTransformRestoreData();
+            group.transform(flatten);
+            edits.add(new TransformRestoreEdit(group, oldData, flatten));
+            group.restoreTransformTo(oldData);
+        }
+        print("packed", edits, usedMemory() - base);
+    }
+
+    private static GroupFigure createGroup(int nodeCount) {
+        Random r = new Random(0);
+        GroupFigure group = new GroupFigure();
+        for (int i = 0; i < nodeCount; i += NODES_PER_FIGURE) {
+            BezierFigure f = new BezierFigure();
+            BezierPath path = new BezierPath();
+            for (int j = 0; j < NODES_PER_FIGURE; j++) {
+                Point2D.Double p = new Point2D.Double(r.nextDouble() * 1000, r.nextDouble() * 1000);
+                path.add(new BezierPath.Node(BezierPath.C1C2_MASK, p,
+                        new Point2D.Double(p.x - 5, p.y), new Point2D.Double(p.x + 5, p.y)));
+            }
+            f.setBezierPath(path);
+            group.basicAdd(f);
+        }
+        return group;
+    }
+
+    /**
+     * Returns the restore data of the group in the format which was used
+     * before the undo data was packed.
+     */
+    private static Object getCloneRestoreData(GroupFigure group) {
+        LinkedList<Object> list = new LinkedList<>();
+        for (Figure child : group.getChildren()) {
+            list.add(((BezierFigure) child).getBezierPath());
+        }
+        return list;
+    }
+
+    private static void print(String name, List<UndoableEdit> edits, long bytes) {
+        long estimated = 0;
+        for (UndoableEdit edit : edits) {
+            estimated += UndoRedoManager.estimateSize(edit);
+        }
+        System.out.println(String.format(Locale.ENGLISH,
+                "%-9s measured=%,d bytes/edit estimated=%,d bytes/edit",
+                name, bytes / edits.size(), estimated / edits.size()));
+    }
+
+    private static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * @(#)ConnectionLayoutBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.net;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.jhotdraw.draw.ConnectionLayoutService;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.connector.ChopRectangleConnector;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.liner.ElbowLiner;
+
+/**
+ * Measures the time needed to add a large network to a drawing, as an input
+ * format does when it loads a file, and compares the time needed to lay out
+ * all connections of the drawing, one connection after the other, and with
+ * the {@link ConnectionLayoutService}.
+ * <p>
+ * The number of connections can be passed as the first argument. The drawing
+ * has one node per five connections.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ConnectionLayoutBenchmark {
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+        QuadTreeDrawing drawing = new QuadTreeDrawing();
+        List<Figure> figures = createNetwork(count / 5, count);
+        long loadStart = System.nanoTime();
+        drawing.addAll(figures);
+        System.out.println(String.format(Locale.ENGLISH,
+                "connections=%d load=%.1f ms",
+                count, (System.nanoTime() - loadStart) / 1e6));
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            drawing.beginUpdate();
+            try {
+                for (Figure f : figures) {
+                    if (f instanceof LineConnectionFigure) {
+                        f.willChange();
+                        ((LineConnectionFigure) f).updateConnection();
+                        f.changed();
+                    }
+                }
+            } finally {
+                drawing.commitUpdate();
+            }
+            long serialTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ConnectionLayoutService.getDefault().layout(drawing, figures);
+            long parallelTime = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.ENGLISH,
+                    "connections=%d serial=%.1f ms parallel=%.1f ms",
+                    count, serialTime / 1e6, parallelTime / 1e6));
+        }
+    }
+
+    private static List<Figure> createNetwork(int nodeCount, int connectionCount) {
+        Random r = new Random(0);
+        ArrayList<Figure> figures = new ArrayList<>(nodeCount + connectionCount);
+        ArrayList<RectangleFigure> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            RectangleFigure node = new RectangleFigure(r.nextInt(10000), r.nextInt(10000), 40, 20);
+            nodes.add(node);
+            figures.add(node);
+        }
+        for (int i = 0; i < connectionCount; i++) {
+            LineConnectionFigure c = new LineConnectionFigure();
+            c.setStartPoint(new Point2D.Double(0, 0));
+            c.setEndPoint(new Point2D.Double(0, 0));
+            c.setLiner(new ElbowLiner());
+            c.setStartConnector(new ChopRectangleConnector(nodes.get(r.nextInt(nodeCount))));
+            c.setEndConnector(new ChopRectangleConnector(nodes.get(r.nextInt(nodeCount))));
+            figures.add(c);
+        }
+        return figures;
+    }
+}
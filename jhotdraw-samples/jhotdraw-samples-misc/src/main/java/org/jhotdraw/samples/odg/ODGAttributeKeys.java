@@ -42,7 +42,7 @@ public class ODGAttributeKeys extends AttributeKeys {
      * Specifies the overall opacity of a ODG figure.
      * This is a value between 0 and 1 whereas 0 is translucent and 1 is fully opaque.
      */
-    public static final AttributeKey<Double> OPACITY = new AttributeKey<Double>("opacity", Double.class, 1d, false, LABELS);
+    public static final AttributeKey<Double> OPACITY = AttributeKeys.OPACITY;
     /**
      * Specifies the fill style of a ODG figure.
      *
@@ -111,6 +111,15 @@ public class ODGBezierFigure extends BezierFigure {
         }
     }
 
+    /**
+     * Returns false, because the figure stores rotations, scalings and
+     * shearings in its TRANSFORM attribute.
+     */
+    @Override
+    public boolean isTransformingPointsDirectly() {
+        return false;
+    }
+
     @Override
     public Rectangle2D.Double getDrawingArea() {
         if (cachedDrawingArea == null) {
@@ -77,7 +77,7 @@ public class SVGAttributeKeys extends AttributeKeys {
      * Specifies the overall opacity of a SVG figure.
      * This is a value between 0 and 1 whereas 0 is translucent and 1 is fully opaque.
      */
-    public static final AttributeKey<Double> OPACITY = new AttributeKey<Double>("opacity", Double.class, 1d, false, LABELS);
+    public static final AttributeKey<Double> OPACITY = AttributeKeys.OPACITY;
     /**
      * Specifies the stroke gradient of a SVG figure.
      */
@@ -102,6 +102,34 @@ public class SVGAttributeKeys extends AttributeKeys {
      */
     public static final AttributeKey<String> LINK_TARGET = new AttributeKey<String>("linkTarget", String.class, null, true, LABELS);
 
+    /**
+     * Gets the fill paint for the specified figure from the specified cache.
+     * If the cache does not contain the fill paint, it is computed with
+     * {@link #getFillPaint(Figure)} and put into the cache.
+     */
+    public static Paint getFillPaint(Figure f, DerivedAttributeCache cache) {
+        Object paint = cache.get(FILL_GRADIENT, 1d);
+        if (paint == DerivedAttributeCache.MISSING) {
+            paint = getFillPaint(f);
+            cache.put(FILL_GRADIENT, 1d, paint);
+        }
+        return (Paint) paint;
+    }
+
+    /**
+     * Gets the stroke paint for the specified figure from the specified cache.
+     * If the cache does not contain the stroke paint, it is computed with
+     * {@link #getStrokePaint(Figure)} and put into the cache.
+     */
+    public static Paint getStrokePaint(Figure f, DerivedAttributeCache cache) {
+        Object paint = cache.get(STROKE_GRADIENT, 1d);
+        if (paint == DerivedAttributeCache.MISSING) {
+            paint = getStrokePaint(f);
+            cache.put(STROKE_GRADIENT, 1d, paint);
+        }
+        return (Paint) paint;
+    }
+
     /**
      * Gets the fill paint for the specified figure based on the attributes
      * FILL_GRADIENT, FILL_OPACITY, FILL_PAINT and the bounds of the figure.
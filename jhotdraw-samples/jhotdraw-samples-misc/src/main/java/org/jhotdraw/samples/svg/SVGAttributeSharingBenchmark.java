@@ -0,0 +1,124 @@
+/*
+ * @(#)SVGAttributeSharingBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.svg;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import org.jhotdraw.draw.AttributeArray;
+import org.jhotdraw.draw.AttributeKey;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.geom.BezierPath;
+import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
+import org.jhotdraw.samples.svg.io.DefaultSVGFigureFactory;
+import org.jhotdraw.samples.svg.io.SVGFigureFactory;
+
+/**
+ * Measures the heap used by the figures of a large SVG drawing, with and
+ * without interning of the figure attributes.
+ * <p>
+ * The benchmark creates the figures with the {@link DefaultSVGFigureFactory},
+ * and passes a new attribute map to each figure, in the same way as the
+ * {@code SVGInputFormat} does. The figures use only a few distinct styles,
+ * as it is typical for drawings which have been exported from other
+ * applications. The number of figures can be passed as the first argument.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class SVGAttributeSharingBenchmark {
+
+    private static final int STYLE_COUNT = 6;
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+        // Warm up the attribute key registry and the figure classes
+        createFigures(1000, true);
+
+        for (boolean intern : new boolean[]{false, true}) {
+            long before = usedHeap();
+            List<Figure> figures = createFigures(count, intern);
+            long after = usedHeap();
+            System.out.println(String.format(Locale.ENGLISH,
+                    "intern attributes=%-5s figures=%d heap=%.1f MB",
+                    intern, figures.size(), (after - before) / (1024d * 1024d)));
+        }
+    }
+
+    private static List<Figure> createFigures(int count, boolean intern) {
+        SVGFigureFactory factory = new DefaultSVGFigureFactory();
+        ArrayList<Figure> figures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double x = (i * 37) % 1900;
+            double y = (i * 53) % 1900;
+            HashMap<AttributeKey<?>, Object> a = createAttributes(i % STYLE_COUNT);
+            Figure f;
+            switch (i % 3) {
+                case 0:
+                    f = factory.createRect(x, y, 40, 20, 0, 0, a);
+                    break;
+                case 1:
+                    f = factory.createEllipse(x, y, 20, 10, a);
+                    break;
+                default:
+                    BezierPath path = new BezierPath();
+                    path.moveTo(x, y);
+                    path.lineTo(x + 20, y);
+                    path.lineTo(x + 20, y + 20);
+                    path.setClosed(true);
+                    f = factory.createPath(new BezierPath[]{path}, a);
+                    break;
+            }
+            figures.add(f);
+        }
+        if (intern) {
+            AttributeArray.internAttributes(figures);
+        }
+        return figures;
+    }
+
+    /**
+     * Creates the attributes which {@code SVGInputFormat} reads for a shape
+     * element. Each call creates new value objects, like the parser does.
+     */
+    private static HashMap<AttributeKey<?>, Object> createAttributes(int style) {
+        HashMap<AttributeKey<?>, Object> a = new HashMap<>();
+        FILL_COLOR.put(a, new Color(0x336699 * (style + 1) & 0xffffff));
+        FILL_OPACITY.put(a, Double.valueOf(style % 2 == 0 ? 1d : 0.5d));
+        WINDING_RULE.put(a, WindingRule.NON_ZERO);
+        STROKE_COLOR.put(a, new Color(0x000000));
+        STROKE_OPACITY.put(a, Double.valueOf(1d));
+        STROKE_WIDTH.put(a, Double.valueOf(1d + style % 3));
+        STROKE_DASHES.put(a, null);
+        STROKE_DASH_PHASE.put(a, Double.valueOf(0d));
+        IS_STROKE_DASH_FACTOR.put(a, false);
+        STROKE_CAP.put(a, BasicStroke.CAP_BUTT);
+        STROKE_JOIN.put(a, BasicStroke.JOIN_MITER);
+        STROKE_MITER_LIMIT.put(a, Double.valueOf(4d));
+        IS_STROKE_MITER_LIMIT_FACTOR.put(a, false);
+        OPACITY.put(a, Double.valueOf(1d));
+        return a;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
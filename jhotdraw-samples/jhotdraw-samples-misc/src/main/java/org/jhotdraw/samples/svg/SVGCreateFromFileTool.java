@@ -165,9 +165,9 @@ public class SVGCreateFromFileTool extends CreationTool {
                             get();
                             try {
                                 if (createdFigure == null) {
-                                    ((ImageHolderFigure) prototype).setImage(loaderFigure.getImageData(), loaderFigure.getBufferedImage());
+                                    ((ImageHolderFigure) prototype).setImageBlob(loaderFigure.getImageBlob(), loaderFigure.getBufferedImage());
                                 } else {
-                                    ((ImageHolderFigure) createdFigure).setImage(loaderFigure.getImageData(), loaderFigure.getBufferedImage());
+                                    ((ImageHolderFigure) createdFigure).setImageBlob(loaderFigure.getImageBlob(), loaderFigure.getBufferedImage());
                                 }
                             } catch (IOException ex) {
                                 JOptionPane.showMessageDialog(v.getComponent(),
@@ -0,0 +1,101 @@
+/*
+ * @(#)SVGParseBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.svg;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.samples.svg.io.SVGInputFormat;
+
+/**
+ * Compares the time needed to read a map-like SVG document, with the path
+ * data and transforms parsed on the loading thread, and parsed concurrently
+ * on the common fork-join pool.
+ * <p>
+ * The document consists of groups of long paths with relative line, curve
+ * and arc commands. The number of paths can be passed as the first argument.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class SVGParseBenchmark {
+
+    private static final int SEGMENTS_PER_PATH = 200;
+    private static final int PATHS_PER_GROUP = 100;
+
+    public static void main(String[] args) throws IOException {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+        byte[] document = createDocument(count);
+        ForkJoinPool serialPool = new ForkJoinPool(1);
+
+        for (int round = 0; round < 5; round++) {
+            long serialTime = read(document, serialPool);
+            long parallelTime = read(document, ForkJoinPool.commonPool());
+            System.out.println(String.format(Locale.ENGLISH,
+                    "paths=%d size=%.1f MB threads=%d serial=%.1f ms parallel=%.1f ms",
+                    count, document.length / 1e6, ForkJoinPool.commonPool().getParallelism(),
+                    serialTime / 1e6, parallelTime / 1e6));
+        }
+        serialPool.shutdown();
+    }
+
+    private static long read(byte[] document, ForkJoinPool pool) throws IOException {
+        SVGInputFormat format = new SVGInputFormat();
+        format.setStreaming(true);
+        format.setParsePool(pool);
+        long start = System.nanoTime();
+        format.read(new ByteArrayInputStream(document), new QuadTreeDrawing(), true);
+        return System.nanoTime() - start;
+    }
+
+    private static byte[] createDocument(int count) {
+        Random r = new Random(0);
+        StringBuilder buf = new StringBuilder();
+        buf.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"10000\" height=\"10000\">\n");
+        for (int i = 0; i < count; i++) {
+            if (i % PATHS_PER_GROUP == 0) {
+                if (i > 0) {
+                    buf.append("</g>\n");
+                }
+                buf.append(String.format(Locale.ENGLISH, "<g transform=\"translate(%.2f,%.2f) rotate(%.1f)\">\n",
+                        r.nextDouble() * 1000, r.nextDouble() * 1000, r.nextDouble() * 360));
+            }
+            buf.append(String.format(Locale.ENGLISH, "<path transform=\"matrix(1 0 0 1 %.3f %.3f)\" d=\"M%.3f,%.3f",
+                    r.nextDouble() * 10, r.nextDouble() * 10, r.nextDouble() * 10000, r.nextDouble() * 10000));
+            for (int j = 0; j < SEGMENTS_PER_PATH; j++) {
+                switch (j % 4) {
+                    case 0:
+                        buf.append(String.format(Locale.ENGLISH, "l%.3f,%.3f",
+                                r.nextGaussian() * 5, r.nextGaussian() * 5));
+                        break;
+                    case 1:
+                        buf.append(String.format(Locale.ENGLISH, "c%.3f %.3f %.3f %.3f %.3f %.3f",
+                                r.nextGaussian(), r.nextGaussian(), r.nextGaussian() * 2,
+                                r.nextGaussian() * 2, r.nextGaussian() * 5, r.nextGaussian() * 5));
+                        break;
+                    case 2:
+                        buf.append(String.format(Locale.ENGLISH, "a%.3f,%.3f 0 0,1 %.3f,%.3f",
+                                1 + r.nextDouble() * 5, 1 + r.nextDouble() * 5,
+                                r.nextGaussian() * 5, r.nextGaussian() * 5));
+                        break;
+                    default:
+                        buf.append(String.format(Locale.ENGLISH, "L%.3e %.3e",
+                                r.nextGaussian() * 5, r.nextGaussian() * 5));
+                        break;
+                }
+            }
+            buf.append("z\" fill=\"none\" stroke=\"#336699\"/>\n");
+        }
+        buf.append("</g>\n</svg>\n");
+        return buf.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * @(#)OpacityCompositor.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.svg.figures;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws a figure with group opacity.
+ * <p>
+ * The figure is rendered into an offscreen image, which is then composited
+ * onto the graphics with the opacity of the figure. The offscreen images are
+ * taken from the {@link ScratchImagePool}, so that drawing translucent figures
+ * does not allocate a new image on every repaint.
+ * <p>
+ * If raster caching is requested, the whole figure is rendered once into an
+ * image which is kept until {@link #invalidate} is called, or until the scale
+ * of the graphics changes. This is useful for static translucent figures,
+ * which are repainted often without being changed, for example while the
+ * view is scrolled.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public abstract class OpacityCompositor {
+
+    /**
+     * Raster caching is only used for figures which do not need more than
+     * this number of pixels.
+     */
+    private static final int MAX_CACHED_PIXELS = 1 << 20;
+    private BufferedImage raster;
+    private double rasterScaleX;
+    private double rasterScaleY;
+    private Rectangle2D.Double rasterArea;
+
+    /**
+     * Creates a new instance.
+     */
+    public OpacityCompositor() {
+    }
+
+    /**
+     * Draws the figure without opacity.
+     */
+    protected abstract void drawOpaque(Graphics2D g);
+
+    /**
+     * Discards the cached raster. This method must be called, when the figure
+     * has changed.
+     */
+    public synchronized void invalidate() {
+        if (raster != null) {
+            raster.flush();
+            raster = null;
+            rasterArea = null;
+        }
+    }
+
+    /**
+     * Draws the figure with the specified opacity.
+     *
+     * @param g the graphics.
+     * @param drawingArea the drawing area of the figure.
+     * @param opacity the opacity, a value between 0 and 1.
+     * @param isRasterCached whether the rendered figure is cached.
+     */
+    public void draw(Graphics2D g, Rectangle2D.Double drawingArea, double opacity, boolean isRasterCached) {
+        double scaleX = g.getTransform().getScaleX();
+        double scaleY = g.getTransform().getScaleY();
+        if (isRasterCached) {
+            if (drawCachedRaster(g, drawingArea, opacity, scaleX, scaleY)) {
+                return;
+            }
+        } else {
+            invalidate();
+        }
+        Rectangle2D clipBounds = g.getClipBounds();
+        if (clipBounds != null) {
+            Rectangle2D.intersect(drawingArea, clipBounds, drawingArea);
+        }
+        if (!drawingArea.isEmpty()) {
+            int width = Math.max(1, (int) ((2 + drawingArea.width) * scaleX));
+            int height = Math.max(1, (int) ((2 + drawingArea.height) * scaleY));
+            ScratchImagePool pool = ScratchImagePool.getDefault();
+            BufferedImage buf = pool.acquire(width, height);
+            try {
+                render(buf, g, drawingArea, scaleX, scaleY);
+                composite(g, buf, width, height, drawingArea, opacity);
+            } finally {
+                pool.release(buf);
+            }
+        }
+    }
+
+    /**
+     * Draws the figure using the cached raster. Returns false, if the figure
+     * is too large for raster caching.
+     */
+    private synchronized boolean drawCachedRaster(Graphics2D g, Rectangle2D.Double drawingArea,
+            double opacity, double scaleX, double scaleY) {
+        if (drawingArea.isEmpty()) {
+            return true;
+        }
+        int width = Math.max(1, (int) ((2 + drawingArea.width) * scaleX));
+        int height = Math.max(1, (int) ((2 + drawingArea.height) * scaleY));
+        if ((long) width * height > MAX_CACHED_PIXELS) {
+            invalidate();
+            return false;
+        }
+        if (raster == null || rasterScaleX != scaleX || rasterScaleY != scaleY
+                || !drawingArea.equals(rasterArea)) {
+            invalidate();
+            raster = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            render(raster, g, drawingArea, scaleX, scaleY);
+            rasterScaleX = scaleX;
+            rasterScaleY = scaleY;
+            rasterArea = (Rectangle2D.Double) drawingArea.clone();
+        }
+        composite(g, raster, width, height, drawingArea, opacity);
+        return true;
+    }
+
+    private void render(BufferedImage buf, Graphics2D g, Rectangle2D.Double drawingArea,
+            double scaleX, double scaleY) {
+        Graphics2D gr = buf.createGraphics();
+        try {
+            gr.scale(scaleX, scaleY);
+            gr.translate((int) -drawingArea.x, (int) -drawingArea.y);
+            gr.setRenderingHints(g.getRenderingHints());
+            drawOpaque(gr);
+        } finally {
+            gr.dispose();
+        }
+    }
+
+    private void composite(Graphics2D g, BufferedImage buf, int width, int height,
+            Rectangle2D.Double drawingArea, double opacity) {
+        Composite savedComposite = g.getComposite();
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
+        int x = (int) drawingArea.x;
+        int y = (int) drawingArea.y;
+        g.drawImage(buf, x, y, x + 2 + (int) drawingArea.width, y + 2 + (int) drawingArea.height,
+                0, 0, width, height, null);
+        g.setComposite(savedComposite);
+    }
+}
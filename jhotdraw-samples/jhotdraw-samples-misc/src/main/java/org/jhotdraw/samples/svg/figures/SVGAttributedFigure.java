@@ -30,6 +30,15 @@ import org.jhotdraw.util.*;
 public abstract class SVGAttributedFigure extends AbstractAttributedFigure {
 
     private static final long serialVersionUID = 1L;
+    /**
+     * Draws this figure, if its opacity is not 1. This field is created
+     * lazily.
+     */
+    private transient OpacityCompositor opacityCompositor;
+    /**
+     * Whether the rendered image of a translucent figure is cached.
+     */
+    private boolean isOpacityRasterCached;
 
     /**
      * Creates a new instance.
@@ -37,34 +46,38 @@ public abstract class SVGAttributedFigure extends AbstractAttributedFigure {
     public SVGAttributedFigure() {
     }
 
+    /**
+     * If this is set to true, the rendered image of the figure is cached if
+     * the opacity of the figure is not 1. Set this to true for translucent
+     * figures which do not change often.
+     */
+    public void setOpacityRasterCached(boolean newValue) {
+        isOpacityRasterCached = newValue;
+    }
+
+    public boolean isOpacityRasterCached() {
+        return isOpacityRasterCached;
+    }
+
+    private OpacityCompositor getOpacityCompositor() {
+        if (opacityCompositor == null) {
+            opacityCompositor = new OpacityCompositor() {
+                @Override
+                protected void drawOpaque(Graphics2D g) {
+                    drawFigure(g);
+                }
+            };
+        }
+        return opacityCompositor;
+    }
+
     @Override
     public void draw(Graphics2D g) {
         double opacity = get(OPACITY);
         opacity = Math.min(Math.max(0d, opacity), 1d);
         if (opacity != 0d) {
             if (opacity != 1d) {
-                Rectangle2D.Double drawingArea = getDrawingArea();
-                Rectangle2D clipBounds = g.getClipBounds();
-                if (clipBounds != null) {
-                    Rectangle2D.intersect(drawingArea, clipBounds, drawingArea);
-                }
-                if (!drawingArea.isEmpty()) {
-                    BufferedImage buf = new BufferedImage(
-                            Math.max(1, (int) ((2 + drawingArea.width) * g.getTransform().getScaleX())),
-                            Math.max(1, (int) ((2 + drawingArea.height) * g.getTransform().getScaleY())),
-                            BufferedImage.TYPE_INT_ARGB);
-                    Graphics2D gr = buf.createGraphics();
-                    gr.scale(g.getTransform().getScaleX(), g.getTransform().getScaleY());
-                    gr.translate((int) -drawingArea.x, (int) -drawingArea.y);
-                    gr.setRenderingHints(g.getRenderingHints());
-                    drawFigure(gr);
-                    gr.dispose();
-                    Composite savedComposite = g.getComposite();
-                    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
-                    g.drawImage(buf, (int) drawingArea.x, (int) drawingArea.y,
-                            2 + (int) drawingArea.width, 2 + (int) drawingArea.height, null);
-                    g.setComposite(savedComposite);
-                }
+                getOpacityCompositor().draw(g, getDrawingArea(), opacity, isOpacityRasterCached);
             } else {
                 drawFigure(g);
             }
@@ -81,15 +94,15 @@ public abstract class SVGAttributedFigure extends AbstractAttributedFigure {
             savedTransform = g.getTransform();
             g.transform(get(TRANSFORM));
         }
-        Paint paint = SVGAttributeKeys.getFillPaint(this);
+        Paint paint = SVGAttributeKeys.getFillPaint(this, getDerivedAttributeCache());
         if (paint != null) {
             g.setPaint(paint);
             drawFill(g);
         }
-        paint = SVGAttributeKeys.getStrokePaint(this);
+        paint = SVGAttributeKeys.getStrokePaint(this, getDerivedAttributeCache());
         if (paint != null && get(STROKE_WIDTH) > 0) {
             g.setPaint(paint);
-            g.setStroke(SVGAttributeKeys.getStroke(this, 1.0));
+            g.setStroke(getDerivedAttributeCache().getStroke(this, 1.0));
             drawStroke(g);
         }
         if (get(TRANSFORM) != null) {
@@ -97,6 +110,29 @@ public abstract class SVGAttributedFigure extends AbstractAttributedFigure {
         }
     }
 
+    @Override
+    protected void invalidate() {
+        super.invalidate();
+        if (opacityCompositor != null) {
+            opacityCompositor.invalidate();
+        }
+    }
+
+    @Override
+    protected <T> void fireAttributeChanged(AttributeKey<T> attribute, T oldValue, T newValue) {
+        if (opacityCompositor != null) {
+            opacityCompositor.invalidate();
+        }
+        super.fireAttributeChanged(attribute, oldValue, newValue);
+    }
+
+    @Override
+    public SVGAttributedFigure clone() {
+        SVGAttributedFigure that = (SVGAttributedFigure) super.clone();
+        that.opacityCompositor = null;
+        return that;
+    }
+
     @Override
     public <T> void set(AttributeKey<T> key, T newValue) {
         if (key == TRANSFORM) {
@@ -131,6 +131,15 @@ public class SVGBezierFigure extends BezierFigure {
         }
     }
 
+    /**
+     * Returns false, because the figure stores rotations, scalings and
+     * shearings in its TRANSFORM attribute.
+     */
+    @Override
+    public boolean isTransformingPointsDirectly() {
+        return false;
+    }
+
     @Override
     public Rectangle2D.Double getDrawingArea() {
         if (cachedDrawingArea == null) {
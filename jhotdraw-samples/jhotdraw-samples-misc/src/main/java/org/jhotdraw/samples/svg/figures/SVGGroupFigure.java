@@ -11,7 +11,6 @@ import org.jhotdraw.draw.figure.GroupFigure;
 import org.jhotdraw.draw.figure.Figure;
 import java.awt.*;
 import java.awt.geom.*;
-import java.awt.image.BufferedImage;
 import java.util.*;
 import org.jhotdraw.draw.*;
 import static org.jhotdraw.draw.AttributeKeys.TRANSFORM;
@@ -30,6 +29,15 @@ public class SVGGroupFigure extends GroupFigure implements SVGFigure {
 
     private static final long serialVersionUID = 1L;
     private HashMap<AttributeKey<?>, Object> attributes = new HashMap<AttributeKey<?>, Object>();
+    /**
+     * Draws this figure, if its opacity is not 1. This field is created
+     * lazily.
+     */
+    private transient OpacityCompositor opacityCompositor;
+    /**
+     * Whether the rendered image of a translucent figure is cached.
+     */
+    private boolean isOpacityRasterCached;
 
     /**
      * Creates a new instance.
@@ -38,6 +46,31 @@ public class SVGGroupFigure extends GroupFigure implements SVGFigure {
         SVGAttributeKeys.setDefaults(this);
     }
 
+    /**
+     * If this is set to true, the rendered image of the figure is cached if
+     * the opacity of the figure is not 1. Set this to true for translucent
+     * figures which do not change often.
+     */
+    public void setOpacityRasterCached(boolean newValue) {
+        isOpacityRasterCached = newValue;
+    }
+
+    public boolean isOpacityRasterCached() {
+        return isOpacityRasterCached;
+    }
+
+    private OpacityCompositor getOpacityCompositor() {
+        if (opacityCompositor == null) {
+            opacityCompositor = new OpacityCompositor() {
+                @Override
+                protected void drawOpaque(Graphics2D g) {
+                    SVGGroupFigure.super.draw(g);
+                }
+            };
+        }
+        return opacityCompositor;
+    }
+
     @Override
     public <T> void set(AttributeKey<T> key, T value) {
         if (key == OPACITY) {
@@ -73,28 +106,7 @@ public class SVGGroupFigure extends GroupFigure implements SVGFigure {
         opacity = Math.min(Math.max(0d, opacity), 1d);
         if (opacity != 0d) {
             if (opacity != 1d) {
-                Rectangle2D.Double drawingArea = getDrawingArea();
-                Rectangle2D clipBounds = g.getClipBounds();
-                if (clipBounds != null) {
-                    Rectangle2D.intersect(drawingArea, clipBounds, drawingArea);
-                }
-                if (!drawingArea.isEmpty()) {
-                    BufferedImage buf = new BufferedImage(
-                            Math.max(1, (int) ((2 + drawingArea.width) * g.getTransform().getScaleX())),
-                            Math.max(1, (int) ((2 + drawingArea.height) * g.getTransform().getScaleY())),
-                            BufferedImage.TYPE_INT_ARGB);
-                    Graphics2D gr = buf.createGraphics();
-                    gr.scale(g.getTransform().getScaleX(), g.getTransform().getScaleY());
-                    gr.translate((int) -drawingArea.x, (int) -drawingArea.y);
-                    gr.setRenderingHints(g.getRenderingHints());
-                    super.draw(gr);
-                    gr.dispose();
-                    Composite savedComposite = g.getComposite();
-                    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
-                    g.drawImage(buf, (int) drawingArea.x, (int) drawingArea.y,
-                            2 + (int) drawingArea.width, 2 + (int) drawingArea.height, null);
-                    g.setComposite(savedComposite);
-                }
+                getOpacityCompositor().draw(g, getDrawingArea(), opacity, isOpacityRasterCached);
             } else {
                 super.draw(g);
             }
@@ -167,6 +179,23 @@ public class SVGGroupFigure extends GroupFigure implements SVGFigure {
     public SVGGroupFigure clone() {
         SVGGroupFigure that = (SVGGroupFigure) super.clone();
         that.attributes = new HashMap<AttributeKey<?>, Object>(this.attributes);
+        that.opacityCompositor = null;
         return that;
     }
+
+    @Override
+    protected void invalidate() {
+        super.invalidate();
+        if (opacityCompositor != null) {
+            opacityCompositor.invalidate();
+        }
+    }
+
+    @Override
+    protected <T> void fireAttributeChanged(AttributeKey<T> attribute, T oldValue, T newValue) {
+        if (opacityCompositor != null) {
+            opacityCompositor.invalidate();
+        }
+        super.fireAttributeChanged(attribute, oldValue, newValue);
+    }
 }
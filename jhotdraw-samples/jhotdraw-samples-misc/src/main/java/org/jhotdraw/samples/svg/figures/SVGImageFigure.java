@@ -24,6 +24,8 @@ import org.jhotdraw.draw.handle.Handle;
 import org.jhotdraw.draw.handle.ResizeHandleKit;
 import org.jhotdraw.draw.handle.TransformHandleKit;
 import org.jhotdraw.geom.GrowStroke;
+import org.jhotdraw.io.Blob;
+import org.jhotdraw.io.BlobStore;
 import org.jhotdraw.samples.svg.SVGAttributeKeys;
 import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
 import org.jhotdraw.util.*;
@@ -53,12 +55,16 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
      * The image data. This can be null, if the image was created from a
      * BufferedImage.
      */
-    private byte[] imageData;
+    private Blob imageData;
     /**
-     * The buffered image. This can be null, if we haven't yet parsed the
+     * The cached image. This can be null, if we haven't yet parsed the
      * imageData.
      */
-    private BufferedImage bufferedImage;
+    private transient ImageCache.CachedImage cachedImage;
+    /**
+     * Repaints the figure when the image has been decoded in the background.
+     */
+    private transient Runnable repaintHandler;
 
     /**
      * Creates a new instance.
@@ -84,21 +90,11 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
             if (opacity != 1d) {
                 g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
             }
-            BufferedImage image = getBufferedImage();
-            if (image != null) {
-                if (get(TRANSFORM) != null) {
-                    // FIXME - We should cache the transformed image.
-                    //         Drawing a transformed image appears to be very slow.
-                    Graphics2D gx = (Graphics2D) g.create();
-                    // Use same rendering hints like parent graphics
-                    gx.setRenderingHints(g.getRenderingHints());
-                    gx.transform(get(TRANSFORM));
-                    gx.drawImage(image, (int) rectangle.x, (int) rectangle.y, (int) rectangle.width, (int) rectangle.height, null);
-                    gx.dispose();
-                } else {
-                    g.drawImage(image, (int) rectangle.x, (int) rectangle.y, (int) rectangle.width, (int) rectangle.height, null);
-                }
-            } else {
+            // The cached image keeps a pre-transformed raster of the image,
+            // so that a transformed image is only resampled when the scale
+            // or the rotation changes.
+            ImageCache.CachedImage image = getCachedImage();
+            if (image == null || !image.draw(g, rectangle, get(TRANSFORM), getRepaintHandler())) {
                 Shape shape = getTransformedShape();
                 g.setColor(Color.red);
                 g.setStroke(new BasicStroke());
@@ -110,6 +106,18 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
         }
     }
 
+    private Runnable getRepaintHandler() {
+        if (repaintHandler == null) {
+            repaintHandler = new Runnable() {
+                @Override
+                public void run() {
+                    fireAreaInvalidated();
+                }
+            };
+        }
+        return repaintHandler;
+    }
+
     @Override
     protected void drawFill(Graphics2D g) {
     }
@@ -273,6 +281,7 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
                 }
             });
         }
+        final BufferedImage bufferedImage = getBufferedImage();
         if (bufferedImage != null) {
             if (rectangle.width != bufferedImage.getWidth()
                     || rectangle.height != bufferedImage.getHeight()) {
@@ -339,13 +348,14 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
         that.rectangle = (Rectangle2D.Double) this.rectangle.clone();
         that.cachedTransformedShape = null;
         that.cachedHitShape = null;
+        that.repaintHandler = null;
         return that;
     }
 
     @Override
     public boolean isEmpty() {
         Rectangle2D.Double b = getBounds();
-        return b.width <= 0 || b.height <= 0 || imageData == null && bufferedImage == null;
+        return b.width <= 0 || b.height <= 0 || imageData == null && cachedImage == null;
     }
 
     @Override
@@ -369,9 +379,23 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
      */
     @Override
     public void setImage(byte[] imageData, BufferedImage bufferedImage) {
+        setImageBlob((imageData == null) ? null : BlobStore.getDefault().put(imageData), bufferedImage);
+    }
+
+    /**
+     * Sets the image.
+     *
+     * @param imageData The image data. If this is null, a buffered image must
+     * be provided.
+     * @param bufferedImage An image constructed from the imageData. If this
+     * is null, imageData must be provided.
+     */
+    @Override
+    public void setImageBlob(Blob imageData, BufferedImage bufferedImage) {
         willChange();
         this.imageData = imageData;
-        this.bufferedImage = bufferedImage;
+        this.cachedImage = (imageData == null && bufferedImage == null) ? null
+                : ImageCache.getDefault().create(imageData, bufferedImage);
         changed();
     }
 
@@ -385,8 +409,8 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
      */
     public void setImageData(byte[] imageData) {
         willChange();
-        this.imageData = imageData;
-        this.bufferedImage = null;
+        this.imageData = (imageData == null) ? null : BlobStore.getDefault().put(imageData);
+        this.cachedImage = null;
         changed();
     }
 
@@ -398,7 +422,7 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
     public void setBufferedImage(BufferedImage image) {
         willChange();
         this.imageData = null;
-        this.bufferedImage = image;
+        this.cachedImage = (image == null) ? null : ImageCache.getDefault().create(null, image);
         changed();
     }
 
@@ -408,19 +432,28 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
      */
     @Override
     public BufferedImage getBufferedImage() {
-        if (bufferedImage == null && imageData != null) {
-            //System.out.println("recreateing bufferedImage");
-            try {
-                bufferedImage = ImageIO.read(new ByteArrayInputStream(imageData));
-            } catch (Throwable e) {
-                e.printStackTrace();
-                // If we can't create a buffered image from the image data,
-                // there is no use to keep the image data and try again, so
-                // we drop the image data.
-                imageData = null;
-            }
+        ImageCache.CachedImage image = getCachedImage();
+        return (image == null) ? null : image.getImage();
+    }
+
+    /**
+     * Gets the cached image. If necessary, this method creates the cached
+     * image for the image data. The cached image decodes the image data
+     * lazily.
+     */
+    protected ImageCache.CachedImage getCachedImage() {
+        ImageCache.CachedImage image = cachedImage;
+        if (image == null && imageData != null) {
+            image = cachedImage = ImageCache.getDefault().create(imageData, null);
+        }
+        if (image != null && image.isFailed()) {
+            // If we can't create a buffered image from the image data,
+            // there is no use to keep the image data and try again, so
+            // we drop the image data.
+            imageData = null;
+            cachedImage = image = null;
         }
-        return bufferedImage;
+        return image;
     }
 
     /**
@@ -428,23 +461,40 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
      * data from the buffered image.
      * <p>
      * Note: For performance reasons this method returns a reference to
-     * the internally used image data array instead of cloning it. Do not
-     * modify this array.
+     * the internally used image data array instead of cloning it. If the
+     * data is kept in a memory-mapped file, the blob copies it once and
+     * returns the same copy until it is garbage collected. Do not modify
+     * this array. Use {@link #getImageBlob} to stream the data without
+     * copying it.
      */
     @Override
     public byte[] getImageData() {
-        if (bufferedImage != null && imageData == null) {
+        Blob blob = getImageBlob();
+        return (blob == null) ? null : blob.getBytes();
+    }
+
+    /**
+     * Gets the image data. If necessary, this method creates the image
+     * data from the buffered image.
+     */
+    @Override
+    public Blob getImageBlob() {
+        if (cachedImage != null && imageData == null) {
             try {
+                BufferedImage image = cachedImage.getImage();
                 ByteArrayOutputStream bout = new ByteArrayOutputStream();
-                ImageIO.write(bufferedImage, "PNG", bout);
+                ImageIO.write(image, "PNG", bout);
                 bout.close();
-                imageData = bout.toByteArray();
+                imageData = BlobStore.getDefault().put(bout.toByteArray());
+                // Now that we have image data, the cache may discard the
+                // decoded image.
+                cachedImage = ImageCache.getDefault().create(imageData, image);
             } catch (IOException e) {
                 e.printStackTrace();
                 // If we can't create image data from the buffered image,
                 // there is no use to keep the buffered image and try again, so
                 // we drop the buffered image.
-                bufferedImage = null;
+                cachedImage = null;
             }
         }
         return imageData;
@@ -473,9 +523,10 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
         while ((bytesRead = in.read(buf)) > 0) {
             baos.write(buf, 0, bytesRead);
         }
+        byte[] data = baos.toByteArray();
         BufferedImage img;
         try {
-            img = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+            img = ImageIO.read(new ByteArrayInputStream(data));
         } catch (Throwable t) {
             img = null;
         }
@@ -483,7 +534,14 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
             ResourceBundleUtil labels = ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels");
             throw new IOException(labels.getFormatted("file.failedToLoadImage.message", in.toString()));
         }
-        imageData = baos.toByteArray();
-        bufferedImage = img;
+        imageData = BlobStore.getDefault().put(data);
+        cachedImage = ImageCache.getDefault().create(imageData, img);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // The call to getImageBlob() ensures that we have serializable data
+        // in the imageData blob.
+        getImageBlob();
+        out.defaultWriteObject();
     }
 }
@@ -12,7 +12,6 @@ import org.jhotdraw.draw.figure.AbstractAttributedCompositeFigure;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
-import java.awt.image.BufferedImage;
 import java.util.*;
 import javax.swing.*;
 import javax.swing.undo.*;
@@ -53,6 +52,15 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
      * This is used to perform faster hit testing.
      */
     private transient Shape cachedHitShape;
+    /**
+     * Draws this figure, if its opacity is not 1. This field is created
+     * lazily.
+     */
+    private transient OpacityCompositor opacityCompositor;
+    /**
+     * Whether the rendered image of a translucent figure is cached.
+     */
+    private boolean isOpacityRasterCached;
     private static final boolean DEBUG = false;
 
     /**
@@ -77,34 +85,38 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
         opacity = Math.min(Math.max(0d, opacity), 1d);
         if (opacity != 0d) {
             if (opacity != 1d) {
-                Rectangle2D.Double drawingArea = getDrawingArea();
-                Rectangle2D clipBounds = g.getClipBounds();
-                if (clipBounds != null) {
-                    Rectangle2D.intersect(drawingArea, clipBounds, drawingArea);
-                }
-                if (!drawingArea.isEmpty()) {
-                    BufferedImage buf = new BufferedImage(
-                            Math.max(1, (int) ((2 + drawingArea.width) * g.getTransform().getScaleX())),
-                            Math.max(1, (int) ((2 + drawingArea.height) * g.getTransform().getScaleY())),
-                            BufferedImage.TYPE_INT_ARGB);
-                    Graphics2D gr = buf.createGraphics();
-                    gr.scale(g.getTransform().getScaleX(), g.getTransform().getScaleY());
-                    gr.translate((int) -drawingArea.x, (int) -drawingArea.y);
-                    gr.setRenderingHints(g.getRenderingHints());
-                    drawFigure(gr);
-                    gr.dispose();
-                    Composite savedComposite = g.getComposite();
-                    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
-                    g.drawImage(buf, (int) drawingArea.x, (int) drawingArea.y,
-                            2 + (int) drawingArea.width, 2 + (int) drawingArea.height, null);
-                    g.setComposite(savedComposite);
-                }
+                getOpacityCompositor().draw(g, getDrawingArea(), opacity, isOpacityRasterCached);
             } else {
                 drawFigure(g);
             }
         }
     }
 
+    /**
+     * If this is set to true, the rendered image of the figure is cached if
+     * the opacity of the figure is not 1. Set this to true for translucent
+     * figures which do not change often.
+     */
+    public void setOpacityRasterCached(boolean newValue) {
+        isOpacityRasterCached = newValue;
+    }
+
+    public boolean isOpacityRasterCached() {
+        return isOpacityRasterCached;
+    }
+
+    private OpacityCompositor getOpacityCompositor() {
+        if (opacityCompositor == null) {
+            opacityCompositor = new OpacityCompositor() {
+                @Override
+                protected void drawOpaque(Graphics2D g) {
+                    drawFigure(g);
+                }
+            };
+        }
+        return opacityCompositor;
+    }
+
     @Override
     public void drawFigure(Graphics2D g) {
         AffineTransform savedTransform = null;
@@ -112,15 +124,15 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
             savedTransform = g.getTransform();
             g.transform(get(TRANSFORM));
         }
-        Paint paint = SVGAttributeKeys.getFillPaint(this);
+        Paint paint = SVGAttributeKeys.getFillPaint(this, getDerivedAttributeCache());
         if (paint != null) {
             g.setPaint(paint);
             drawFill(g);
         }
-        paint = SVGAttributeKeys.getStrokePaint(this);
+        paint = SVGAttributeKeys.getStrokePaint(this, getDerivedAttributeCache());
         if (paint != null) {
             g.setPaint(paint);
-            g.setStroke(SVGAttributeKeys.getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
+            g.setStroke(getDerivedAttributeCache().getStroke(this, AttributeKeys.getScaleFactorFromGraphics(g)));
             drawStroke(g);
         }
         if (get(TRANSFORM) != null) {
@@ -149,6 +161,17 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
         cachedPath = null;
         cachedDrawingArea = null;
         cachedHitShape = null;
+        if (opacityCompositor != null) {
+            opacityCompositor.invalidate();
+        }
+    }
+
+    @Override
+    protected <T> void fireAttributeChanged(AttributeKey<T> attribute, T oldValue, T newValue) {
+        if (opacityCompositor != null) {
+            opacityCompositor.invalidate();
+        }
+        super.fireAttributeChanged(attribute, oldValue, newValue);
     }
 
     protected Path2D.Double getPath() {
@@ -504,6 +527,7 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
     @Override
     public SVGPathFigure clone() {
         SVGPathFigure that = (SVGPathFigure) super.clone();
+        that.opacityCompositor = null;
         return that;
     }
 
@@ -418,7 +418,7 @@ public class SVGTextAreaFigure extends SVGAttributedFigure
 
     @Override
     public Font getFont() {
-        return SVGAttributeKeys.getFont(this);
+        return getDerivedAttributeCache().getFont(this);
     }
 
     @Override
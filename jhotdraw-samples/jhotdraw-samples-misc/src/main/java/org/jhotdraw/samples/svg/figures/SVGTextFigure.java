@@ -331,7 +331,7 @@ public class SVGTextFigure
 
     @Override
     public Font getFont() {
-        return SVGAttributeKeys.getFont(this);
+        return getDerivedAttributeCache().getFont(this);
     }
 
     @Override
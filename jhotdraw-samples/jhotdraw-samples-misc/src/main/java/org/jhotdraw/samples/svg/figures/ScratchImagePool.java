@@ -0,0 +1,133 @@
+/*
+ * @(#)ScratchImagePool.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.svg.figures;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A pool of scratch images for offscreen rendering.
+ * <p>
+ * The images are allocated in buckets, whose width and height are powers of
+ * two. An image which has been acquired from the pool is at least as large as
+ * requested, and must be given back with {@link #release} when it is not
+ * needed anymore. The pool keeps a limited number of free images per bucket,
+ * and a limited total number of pixels.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ScratchImagePool {
+
+    private static final ScratchImagePool DEFAULT = new ScratchImagePool(4, 4 << 20);
+    /**
+     * The smallest width and height of an image.
+     */
+    private static final int MIN_SIZE = 32;
+    private final int maxImagesPerBucket;
+    private final long maxPixels;
+    private long pixels;
+    private final HashMap<Long, ArrayList<BufferedImage>> buckets = new HashMap<>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxImagesPerBucket the maximal number of free images per bucket.
+     * @param maxPixels the maximal number of pixels of all free images.
+     */
+    public ScratchImagePool(int maxImagesPerBucket, long maxPixels) {
+        this.maxImagesPerBucket = maxImagesPerBucket;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Returns the pool which is shared by all SVG figures.
+     */
+    public static ScratchImagePool getDefault() {
+        return DEFAULT;
+    }
+
+    private static int bucketSize(int size) {
+        return Math.max(MIN_SIZE, Integer.highestOneBit(size - 1) << 1);
+    }
+
+    private static Long bucketKey(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    /**
+     * Returns an image of type {@code TYPE_INT_ARGB} with at least the
+     * specified size. The area from (0,0) to (width,height) is transparent.
+     */
+    public BufferedImage acquire(int width, int height) {
+        int bw = bucketSize(width);
+        int bh = bucketSize(height);
+        BufferedImage img = null;
+        synchronized (this) {
+            ArrayList<BufferedImage> bucket = buckets.get(bucketKey(bw, bh));
+            if (bucket != null && !bucket.isEmpty()) {
+                img = bucket.remove(bucket.size() - 1);
+                pixels -= (long) bw * bh;
+            }
+        }
+        if (img == null) {
+            return new BufferedImage(bw, bh, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, width, height);
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    /**
+     * Gives an image back to the pool, which has been acquired with
+     * {@link #acquire}.
+     */
+    public void release(BufferedImage img) {
+        int bw = img.getWidth();
+        int bh = img.getHeight();
+        synchronized (this) {
+            if (pixels + (long) bw * bh <= maxPixels) {
+                Long key = bucketKey(bw, bh);
+                ArrayList<BufferedImage> bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(maxImagesPerBucket);
+                    buckets.put(key, bucket);
+                }
+                if (bucket.size() < maxImagesPerBucket) {
+                    bucket.add(img);
+                    pixels += (long) bw * bh;
+                    return;
+                }
+            }
+        }
+        img.flush();
+    }
+
+    /**
+     * Discards all free images.
+     */
+    public synchronized void clear() {
+        for (ArrayList<BufferedImage> bucket : buckets.values()) {
+            for (BufferedImage img : bucket) {
+                img.flush();
+            }
+        }
+        buckets.clear();
+        pixels = 0;
+    }
+}
@@ -14,6 +14,7 @@ import java.awt.datatransfer.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.net.URI;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
@@ -111,7 +112,13 @@ public class ImageMapOutputFormat implements OutputFormat {
 
     @Override
     public void write(OutputStream out, Drawing drawing) throws IOException {
-        write(out, drawing.getChildren());
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            write(out, drawing.getChildren());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -121,7 +128,13 @@ public class ImageMapOutputFormat implements OutputFormat {
      */
     public void write(OutputStream out, Drawing drawing,
             AffineTransform drawingTransform, Dimension imageSize) throws IOException {
-        write(out, drawing.getChildren(), drawingTransform, imageSize);
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            write(out, drawing.getChildren(), drawingTransform, imageSize);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -199,7 +212,13 @@ public class ImageMapOutputFormat implements OutputFormat {
     @Override
     public Transferable createTransferable(Drawing drawing, java.util.List<Figure> figures, double scaleFactor) throws IOException {
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        write(buf, figures);
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            write(buf, figures);
+        } finally {
+            lock.unlock();
+        }
         return new InputStreamTransferable(new DataFlavor("text/html", "HTML Image Map"), buf.toByteArray());
     }
 
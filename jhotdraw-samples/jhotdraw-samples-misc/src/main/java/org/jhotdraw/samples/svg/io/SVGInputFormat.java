@@ -19,6 +19,8 @@ import java.io.*;
 import java.net.*;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.*;
@@ -29,12 +31,17 @@ import javax.swing.text.DefaultStyledDocument;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.io.InputFormat;
 import org.jhotdraw.formatter.FontFormatter;
 import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.io.Base64;
-import org.jhotdraw.io.StreamPosTokenizer;
+import org.jhotdraw.io.NumberScanner;
 import org.jhotdraw.samples.svg.Gradient;
 import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
 import org.jhotdraw.samples.svg.SVGAttributeKeys.TextAnchor;
@@ -43,8 +50,14 @@ import org.jhotdraw.samples.svg.figures.SVGFigure;
 import org.jhotdraw.util.LocaleUtil;
 import org.jhotdraw.xml.css.CSSParser;
 import org.jhotdraw.xml.css.StyleManager;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -68,6 +81,21 @@ public class SVGInputFormat implements InputFormat {
      * Set this to true, to getChild debug output on if (DEBUG) System.out.
      */
     private static final boolean DEBUG = false;
+    /**
+     * The path data, points and transforms are parsed concurrently, if at
+     * least this number of elements has such attributes.
+     */
+    private static final int PARALLEL_PARSE_THRESHOLD = 64;
+    /**
+     * A parse task parses the attributes of at most this number of elements
+     * without forking.
+     */
+    private static final int PARSE_TASK_SIZE = 32;
+    /**
+     * The streaming reader reads at most this number of sibling elements in
+     * one batch, whose attributes are parsed concurrently.
+     */
+    private static final int STREAM_BATCH_SIZE = 512;
     /**
      * The SVGFigure factory is used to create Figure's for the drawing.
      */
@@ -87,10 +115,14 @@ public class SVGInputFormat implements InputFormat {
      */
     private HashMap<Element, Object> elementObjects;
     /**
-     * Tokenizer for parsing SVG path expressions.
-     *
+     * Holds the path data, points and transforms which have been parsed in
+     * advance by {@link #parseAttributesConcurrently}.
      */
-    private StreamPosTokenizer toPathTokenizer;
+    private HashMap<Element, ParsedAttributes> parsedAttributes;
+    /**
+     * The pool which parses path data, points and transforms concurrently.
+     */
+    private ForkJoinPool parsePool = ForkJoinPool.commonPool();
     /**
      * FontFormatter for parsing font family names.
      */
@@ -159,6 +191,14 @@ public class SVGInputFormat implements InputFormat {
      * Holds the document that is currently being read.
      */
     private Element document;
+    /**
+     * Whether the attributes of the figures are interned after reading.
+     */
+    private boolean isInternAttributes = true;
+    /**
+     * Whether the SVG document is read with a streaming parser.
+     */
+    private boolean isStreaming;
 
     /**
      * Creates a new instance.
@@ -171,6 +211,51 @@ public class SVGInputFormat implements InputFormat {
         this.factory = factory;
     }
 
+    /**
+     * If this is set to true, the figures which have identical attributes
+     * share one attribute array after they have been read. This greatly
+     * reduces the memory needed for large drawings. The default value is true.
+     */
+    public void setInternAttributes(boolean newValue) {
+        isInternAttributes = newValue;
+    }
+
+    public boolean isInternAttributes() {
+        return isInternAttributes;
+    }
+
+    /**
+     * If this is set to true, the SVG document is read with a streaming
+     * parser instead of being loaded into a DOM tree as a whole. The default
+     * value is false.
+     * <p>
+     * The streaming parser only keeps the XML elements of the figure, which
+     * is currently being read, the ancestors of that figure, and the elements
+     * which are referenced by other elements, such as gradients and the
+     * targets of "use" elements. The figures which are direct children of the
+     * "svg" element are added to the drawing as soon as they have been read.
+     * Children of "g" elements are read one by one, so that even a drawing,
+     * which consists of a single huge group, is read with little memory.
+     * <p>
+     * When a file or an URL is read, the document is parsed twice. The first
+     * pass collects the ids of the referenced elements, so that only those
+     * elements are kept. When an input stream is read, all elements with an
+     * id are kept. Elements, which reference an element that comes later in
+     * the document, are read at the end of the document, and then inserted at
+     * their place in the drawing.
+     * <p>
+     * CSS style sheets only apply to the elements which come after them.
+     * The drawing is changed while the document is read. If reading fails,
+     * the drawing contains the figures which have been read so far.
+     */
+    public void setStreaming(boolean newValue) {
+        isStreaming = newValue;
+    }
+
+    public boolean isStreaming() {
+        return isStreaming;
+    }
+
     @Override
     public void read(URI uri, Drawing drawing) throws IOException {
         read(new File(uri), drawing);
@@ -187,24 +272,50 @@ public class SVGInputFormat implements InputFormat {
 
     public void read(File file, Drawing drawing, boolean replace) throws IOException {
         this.url = file.toURI().toURL();
-        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
         try {
-            read(in, drawing, replace);
+            Set<String> referencedIds = null;
+            if (isStreaming) {
+                // The first pass collects the ids of the referenced elements
+                BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    referencedIds = collectReferencedIds(in);
+                } finally {
+                    in.close();
+                }
+            }
+            BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                read(in, drawing, replace, referencedIds);
+            } finally {
+                in.close();
+            }
         } finally {
-            in.close();
+            this.url = null;
         }
-        this.url = null;
     }
 
     public void read(URL url, Drawing drawing, boolean replace) throws IOException {
         this.url = url;
-        InputStream in = url.openStream();
         try {
-            read(in, drawing, replace);
+            Set<String> referencedIds = null;
+            if (isStreaming) {
+                // The first pass collects the ids of the referenced elements
+                InputStream in = url.openStream();
+                try {
+                    referencedIds = collectReferencedIds(in);
+                } finally {
+                    in.close();
+                }
+            }
+            InputStream in = url.openStream();
+            try {
+                read(in, drawing, replace, referencedIds);
+            } finally {
+                in.close();
+            }
         } finally {
-            in.close();
+            this.url = null;
         }
-        this.url = null;
     }
 
     /**
@@ -218,12 +329,29 @@ public class SVGInputFormat implements InputFormat {
      */
     @Override
     public void read(InputStream in, Drawing drawing, boolean replace) throws IOException {
+        read(in, drawing, replace, null);
+    }
+
+    /**
+     * Reads the input stream.
+     *
+     * @param referencedIds The ids of the elements which are referenced by
+     * other elements, or null if they are not known. The streaming parser
+     * only keeps the referenced elements, or all elements with an id if
+     * this is null.
+     */
+    private void read(InputStream in, Drawing drawing, boolean replace, Set<String> referencedIds) throws IOException {
+        if (isStreaming) {
+            new StreamingReader(drawing, replace, referencedIds).read(in);
+            return;
+        }
         long start;
         if (DEBUG) {
             start = System.currentTimeMillis();
         }
         this.figures = new LinkedList<Figure>();
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
         DocumentBuilder builder;
         try {
             builder = factory.newDocumentBuilder();
@@ -231,11 +359,18 @@ public class SVGInputFormat implements InputFormat {
             Logger.getLogger(SVGInputFormat.class.getName()).log(Level.SEVERE, null, ex);
             throw new IOException(ex);
         }
+        // Do not load external entities, such as the SVG DTD
+        builder.setEntityResolver(new EntityResolver() {
+            @Override
+            public InputSource resolveEntity(String publicId, String systemId) {
+                return new InputSource(new StringReader(""));
+            }
+        });
         if (DEBUG) {
             System.out.println("SVGInputFormat parser created " + (System.currentTimeMillis() - start));
         }
         try {
-            document = (Element) builder.parse(in);
+            document = builder.parse(in).getDocumentElement();
         } catch (SAXException ex) {
             Logger.getLogger(SVGInputFormat.class.getName()).log(Level.SEVERE, null, ex);
             throw new IOException(ex);
@@ -245,42 +380,23 @@ public class SVGInputFormat implements InputFormat {
         }
         // Search for the first 'svg' element in the XML document
         // in preorder sequence
-        Element svg = document;
-        Stack<Element> stack = new Stack<Element>();
-        //LinkedList<Element> ll = new LinkedList<Element>();
-        //ll.add(document);
-        stack.push((Element) document.getFirstChild());
-        while (!stack.empty() && stack.peek().getNextSibling() != null) {
-            Element iter = stack.peek();
-            Element node = (Element) iter.getNextSibling();
-            stack.set(stack.indexOf(iter), node);
-            Element children = (Element) node.getFirstChild();
-            if (iter.getNextSibling() == null) {
-                stack.pop();
-            }
-            if (children != null && children.getNextSibling() != null) {
-                stack.push(children);
-            }
-            if (node.getLocalName() != null
-                    && node.getLocalName().equals("svg")
-                    && (node.getPrefix() == null
-                    || node.getPrefix().equals(SVG_NAMESPACE))) {
-                svg = node;
-                break;
-            }
-        }
-        if (svg.getLocalName() == null
-                || !svg.getLocalName().equals("svg")
-                || (svg.getPrefix() != null
-                && !svg.getPrefix().equals(SVG_NAMESPACE))) {
-            throw new IOException("'svg' element expected: " + svg.getLocalName());
-        }
+        Element svg = (document == null) ? null : findSVGElement(document);
+        if (svg == null) {
+            throw new IOException("'svg' element expected.");
+        }
+        // Read the 'svg' element like the streaming reader does: without
+        // its ancestors, and without the nodes which are not read
+        svg.getParentNode().removeChild(svg);
+        document = svg;
+        removeIgnoredNodes(svg, false);
         //long end1 = System.currentTimeMillis();
         // Flatten CSS Styles
         initStorageContext(document);
         flattenStyles(svg);
         //long end2 = System.currentTimeMillis();
+        parseAttributesConcurrently(Collections.singletonList(svg));
         readElement(svg);
+        parsedAttributes = null;
         if (DEBUG) {
             long end = System.currentTimeMillis();
             System.out.println("SVGInputFormat elapsed:" + (end - start));
@@ -289,6 +405,9 @@ public class SVGInputFormat implements InputFormat {
         if (DEBUG) System.out.println("SVGInputFormat flatten:"+(end2-end1));
         if (DEBUG) System.out.println("SVGInputFormat build:"+(end-end2));
          */
+        if (isInternAttributes) {
+            AttributeArray.internAttributes(figures);
+        }
         if (replace) {
             drawing.removeAllChildren();
         }
@@ -312,15 +431,763 @@ public class SVGInputFormat implements InputFormat {
         styleManager = null;
     }
 
+    /**
+     * Sets the pool which parses path data, points and transforms
+     * concurrently. The default value is the common fork-join pool.
+     */
+    public void setParsePool(ForkJoinPool newValue) {
+        parsePool = newValue;
+    }
+
+    public ForkJoinPool getParsePool() {
+        return parsePool;
+    }
+
+    /**
+     * The path data, points and transform of an element, which have been
+     * parsed in advance. A value is set to null when it has been used,
+     * because figures take ownership of the objects.
+     * <p>
+     * The attribute strings are extracted from the element on the calling
+     * thread, so that the parse tasks do not access the DOM.
+     */
+    private static class ParsedAttributes {
+
+        String d;
+        BezierPath[] path;
+        String points;
+        Point2D.Double[] pointArray;
+        String transform;
+        AffineTransform tx;
+    }
+
+    /**
+     * Parses the attributes of a range of elements.
+     */
+    private static class ParseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final ParsedAttributes[] attributes;
+        private final int from;
+        private final int to;
+
+        ParseTask(ParsedAttributes[] attributes, int from, int to) {
+            this.attributes = attributes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARSE_TASK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    parse(attributes[i]);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseTask(attributes, from, mid),
+                        new ParseTask(attributes, mid, to));
+            }
+        }
+
+        /**
+         * Parses the values. A value which can not be parsed, or which needs
+         * a warning, is left null, so that it is parsed again when the element
+         * is read, and the error or the warning is reported in document order
+         * on the calling thread.
+         */
+        private void parse(ParsedAttributes p) {
+            if (p.d != null) {
+                try {
+                    p.path = parsePath(p.d);
+                } catch (IOException | RuntimeException e) {
+                    p.path = null;
+                }
+            }
+            if (p.points != null) {
+                p.pointArray = toPlainPoints(p.points);
+            }
+            if (p.transform != null && !hasRefTransform(p.transform)) {
+                try {
+                    p.tx = parseTransform(p.transform);
+                } catch (IOException | RuntimeException e) {
+                    p.tx = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the path data, points and transforms of the specified elements
+     * and their descendants on the parse pool, so that the figures can be
+     * created from the parsed values afterwards in document order.
+     * <p>
+     * The DOM is only accessed on the calling thread. The workers parse the
+     * attribute strings. Nothing is done for a small number of elements, or
+     * if the pool has only one thread.
+     */
+    private void parseAttributesConcurrently(Collection<Element> roots) {
+        parsedAttributes = null;
+        if (parsePool.getParallelism() <= 1) {
+            return;
+        }
+        ArrayList<Element> elems = new ArrayList<Element>();
+        ArrayList<ParsedAttributes> list = new ArrayList<ParsedAttributes>();
+        for (Element root : roots) {
+            collectParsedAttributes(root, elems, list);
+        }
+        if (list.size() < PARALLEL_PARSE_THRESHOLD) {
+            return;
+        }
+        ParsedAttributes[] array = list.toArray(new ParsedAttributes[list.size()]);
+        parsePool.invoke(new ParseTask(array, 0, array.length));
+        parsedAttributes = new HashMap<Element, ParsedAttributes>(array.length * 2);
+        for (int i = 0; i < array.length; i++) {
+            parsedAttributes.put(elems.get(i), array[i]);
+        }
+    }
+
+    private void collectParsedAttributes(Element elem, ArrayList<Element> elems, ArrayList<ParsedAttributes> list) {
+        String name = elem.getLocalName();
+        ParsedAttributes p = new ParsedAttributes();
+        if ("path".equals(name)) {
+            p.d = getParseableAttribute(elem, "d");
+        } else if ("polygon".equals(name) || "polyline".equals(name)) {
+            p.points = getParseableAttribute(elem, "points");
+        }
+        p.transform = getParseableAttribute(elem, "transform");
+        if (p.d != null || p.points != null || p.transform != null) {
+            elems.add(elem);
+            list.add(p);
+        }
+        for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                collectParsedAttributes((Element) child, elems, list);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of an attribute of the element, as it is returned
+     * by {@code readAttribute}, or null if the value is inherited or absent.
+     */
+    private static String getParseableAttribute(Element elem, String attributeName) {
+        String value;
+        if (elem.hasAttributeNS(SVG_NAMESPACE, attributeName)) {
+            value = elem.getAttributeNS(SVG_NAMESPACE, attributeName);
+        } else if (elem.hasAttribute(attributeName)) {
+            value = elem.getAttribute(attributeName);
+        } else {
+            return null;
+        }
+        return (value.equals("inherit") || value.equals("none") || value.isEmpty()) ? null : value;
+    }
+
+    /**
+     * Parses a points attribute, which consists only of plain numbers. Returns
+     * null if a value has a unit.
+     */
+    private static Point2D.Double[] toPlainPoints(String str) {
+        double[] coords = NumberScanner.toNumbers(str);
+        if (coords == null) {
+            return null;
+        }
+        Point2D.Double[] points = new Point2D.Double[coords.length / 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point2D.Double(coords[i * 2], coords[i * 2 + 1]);
+        }
+        return points;
+    }
+
+    /**
+     * Returns the first "svg" element in preorder sequence, or null.
+     */
+    private static Element findSVGElement(Element elem) {
+        if ("svg".equals(elem.getLocalName()) && isSVGNamespace(elem.getNamespaceURI())) {
+            return elem;
+        }
+        for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                Element svg = findSVGElement((Element) child);
+                if (svg != null) {
+                    return svg;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the nodes, which are not read, from a DOM tree: comments,
+     * processing instructions, elements of foreign namespaces, and text
+     * outside of "text", "textArea" and "style" elements. The
+     * {@link StreamingReader} does not build these nodes.
+     */
+    private static void removeIgnoredNodes(Element elem, boolean isKeepingText) {
+        String name = elem.getLocalName();
+        isKeepingText |= "text".equals(name) || "textArea".equals(name) || "style".equals(name);
+        Node child = elem.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child instanceof Element && isSVGNamespace(child.getNamespaceURI())) {
+                removeIgnoredNodes((Element) child, isKeepingText);
+            } else if (!isKeepingText || !(child instanceof Text)) {
+                elem.removeChild(child);
+            }
+            child = next;
+        }
+    }
+
+    private static boolean isSVGNamespace(String namespace) {
+        return namespace == null || namespace.isEmpty() || namespace.equals(SVG_NAMESPACE);
+    }
+
     private void initStorageContext(Element root) {
-        identifiedElements = new HashMap<String, Element>();
+        initStorageContext();
         identifyElements(root);
+    }
+
+    private void initStorageContext() {
+        identifiedElements = new HashMap<String, Element>();
         elementObjects = new HashMap<Element, Object>();
         viewportStack = new Stack<Viewport>();
         viewportStack.push(new Viewport());
         styleManager = new StyleManager();
     }
 
+    /**
+     * Creates a StAX reader for an SVG document. The reader does not load
+     * external entities, such as the SVG DTD.
+     */
+    private static XMLStreamReader createStreamReader(InputStream in) throws IOException {
+        XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+        xmlFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlFactory.setXMLResolver(new XMLResolver() {
+            @Override
+            public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        });
+        try {
+            return xmlFactory.createXMLStreamReader(in);
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Collects the ids of all elements, which are referenced by an
+     * "xlink:href" attribute or by an "url(#id)" value.
+     */
+    private static Set<String> collectReferencedIds(InputStream in) throws IOException {
+        HashSet<String> ids = new HashSet<String>();
+        XMLStreamReader reader = createStreamReader(in);
+        try {
+            boolean isStyle = false;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+                            addReferencedIds(reader.getAttributeLocalName(i), reader.getAttributeValue(i), ids);
+                        }
+                        isStyle = "style".equals(reader.getLocalName());
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (isStyle) {
+                            addReferencedIds("style", reader.getText(), ids);
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        isStyle = false;
+                        break;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+        return ids;
+    }
+
+    /**
+     * Adds the ids, which are referenced by the value of an attribute, to the
+     * specified collection.
+     */
+    private static void addReferencedIds(String attributeName, String value, Collection<String> ids) {
+        if (attributeName.equals("href")) {
+            if (value.startsWith("#")) {
+                ids.add(value.substring(1));
+            }
+            return;
+        }
+        int start = value.indexOf("url(#");
+        while (start != -1) {
+            int end = value.indexOf(')', start);
+            if (end == -1) {
+                break;
+            }
+            ids.add(value.substring(start + 5, end).trim());
+            start = value.indexOf("url(#", end);
+        }
+    }
+
+    /**
+     * A "svg" or "g" element, whose children are read one by one by the
+     * {@link StreamingReader}.
+     */
+    private static class StreamFrame {
+
+        /**
+         * The frame of the enclosing element, or null for the "svg" element.
+         */
+        final StreamFrame parent;
+        /**
+         * The element. Its child elements are removed after they have been
+         * read, unless they are kept for a deferred read.
+         */
+        final Element elem;
+        /**
+         * The figure of a "g" element, or null for the "svg" element.
+         */
+        final CompositeFigure group;
+        /**
+         * The attributes of the "g" element.
+         */
+        final HashMap<AttributeKey<?>, Object> attributes;
+        /**
+         * The transform, which is applied to the children of the element after
+         * they have been read.
+         */
+        AffineTransform transform;
+        /**
+         * The number of child figures, which have been read.
+         */
+        int childCount;
+        /**
+         * The number of deferred child figures, which have been inserted.
+         */
+        int insertedCount;
+        /**
+         * True, if a descendant element is kept for a deferred read.
+         */
+        boolean hasDeferred;
+
+        StreamFrame(StreamFrame parent, Element elem, CompositeFigure group,
+                HashMap<AttributeKey<?>, Object> attributes) {
+            this.parent = parent;
+            this.elem = elem;
+            this.group = group;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * An element, which references an element that comes later in the
+     * document.
+     */
+    private static class DeferredElement {
+
+        final StreamFrame frame;
+        final int index;
+        final Element elem;
+
+        DeferredElement(StreamFrame frame, int index, Element elem) {
+            this.frame = frame;
+            this.index = index;
+            this.elem = elem;
+        }
+    }
+
+    /**
+     * Reads an SVG document with a StAX parser.
+     * <p>
+     * The reader builds a small DOM tree. The tree holds the "svg" element and
+     * the "g" elements enclosing the current position in the document,
+     * without the children which have already been read. Other elements are
+     * built as a complete subtree, which is read with the same methods as a
+     * DOM document, and then removed from the tree.
+     */
+    private class StreamingReader {
+
+        private final Drawing drawing;
+        private final boolean replace;
+        /**
+         * The ids of the elements which are referenced by other elements, or
+         * null if they are not known.
+         */
+        private final Set<String> referencedIds;
+        private Document document;
+        /**
+         * The frames of the "svg" and "g" elements which are currently open.
+         */
+        private StreamFrame frame;
+        /**
+         * The element which is currently being built, or null if the parser
+         * is at a child of the current frame.
+         */
+        private Element current;
+        /**
+         * Greater than zero while text content is kept.
+         */
+        private int textDepth;
+        /**
+         * Greater than zero while the parser is in an element of a foreign
+         * namespace.
+         */
+        private int skipDepth;
+        private int drawingIndex;
+        private final HashSet<Element> keptElements = new HashSet<Element>();
+        private final ArrayList<DeferredElement> deferred = new ArrayList<DeferredElement>();
+        /**
+         * Child elements of the current frame, which have been built, but
+         * not yet read.
+         */
+        private final ArrayList<Element> batch = new ArrayList<Element>();
+
+        StreamingReader(Drawing drawing, boolean replace, Set<String> referencedIds) {
+            this.drawing = drawing;
+            this.replace = replace;
+            this.referencedIds = referencedIds;
+        }
+
+        public void read(InputStream in) throws IOException {
+            DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+            builderFactory.setNamespaceAware(true);
+            try {
+                document = builderFactory.newDocumentBuilder().newDocument();
+            } catch (ParserConfigurationException ex) {
+                throw new IOException(ex);
+            }
+            figures = new LinkedList<Figure>();
+            initStorageContext();
+            XMLStreamReader reader = createStreamReader(in);
+            drawing.beginUpdate();
+            try {
+                if (replace) {
+                    drawing.removeAllChildren();
+                }
+                drawingIndex = drawing.getChildCount();
+                boolean isDone = false;
+                while (!isDone && reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            startElement(reader);
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            if (current != null && textDepth > 0 && skipDepth == 0) {
+                                current.appendChild(document.createTextNode(reader.getText()));
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            isDone = endElement();
+                            break;
+                    }
+                }
+                reader.close();
+                if (frame == null && !isDone) {
+                    throw new IOException("'svg' element expected.");
+                }
+                readDeferredElements();
+                if (replace) {
+                    Viewport viewport = viewportStack.firstElement();
+                    drawing.set(VIEWPORT_FILL, VIEWPORT_FILL.get(viewport.attributes));
+                    drawing.set(VIEWPORT_FILL_OPACITY, VIEWPORT_FILL_OPACITY.get(viewport.attributes));
+                    drawing.set(VIEWPORT_HEIGHT, VIEWPORT_HEIGHT.get(viewport.attributes));
+                    drawing.set(VIEWPORT_WIDTH, VIEWPORT_WIDTH.get(viewport.attributes));
+                }
+            } catch (XMLStreamException ex) {
+                throw new IOException(ex);
+            } finally {
+                drawing.commitUpdate();
+                // Get rid of all objects we don't need anymore to help garbage collector.
+                identifiedElements = null;
+                elementObjects = null;
+                viewportStack = null;
+                styleManager = null;
+                figures = null;
+                document = null;
+            }
+        }
+
+        private void startElement(XMLStreamReader reader) throws IOException {
+            if (skipDepth > 0 || !isSVGNamespace(reader.getNamespaceURI())) {
+                skipDepth++;
+                return;
+            }
+            String name = reader.getLocalName();
+            if (frame == null) {
+                if ("svg".equals(name)) {
+                    Element elem = createElement(reader);
+                    frame = new StreamFrame(null, elem, null, null);
+                    frame.transform = readViewport(elem);
+                }
+                // Elements outside of the first "svg" element are ignored
+                return;
+            }
+            Element elem = createElement(reader);
+            if (textDepth > 0 || "text".equals(name) || "textArea".equals(name)
+                    || "style".equals(name)) {
+                textDepth++;
+            }
+            if (current != null) {
+                current.appendChild(elem);
+                current = elem;
+            } else if ("g".equals(name) && !keptElements.contains(elem)) {
+                readBatch();
+                frame.elem.appendChild(elem);
+                HashMap<AttributeKey<?>, Object> a = new HashMap<AttributeKey<?>, Object>();
+                readCoreAttributes(elem, a);
+                readOpacityAttribute(elem, a);
+                frame = new StreamFrame(frame, elem, factory.createG(a), a);
+            } else {
+                frame.elem.appendChild(elem);
+                current = elem;
+            }
+        }
+
+        /**
+         * Returns true when the end of the "svg" element has been reached.
+         */
+        private boolean endElement() throws IOException {
+            if (skipDepth > 0) {
+                skipDepth--;
+                return false;
+            }
+            if (frame == null) {
+                return false;
+            }
+            if (textDepth > 0) {
+                textDepth--;
+            }
+            if (current != null) {
+                Element elem = current;
+                if ("style".equals(elem.getLocalName())) {
+                    readStyleElement(elem);
+                }
+                if (elem.getParentNode() == frame.elem) {
+                    current = null;
+                    addToBatch(elem);
+                } else {
+                    current = (Element) elem.getParentNode();
+                }
+                return false;
+            }
+            readBatch();
+            StreamFrame f = frame;
+            frame = f.parent;
+            if (f.group == null) {
+                viewportStack.pop();
+                return true;
+            }
+            endGroup(f);
+            return false;
+        }
+
+        /**
+         * Adds a child element of the current frame to the batch, or defers
+         * it, if it references an element which comes later.
+         */
+        private void addToBatch(Element elem) throws IOException {
+            if (hasForwardReference(elem)) {
+                readBatch();
+                deferred.add(new DeferredElement(frame, frame.childCount, elem));
+                for (StreamFrame f = frame; f != null; f = f.parent) {
+                    f.hasDeferred = true;
+                }
+                return;
+            }
+            batch.add(elem);
+            if (batch.size() >= STREAM_BATCH_SIZE) {
+                readBatch();
+            }
+        }
+
+        /**
+         * Parses the attributes of the batch concurrently, and then reads the
+         * elements of the batch in document order.
+         */
+        private void readBatch() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            parseAttributesConcurrently(batch);
+            try {
+                for (Element elem : batch) {
+                    readChild(elem);
+                }
+            } finally {
+                batch.clear();
+                parsedAttributes = null;
+            }
+        }
+
+        /**
+         * Reads a child element of the current frame.
+         */
+        private void readChild(Element elem) throws IOException {
+            Figure childFigure = readElement(elem);
+            boolean isVisible = isVisible(elem);
+            if (!containsKeptElement(elem)) {
+                frame.elem.removeChild(elem);
+            }
+            if (childFigure != null && isVisible) {
+                addChild(frame, childFigure);
+            }
+            // Only keep the objects of referenced elements
+            elementObjects.keySet().retainAll(keptElements);
+            // Figures of nested "svg" elements
+            if (!figures.isEmpty()) {
+                for (Figure f : figures) {
+                    addToDrawing(drawingIndex++, f);
+                }
+                figures.clear();
+            }
+        }
+
+        private void endGroup(StreamFrame f) throws IOException {
+            readTransformAttribute(f.elem, f.attributes);
+            if (TRANSFORM.get(f.attributes) != null) {
+                f.transform = TRANSFORM.get(f.attributes);
+                f.group.transform(f.transform);
+            }
+            boolean isVisible = isVisible(f.elem);
+            if (!f.hasDeferred && !containsKeptElement(f.elem)) {
+                frame.elem.removeChild(f.elem);
+            }
+            if (f.group instanceof SVGFigure && ((SVGFigure) f.group).isEmpty() && !f.hasDeferred) {
+                return;
+            }
+            if (isVisible) {
+                addChild(frame, f.group);
+            }
+        }
+
+        private void addChild(StreamFrame f, Figure child) {
+            if (f.group == null) {
+                child.transform(f.transform);
+                addToDrawing(drawingIndex++, child);
+            } else {
+                f.group.basicAdd(child);
+            }
+            f.childCount++;
+        }
+
+        private void addToDrawing(int index, Figure f) {
+            if (isInternAttributes) {
+                AttributeArray.internAttributes(Collections.singletonList(f));
+            }
+            drawing.add(index, f);
+        }
+
+        /**
+         * Reads the elements which reference an element that comes later in
+         * the document, and inserts their figures at their place.
+         */
+        private void readDeferredElements() throws IOException {
+            for (DeferredElement d : deferred) {
+                Figure f = readElement(d.elem);
+                if (f == null || !isVisible(d.elem)) {
+                    continue;
+                }
+                for (StreamFrame fr = d.frame; fr != null; fr = fr.parent) {
+                    if (fr.transform != null) {
+                        f.transform(fr.transform);
+                    }
+                }
+                int index = d.index + d.frame.insertedCount++;
+                if (d.frame.group == null) {
+                    addToDrawing(index, f);
+                    drawingIndex++;
+                } else {
+                    d.frame.group.add(index, f);
+                }
+            }
+            deferred.clear();
+        }
+
+        /**
+         * Creates an element with the attributes of the current start tag,
+         * and flattens its CSS styles.
+         */
+        private Element createElement(XMLStreamReader reader) {
+            Element elem = document.createElementNS(SVG_NAMESPACE, reader.getLocalName());
+            for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String name = reader.getAttributeLocalName(i);
+                elem.setAttribute((prefix == null || prefix.isEmpty()) ? name : prefix + ':' + name,
+                        reader.getAttributeValue(i));
+            }
+            String style = elem.getAttribute("style");
+            if (!style.isEmpty()) {
+                for (String styleProperty : style.split(";")) {
+                    String[] stylePropertyElements = styleProperty.split(":");
+                    if (stylePropertyElements.length == 2
+                            && !elem.hasAttribute(stylePropertyElements[0].trim())) {
+                        elem.setAttribute(stylePropertyElements[0].trim(),
+                                stylePropertyElements[1].trim());
+                    }
+                }
+            }
+            styleManager.applyStylesTo(elem);
+            for (String idName : new String[]{"id", "xml:id"}) {
+                String id = elem.getAttribute(idName);
+                if (!id.isEmpty() && (referencedIds == null || referencedIds.contains(id))) {
+                    identifiedElements.put(id, elem);
+                    keptElements.add(elem);
+                }
+            }
+            return elem;
+        }
+
+        private void readStyleElement(Element elem) throws IOException {
+            if (readAttribute(elem, "type", "text/css").equals("text/css")) {
+                CSSParser cssParser = new CSSParser();
+                cssParser.parse(elem.getTextContent(), styleManager);
+            }
+        }
+
+        /**
+         * Returns true if the element or one of its descendants references an
+         * element, which has not been read yet.
+         */
+        private boolean hasForwardReference(Element elem) {
+            ArrayList<String> ids = new ArrayList<String>();
+            NamedNodeMap attributes = elem.getAttributes();
+            for (int i = 0, n = attributes.getLength(); i < n; i++) {
+                Node attr = attributes.item(i);
+                String name = attr.getNodeName();
+                addReferencedIds(name.endsWith(":href") ? "href" : name, attr.getNodeValue(), ids);
+            }
+            for (String id : ids) {
+                if (!identifiedElements.containsKey(id)) {
+                    return true;
+                }
+            }
+            for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof Element && hasForwardReference((Element) child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean containsKeptElement(Element elem) {
+            if (keptElements.contains(elem)) {
+                return true;
+            }
+            for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof Element && containsKeptElement((Element) child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * Flattens all CSS styles.
      * Styles defined in a "style" attribute and in CSS rules are converted
@@ -349,10 +1216,10 @@ public class SVGInputFormat implements InputFormat {
                     }
                 }
                 styleManager.applyStylesTo(elem);
-                NodeList list = elem.getChildNodes();
-                for (int i = 0; i < list.getLength(); i++) {
-                    Element child = (Element) list.item(i);
-                    flattenStyles(child);
+                for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child instanceof Element) {
+                        flattenStyles((Element) child);
+                    }
                 }
             }
         }
@@ -529,6 +1396,32 @@ public class SVGInputFormat implements InputFormat {
      */
     private Figure readSVGElement(Element elem)
             throws IOException {
+        AffineTransform viewBoxTransform = readViewport(elem);
+        // Read the figures
+        NodeList list = elem.getChildNodes();
+        for (int i = 0; i < list.getLength(); i++) {
+            Element child = (Element) list.item(i);
+            Figure childFigure = readElement(child);
+            // skip invisible elements
+            if (isVisible(child)) {
+                if (childFigure != null) {
+                    childFigure.transform(viewBoxTransform);
+                    figures.add(childFigure);
+                }
+            }
+        }
+        viewportStack.pop();
+        return null;
+    }
+
+    /**
+     * Establishes a new viewport for an SVG "svg" element, and pushes it on
+     * the viewport stack.
+     *
+     * @return the transform from the view box to the viewport.
+     */
+    private AffineTransform readViewport(Element elem)
+            throws IOException {
         // Establish a new viewport
         Viewport viewport = new Viewport();
         String widthValue = readAttribute(elem, "width", "100%");
@@ -580,22 +1473,16 @@ public class SVGInputFormat implements InputFormat {
         }
         viewportStack.push(viewport);
         readViewportAttributes(elem, viewportStack.firstElement().attributes);
-        // Read the figures
-        NodeList list = elem.getChildNodes();
-        for (int i = 0; i < list.getLength(); i++) {
-            Element child = (Element) list.item(i);
-            Figure childFigure = readElement(child);
-            // skip invisible elements
-            if (readAttribute(child, "visibility", "visible").equals("visible")
-                    && !readAttribute(child, "display", "inline").equals("none")) {
-                if (childFigure != null) {
-                    childFigure.transform(viewBoxTransform);
-                    figures.add(childFigure);
-                }
-            }
-        }
-        viewportStack.pop();
-        return null;
+        return viewBoxTransform;
+    }
+
+    /**
+     * Returns false if the "visibility" or the "display" attribute of an
+     * element hides it.
+     */
+    private boolean isVisible(Element elem) {
+        return readAttribute(elem, "visibility", "visible").equals("visible")
+                && !readAttribute(elem, "display", "inline").equals("none");
     }
 
     /**
@@ -687,7 +1574,7 @@ public class SVGInputFormat implements InputFormat {
                 int semicolonPos = href.indexOf(';');
                 if (semicolonPos != -1) {
                     if (href.indexOf(";base64,") == semicolonPos) {
-                        imageData = Base64.decode(href.substring(semicolonPos + 8));
+                        imageData = Base64.decode(href, semicolonPos + 8, href.length() - semicolonPos - 8);
                     } else {
                         throw new IOException("Unsupported encoding in data href in image element:" + href);
                     }
@@ -1301,12 +2188,29 @@ public class SVGInputFormat implements InputFormat {
      * space.
      */
     public static String[] toWSOrCommaSeparatedArray(String str) throws IOException {
-        String[] result = str.split("(\\s*,\\s*|\\s+)");
-        if (result.length == 1 && result[0].equals("")) {
-            return new String[0];
-        } else {
-            return result;
+        ArrayList<String> values = new ArrayList<String>();
+        int n = str.length();
+        int i = 0;
+        while (i < n && str.charAt(i) <= ' ') {
+            i++;
+        }
+        while (i < n) {
+            int start = i;
+            while (i < n && str.charAt(i) > ' ' && str.charAt(i) != ',') {
+                i++;
+            }
+            values.add(str.substring(start, i));
+            while (i < n && str.charAt(i) <= ' ') {
+                i++;
+            }
+            if (i < n && str.charAt(i) == ',') {
+                i++;
+                while (i < n && str.charAt(i) <= ' ') {
+                    i++;
+                }
+            }
         }
+        return values.toArray(new String[values.size()]);
     }
 
     /**
@@ -1339,8 +2243,19 @@ public class SVGInputFormat implements InputFormat {
      * as specified in http://www.w3.org/TR/SVGMobile12/shapes.html#PointsBNF
      */
     private Point2D.Double[] toPoints(Element elem, String str) throws IOException {
+        ParsedAttributes parsed = (parsedAttributes == null) ? null : parsedAttributes.get(elem);
+        if (parsed != null && parsed.pointArray != null && str.equals(parsed.points)) {
+            Point2D.Double[] points = parsed.pointArray;
+            parsed.pointArray = null;
+            return points;
+        }
+        Point2D.Double[] points = toPlainPoints(str);
+        if (points != null) {
+            return points;
+        }
+        // The values have units
         StringTokenizer tt = new StringTokenizer(str, " ,");
-        Point2D.Double[] points = new Point2D.Double[tt.countTokens() / 2];
+        points = new Point2D.Double[tt.countTokens() / 2];
         for (int i = 0; i < points.length; i++) {
             points[i] = new Point2D.Double(
                     toNumber(elem, tt.nextToken()),
@@ -1357,34 +2272,35 @@ public class SVGInputFormat implements InputFormat {
      * http://www.w3.org/TR/SVG/paths.html#PathDataEllipticalArcCommands
      */
     private BezierPath[] toPath(Element elem, String str) throws IOException {
+        ParsedAttributes parsed = (parsedAttributes == null) ? null : parsedAttributes.get(elem);
+        if (parsed != null && parsed.path != null && str.equals(parsed.d)) {
+            BezierPath[] path = parsed.path;
+            parsed.path = null;
+            return path;
+        }
+        return parsePath(str);
+    }
+
+    /**
+     * Parses path data. This method does not access the DOM, so that it can
+     * be called concurrently.
+     */
+    private static BezierPath[] parsePath(String str) throws IOException {
         LinkedList<BezierPath> paths = new LinkedList<BezierPath>();
         BezierPath path = null;
         Point2D.Double p = new Point2D.Double();
         Point2D.Double c1 = new Point2D.Double();
         Point2D.Double c2 = new Point2D.Double();
-        StreamPosTokenizer tt;
-        if (toPathTokenizer == null) {
-            tt = new StreamPosTokenizer(new StringReader(str));
-            tt.resetSyntax();
-            tt.parseNumbers();
-            tt.parseExponents();
-            tt.parsePlusAsNumber();
-            tt.whitespaceChars(0, ' ');
-            tt.whitespaceChars(',', ',');
-            toPathTokenizer = tt;
-        } else {
-            tt = toPathTokenizer;
-            tt.setReader(new StringReader(str));
-        }
+        // The scanner is not shared, because paths are parsed concurrently
+        NumberScanner s = new NumberScanner(str);
         char nextCommand = 'M';
         char command = 'M';
         Commands:
-        while (tt.nextToken() != StreamPosTokenizer.TT_EOF) {
-            if (tt.ttype > 0) {
-                command = (char) tt.ttype;
-            } else {
+        while (s.skipSeparators()) {
+            if (s.isNumberStart()) {
                 command = nextCommand;
-                tt.pushBack();
+            } else {
+                command = (char) s.nextChar();
             }
             BezierPath.Node node;
             switch (command) {
@@ -1394,14 +2310,8 @@ public class SVGInputFormat implements InputFormat {
                         paths.add(path);
                     }
                     path = new BezierPath();
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'M' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'M' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    p.x = nextNumber(s, 'M', "x coordinate", str);
+                    p.y = nextNumber(s, 'M', "y coordinate", str);
                     path.moveTo(p.x, p.y);
                     nextCommand = 'L';
                     break;
@@ -1411,14 +2321,8 @@ public class SVGInputFormat implements InputFormat {
                         paths.add(path);
                     }
                     path = new BezierPath();
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'm' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'm' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    p.x += nextNumber(s, 'm', "dx coordinate", str);
+                    p.y += nextNumber(s, 'm', "dy coordinate", str);
                     path.moveTo(p.x, p.y);
                     nextCommand = 'l';
                     break;
@@ -1446,121 +2350,61 @@ public class SVGInputFormat implements InputFormat {
                     break;
                 case 'L':
                     // absolute-lineto x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'L' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'L' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    p.x = nextNumber(s, 'L', "x coordinate", str);
+                    p.y = nextNumber(s, 'L', "y coordinate", str);
                     path.lineTo(p.x, p.y);
                     nextCommand = 'L';
                     break;
                 case 'l':
                     // relative-lineto dx dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'l' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'l' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    p.x += nextNumber(s, 'l', "dx coordinate", str);
+                    p.y += nextNumber(s, 'l', "dy coordinate", str);
                     path.lineTo(p.x, p.y);
                     nextCommand = 'l';
                     break;
                 case 'H':
                     // absolute-horizontal-lineto x
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'H' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
+                    p.x = nextNumber(s, 'H', "x coordinate", str);
                     path.lineTo(p.x, p.y);
                     nextCommand = 'H';
                     break;
                 case 'h':
                     // relative-horizontal-lineto dx
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'h' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
+                    p.x += nextNumber(s, 'h', "dx coordinate", str);
                     path.lineTo(p.x, p.y);
                     nextCommand = 'h';
                     break;
                 case 'V':
                     // absolute-vertical-lineto y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'V' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    p.y = nextNumber(s, 'V', "y coordinate", str);
                     path.lineTo(p.x, p.y);
                     nextCommand = 'V';
                     break;
                 case 'v':
                     // relative-vertical-lineto dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'v' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    p.y += nextNumber(s, 'v', "dy coordinate", str);
                     path.lineTo(p.x, p.y);
                     nextCommand = 'v';
                     break;
                 case 'C':
                     // absolute-curveto x1 y1 x2 y2 x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x1 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y1 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x2 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y2 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    c1.x = nextNumber(s, 'C', "x1 coordinate", str);
+                    c1.y = nextNumber(s, 'C', "y1 coordinate", str);
+                    c2.x = nextNumber(s, 'C', "x2 coordinate", str);
+                    c2.y = nextNumber(s, 'C', "y2 coordinate", str);
+                    p.x = nextNumber(s, 'C', "x coordinate", str);
+                    p.y = nextNumber(s, 'C', "y coordinate", str);
                     path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
                     nextCommand = 'C';
                     break;
                 case 'c':
                     // relative-curveto dx1 dy1 dx2 dy2 dx dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx1 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy1 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx2 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy2 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    c1.x = p.x + nextNumber(s, 'c', "dx1 coordinate", str);
+                    c1.y = p.y + nextNumber(s, 'c', "dy1 coordinate", str);
+                    c2.x = p.x + nextNumber(s, 'c', "dx2 coordinate", str);
+                    c2.y = p.y + nextNumber(s, 'c', "dy2 coordinate", str);
+                    p.x += nextNumber(s, 'c', "dx coordinate", str);
+                    p.y += nextNumber(s, 'c', "dy coordinate", str);
                     path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
                     nextCommand = 'c';
                     break;
@@ -1569,22 +2413,10 @@ public class SVGInputFormat implements InputFormat {
                     node = path.get(path.size() - 1);
                     c1.x = node.x[0] * 2d - node.x[1];
                     c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x2 coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y2 coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    c2.x = nextNumber(s, 'S', "x2 coordinate", str);
+                    c2.y = nextNumber(s, 'S', "y2 coordinate", str);
+                    p.x = nextNumber(s, 'S', "x coordinate", str);
+                    p.y = nextNumber(s, 'S', "y coordinate", str);
                     path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
                     nextCommand = 'S';
                     break;
@@ -1593,64 +2425,28 @@ public class SVGInputFormat implements InputFormat {
                     node = path.get(path.size() - 1);
                     c1.x = node.x[0] * 2d - node.x[1];
                     c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx2 coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy2 coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    c2.x = p.x + nextNumber(s, 's', "dx2 coordinate", str);
+                    c2.y = p.y + nextNumber(s, 's', "dy2 coordinate", str);
+                    p.x += nextNumber(s, 's', "dx coordinate", str);
+                    p.y += nextNumber(s, 's', "dy coordinate", str);
                     path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
                     nextCommand = 's';
                     break;
                 case 'Q':
                     // absolute-quadto x1 y1 x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x1 coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y1 coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    c1.x = nextNumber(s, 'Q', "x1 coordinate", str);
+                    c1.y = nextNumber(s, 'Q', "y1 coordinate", str);
+                    p.x = nextNumber(s, 'Q', "x coordinate", str);
+                    p.y = nextNumber(s, 'Q', "y coordinate", str);
                     path.quadTo(c1.x, c1.y, p.x, p.y);
                     nextCommand = 'Q';
                     break;
                 case 'q':
                     // relative-quadto dx1 dy1 dx dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx1 coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy1 coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    c1.x = p.x + nextNumber(s, 'q', "dx1 coordinate", str);
+                    c1.y = p.y + nextNumber(s, 'q', "dy1 coordinate", str);
+                    p.x += nextNumber(s, 'q', "dx coordinate", str);
+                    p.y += nextNumber(s, 'q', "dy coordinate", str);
                     path.quadTo(c1.x, c1.y, p.x, p.y);
                     nextCommand = 'q';
                     break;
@@ -1659,14 +2455,8 @@ public class SVGInputFormat implements InputFormat {
                     node = path.get(path.size() - 1);
                     c1.x = node.x[0] * 2d - node.x[1];
                     c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'T' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'T' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    p.x = nextNumber(s, 'T', "x coordinate", str);
+                    p.y = nextNumber(s, 'T', "y coordinate", str);
                     path.quadTo(c1.x, c1.y, p.x, p.y);
                     nextCommand = 'T';
                     break;
@@ -1675,85 +2465,37 @@ public class SVGInputFormat implements InputFormat {
                     node = path.get(path.size() - 1);
                     c1.x = node.x[0] * 2d - node.x[1];
                     c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 't' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 't' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    p.x += nextNumber(s, 't', "dx coordinate", str);
+                    p.y += nextNumber(s, 't', "dy coordinate", str);
                     path.quadTo(c1.x, c1.y, p.x, p.y);
                     nextCommand = 's';
                     break;
                 case 'A': 
                     // absolute-elliptical-arc rx ry x-axis-rotation large-arc-flag sweep-flag x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("rx coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
                     // If rX or rY have negative signs, these are dropped;
                     // the absolute value is used instead.
-                    double rx = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("ry coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    double ry = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x-axis-rotation missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    double xAxisRotation = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("large-arc-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    boolean largeArcFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("sweep-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    boolean sweepFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
+                    double rx = nextNumber(s, 'A', "rx coordinate", str);
+                    double ry = nextNumber(s, 'A', "ry coordinate", str);
+                    double xAxisRotation = nextNumber(s, 'A', "x-axis-rotation", str);
+                    boolean largeArcFlag = nextFlag(s, 'A', "large-arc-flag", str);
+                    boolean sweepFlag = nextFlag(s, 'A', "sweep-flag", str);
+                    p.x = nextNumber(s, 'A', "x coordinate", str);
+                    p.y = nextNumber(s, 'A', "y coordinate", str);
                     path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, p.x, p.y);
                     nextCommand = 'A';
                     break;
                 
                 case 'a': 
                     // absolute-elliptical-arc rx ry x-axis-rotation large-arc-flag sweep-flag x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("rx coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
                     // If rX or rY have negative signs, these are dropped;
                     // the absolute value is used instead.
-                    rx = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("ry coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    ry = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x-axis-rotation missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    xAxisRotation = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("large-arc-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    largeArcFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("sweep-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    sweepFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
+                    rx = nextNumber(s, 'a', "rx coordinate", str);
+                    ry = nextNumber(s, 'a', "ry coordinate", str);
+                    xAxisRotation = nextNumber(s, 'a', "x-axis-rotation", str);
+                    largeArcFlag = nextFlag(s, 'a', "large-arc-flag", str);
+                    sweepFlag = nextFlag(s, 'a', "sweep-flag", str);
+                    p.x += nextNumber(s, 'a', "dx coordinate", str);
+                    p.y += nextNumber(s, 'a', "dy coordinate", str);
                     path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, p.x, p.y);
                     nextCommand = 'a';
                     break;
@@ -1772,6 +2514,29 @@ public class SVGInputFormat implements InputFormat {
         return paths.toArray(new BezierPath[paths.size()]);
     }
 
+    /**
+     * Returns the next number of path data, or throws an IOException which
+     * names the missing value.
+     */
+    private static double nextNumber(NumberScanner s, char command, String name, String str) throws IOException {
+        if (!s.hasNextNumber()) {
+            throw new IOException(name + " missing for '" + command + "' at position " + s.getPosition() + " in " + str);
+        }
+        return s.nextNumber();
+    }
+
+    /**
+     * Returns the next flag of path data, or throws an IOException which
+     * names the missing flag.
+     */
+    private static boolean nextFlag(NumberScanner s, char command, String name, String str) throws IOException {
+        s.skipSeparators();
+        if (s.peek() != '0' && s.peek() != '1') {
+            throw new IOException(name + " missing for '" + command + "' at position " + s.getPosition() + " in " + str);
+        }
+        return s.nextFlag();
+    }
+
     /* Reads core attributes as listed in
      * http://www.w3.org/TR/SVGMobile12/feature.html#CoreAttribute
      */
@@ -1794,10 +2559,10 @@ public class SVGInputFormat implements InputFormat {
     private void identifyElements(Element elem) {
         identifiedElements.put(elem.getAttribute("id"), elem);
         identifiedElements.put(elem.getAttribute("xml:id"), elem);
-        NodeList list = elem.getChildNodes();
-        for (int i = 0; i < list.getLength(); i++) {
-            Element child = (Element) list.item(i);
-            identifyElements(child);
+        for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                identifyElements((Element) child);
+            }
         }
     }
 
@@ -1905,7 +2670,13 @@ public class SVGInputFormat implements InputFormat {
         String value;
         value = readAttribute(elem, "transform", "none");
         if (!value.equals("none")) {
-            TRANSFORM.put(a, toTransform(elem, value));
+            ParsedAttributes parsed = (parsedAttributes == null) ? null : parsedAttributes.get(elem);
+            if (parsed != null && parsed.tx != null && value.equals(parsed.transform)) {
+                TRANSFORM.put(a, parsed.tx);
+                parsed.tx = null;
+            } else {
+                TRANSFORM.put(a, toTransform(elem, value));
+            }
         }
     }
 
@@ -2978,9 +3749,14 @@ public class SVGInputFormat implements InputFormat {
             }
         } else if (str.startsWith("url(")) {
             String href = value.substring(4, value.length() - 1);
-            if (identifiedElements.containsKey(href.substring(1))
-                    && elementObjects.containsKey(identifiedElements.get(href.substring(1)))) {
-                Object obj = elementObjects.get(identifiedElements.get(href.substring(1)));
+            Element refElem = identifiedElements.get(href.substring(1));
+            if (refElem != null && !elementObjects.containsKey(refElem)
+                    && isPaintServer(refElem)) {
+                // The paint server comes later in the document
+                readElement(refElem);
+            }
+            if (refElem != null && elementObjects.containsKey(refElem)) {
+                Object obj = elementObjects.get(refElem);
                 return obj;
             }
             // XXX - Implement me
@@ -2993,6 +3769,12 @@ public class SVGInputFormat implements InputFormat {
         }
     }
 
+    private static boolean isPaintServer(Element elem) {
+        String name = elem.getLocalName();
+        return "linearGradient".equals(name) || "radialGradient".equals(name)
+                || "solidColor".equals(name);
+    }
+
     /**
      * Reads a color style attribute. This can be a Color or null.
      * FIXME - Doesn't support url(...) colors yet.
@@ -3092,110 +3874,129 @@ public class SVGInputFormat implements InputFormat {
      * http://www.w3.org/TR/SVGMobile12/coords.html#TransformAttribute
      */
     public static AffineTransform toTransform(Element elem, String str) throws IOException {
+        AffineTransform t;
+        try {
+            t = parseTransform(str);
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + " in element " + elem, e);
+        }
+        if (hasRefTransform(str)) {
+            System.err.println("SVGInputFormat warning: ignored ref(...) transform attribute in element " + elem);
+        }
+        return t;
+    }
+
+    /**
+     * Returns true if the transform attribute contains a "ref(...)"
+     * transform, which is ignored.
+     */
+    private static boolean hasRefTransform(String str) {
+        return str != null && str.contains("ref");
+    }
+
+    /**
+     * Parses a transform attribute. This method does not access the DOM,
+     * so that it can be called concurrently.
+     */
+    private static AffineTransform parseTransform(String str) throws IOException {
         AffineTransform t = new AffineTransform();
         if (str != null && !str.equals("none")) {
-            StreamPosTokenizer tt = new StreamPosTokenizer(new StringReader(str));
-            tt.resetSyntax();
-            tt.wordChars('a', 'z');
-            tt.wordChars('A', 'Z');
-            tt.wordChars(128 + 32, 255);
-            tt.whitespaceChars(0, ' ');
-            tt.whitespaceChars(',', ',');
-            tt.parseNumbers();
-            tt.parseExponents();
-            while (tt.nextToken() != StreamPosTokenizer.TT_EOF) {
-                if (tt.ttype != StreamPosTokenizer.TT_WORD) {
-                    throw new IOException("Illegal transform " + str);
-                }
-                String type = tt.sval;
-                if (tt.nextToken() != '(') {
-                    throw new IOException("'(' not found in transform " + str);
-                }
-                if ("matrix".equals(type)) {
+            NumberScanner s = new NumberScanner(str);
+            while (s.skipSeparators()) {
+                int start = s.getPosition();
+                if (s.nextKeyword("matrix")) {
+                    expectChar(s, '(', str);
                     double[] m = new double[6];
                     for (int i = 0; i < 6; i++) {
-                        if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                            throw new IOException("Matrix value " + i + " not found in transform " + str + " token:" + tt.ttype + " " + tt.sval);
+                        if (!s.hasNextNumber()) {
+                            throw new IOException("Matrix value " + i + " not found in transform " + str);
                         }
-                        m[i] = tt.nval;
+                        m[i] = s.nextNumber();
                     }
                     t.concatenate(new AffineTransform(m));
-                } else if ("translate".equals(type)) {
+                } else if (s.nextKeyword("translate")) {
+                    expectChar(s, '(', str);
                     double tx, ty;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
+                    if (!s.hasNextNumber()) {
                         throw new IOException("X-translation value not found in transform " + str);
                     }
-                    tx = tt.nval;
-                    if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-                        ty = tt.nval;
-                    } else {
-                        tt.pushBack();
-                        ty = 0;
-                    }
+                    tx = s.nextNumber();
+                    ty = s.hasNextNumber() ? s.nextNumber() : 0;
                     t.translate(tx, ty);
-                } else if ("scale".equals(type)) {
+                } else if (s.nextKeyword("scale")) {
+                    expectChar(s, '(', str);
                     double sx, sy;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
+                    if (!s.hasNextNumber()) {
                         throw new IOException("X-scale value not found in transform " + str);
                     }
-                    sx = tt.nval;
-                    if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-                        sy = tt.nval;
-                    } else {
-                        tt.pushBack();
-                        sy = sx;
-                    }
+                    sx = s.nextNumber();
+                    sy = s.hasNextNumber() ? s.nextNumber() : sx;
                     t.scale(sx, sy);
-                } else if ("rotate".equals(type)) {
+                } else if (s.nextKeyword("rotate")) {
+                    expectChar(s, '(', str);
                     double angle, cx, cy;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
+                    if (!s.hasNextNumber()) {
                         throw new IOException("Angle value not found in transform " + str);
                     }
-                    angle = tt.nval;
-                    if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-                        cx = tt.nval;
-                        if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
+                    angle = s.nextNumber();
+                    if (s.hasNextNumber()) {
+                        cx = s.nextNumber();
+                        if (!s.hasNextNumber()) {
                             throw new IOException("Y-center value not found in transform " + str);
                         }
-                        cy = tt.nval;
+                        cy = s.nextNumber();
                     } else {
-                        tt.pushBack();
                         cx = cy = 0;
                     }
                     t.rotate(angle * Math.PI / 180d, cx, cy);
-                } else if ("skewX".equals(type)) {
-                    double angle;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
+                } else if (s.nextKeyword("skewX")) {
+                    expectChar(s, '(', str);
+                    if (!s.hasNextNumber()) {
                         throw new IOException("Skew angle not found in transform " + str);
                     }
-                    angle = tt.nval;
+                    double angle = s.nextNumber();
                     t.concatenate(new AffineTransform(
                             1, 0, Math.tan(angle * Math.PI / 180), 1, 0, 0));
-                } else if ("skewY".equals(type)) {
-                    double angle;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
+                } else if (s.nextKeyword("skewY")) {
+                    expectChar(s, '(', str);
+                    if (!s.hasNextNumber()) {
                         throw new IOException("Skew angle not found in transform " + str);
                     }
-                    angle = tt.nval;
+                    double angle = s.nextNumber();
                     t.concatenate(new AffineTransform(
                             1, Math.tan(angle * Math.PI / 180), 0, 1, 0, 0));
-                } else if ("ref".equals(type)) {
-                    System.err.println("SVGInputFormat warning: ignored ref(...) transform attribute in element " + elem);
-                    while (tt.nextToken() != ')' && tt.ttype != StreamPosTokenizer.TT_EOF) {
-                        // ignore tokens between brackets
-                    }
-                    tt.pushBack();
+                } else if (s.nextKeyword("ref")) {
+                    expectChar(s, '(', str);
+                    while (s.peek() != ')' && s.peek() != -1) {
+                        // ignore characters between brackets
+                        s.nextChar();
+                    }
+                } else if (Character.isLetter(s.peek())) {
+                    int end = start;
+                    while (end < str.length() && Character.isLetter(str.charAt(end))) {
+                        end++;
+                    }
+                    throw new IOException("Unknown transform " + str.substring(start, end) + " in " + str);
                 } else {
-                    throw new IOException("Unknown transform " + type + " in " + str + " in element " + elem);
-                }
-                if (tt.nextToken() != ')') {
-                    throw new IOException("')' not found in transform " + str);
+                    throw new IOException("Illegal transform " + str);
                 }
+                expectChar(s, ')', str);
             }
         }
         return t;
     }
 
+    /**
+     * Consumes the specified character of a transform, or throws an
+     * IOException if another character follows.
+     */
+    private static void expectChar(NumberScanner s, char c, String str) throws IOException {
+        s.skipSeparators();
+        if (s.nextChar() != c) {
+            throw new IOException("'" + c + "' not found in transform " + str);
+        }
+    }
+
     @Override
     public javax.swing.filechooser.FileFilter getFileFilter() {
         return new FileNameExtensionFilter("Scalable Vector Graphics (SVG)", "svg");
@@ -14,7 +14,9 @@ import java.awt.datatransfer.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.net.*;
+import java.nio.CharBuffer;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
@@ -22,21 +24,18 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.StyledDocument;
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import org.jhotdraw.datatransfer.InputStreamTransferable;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.AttributeKeys.WindingRule;
 import org.jhotdraw.draw.io.OutputFormat;
 import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.io.Base64;
+import org.jhotdraw.io.Blob;
+import org.jhotdraw.io.NumberWriter;
 import org.jhotdraw.samples.svg.Gradient;
 import org.jhotdraw.samples.svg.LinearGradient;
 import org.jhotdraw.samples.svg.RadialGradient;
@@ -51,6 +50,9 @@ import org.jhotdraw.samples.svg.figures.SVGTextAreaFigure;
 import org.jhotdraw.samples.svg.figures.SVGTextFigure;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
 
 /**
  * An output format for storing drawings as
@@ -87,6 +89,16 @@ public class SVGOutputFormat implements OutputFormat {
      * Set this to true for pretty printing.
      */
     private boolean isPrettyPrint;
+    /**
+     * Set this to true for writing the document while the figures are
+     * visited.
+     */
+    private boolean isStreaming;
+    /**
+     * In streaming mode, this maps image elements to the image data, which
+     * is encoded directly into the output when the element is written.
+     */
+    private IdentityHashMap<Element, Blob> streamedImageData;
     private static final HashMap<Integer, String> STROKE_LINEJOIN;
 
     static {
@@ -110,6 +122,11 @@ public class SVGOutputFormat implements OutputFormat {
      * less storage space.
      */
     private static final boolean IS_FLOAT_PRECISION = true;
+    private static final NumberWriter DEFAULT_NUMBER_WRITER = new NumberWriter(-1, IS_FLOAT_PRECISION);
+    /**
+     * Writes the numbers of the document.
+     */
+    private NumberWriter numberWriter = DEFAULT_NUMBER_WRITER;
 
     /**
      * Creates a new instance.
@@ -133,6 +150,50 @@ public class SVGOutputFormat implements OutputFormat {
         return isPrettyPrint;
     }
 
+    /**
+     * Sets whether the document is written while the figures are visited,
+     * instead of building a DOM for the whole drawing and serializing it
+     * with a JAXP transformer.
+     * <p>
+     * In streaming mode, a first pass over the figures collects the
+     * gradients, so that the "defs" element can be written before the
+     * figures. Then each figure is converted into a small DOM element, which
+     * is written and discarded right away. The children of groups are
+     * written one by one, so that even a drawing, which consists of a single
+     * huge group, is written with little memory. Groups are written without
+     * calling {@link #writeGElement}. The data of images is encoded directly
+     * into the output, without creating the encoded string.
+     */
+    public void setStreaming(boolean newValue) {
+        isStreaming = newValue;
+    }
+
+    public boolean isStreaming() {
+        return isStreaming;
+    }
+
+    /**
+     * Sets the maximal number of fraction digits of the numbers in the
+     * document, for example 3 for exports, which do not need to be read back
+     * with full precision. A negative value selects the shortest
+     * representation, which reads back as the same float value. This is the
+     * default.
+     */
+    public void setNumberPrecision(int fractionDigits) {
+        numberWriter = (fractionDigits < 0) ? DEFAULT_NUMBER_WRITER : new NumberWriter(fractionDigits, false);
+    }
+
+    public int getNumberPrecision() {
+        return numberWriter.getFractionDigits();
+    }
+
+    /**
+     * Returns a number as an attribute value.
+     */
+    private String formatNumber(double number) {
+        return numberWriter.toString(number);
+    }
+
     protected void writeElement(Element parent, Figure f) throws IOException {
         // Write link attribute as encosing "a" element
         if (f.get(LINK) != null && f.get(LINK).trim().length() > 0) {
@@ -230,19 +291,19 @@ public class SVGOutputFormat implements OutputFormat {
             boolean isRelativeToFigureBounds,
             AffineTransform transform) throws IOException {
         Element elem = doc.getOwnerDocument().createElement("linearGradient");
-        writeAttribute(elem, "x1", toNumber(x1), "0");
-        writeAttribute(elem, "y1", toNumber(y1), "0");
-        writeAttribute(elem, "x2", toNumber(x2), "1");
-        writeAttribute(elem, "y2", toNumber(y2), "0");
+        writeAttribute(elem, "x1", formatNumber(x1), "0");
+        writeAttribute(elem, "y1", formatNumber(y1), "0");
+        writeAttribute(elem, "x2", formatNumber(x2), "1");
+        writeAttribute(elem, "y2", formatNumber(y2), "0");
         writeAttribute(elem, "gradientUnits",
                 (isRelativeToFigureBounds) ? "objectBoundingBox" : "userSpaceOnUse",
                 "objectBoundingBox");
-        writeAttribute(elem, "gradientTransform", toTransform(transform), "none");
+        writeAttribute(elem, "gradientTransform", toTransform(transform, numberWriter), "none");
         for (int i = 0; i < stopOffsets.length; i++) {
             Element stop = doc.getOwnerDocument().createElement("stop");
-            writeAttribute(stop, "offset", toNumber(stopOffsets[i]), null);
+            writeAttribute(stop, "offset", formatNumber(stopOffsets[i]), null);
             writeAttribute(stop, "stop-color", toColor(stopColors[i]), null);
-            writeAttribute(stop, "stop-opacity", toNumber(stopOpacities[i]), "1");
+            writeAttribute(stop, "stop-opacity", formatNumber(stopOpacities[i]), "1");
             elem.appendChild(stop);
         }
         return elem;
@@ -254,20 +315,20 @@ public class SVGOutputFormat implements OutputFormat {
             boolean isRelativeToFigureBounds,
             AffineTransform transform) throws IOException {
         Element elem = doc.getOwnerDocument().createElement("radialGradient");
-        writeAttribute(elem, "cx", toNumber(cx), "0.5");
-        writeAttribute(elem, "cy", toNumber(cy), "0.5");
-        writeAttribute(elem, "fx", toNumber(fx), toNumber(cx));
-        writeAttribute(elem, "fy", toNumber(fy), toNumber(cy));
-        writeAttribute(elem, "r", toNumber(r), "0.5");
+        writeAttribute(elem, "cx", formatNumber(cx), "0.5");
+        writeAttribute(elem, "cy", formatNumber(cy), "0.5");
+        writeAttribute(elem, "fx", formatNumber(fx), formatNumber(cx));
+        writeAttribute(elem, "fy", formatNumber(fy), formatNumber(cy));
+        writeAttribute(elem, "r", formatNumber(r), "0.5");
         writeAttribute(elem, "gradientUnits",
                 (isRelativeToFigureBounds) ? "objectBoundingBox" : "userSpaceOnUse",
                 "objectBoundingBox");
-        writeAttribute(elem, "gradientTransform", toTransform(transform), "none");
+        writeAttribute(elem, "gradientTransform", toTransform(transform, numberWriter), "none");
         for (int i = 0; i < stopOffsets.length; i++) {
             Element stop = doc.getOwnerDocument().createElement("stop");
-            writeAttribute(stop, "offset", toNumber(stopOffsets[i]), null);
+            writeAttribute(stop, "offset", formatNumber(stopOffsets[i]), null);
             writeAttribute(stop, "stop-color", toColor(stopColors[i]), null);
-            writeAttribute(stop, "stop-opacity", toNumber(stopOpacities[i]), "1");
+            writeAttribute(stop, "stop-opacity", formatNumber(stopOpacities[i]), "1");
             elem.appendChild(stop);
         }
         return elem;
@@ -312,7 +373,7 @@ public class SVGOutputFormat implements OutputFormat {
                         f.getY(),
                         f.getWidth(),
                         f.getHeight(),
-                        f.getImageData(),
+                        f.getImageBlob(),
                         f.getAttributes()));
     }
 
@@ -331,6 +392,38 @@ public class SVGOutputFormat implements OutputFormat {
         return elem;
     }
 
+    /**
+     * Creates an image element for image data in a blob.
+     * <p>
+     * In streaming mode, the "xlink:href" attribute only holds the prefix of
+     * the data URL. The data is encoded when the element is written.
+     */
+    protected Element createImage(Element doc,
+            double x, double y, double w, double h,
+            Blob imageData,
+            Map<AttributeKey<?>, Object> attributes) throws IOException {
+        Element elem = doc.getOwnerDocument().createElement("image");
+        writeAttribute(elem, "x", x, 0d);
+        writeAttribute(elem, "y", y, 0d);
+        writeAttribute(elem, "width", w, 0d);
+        writeAttribute(elem, "height", h, 0d);
+        if (imageData != null) {
+            if (streamedImageData != null) {
+                writeAttribute(elem, "xlink:href", "data:image;base64,", "");
+                streamedImageData.put(elem, imageData);
+            } else {
+                String prefix = "data:image;base64,";
+                CharBuffer buf = CharBuffer.allocate(prefix.length() + Base64.encodedLength(imageData.size(), Base64.NO_OPTIONS));
+                buf.put(prefix);
+                Base64.encode(imageData.asByteBuffer(), buf, Base64.NO_OPTIONS);
+                writeAttribute(elem, "xlink:href", new String(buf.array()), "");
+            }
+        }
+        writeOpacityAttribute(elem, attributes);
+        writeTransformAttribute(elem, attributes);
+        return elem;
+    }
+
     protected void writePathElement(Element parent, SVGPathFigure f) throws IOException {
         BezierPath[] beziers = new BezierPath[f.getChildCount()];
         for (int i = 0; i < beziers.length; i++) {
@@ -349,7 +442,7 @@ public class SVGOutputFormat implements OutputFormat {
         writeShapeAttributes(elem, attributes);
         writeOpacityAttribute(elem, attributes);
         writeTransformAttribute(elem, attributes);
-        writeAttribute(elem, "d", toPath(beziers), null);
+        writeAttribute(elem, "d", toPath(beziers, numberWriter), null);
         return elem;
     }
 
@@ -372,7 +465,7 @@ public class SVGOutputFormat implements OutputFormat {
             Map<AttributeKey<?>, Object> attributes)
             throws IOException {
         Element elem = doc.getOwnerDocument().createElement("polygon");
-        writeAttribute(elem, "points", toPoints(points), null);
+        writeAttribute(elem, "points", toPoints(points, numberWriter), null);
         writeShapeAttributes(elem, attributes);
         writeOpacityAttribute(elem, attributes);
         writeTransformAttribute(elem, attributes);
@@ -397,7 +490,7 @@ public class SVGOutputFormat implements OutputFormat {
             Point2D.Double[] points,
             Map<AttributeKey<?>, Object> attributes) throws IOException {
         Element elem = doc.getOwnerDocument().createElement("polyline");
-        writeAttribute(elem, "points", toPoints(points), null);
+        writeAttribute(elem, "points", toPoints(points, numberWriter), null);
         writeShapeAttributes(elem, attributes);
         writeOpacityAttribute(elem, attributes);
         writeTransformAttribute(elem, attributes);
@@ -491,8 +584,8 @@ public class SVGOutputFormat implements OutputFormat {
                 bufX.append(',');
                 bufY.append(',');
             }
-            bufX.append(toNumber(coordinates[i].getX()));
-            bufY.append(toNumber(coordinates[i].getY()));
+            numberWriter.append(bufX, coordinates[i].getX());
+            numberWriter.append(bufY, coordinates[i].getY());
         }
         StringBuilder bufR = new StringBuilder();
         if (rotate != null) {
@@ -500,7 +593,7 @@ public class SVGOutputFormat implements OutputFormat {
                 if (i != 0) {
                     bufR.append(',');
                 }
-                bufR.append(toNumber(rotate[i]));
+                numberWriter.append(bufR, rotate[i]);
             }
         }
         writeAttribute(elem, "x", bufX.toString(), "0");
@@ -547,10 +640,10 @@ public class SVGOutputFormat implements OutputFormat {
             Map<AttributeKey<?>, Object> attributes)
             throws IOException {
         Element elem = doc.getOwnerDocument().createElement("textArea");
-        writeAttribute(elem, "x", toNumber(x), "0");
-        writeAttribute(elem, "y", toNumber(y), "0");
-        writeAttribute(elem, "width", toNumber(w), "0");
-        writeAttribute(elem, "height", toNumber(h), "0");
+        writeAttribute(elem, "x", formatNumber(x), "0");
+        writeAttribute(elem, "y", formatNumber(y), "0");
+        writeAttribute(elem, "width", formatNumber(w), "0");
+        writeAttribute(elem, "height", formatNumber(h), "0");
         String str;
         try {
             str = text.getText(0, text.getLength());
@@ -616,38 +709,7 @@ public class SVGOutputFormat implements OutputFormat {
         // Computed value:    "none", system paint, specified <color> value or absolute IRI
         Gradient gradient = FILL_GRADIENT.get(m);
         if (gradient != null) {
-            String id;
-            if (gradientToIDMap.containsKey(gradient)) {
-                id = gradientToIDMap.get(gradient);
-            } else {
-                Element gradientElem;
-                if (gradient instanceof LinearGradient) {
-                    LinearGradient lg = (LinearGradient) gradient;
-                    gradientElem = createLinearGradient(document,
-                            lg.getX1(), lg.getY1(),
-                            lg.getX2(), lg.getY2(),
-                            lg.getStopOffsets(),
-                            lg.getStopColors(),
-                            lg.getStopOpacities(),
-                            lg.isRelativeToFigureBounds(),
-                            lg.getTransform());
-                } else /*if (gradient instanceof RadialGradient)*/ {
-                    RadialGradient rg = (RadialGradient) gradient;
-                    gradientElem = createRadialGradient(document,
-                            rg.getCX(), rg.getCY(),
-                            rg.getFX(), rg.getFY(),
-                            rg.getR(),
-                            rg.getStopOffsets(),
-                            rg.getStopColors(),
-                            rg.getStopOpacities(),
-                            rg.isRelativeToFigureBounds(),
-                            rg.getTransform());
-                }
-                id = getId(gradientElem);
-                gradientElem.setAttributeNS("xml", "id", id);
-                defs.appendChild(gradientElem);
-                gradientToIDMap.put(gradient, id);
-            }
+            String id = getGradientId(gradient);
             writeAttribute(elem, "fill", "url(#" + id + ")", "#000");
         } else {
             writeAttribute(elem, "fill", toColor(FILL_COLOR.get(m)), "#000");
@@ -686,38 +748,7 @@ public class SVGOutputFormat implements OutputFormat {
         // or absolute IRI
         gradient = STROKE_GRADIENT.get(m);
         if (gradient != null) {
-            String id;
-            if (gradientToIDMap.containsKey(gradient)) {
-                id = gradientToIDMap.get(gradient);
-            } else {
-                Element gradientElem;
-                if (gradient instanceof LinearGradient) {
-                    LinearGradient lg = (LinearGradient) gradient;
-                    gradientElem = createLinearGradient(document,
-                            lg.getX1(), lg.getY1(),
-                            lg.getX2(), lg.getY2(),
-                            lg.getStopOffsets(),
-                            lg.getStopColors(),
-                            lg.getStopOpacities(),
-                            lg.isRelativeToFigureBounds(),
-                            lg.getTransform());
-                } else /*if (gradient instanceof RadialGradient)*/ {
-                    RadialGradient rg = (RadialGradient) gradient;
-                    gradientElem = createRadialGradient(document,
-                            rg.getCX(), rg.getCY(),
-                            rg.getFX(), rg.getFY(),
-                            rg.getR(),
-                            rg.getStopOffsets(),
-                            rg.getStopColors(),
-                            rg.getStopOpacities(),
-                            rg.isRelativeToFigureBounds(),
-                            rg.getTransform());
-                }
-                id = getId(gradientElem);
-                gradientElem.setAttributeNS("xml", "id", id);
-                defs.appendChild(gradientElem);
-                gradientToIDMap.put(gradient, id);
-            }
+            String id = getGradientId(gradient);
             writeAttribute(elem, "stroke", "url(#" + id + ")", "none");
         } else {
             writeAttribute(elem, "stroke", toColor(STROKE_COLOR.get(m)), "none");
@@ -738,7 +769,7 @@ public class SVGOutputFormat implements OutputFormat {
                 if (i != 0) {
                     buf.append(',');
                 }
-                buf.append(toNumber(dashes[i]));
+                numberWriter.append(buf, dashes[i]);
             }
             writeAttribute(elem, "stroke-dasharray", buf.toString(), null);
         }
@@ -804,6 +835,44 @@ public class SVGOutputFormat implements OutputFormat {
         writeAttribute(elem, "stroke-width", STROKE_WIDTH.get(m), 1d);
     }
 
+    /**
+     * Returns the id of the specified gradient. Adds a gradient element to
+     * the definitions, if the gradient has not been written yet.
+     */
+    private String getGradientId(Gradient gradient) throws IOException {
+        String id = gradientToIDMap.get(gradient);
+        if (id == null) {
+            Element gradientElem;
+            if (gradient instanceof LinearGradient) {
+                LinearGradient lg = (LinearGradient) gradient;
+                gradientElem = createLinearGradient(document,
+                        lg.getX1(), lg.getY1(),
+                        lg.getX2(), lg.getY2(),
+                        lg.getStopOffsets(),
+                        lg.getStopColors(),
+                        lg.getStopOpacities(),
+                        lg.isRelativeToFigureBounds(),
+                        lg.getTransform());
+            } else /*if (gradient instanceof RadialGradient)*/ {
+                RadialGradient rg = (RadialGradient) gradient;
+                gradientElem = createRadialGradient(document,
+                        rg.getCX(), rg.getCY(),
+                        rg.getFX(), rg.getFY(),
+                        rg.getR(),
+                        rg.getStopOffsets(),
+                        rg.getStopColors(),
+                        rg.getStopOpacities(),
+                        rg.isRelativeToFigureBounds(),
+                        rg.getTransform());
+            }
+            id = getId(gradientElem);
+            gradientElem.setAttributeNS(XMLConstants.XML_NS_URI, "xml:id", id);
+            defs.appendChild(gradientElem);
+            gradientToIDMap.put(gradient, id);
+        }
+        return id;
+    }
+
     /* Writes the opacity attribute.
      */
     protected void writeOpacityAttribute(Element elem, Map<AttributeKey<?>, Object> m)
@@ -833,7 +902,7 @@ public class SVGOutputFormat implements OutputFormat {
             throws IOException {
         AffineTransform t = TRANSFORM.get(a);
         if (t != null) {
-            writeAttribute(elem, "transform", toTransform(t), "none");
+            writeAttribute(elem, "transform", toTransform(t, numberWriter), "none");
         }
     }
 
@@ -921,9 +990,9 @@ public class SVGOutputFormat implements OutputFormat {
         Double doubleValue;
         if (VIEWPORT_WIDTH.get(a) != null && VIEWPORT_HEIGHT.get(a) != null) {
             // width of the viewport
-            writeAttribute(elem, "width", toNumber(VIEWPORT_WIDTH.get(a)), null);
+            writeAttribute(elem, "width", formatNumber(VIEWPORT_WIDTH.get(a)), null);
             // height of the viewport
-            writeAttribute(elem, "height", toNumber(VIEWPORT_HEIGHT.get(a)), null);
+            writeAttribute(elem, "height", formatNumber(VIEWPORT_HEIGHT.get(a)), null);
         }
         //'viewport-fill'
         //Value:  "none" | <color> | inherit
@@ -963,7 +1032,7 @@ public class SVGOutputFormat implements OutputFormat {
 
     protected void writeAttribute(Element elem, String name, String namespace, double value, double defaultValue) {
         if (value != defaultValue) {
-            elem.setAttribute(name, toNumber(value));
+            elem.setAttribute(name, formatNumber(value));
         }
     }
 
@@ -972,6 +1041,14 @@ public class SVGOutputFormat implements OutputFormat {
      * as specified in http://www.w3.org/TR/SVGMobile12/paths.html#PathDataBNF
      */
     public static String toPath(BezierPath[] paths) {
+        return toPath(paths, DEFAULT_NUMBER_WRITER);
+    }
+
+    /**
+     * Returns a value as a SVG Path attribute, with the numbers written by
+     * the specified writer.
+     */
+    public static String toPath(BezierPath[] paths, NumberWriter nw) {
         StringBuilder buf = new StringBuilder();
         for (int j = 0; j < paths.length; j++) {
             BezierPath path = paths[j];
@@ -980,21 +1057,21 @@ public class SVGOutputFormat implements OutputFormat {
             } else if (path.size() == 1) {
                 BezierPath.Node current = path.get(0);
                 buf.append("M ");
-                buf.append(toNumber(current.x[0]));
+                nw.append(buf, current.x[0]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[0]));
+                nw.append(buf, current.y[0]);
                 //buf.append(" L ");
-                buf.append(toNumber(current.x[0]));
+                nw.append(buf, current.x[0]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[0] + 1));
+                nw.append(buf, current.y[0] + 1);
             } else {
                 BezierPath.Node previous;
                 BezierPath.Node current;
                 previous = current = path.get(0);
                 buf.append("M ");
-                buf.append(toNumber(current.x[0]));
+                nw.append(buf, current.x[0]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[0]));
+                nw.append(buf, current.y[0]);
                 char nextCommand = 'L';
                 for (int i = 1, n = path.size(); i < n; i++) {
                     previous = current;
@@ -1007,9 +1084,9 @@ public class SVGOutputFormat implements OutputFormat {
                             } else {
                                 buf.append(' ');
                             }
-                            buf.append(toNumber(current.x[0]));
+                            nw.append(buf, current.x[0]);
                             buf.append(' ');
-                            buf.append(toNumber(current.y[0]));
+                            nw.append(buf, current.y[0]);
                         } else {
                             if (nextCommand != 'Q') {
                                 buf.append(" Q ");
@@ -1017,13 +1094,13 @@ public class SVGOutputFormat implements OutputFormat {
                             } else {
                                 buf.append(' ');
                             }
-                            buf.append(toNumber(current.x[1]));
+                            nw.append(buf, current.x[1]);
                             buf.append(' ');
-                            buf.append(toNumber(current.y[1]));
+                            nw.append(buf, current.y[1]);
                             buf.append(' ');
-                            buf.append(toNumber(current.x[0]));
+                            nw.append(buf, current.x[0]);
                             buf.append(' ');
-                            buf.append(toNumber(current.y[0]));
+                            nw.append(buf, current.y[0]);
                         }
                     } else {
                         if ((current.mask & BezierPath.C1_MASK) == 0) {
@@ -1033,13 +1110,13 @@ public class SVGOutputFormat implements OutputFormat {
                             } else {
                                 buf.append(' ');
                             }
-                            buf.append(toNumber(previous.x[2]));
+                            nw.append(buf, previous.x[2]);
                             buf.append(' ');
-                            buf.append(toNumber(previous.y[2]));
+                            nw.append(buf, previous.y[2]);
                             buf.append(' ');
-                            buf.append(toNumber(current.x[0]));
+                            nw.append(buf, current.x[0]);
                             buf.append(' ');
-                            buf.append(toNumber(current.y[0]));
+                            nw.append(buf, current.y[0]);
                         } else {
                             if (nextCommand != 'C') {
                                 buf.append(" C ");
@@ -1047,17 +1124,17 @@ public class SVGOutputFormat implements OutputFormat {
                             } else {
                                 buf.append(' ');
                             }
-                            buf.append(toNumber(previous.x[2]));
+                            nw.append(buf, previous.x[2]);
                             buf.append(' ');
-                            buf.append(toNumber(previous.y[2]));
+                            nw.append(buf, previous.y[2]);
                             buf.append(' ');
-                            buf.append(toNumber(current.x[1]));
+                            nw.append(buf, current.x[1]);
                             buf.append(' ');
-                            buf.append(toNumber(current.y[1]));
+                            nw.append(buf, current.y[1]);
                             buf.append(' ');
-                            buf.append(toNumber(current.x[0]));
+                            nw.append(buf, current.x[0]);
                             buf.append(' ');
-                            buf.append(toNumber(current.y[0]));
+                            nw.append(buf, current.y[0]);
                         }
                     }
                 }
@@ -1073,9 +1150,9 @@ public class SVGOutputFormat implements OutputFormat {
                                 } else {
                                     buf.append(' ');
                                 }
-                                buf.append(toNumber(current.x[0]));
+                                nw.append(buf, current.x[0]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.y[0]));
+                                nw.append(buf, current.y[0]);
                             } else {
                                 if (nextCommand != 'Q') {
                                     buf.append(" Q ");
@@ -1083,13 +1160,13 @@ public class SVGOutputFormat implements OutputFormat {
                                 } else {
                                     buf.append(' ');
                                 }
-                                buf.append(toNumber(current.x[1]));
+                                nw.append(buf, current.x[1]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.y[1]));
+                                nw.append(buf, current.y[1]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.x[0]));
+                                nw.append(buf, current.x[0]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.y[0]));
+                                nw.append(buf, current.y[0]);
                             }
                         } else {
                             if ((current.mask & BezierPath.C1_MASK) == 0) {
@@ -1099,13 +1176,13 @@ public class SVGOutputFormat implements OutputFormat {
                                 } else {
                                     buf.append(' ');
                                 }
-                                buf.append(toNumber(previous.x[2]));
+                                nw.append(buf, previous.x[2]);
                                 buf.append(' ');
-                                buf.append(toNumber(previous.y[2]));
+                                nw.append(buf, previous.y[2]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.x[0]));
+                                nw.append(buf, current.x[0]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.y[0]));
+                                nw.append(buf, current.y[0]);
                             } else {
                                 if (nextCommand != 'C') {
                                     buf.append(" C ");
@@ -1113,17 +1190,17 @@ public class SVGOutputFormat implements OutputFormat {
                                 } else {
                                     buf.append(' ');
                                 }
-                                buf.append(toNumber(previous.x[2]));
+                                nw.append(buf, previous.x[2]);
                                 buf.append(' ');
-                                buf.append(toNumber(previous.y[2]));
+                                nw.append(buf, previous.y[2]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.x[1]));
+                                nw.append(buf, current.x[1]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.y[1]));
+                                nw.append(buf, current.y[1]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.x[0]));
+                                nw.append(buf, current.x[0]);
                                 buf.append(' ');
-                                buf.append(toNumber(current.y[0]));
+                                nw.append(buf, current.y[0]);
                             }
                         }
                     }
@@ -1139,11 +1216,7 @@ public class SVGOutputFormat implements OutputFormat {
      * Returns a double array as a number attribute value.
      */
     public static String toNumber(double number) {
-        String str = (IS_FLOAT_PRECISION) ? Float.toString((float) number) : Double.toString(number);
-        if (str.endsWith(".0")) {
-            str = str.substring(0, str.length() - 2);
-        }
-        return str;
+        return DEFAULT_NUMBER_WRITER.toString(number);
     }
 
     /**
@@ -1151,14 +1224,22 @@ public class SVGOutputFormat implements OutputFormat {
      * as specified in http://www.w3.org/TR/SVGMobile12/shapes.html#PointsBNF
      */
     public static String toPoints(Point2D.Double[] points) throws IOException {
+        return toPoints(points, DEFAULT_NUMBER_WRITER);
+    }
+
+    /**
+     * Returns a Point2D.Double array as a Points attribute value, with the
+     * numbers written by the specified writer.
+     */
+    public static String toPoints(Point2D.Double[] points, NumberWriter nw) throws IOException {
         StringBuilder buf = new StringBuilder();
         for (int i = 0; i < points.length; i++) {
             if (i != 0) {
                 buf.append(", ");
             }
-            buf.append(toNumber(points[i].x));
+            nw.append(buf, points[i].x);
             buf.append(',');
-            buf.append(toNumber(points[i].y));
+            nw.append(buf, points[i].y);
         }
         return buf.toString();
     }
@@ -1167,6 +1248,14 @@ public class SVGOutputFormat implements OutputFormat {
      * http://www.w3.org/TR/SVGMobile12/coords.html#TransformAttribute
      */
     public static String toTransform(AffineTransform t) throws IOException {
+        return toTransform(t, DEFAULT_NUMBER_WRITER);
+    }
+
+    /**
+     * Converts an AffineTransform into an SVG transform attribute value, with
+     * the numbers written by the specified writer.
+     */
+    public static String toTransform(AffineTransform t, NumberWriter nw) throws IOException {
         StringBuilder buf = new StringBuilder();
         switch (t.getType()) {
             case AffineTransform.TYPE_IDENTITY:
@@ -1176,10 +1265,10 @@ public class SVGOutputFormat implements OutputFormat {
                 // translate(<tx> [<ty>]), specifies a translation by tx and ty.
                 // If <ty> is not provided, it is assumed to be zero.
                 buf.append("translate(");
-                buf.append(toNumber(t.getTranslateX()));
+                nw.append(buf, t.getTranslateX());
                 if (t.getTranslateY() != 0d) {
                     buf.append(' ');
-                    buf.append(toNumber(t.getTranslateY()));
+                    nw.append(buf, t.getTranslateY());
                 }
                 buf.append(')');
                 break;
@@ -1199,7 +1288,7 @@ public class SVGOutputFormat implements OutputFormat {
             // translate(<cx>, <cy>) rotate(<rotate-angle>)
             // translate(-<cx>, -<cy>).
             buf.append("rotate(");
-            buf.append(toNumber(t.getScaleX()));
+            nw.append(buf, t.getScaleX());
             buf.append(')');
             break;*/
             case AffineTransform.TYPE_UNIFORM_SCALE:
@@ -1207,7 +1296,7 @@ public class SVGOutputFormat implements OutputFormat {
                 // and sy. If <sy> is not provided, it is assumed to be equal
                 // to <sx>.
                 buf.append("scale(");
-                buf.append(toNumber(t.getScaleX()));
+                nw.append(buf, t.getScaleX());
                 buf.append(')');
                 break;
             case AffineTransform.TYPE_GENERAL_SCALE:
@@ -1216,9 +1305,9 @@ public class SVGOutputFormat implements OutputFormat {
                 // and sy. If <sy> is not provided, it is assumed to be equal
                 // to <sx>.
                 buf.append("scale(");
-                buf.append(toNumber(t.getScaleX()));
+                nw.append(buf, t.getScaleX());
                 buf.append(' ');
-                buf.append(toNumber(t.getScaleY()));
+                nw.append(buf, t.getScaleY());
                 buf.append(')');
                 break;
             default:
@@ -1233,7 +1322,7 @@ public class SVGOutputFormat implements OutputFormat {
                     if (i != 0) {
                         buf.append(' ');
                     }
-                    buf.append(toNumber(matrix[i]));
+                    nw.append(buf, matrix[i]);
                 }
                 buf.append(')');
                 break;
@@ -1285,6 +1374,42 @@ public class SVGOutputFormat implements OutputFormat {
      * All other write methods delegate their work to here.
      */
     public void write(OutputStream out, Drawing drawing, java.util.List<Figure> figures) throws IOException {
+        Lock lock = drawing.getLock().readLock();
+        lock.lock();
+        try {
+            Document doc = createDocument(drawing);
+            if (isStreaming) {
+                writeStreaming(out, doc, figures);
+                return;
+            }
+            document.appendChild(defs);
+            for (Figure f : figures) {
+                writeElement(document, f);
+            }
+            // Write XML prolog and XML content. The JAXP serializers can not
+            // be used, because the Xalan serializer writes characters outside
+            // of the basic multilingual plane as two character references,
+            // one for each half of the surrogate pair, which XML does not
+            // allow.
+            ElementWriter w = new ElementWriter(
+                    new BufferedWriter(new OutputStreamWriter(out, "UTF-8")), isPrettyPrint,
+                    new IdentityHashMap<Element, Blob>());
+            w.writeDeclaration();
+            w.writeStartTag(document, SVG_NAMESPACE);
+            for (Node child = document.getFirstChild(); child != null; child = child.getNextSibling()) {
+                w.writeNode(child);
+            }
+            w.writeEndTag(document);
+            w.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates the document, the "svg" element and the "defs" element.
+     */
+    private Document createDocument(Drawing drawing) throws IOException {
         DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
         DocumentBuilder dBuilder;
         try {
@@ -1301,27 +1426,290 @@ public class SVGOutputFormat implements OutputFormat {
         writeViewportAttributes(document, drawing.getAttributes());
         initStorageContext(document);
         defs = doc.createElement("defs");
-        document.appendChild(defs);
+        return doc;
+    }
+
+    /**
+     * Writes the document while the figures are visited.
+     */
+    private void writeStreaming(OutputStream out, Document doc, java.util.List<Figure> figures) throws IOException {
+        // The gradients must be defined before the figures which use them
+        collectGradients(figures);
+        streamedImageData = new IdentityHashMap<>();
+        try {
+            ElementWriter w = new ElementWriter(
+                    new BufferedWriter(new OutputStreamWriter(out, "UTF-8")), isPrettyPrint, streamedImageData);
+            w.writeDeclaration();
+            w.writeStartTag(document, SVG_NAMESPACE);
+            if (defs.hasChildNodes()) {
+                w.writeNode(defs);
+            }
+            // The elements of the figures are appended to the holder, written
+            // and removed again
+            Element holder = doc.createElement("g");
+            for (Figure f : figures) {
+                writeStreamingElement(w, holder, f);
+            }
+            w.writeEndTag(document);
+            w.flush();
+        } finally {
+            streamedImageData = null;
+        }
+    }
+
+    private void writeStreamingElement(ElementWriter w, Element holder, Figure f) throws IOException {
+        if (f instanceof SVGGroupFigure
+                && (f.get(LINK) == null || f.get(LINK).trim().length() == 0)) {
+            Element elem = createG(document, f.getAttributes());
+            w.writeStartTag(elem, null);
+            for (Figure child : ((SVGGroupFigure) f).getChildren()) {
+                writeStreamingElement(w, holder, child);
+            }
+            w.writeEndTag(elem);
+        } else {
+            writeElement(holder, f);
+            for (Node child = holder.getFirstChild(); child != null; child = holder.getFirstChild()) {
+                w.writeNode(child);
+                holder.removeChild(child);
+            }
+        }
+    }
+
+    /**
+     * Adds the gradients of the specified figures to the definitions, in the
+     * order in which {@link #writeShapeAttributes} would add them.
+     */
+    private void collectGradients(java.util.List<Figure> figures) throws IOException {
         for (Figure f : figures) {
-            writeElement(document, f);
+            if (f instanceof SVGGroupFigure) {
+                collectGradients(((SVGGroupFigure) f).getChildren());
+            } else if (!(f instanceof SVGImageFigure)) {
+                if (f.get(FILL_GRADIENT) != null) {
+                    getGradientId(f.get(FILL_GRADIENT));
+                }
+                if (f.get(STROKE_GRADIENT) != null) {
+                    getGradientId(f.get(STROKE_GRADIENT));
+                }
+            }
         }
-        // Write XML prolog
-        PrintWriter writer = new PrintWriter(
-                new OutputStreamWriter(out, "UTF-8"));
-        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        // Write XML content
-        Transformer t;
-        try {
-            t = TransformerFactory.newInstance().newTransformer();
+    }
+
+    /**
+     * Writes DOM elements as XML text, with the same indentation as the JAXP
+     * transformer uses for pretty printing. Characters outside of the basic
+     * multilingual plane are written as UTF-8, and not as character
+     * references.
+     * <p>
+     * The writer escapes the text itself, instead of using an
+     * {@code XMLStreamWriter}, because it encodes the data of images directly
+     * into the "xlink:href" attribute, without creating a string of the whole
+     * attribute value.
+     */
+    private static class ElementWriter {
+
+        private static final int INDENT = 4;
+        private final Writer out;
+        private final boolean isPrettyPrint;
+        /**
+         * Maps image elements to the data which is appended to their
+         * "xlink:href" attribute.
+         */
+        private final Map<Element, Blob> imageData;
+        private int depth;
+        /**
+         * Set to true while the start tag of the current element has not
+         * been closed with '>' yet.
+         */
+        private boolean isTagOpen;
+
+        ElementWriter(Writer out, boolean isPrettyPrint, Map<Element, Blob> imageData) {
+            this.out = out;
+            this.isPrettyPrint = isPrettyPrint;
+            this.imageData = imageData;
+        }
+
+        void writeDeclaration() throws IOException {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        }
+
+        /**
+         * Writes the start tag and the attributes of an element.
+         *
+         * @param elem the element.
+         * @param namespace the default namespace to declare, or null.
+         */
+        void writeStartTag(Element elem, String namespace) throws IOException {
+            closeOpenTag();
+            indent();
+            out.write('<');
+            out.write(elem.getNodeName());
+            NamedNodeMap attributes = elem.getAttributes();
+            Blob data = imageData.remove(elem);
+            for (int i = 0, n = attributes.getLength(); i < n; i++) {
+                Node attr = attributes.item(i);
+                if (data != null && attr.getNodeName().equals("xlink:href")) {
+                    writeAttribute(attr.getNodeName(), attr.getNodeValue(), data);
+                } else {
+                    writeAttribute(attr.getNodeName(), attr.getNodeValue());
+                }
+            }
+            if (namespace != null) {
+                writeAttribute("xmlns", namespace);
+            }
+            isTagOpen = true;
+            depth++;
+        }
+
+        void writeEndTag(Element elem) throws IOException {
+            depth--;
+            if (isTagOpen) {
+                out.write("/>");
+                isTagOpen = false;
+            } else {
+                indent();
+                out.write("</");
+                out.write(elem.getNodeName());
+                out.write('>');
+            }
+        }
+
+        /**
+         * Writes an element with its children, or a text node.
+         */
+        void writeNode(Node node) throws IOException {
+            if (node instanceof Element) {
+                Element elem = (Element) node;
+                if (elem.getNodeName() == null) {
+                    writeText(elem.getTextContent());
+                } else if (hasOnlyText(elem)) {
+                    writeStartTag(elem, null);
+                    String text = elem.getTextContent();
+                    if (text.length() > 0) {
+                        closeOpenTag();
+                        writeText(text);
+                        out.write("</");
+                        out.write(elem.getNodeName());
+                        out.write('>');
+                        depth--;
+                    } else {
+                        writeEndTag(elem);
+                    }
+                } else {
+                    writeStartTag(elem, null);
+                    for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        writeNode(child);
+                    }
+                    writeEndTag(elem);
+                }
+            } else if (node instanceof Text) {
+                closeOpenTag();
+                writeText(node.getNodeValue());
+            }
+        }
+
+        void flush() throws IOException {
+            if (isPrettyPrint) {
+                out.write('\n');
+            }
+            out.flush();
+        }
+
+        private boolean hasOnlyText(Element elem) {
+            for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (!(child instanceof Text)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void closeOpenTag() throws IOException {
+            if (isTagOpen) {
+                out.write('>');
+                isTagOpen = false;
+            }
+        }
+
+        private void indent() throws IOException {
             if (isPrettyPrint) {
-                t.setOutputProperty(OutputKeys.INDENT, "yes");
+                out.write('\n');
+                for (int i = 0, n = depth * INDENT; i < n; i++) {
+                    out.write(' ');
+                }
+            }
+        }
+
+        /**
+         * Writes an attribute whose value is followed by the Base64
+         * encoding of the specified data.
+         */
+        private void writeAttribute(String name, String value, Blob data) throws IOException {
+            out.write(' ');
+            out.write(name);
+            out.write("=\"");
+            out.write(value);
+            Base64.encode(data.asByteBuffer(), out, Base64.NO_OPTIONS, "&#10;");
+            out.write('"');
+        }
+
+        private void writeAttribute(String name, String value) throws IOException {
+            out.write(' ');
+            out.write(name);
+            out.write("=\"");
+            for (int i = 0, n = value.length(); i < n; i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&':
+                        out.write("&amp;");
+                        break;
+                    case '<':
+                        out.write("&lt;");
+                        break;
+                    case '>':
+                        out.write("&gt;");
+                        break;
+                    case '"':
+                        out.write("&quot;");
+                        break;
+                    case '\t':
+                        out.write("&#9;");
+                        break;
+                    case '\n':
+                        out.write("&#10;");
+                        break;
+                    case '\r':
+                        out.write("&#13;");
+                        break;
+                    default:
+                        out.write(c);
+                        break;
+                }
+            }
+            out.write('"');
+        }
+
+        private void writeText(String text) throws IOException {
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '&':
+                        out.write("&amp;");
+                        break;
+                    case '<':
+                        out.write("&lt;");
+                        break;
+                    case '>':
+                        out.write("&gt;");
+                        break;
+                    case '\r':
+                        out.write("&#13;");
+                        break;
+                    default:
+                        out.write(c);
+                        break;
+                }
             }
-            t.transform(new DOMSource(document), new StreamResult(out));
-        } catch (TransformerException ex) {
-            Logger.getLogger(SVGOutputFormat.class.getName()).log(Level.SEVERE, null, ex);
         }
-        // Flush writer
-        writer.flush();
     }
 
     private void initStorageContext(Element root) {
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.samples.svg.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import org.jhotdraw.draw.AttributeKey;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.figure.CompositeFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.samples.svg.LinearGradient;
+import org.jhotdraw.samples.svg.RadialGradient;
+import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the streaming parser of {@link SVGInputFormat} reads the same
+ * figures as the DOM parser.
+ *
+ * @author Werner Randelshofer
+ */
+public class SVGInputFormatNGTest {
+
+    private static final String HEADER = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink'"
+            + " width='400' height='300'>\n";
+    private static final String FOOTER = "</svg>\n";
+
+    private static Drawing read(String svg, boolean isStreaming) throws IOException {
+        return read(svg, isStreaming, ForkJoinPool.commonPool());
+    }
+
+    private static Drawing read(String svg, boolean isStreaming, ForkJoinPool pool) throws IOException {
+        SVGInputFormat format = new SVGInputFormat();
+        format.setStreaming(isStreaming);
+        format.setParsePool(pool);
+        Drawing drawing = new QuadTreeDrawing();
+        format.read(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)), drawing, true);
+        return drawing;
+    }
+
+    private static Drawing readFile(String svg, boolean isStreaming) throws IOException {
+        File file = File.createTempFile("SVGInputFormatNGTest", ".svg");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(svg.getBytes(StandardCharsets.UTF_8));
+            }
+            SVGInputFormat format = new SVGInputFormat();
+            format.setStreaming(isStreaming);
+            Drawing drawing = new QuadTreeDrawing();
+            format.read(file, drawing, true);
+            return drawing;
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Reads the document with the DOM parser and with the streaming parser,
+     * from a stream and from a file, and returns the figures read by the DOM
+     * parser.
+     */
+    private static List<Figure> assertSameImport(String svg) throws IOException {
+        Drawing dom = read(svg, false);
+        assertSameFigures(read(svg, true).getChildren(), dom.getChildren(), "stream");
+        assertSameFigures(readFile(svg, true).getChildren(), dom.getChildren(), "file");
+        assertSameFigures(readFile(svg, false).getChildren(), dom.getChildren(), "dom file");
+        return dom.getChildren();
+    }
+
+    private static void assertSameFigures(List<Figure> actual, List<Figure> expected, String path) {
+        assertEquals(actual.size(), expected.size(), path + " child count");
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameFigure(actual.get(i), expected.get(i), path + "/" + i);
+        }
+    }
+
+    private static void assertSameFigure(Figure actual, Figure expected, String path) {
+        assertEquals(actual.getClass(), expected.getClass(), path + " class");
+        assertEquals(actual.getBounds(), expected.getBounds(), path + " bounds");
+        Map<AttributeKey<?>, Object> a = actual.getAttributes();
+        Map<AttributeKey<?>, Object> e = expected.getAttributes();
+        assertEquals(a.keySet(), e.keySet(), path + " attribute keys");
+        for (Map.Entry<AttributeKey<?>, Object> entry : e.entrySet()) {
+            assertTrue(Objects.deepEquals(a.get(entry.getKey()), entry.getValue()),
+                    path + " " + entry.getKey() + ": " + a.get(entry.getKey()) + " != " + entry.getValue());
+        }
+        if (expected instanceof CompositeFigure) {
+            assertSameFigures(((CompositeFigure) actual).getChildren(),
+                    ((CompositeFigure) expected).getChildren(), path);
+        }
+    }
+
+    @Test
+    public void testShapesAndGroups() throws IOException {
+        List<Figure> figures = assertSameImport(HEADER
+                + "<!-- comment -->\n"
+                + "<rect x='10' y='20' width='30' height='40' fill='#ff0000' stroke='blue'/>\n"
+                + "<g transform='translate(5,5)' opacity='0.5'>\n"
+                + "  <circle cx='50' cy='50' r='10' style='fill:green;stroke-width:2'/>\n"
+                + "  <g transform='rotate(30)'>\n"
+                + "    <path d='M0,0 L10,0 C15,5 15,10 10,10 Z'/>\n"
+                + "    <polygon points='0,0 10,0 5,8'/>\n"
+                + "  </g>\n"
+                + "</g>\n"
+                + "<ellipse cx='100' cy='100' rx='20' ry='10' transform='scale(2)'/>\n"
+                + "<text x='10' y='200' font-size='12'>Hello &amp; goodbye</text>\n"
+                + FOOTER);
+        assertEquals(figures.size(), 4);
+    }
+
+    @Test
+    public void testForwardUseReference() throws IOException {
+        List<Figure> figures = assertSameImport(HEADER
+                + "<use xlink:href='#r' x='100' y='0'/>\n"
+                + "<g>\n"
+                + "  <use xlink:href='#r' transform='translate(0,50)'/>\n"
+                + "  <rect x='0' y='0' width='5' height='5'/>\n"
+                + "</g>\n"
+                + "<defs>\n"
+                + "  <rect id='r' x='1' y='2' width='10' height='20' fill='yellow'/>\n"
+                + "</defs>\n"
+                + FOOTER);
+        assertEquals(figures.size(), 2);
+        assertEquals(((CompositeFigure) figures.get(1)).getChildCount(), 2);
+    }
+
+    @Test
+    public void testBackwardUseReference() throws IOException {
+        assertSameImport(HEADER
+                + "<defs>\n"
+                + "  <circle id='c' cx='0' cy='0' r='5'/>\n"
+                + "</defs>\n"
+                + "<use xlink:href='#c' x='10' y='10'/>\n"
+                + "<use xlink:href='#c' x='30' y='10'/>\n"
+                + FOOTER);
+    }
+
+    @Test
+    public void testGradients() throws IOException {
+        List<Figure> figures = assertSameImport(HEADER
+                + "<linearGradient id='before' x1='0' y1='0' x2='1' y2='0'>\n"
+                + "  <stop offset='0' stop-color='red'/>\n"
+                + "  <stop offset='100%' stop-color='blue' stop-opacity='0.5'/>\n"
+                + "</linearGradient>\n"
+                + "<rect x='0' y='0' width='10' height='10' fill='url(#before)'/>\n"
+                + "<rect x='20' y='0' width='10' height='10' fill='url(#after)' stroke='url(#before)'/>\n"
+                + "<g>\n"
+                + "  <circle cx='5' cy='50' r='5' style='fill: url(#after)'/>\n"
+                + "</g>\n"
+                + "<defs>\n"
+                + "  <radialGradient id='after' cx='0.5' cy='0.5' r='0.5'>\n"
+                + "    <stop offset='0' stop-color='white'/>\n"
+                + "    <stop offset='1' stop-color='black'/>\n"
+                + "  </radialGradient>\n"
+                + "</defs>\n"
+                + FOOTER);
+        assertEquals(figures.size(), 3);
+        assertTrue(figures.get(0).get(FILL_GRADIENT) instanceof LinearGradient);
+        assertTrue(figures.get(1).get(FILL_GRADIENT) instanceof RadialGradient);
+        assertTrue(figures.get(1).get(STROKE_GRADIENT) instanceof LinearGradient);
+        Figure circle = ((CompositeFigure) figures.get(2)).getChild(0);
+        assertTrue(circle.get(FILL_GRADIENT) instanceof RadialGradient);
+    }
+
+    @Test
+    public void testGradientReferencedByStyleSheet() throws IOException {
+        List<Figure> figures = assertSameImport(HEADER
+                + "<style type='text/css'>rect { fill: url(#g) }</style>\n"
+                + "<linearGradient id='g'>\n"
+                + "  <stop offset='0' stop-color='red'/>\n"
+                + "  <stop offset='1' stop-color='green'/>\n"
+                + "</linearGradient>\n"
+                + "<rect x='0' y='0' width='10' height='10'/>\n"
+                + FOOTER);
+        assertEquals(figures.size(), 1);
+        assertTrue(figures.get(0).get(FILL_GRADIENT) instanceof LinearGradient);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testMissingSVGElementWithStreaming() throws IOException {
+        read("<?xml version='1.0'?><html/>", true);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testMissingSVGElementWithDOM() throws IOException {
+        read("<?xml version='1.0'?><html/>", false);
+    }
+
+    /**
+     * Creates a document with enough elements to be parsed concurrently.
+     */
+    private static String createLargeDocument(String extraElement) {
+        StringBuilder buf = new StringBuilder(HEADER);
+        buf.append("<g transform='scale(1.5)'>\n");
+        for (int i = 0; i < 200; i++) {
+            buf.append("<path d='M").append(i).append(",0 L").append(i + 10).append(",5 Q3,4 5,6 Z'")
+                    .append(" transform='rotate(").append(i).append(") translate(1,2)'/>\n");
+            buf.append("<polygon points='0,0 ").append(i).append(",0 5,8'/>\n");
+            if (i == 100) {
+                buf.append(extraElement);
+            }
+        }
+        buf.append("</g>\n");
+        buf.append(FOOTER);
+        return buf.toString();
+    }
+
+    @Test
+    public void testConcurrentParsing() throws IOException {
+        String svg = createLargeDocument("");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Drawing sequential = read(svg, false, new ForkJoinPool(1));
+            assertSameFigures(read(svg, false, pool).getChildren(), sequential.getChildren(), "dom");
+            assertSameFigures(read(svg, true, pool).getChildren(), sequential.getChildren(), "stream");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The warning for an ignored "ref(...)" transform is printed once, on
+     * the calling thread, even if the transform is parsed concurrently.
+     */
+    @Test
+    public void testRefTransformWarning() throws IOException {
+        String svg = createLargeDocument("<rect width='1' height='1' transform='ref(svg) translate(5,5)'/>\n");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        PrintStream err = System.err;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try {
+            System.setErr(new PrintStream(buf, true, "UTF-8"));
+            read(svg, false, pool);
+        } finally {
+            System.setErr(err);
+            pool.shutdown();
+        }
+        String output = new String(buf.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(output.split("ignored ref", -1).length - 1, 1, output);
+    }
+
+    @Test
+    public void testIllegalTransformIsReportedWithElement() throws IOException {
+        String svg = createLargeDocument("<rect width='1' height='1' transform='wobble(3)'/>\n");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            read(svg, true, pool);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("wobble"), e.getMessage());
+            assertTrue(e.getMessage().contains("in element"), e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
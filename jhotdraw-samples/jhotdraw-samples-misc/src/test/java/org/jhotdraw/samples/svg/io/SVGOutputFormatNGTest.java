@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.samples.svg.io;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.samples.svg.LinearGradient;
+import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
+import org.jhotdraw.samples.svg.figures.SVGEllipseFigure;
+import org.jhotdraw.samples.svg.figures.SVGGroupFigure;
+import org.jhotdraw.samples.svg.figures.SVGImageFigure;
+import org.jhotdraw.samples.svg.figures.SVGRectFigure;
+import org.jhotdraw.samples.svg.figures.SVGTextFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * Tests that the streaming writer of {@link SVGOutputFormat} writes the same
+ * document as the DOM writer, and escapes text and attribute values.
+ *
+ * @author Werner Randelshofer
+ */
+public class SVGOutputFormatNGTest {
+
+    /**
+     * Text with markup characters, quotes, and characters outside of the
+     * basic multilingual plane.
+     */
+    private static final String SPECIAL_TEXT = "a < b && \"c\" > 'd' \uD834\uDD1E \uD83D\uDE00 \u00e4\u20ac";
+
+    private static Drawing createDrawing() throws IOException {
+        Drawing drawing = new QuadTreeDrawing();
+        SVGRectFigure rect = new SVGRectFigure(10, 20, 30, 40);
+        rect.set(FILL_COLOR, Color.RED);
+        rect.set(LINK, "http://example.com/?a=1&b=\"2\"<3>");
+        drawing.add(rect);
+
+        SVGGroupFigure group = new SVGGroupFigure();
+        SVGEllipseFigure ellipse = new SVGEllipseFigure(0, 0, 20, 10);
+        ellipse.set(FILL_GRADIENT, new LinearGradient(0, 0, 1, 0,
+                new double[]{0, 1}, new Color[]{Color.RED, Color.BLUE}, new double[]{1, 0.5}, true, new AffineTransform()));
+        group.add(ellipse);
+        SVGTextFigure text = new SVGTextFigure(SPECIAL_TEXT);
+        text.set(FONT_FACE, new Font("Dialog", Font.PLAIN, 12));
+        group.add(text);
+        drawing.add(group);
+
+        BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(1, 1, 0xff00ff);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        SVGImageFigure imageFigure = new SVGImageFigure(50, 50, 4, 3);
+        imageFigure.setImage(png.toByteArray(), image);
+        drawing.add(imageFigure);
+        return drawing;
+    }
+
+    private static byte[] write(Drawing drawing, boolean isStreaming, boolean isPrettyPrint) throws IOException {
+        SVGOutputFormat format = new SVGOutputFormat();
+        format.setStreaming(isStreaming);
+        format.setPrettyPrint(isPrettyPrint);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.write(out, drawing);
+        return out.toByteArray();
+    }
+
+    private static Element parse(byte[] svg) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(new ByteArrayInputStream(svg));
+        return doc.getDocumentElement();
+    }
+
+    /**
+     * Compares elements, attributes and text, but not the whitespace between
+     * elements.
+     */
+    private static void assertSameNode(Node actual, Node expected, String path) {
+        assertEquals(actual.getNodeType(), expected.getNodeType(), path);
+        if (expected instanceof Text) {
+            assertEquals(actual.getNodeValue(), expected.getNodeValue(), path);
+            return;
+        }
+        path = path + "/" + expected.getNodeName();
+        assertEquals(actual.getNodeName(), expected.getNodeName(), path);
+        assertEquals(actual.getNamespaceURI(), expected.getNamespaceURI(), path);
+        NamedNodeMap a = actual.getAttributes();
+        NamedNodeMap e = expected.getAttributes();
+        assertEquals(a.getLength(), e.getLength(), path + " attribute count");
+        for (int i = 0; i < e.getLength(); i++) {
+            Node attr = e.item(i);
+            Node other = a.getNamedItem(attr.getNodeName());
+            assertNotNull(other, path + " @" + attr.getNodeName());
+            assertEquals(other.getNodeValue(), attr.getNodeValue(), path + " @" + attr.getNodeName());
+        }
+        Node ac = firstChild(actual);
+        Node ec = firstChild(expected);
+        int i = 0;
+        while (ec != null) {
+            assertNotNull(ac, path + " child " + i);
+            assertSameNode(ac, ec, path + "[" + i + "]");
+            ac = nextSibling(ac);
+            ec = nextSibling(ec);
+            i++;
+        }
+        assertNull(ac, path + " extra child " + i);
+    }
+
+    private static boolean isIgnorable(Node node) {
+        return node instanceof Text && node.getNodeValue().trim().isEmpty()
+                && node.getParentNode().getChildNodes().getLength() > 1;
+    }
+
+    private static Node firstChild(Node node) {
+        Node child = node.getFirstChild();
+        return (child != null && isIgnorable(child)) ? nextSibling(child) : child;
+    }
+
+    private static Node nextSibling(Node node) {
+        Node sibling = node.getNextSibling();
+        while (sibling != null && isIgnorable(sibling)) {
+            sibling = sibling.getNextSibling();
+        }
+        return sibling;
+    }
+
+    private static Element findElement(Element elem, String name) {
+        if (name.equals(elem.getLocalName())) {
+            return elem;
+        }
+        for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                Element found = findElement((Element) child, name);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testStreamingOutputIsEquivalent() throws Exception {
+        Drawing drawing = createDrawing();
+        Element expected = parse(write(drawing, false, false));
+        assertSameNode(parse(write(drawing, true, false)), expected, "");
+        assertSameNode(parse(write(drawing, true, true)), expected, "");
+    }
+
+    @Test
+    public void testStreamingOutputEscapesText() throws Exception {
+        Element svg = parse(write(createDrawing(), true, true));
+        assertEquals(findElement(svg, "text").getTextContent(), SPECIAL_TEXT);
+    }
+
+    @Test
+    public void testStreamingOutputEscapesAttributes() throws Exception {
+        Element svg = parse(write(createDrawing(), true, false));
+        assertEquals(findElement(svg, "a").getAttribute("xlink:href"), "http://example.com/?a=1&b=\"2\"<3>");
+    }
+
+    @Test
+    public void testStreamingOutputEncodesNonBMPCharactersAsUTF8() throws Exception {
+        String output = new String(write(createDrawing(), true, false), StandardCharsets.UTF_8);
+        assertTrue(output.contains("\uD834\uDD1E \uD83D\uDE00"), output);
+        assertFalse(output.contains("\uFFFD"), output);
+    }
+
+    @Test
+    public void testOutputCanBeRead() throws Exception {
+        Drawing drawing = createDrawing();
+        for (boolean isStreaming : new boolean[]{false, true}) {
+            Drawing read = new QuadTreeDrawing();
+            new SVGInputFormat().read(new ByteArrayInputStream(write(drawing, isStreaming, true)), read, true);
+            assertEquals(read.getChildCount(), drawing.getChildCount());
+            assertEquals(read.getChild(0).get(LINK), drawing.getChild(0).get(LINK));
+            SVGGroupFigure group = (SVGGroupFigure) read.getChild(1);
+            Figure ellipse = ((SVGGroupFigure) drawing.getChild(1)).getChild(0);
+            assertEquals(group.getChild(0).get(FILL_GRADIENT), ellipse.get(FILL_GRADIENT));
+            assertEquals(group.getChild(1).get(TEXT), SPECIAL_TEXT);
+        }
+    }
+}
@@ -48,6 +48,16 @@ public class BezierPath extends ArrayList<BezierPath.Node>
      * Constant for having control points C1 and C2 in effect (in addition to C0).
      */
     public static final int C1C2_MASK = C1_MASK | C2_MASK;
+    /**
+     * The number of doubles which a node takes in a packed array.
+     *
+     * @see #toPackedArray
+     */
+    public static final int PACKED_NODE_SIZE = 7;
+    /**
+     * Flag for the keepColinear property of a node in a packed array.
+     */
+    private static final int KEEP_COLINEAR_FLAG = 4;
     /**
      * We cache a Path2D.Double instance to speed up Shape operations.
      */
@@ -691,6 +701,58 @@ public class BezierPath extends ArrayList<BezierPath.Node>
         }
     }
 
+    /**
+     * Returns the nodes of this bezier path packed into an array of doubles.
+     * Each node takes {@code PACKED_NODE_SIZE} elements: the coordinates of
+     * C0, C1 and C2, followed by the mask and the keepColinear flag.
+     * <p>
+     * The packed array takes less than half the memory of a clone of the
+     * bezier path. It is used to store undo data.
+     *
+     * @see #setTo(double[])
+     */
+    public double[] toPackedArray() {
+        double[] packed = new double[size() * PACKED_NODE_SIZE];
+        int j = 0;
+        for (Node node : this) {
+            packed[j++] = node.x[0];
+            packed[j++] = node.y[0];
+            packed[j++] = node.x[1];
+            packed[j++] = node.y[1];
+            packed[j++] = node.x[2];
+            packed[j++] = node.y[2];
+            packed[j++] = node.mask | (node.keepColinear ? KEEP_COLINEAR_FLAG : 0);
+        }
+        return packed;
+    }
+
+    /**
+     * Sets the nodes of this bezier path to the nodes in an array, which has
+     * been created with {@link #toPackedArray}.
+     */
+    public void setTo(double[] packed) {
+        int n = packed.length / PACKED_NODE_SIZE;
+        while (n < size()) {
+            remove(size() - 1);
+        }
+        while (size() < n) {
+            add(new Node());
+        }
+        for (int i = 0, j = 0; i < n; i++) {
+            Node node = get(i);
+            node.x[0] = packed[j++];
+            node.y[0] = packed[j++];
+            node.x[1] = packed[j++];
+            node.y[1] = packed[j++];
+            node.x[2] = packed[j++];
+            node.y[2] = packed[j++];
+            int flags = (int) packed[j++];
+            node.mask = flags & C1C2_MASK;
+            node.keepColinear = (flags & KEEP_COLINEAR_FLAG) != 0;
+        }
+        invalidatePath();
+    }
+
     /**
      * Returns the point at the center of the bezier path.
      */
@@ -0,0 +1,623 @@
+/*
+ * @(#)RTree.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An RTree allows to quickly find an object on a two-dimensional space.
+ * <p>
+ * RTree is a bulk-loaded R-tree which is packed with the Sort-Tile-Recursive
+ * (STR) algorithm. It has the same contract as {@link QuadTree}, but it does
+ * not need an initial bounding rectangle, and queries stay logarithmic no
+ * matter where the objects are located.
+ * <p>
+ * The bounds of the objects and of the tree nodes are stored in flat
+ * {@code double} arrays with four values per rectangle (min x, min y, max x,
+ * max y). Each object is stored in exactly one leaf of the tree.
+ * <p>
+ * Objects which are added to the tree are kept in a pending list until the
+ * next query. A query packs the tree again, if the pending list or the number
+ * of removed objects has grown too large. Thus, adding many objects and then
+ * performing a query is a bulk load.
+ * <p>
+ * The bounds of an object can be updated in place. If the new bounds are
+ * still inside the bounds of its leaf, only the object bounds are changed.
+ * Otherwise the bounds of the leaf and its ancestors are enlarged, and the
+ * tree is packed again after too many enlargements.
+ * <p>
+ * Each object carries an order key. Queries return their results sorted by
+ * ascending order key. This allows to maintain a z-order in the tree, so that
+ * the results of a query can be sorted without looking at all objects.
+ * <p>
+ * All methods are synchronized, because queries may pack the tree again.
+ * Thus, threads which share the read lock of a drawing can query the same
+ * tree concurrently.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class RTree<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * The minimal number of pending, removed or enlarging objects which
+     * causes the tree to be packed again.
+     */
+    private static final int MIN_REPACK = 64;
+    /**
+     * Maximal number of children of a node.
+     */
+    private int maxCapacity;
+    /**
+     * Maps an object to its slot.
+     */
+    private HashMap<T, Integer> slots = new HashMap<>();
+    /**
+     * The objects. The value is null, if the slot has been removed.
+     */
+    private Object[] objects = new Object[16];
+    /**
+     * The bounds of the objects. Four values per slot.
+     */
+    private double[] objectBounds = new double[64];
+    /**
+     * The order keys of the objects.
+     */
+    private long[] orders = new long[16];
+    /**
+     * The leaf node of each slot, or -1 if the slot is pending.
+     */
+    private int[] leafOf = new int[16];
+    private int slotCount;
+    private int removedCount;
+    /**
+     * The number of updates which enlarged the bounds of a leaf.
+     */
+    private int enlargedCount;
+    private int[] pending = new int[16];
+    private int pendingCount;
+    /**
+     * The bounds of the nodes. Four values per node.
+     */
+    private double[] nodeBounds = new double[0];
+    /**
+     * Index into {@code nodeChildren} of the first child of each node.
+     */
+    private int[] nodeStart = new int[0];
+    /**
+     * The number of children of each node.
+     */
+    private int[] nodeSize = new int[0];
+    /**
+     * The parent of each node, or -1 for the root.
+     */
+    private int[] nodeParent = new int[0];
+    /**
+     * The children of all nodes. Leaf nodes hold slots, all other nodes hold
+     * node indices.
+     */
+    private int[] nodeChildren = new int[0];
+    /**
+     * Nodes with an index smaller than this value are leaves.
+     */
+    private int leafCount;
+    private int root = -1;
+
+    /**
+     * Creates a new instance.
+     */
+    public RTree() {
+        this(16);
+    }
+
+    /**
+     * Creates a new instance with the specified maximal number of children per
+     * node.
+     */
+    public RTree(int maxCapacity) {
+        if (maxCapacity < 2) {
+            throw new IllegalArgumentException("maxCapacity < 2: " + maxCapacity);
+        }
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * Adds an object with the specified bounds and order key 0. If the object
+     * is already in the tree, it is removed first.
+     */
+    public synchronized void add(T o, Rectangle2D.Double bounds) {
+        add(o, bounds, 0L);
+    }
+
+    /**
+     * Adds an object with the specified bounds and order key. If the object
+     * is already in the tree, it is removed first.
+     */
+    public synchronized void add(T o, Rectangle2D.Double bounds, long order) {
+        if (slots.containsKey(o)) {
+            remove(o);
+        }
+        int slot = slotCount++;
+        if (slot == objects.length) {
+            int newLength = slot * 2;
+            objects = Arrays.copyOf(objects, newLength);
+            objectBounds = Arrays.copyOf(objectBounds, newLength * 4);
+            leafOf = Arrays.copyOf(leafOf, newLength);
+            orders = Arrays.copyOf(orders, newLength);
+        }
+        objects[slot] = o;
+        setBounds(objectBounds, slot, bounds);
+        orders[slot] = order;
+        leafOf[slot] = -1;
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = slot;
+        slots.put(o, slot);
+    }
+
+    public synchronized void remove(T o) {
+        Integer slot = slots.remove(o);
+        if (slot != null) {
+            objects[slot] = null;
+            removedCount++;
+        }
+    }
+
+    /**
+     * Updates the bounds of an object which is already in the tree.
+     *
+     * @throws NoSuchElementException if the object is not in the tree
+     */
+    public synchronized void update(T o, Rectangle2D.Double bounds) {
+        int slot = slotOf(o);
+        setBounds(objectBounds, slot, bounds);
+        if (leafOf[slot] != -1) {
+            enlarge(leafOf[slot], slot);
+        }
+    }
+
+    /**
+     * Updates the bounds of many objects which are already in the tree.
+     *
+     * @throws NoSuchElementException if an object is not in the tree
+     */
+    public synchronized void updateAll(Map<? extends T, ? extends Rectangle2D.Double> bounds) {
+        for (Map.Entry<? extends T, ? extends Rectangle2D.Double> entry : bounds.entrySet()) {
+            update(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Enlarges the bounds of a node and of its ancestors until they contain
+     * the bounds of the specified slot.
+     */
+    private void enlarge(int node, int slot) {
+        int s = slot * 4;
+        double minX = objectBounds[s], minY = objectBounds[s + 1];
+        double maxX = objectBounds[s + 2], maxY = objectBounds[s + 3];
+        if (containsBounds(node, minX, minY, maxX, maxY)) {
+            return;
+        }
+        enlargedCount++;
+        do {
+            int b = node * 4;
+            nodeBounds[b] = Math.min(nodeBounds[b], minX);
+            nodeBounds[b + 1] = Math.min(nodeBounds[b + 1], minY);
+            nodeBounds[b + 2] = Math.max(nodeBounds[b + 2], maxX);
+            nodeBounds[b + 3] = Math.max(nodeBounds[b + 3], maxY);
+            node = nodeParent[node];
+        } while (node != -1 && !containsBounds(node, minX, minY, maxX, maxY));
+    }
+
+    private boolean containsBounds(int node, double minX, double minY, double maxX, double maxY) {
+        int b = node * 4;
+        return nodeBounds[b] <= minX && nodeBounds[b + 1] <= minY
+                && nodeBounds[b + 2] >= maxX && nodeBounds[b + 3] >= maxY;
+    }
+
+    /**
+     * Returns true, if the object is in the tree.
+     */
+    public synchronized boolean contains(T o) {
+        return slots.containsKey(o);
+    }
+
+    /**
+     * Returns the order key of an object.
+     *
+     * @throws NoSuchElementException if the object is not in the tree
+     */
+    public synchronized long getOrder(T o) {
+        return orders[slotOf(o)];
+    }
+
+    /**
+     * Sets the order key of an object.
+     *
+     * @throws NoSuchElementException if the object is not in the tree
+     */
+    public synchronized void setOrder(T o, long order) {
+        orders[slotOf(o)] = order;
+    }
+
+    private int slotOf(T o) {
+        Integer slot = slots.get(o);
+        if (slot == null) {
+            throw new NoSuchElementException("Not in tree: " + o);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the number of objects in the tree.
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Packs all objects into a new tree.
+     */
+    public synchronized void pack() {
+        // Compact the slots
+        if (removedCount > 0) {
+            int j = 0;
+            for (int i = 0; i < slotCount; i++) {
+                if (objects[i] != null) {
+                    if (i != j) {
+                        objects[j] = objects[i];
+                        System.arraycopy(objectBounds, i * 4, objectBounds, j * 4, 4);
+                        orders[j] = orders[i];
+                        @SuppressWarnings("unchecked")
+                        T o = (T) objects[j];
+                        slots.put(o, j);
+                    }
+                    j++;
+                }
+            }
+            Arrays.fill(objects, j, slotCount, null);
+            slotCount = j;
+            removedCount = 0;
+        }
+        pendingCount = 0;
+        enlargedCount = 0;
+
+        int n = slotCount;
+        if (n == 0) {
+            root = -1;
+            leafCount = 0;
+            return;
+        }
+
+        // Allocate the nodes
+        int count = 0;
+        for (int c = n; count == 0 || c > 1;) {
+            c = (c + maxCapacity - 1) / maxCapacity;
+            count += c;
+        }
+        nodeBounds = new double[count * 4];
+        nodeStart = new int[count];
+        nodeSize = new int[count];
+        nodeParent = new int[count];
+        nodeChildren = new int[n + count - 1];
+
+        // Pack the slots into leaves
+        int[] level = new int[n];
+        for (int i = 0; i < n; i++) {
+            level[i] = i;
+        }
+        tile(level, n, objectBounds);
+        int nodeCount = createParents(level, n, objectBounds, 0, 0, true);
+        leafCount = nodeCount;
+
+        // Pack the nodes into parents until we have a single root
+        int levelStart = 0;
+        int childIndex = n;
+        while (nodeCount - levelStart > 1) {
+            int levelSize = nodeCount - levelStart;
+            for (int i = 0; i < levelSize; i++) {
+                level[i] = levelStart + i;
+            }
+            tile(level, levelSize, nodeBounds);
+            levelStart = nodeCount;
+            nodeCount = createParents(level, levelSize, nodeBounds, nodeCount, childIndex, false);
+            childIndex += levelSize;
+        }
+        root = nodeCount - 1;
+        nodeParent[root] = -1;
+    }
+
+    /**
+     * Creates parent nodes for consecutive runs of {@code maxCapacity}
+     * children.
+     *
+     * @return the new node count
+     */
+    private int createParents(int[] children, int n, double[] childBounds, int node, int childIndex, boolean isLeafLevel) {
+        for (int i = 0; i < n; i += maxCapacity) {
+            int size = Math.min(maxCapacity, n - i);
+            nodeStart[node] = childIndex;
+            nodeSize[node] = size;
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int j = i; j < i + size; j++) {
+                int child = children[j];
+                nodeChildren[childIndex++] = child;
+                if (isLeafLevel) {
+                    leafOf[child] = node;
+                } else {
+                    nodeParent[child] = node;
+                }
+                minX = Math.min(minX, childBounds[child * 4]);
+                minY = Math.min(minY, childBounds[child * 4 + 1]);
+                maxX = Math.max(maxX, childBounds[child * 4 + 2]);
+                maxY = Math.max(maxY, childBounds[child * 4 + 3]);
+            }
+            nodeBounds[node * 4] = minX;
+            nodeBounds[node * 4 + 1] = minY;
+            nodeBounds[node * 4 + 2] = maxX;
+            nodeBounds[node * 4 + 3] = maxY;
+            node++;
+        }
+        return node;
+    }
+
+    /**
+     * Sorts the elements with the Sort-Tile-Recursive algorithm, so that
+     * consecutive runs of {@code maxCapacity} elements are spatially close.
+     */
+    private void tile(int[] elements, int n, double[] bounds) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int e = elements[i];
+            keys[i] = toSortableLong(bounds[e * 4] + bounds[e * 4 + 2]);
+        }
+        sort(elements, keys, 0, n);
+        int nodes = (n + maxCapacity - 1) / maxCapacity;
+        int sliceSize = (int) Math.ceil(Math.sqrt(nodes)) * maxCapacity;
+        for (int from = 0; from < n; from += sliceSize) {
+            int to = Math.min(n, from + sliceSize);
+            for (int i = from; i < to; i++) {
+                int e = elements[i];
+                keys[i] = toSortableLong(bounds[e * 4 + 1] + bounds[e * 4 + 3]);
+            }
+            sort(elements, keys, from, to);
+        }
+    }
+
+    /**
+     * Converts a double into a long with the same sort order.
+     */
+    private static long toSortableLong(double d) {
+        long bits = Double.doubleToLongBits(d);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Sorts the elements in the range [from, to) by their keys.
+     */
+    private static void sort(int[] elements, long[] keys, int from, int to) {
+        while (to - from > 16) {
+            int mid = (from + to) >>> 1;
+            if (keys[mid] < keys[from]) {
+                swap(elements, keys, mid, from);
+            }
+            if (keys[to - 1] < keys[from]) {
+                swap(elements, keys, to - 1, from);
+            }
+            if (keys[to - 1] < keys[mid]) {
+                swap(elements, keys, to - 1, mid);
+            }
+            long pivot = keys[mid];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(elements, keys, i++, j--);
+                }
+            }
+            // Recurse into the smaller partition, loop over the larger one
+            if (j + 1 - from < to - i) {
+                sort(elements, keys, from, j + 1);
+                from = i;
+            } else {
+                sort(elements, keys, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && keys[j] < keys[j - 1]; j--) {
+                swap(elements, keys, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(int[] elements, long[] keys, int i, int j) {
+        int e = elements[i];
+        elements[i] = elements[j];
+        elements[j] = e;
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+    }
+
+    private static void setBounds(double[] array, int index, Rectangle2D.Double r) {
+        array[index * 4] = r.x;
+        array[index * 4 + 1] = r.y;
+        array[index * 4 + 2] = r.x + r.width;
+        array[index * 4 + 3] = r.y + r.height;
+    }
+
+    /**
+     * Packs the tree again, if too many objects have been added, removed or
+     * moved out of their leaves since the last time.
+     */
+    private void ensurePacked() {
+        int packed = slotCount - pendingCount;
+        if (pendingCount > Math.max(MIN_REPACK, packed / 4)
+                || removedCount > Math.max(MIN_REPACK, slotCount / 2)
+                || enlargedCount > Math.max(MIN_REPACK, slotCount / 4)) {
+            pack();
+        }
+    }
+
+    /**
+     * Returns all objects whose bounds contain the point, sorted by ascending
+     * order key.
+     */
+    public synchronized List<T> findContains(Point2D.Double p) {
+        return find(Query.CONTAINS, p.x, p.y, p.x, p.y);
+    }
+
+    /**
+     * Returns all objects whose bounds intersect the rectangle, sorted by
+     * ascending order key.
+     */
+    public synchronized List<T> findIntersects(Rectangle2D r) {
+        return find(Query.INTERSECTS, r.getX(), r.getY(), r.getX() + r.getWidth(), r.getY() + r.getHeight());
+    }
+
+    public synchronized List<T> findIntersects(Rectangle2D.Double r) {
+        return find(Query.INTERSECTS, r.x, r.y, r.x + r.width, r.y + r.height);
+    }
+
+    /**
+     * Returns all objects whose bounds are inside the rectangle, sorted by
+     * ascending order key.
+     */
+    public synchronized List<T> findInside(Rectangle2D.Double r) {
+        return find(Query.INSIDE, r.x, r.y, r.x + r.width, r.y + r.height);
+    }
+
+    /**
+     * Returns all objects whose bounds intersect or touch the rectangle,
+     * sorted by ascending order key. Unlike {@link #findIntersects}, this
+     * query treats bounds as closed intervals, so that it also finds objects
+     * with empty bounds, and it accepts an empty rectangle.
+     */
+    public synchronized List<T> findTouches(Rectangle2D.Double r) {
+        return find(Query.TOUCHES, r.x, r.y, r.x + r.width, r.y + r.height);
+    }
+
+    private enum Query {
+        CONTAINS, INTERSECTS, INSIDE, TOUCHES
+    }
+
+    /**
+     * Holds the slots found by a query.
+     */
+    private static class Result {
+
+        private int[] slots = new int[16];
+        private int size;
+
+        private void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+
+    private List<T> find(Query q, double minX, double minY, double maxX, double maxY) {
+        ensurePacked();
+        if ((q == Query.INTERSECTS || q == Query.INSIDE) && (maxX <= minX || maxY <= minY)) {
+            // Rectangle2D does not intersect or contain anything with an empty rectangle
+            return new ArrayList<>();
+        }
+        Result result = new Result();
+        if (root != -1) {
+            find(root, q, minX, minY, maxX, maxY, result);
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            collect(pending[i], q, minX, minY, maxX, maxY, result);
+        }
+        long[] keys = new long[result.size];
+        for (int i = 0; i < result.size; i++) {
+            keys[i] = orders[result.slots[i]];
+        }
+        sort(result.slots, keys, 0, result.size);
+        ArrayList<T> list = new ArrayList<>(result.size);
+        for (int i = 0; i < result.size; i++) {
+            @SuppressWarnings("unchecked")
+            T o = (T) objects[result.slots[i]];
+            list.add(o);
+        }
+        return list;
+    }
+
+    private void find(int node, Query q, double minX, double minY, double maxX, double maxY, Result result) {
+        int b = node * 4;
+        if (nodeBounds[b] > maxX || nodeBounds[b + 1] > maxY
+                || nodeBounds[b + 2] < minX || nodeBounds[b + 3] < minY) {
+            return;
+        }
+        int start = nodeStart[node];
+        int end = start + nodeSize[node];
+        if (node < leafCount) {
+            for (int i = start; i < end; i++) {
+                collect(nodeChildren[i], q, minX, minY, maxX, maxY, result);
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                find(nodeChildren[i], q, minX, minY, maxX, maxY, result);
+            }
+        }
+    }
+
+    /**
+     * Adds the object in the specified slot to the result, if it matches the
+     * query. The tests mirror the semantics of {@link Rectangle2D#contains},
+     * {@link Rectangle2D#intersects} and {@link Rectangle2D#contains(Rectangle2D)}.
+     * The touches test compares closed intervals.
+     */
+    private void collect(int slot, Query q, double minX, double minY, double maxX, double maxY, Result result) {
+        if (objects[slot] == null) {
+            return;
+        }
+        int b = slot * 4;
+        double x0 = objectBounds[b], y0 = objectBounds[b + 1];
+        double x1 = objectBounds[b + 2], y1 = objectBounds[b + 3];
+        boolean match;
+        switch (q) {
+            case CONTAINS:
+                match = minX >= x0 && minY >= y0 && minX < x1 && minY < y1;
+                break;
+            case INTERSECTS:
+                match = x1 > x0 && y1 > y0
+                        && maxX > x0 && maxY > y0 && minX < x1 && minY < y1;
+                break;
+            case TOUCHES:
+                match = x0 <= maxX && y0 <= maxY && x1 >= minX && y1 >= minY;
+                break;
+            case INSIDE:
+            default:
+                match = x1 > x0 && y1 > y0
+                        && x0 >= minX && y0 >= minY && x1 <= maxX && y1 <= maxY;
+                break;
+        }
+        if (match) {
+            result.add(slot);
+        }
+    }
+}
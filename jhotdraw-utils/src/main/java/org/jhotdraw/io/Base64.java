@@ -75,6 +75,17 @@ public class Base64 {
      * Maximum line length (76) of Base64 output.
      */
     private static final int MAX_LINE_LENGTH = 76;
+    /**
+     * The number of bytes (57) which are encoded into one line of
+     * {@link #MAX_LINE_LENGTH} characters.
+     */
+    private static final int LINE_BYTES = MAX_LINE_LENGTH / 4 * 3;
+    /**
+     * The number of bytes which the buffer methods encode at a time. This is
+     * a multiple of {@link #LINE_BYTES}, so that each chunk starts a new
+     * line.
+     */
+    private static final int CHUNK_BYTES = LINE_BYTES * 64;
     /**
      * The equals sign (=) as a byte.
      */
@@ -116,6 +127,10 @@ public class Base64 {
         }
         ALPHABET = __bytes;
     }
+    /**
+     * The 64 valid Base64 values as characters.
+     */
+    private static final char[] ALPHABET_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
     /**
      * Translates a Base64 value to either its 6-bit reconstruction value
      * or a negative number indicating some other meaning.
@@ -610,15 +625,8 @@ public class Base64 {
      * @since 1.4
      */
     public static byte[] decode(String s) {
-        byte[] bytes;
-        try {
-            bytes = s.getBytes(PREFERRED_ENCODING);
-        } catch (java.io.UnsupportedEncodingException uee) {
-            bytes = s.getBytes();
-        }
-        //</change>
         // Decode
-        bytes = decode(bytes, 0, bytes.length);
+        byte[] bytes = decode(s, 0, s.length());
         // Check to see if it's gzip-compressed
         // GZIP Magic Two-Byte Number: 0x8b1f (35615)
         if (bytes != null && bytes.length >= 4) {
@@ -845,6 +853,335 @@ public class Base64 {
         return encodedData;
     }
 
+    /* ********  B U F F E R   M E T H O D S  ******** */
+    /**
+     * Returns the number of characters which {@link #encodeBytes(byte[], int)}
+     * produces for the specified number of bytes.
+     *
+     * @param len the number of bytes
+     * @param options Specified options. Only {@code DONT_BREAK_LINES} is
+     * supported.
+     * @return the number of characters
+     */
+    public static int encodedLength(int len, int options) {
+        boolean breakLines = isBreakLines(options);
+        return (len + 2) / 3 * 4 + (breakLines ? len / LINE_BYTES : 0);
+    }
+
+    private static boolean isBreakLines(int options) {
+        if ((options & GZIP) == GZIP) {
+            throw new IllegalArgumentException("GZIP is not supported by the buffer methods.");
+        }
+        return (options & DONT_BREAK_LINES) == 0;
+    }
+
+    /**
+     * Encodes bytes into characters, with a line break after every
+     * {@link #MAX_LINE_LENGTH} characters, if requested. The first byte
+     * starts a new line. Thus, encoding the data in chunks, whose length is
+     * a multiple of {@link #LINE_BYTES}, yields the same characters as
+     * encoding all data at once.
+     *
+     * @return the number of characters
+     */
+    private static int encodeChunk(byte[] source, int off, int len, char[] destination, int destOffset, boolean breakLines) {
+        int end = off + len;
+        int lineEnd = breakLines ? off + LINE_BYTES : -1;
+        int e = destOffset;
+        int d = off;
+        for (; d + 3 <= end; d += 3) {
+            int inBuff = (source[d] & 0xff) << 16 | (source[d + 1] & 0xff) << 8 | (source[d + 2] & 0xff);
+            destination[e] = ALPHABET_CHARS[inBuff >>> 18];
+            destination[e + 1] = ALPHABET_CHARS[(inBuff >>> 12) & 0x3f];
+            destination[e + 2] = ALPHABET_CHARS[(inBuff >>> 6) & 0x3f];
+            destination[e + 3] = ALPHABET_CHARS[inBuff & 0x3f];
+            e += 4;
+            if (d + 3 == lineEnd) {
+                destination[e++] = '\n';
+                lineEnd += LINE_BYTES;
+            }
+        }
+        if (d < end) {
+            int numSigBytes = end - d;
+            int inBuff = (source[d] & 0xff) << 16 | (numSigBytes > 1 ? (source[d + 1] & 0xff) << 8 : 0);
+            destination[e] = ALPHABET_CHARS[inBuff >>> 18];
+            destination[e + 1] = ALPHABET_CHARS[(inBuff >>> 12) & 0x3f];
+            destination[e + 2] = numSigBytes > 1 ? ALPHABET_CHARS[(inBuff >>> 6) & 0x3f] : '=';
+            destination[e + 3] = '=';
+            e += 4;
+        }
+        return e - destOffset;
+    }
+
+    /**
+     * Encodes the remaining bytes of a buffer into a character buffer.
+     * The characters are the same as {@link #encodeBytes(byte[], int)}
+     * produces.
+     * <p>
+     * The position of the source buffer is advanced to its limit, and the
+     * position of the destination buffer by the number of characters.
+     *
+     * @param source the data to encode
+     * @param destination the buffer which receives the characters. It must
+     * have room for {@link #encodedLength} characters.
+     * @param options Specified options. Only {@code DONT_BREAK_LINES} is
+     * supported.
+     * @throws java.nio.BufferOverflowException if the destination buffer
+     * has not enough room.
+     */
+    public static void encode(java.nio.ByteBuffer source, java.nio.CharBuffer destination, int options) {
+        boolean breakLines = isBreakLines(options);
+        int len = source.remaining();
+        int n = encodedLength(len, options);
+        if (destination.remaining() < n) {
+            throw new java.nio.BufferOverflowException();
+        }
+        if (source.hasArray() && destination.hasArray()) {
+            encodeChunk(source.array(), source.arrayOffset() + source.position(), len,
+                    destination.array(), destination.arrayOffset() + destination.position(), breakLines);
+            source.position(source.limit());
+            destination.position(destination.position() + n);
+        } else {
+            byte[] in = new byte[Math.min(CHUNK_BYTES, len)];
+            char[] out = new char[encodedLength(in.length, options)];
+            while (source.hasRemaining()) {
+                int k = Math.min(in.length, source.remaining());
+                source.get(in, 0, k);
+                destination.put(out, 0, encodeChunk(in, 0, k, out, 0, breakLines));
+            }
+        }
+    }
+
+    /**
+     * Encodes the remaining bytes of a buffer into a string.
+     * The string is the same as {@link #encodeBytes(byte[], int)} produces.
+     *
+     * @param source the data to encode
+     * @param options Specified options. Only {@code DONT_BREAK_LINES} is
+     * supported.
+     * @return the encoded data
+     */
+    public static String encodeToString(java.nio.ByteBuffer source, int options) {
+        if (source.hasArray()) {
+            isBreakLines(options); // rejects GZIP
+            // Encoding into bytes is faster, because the string does not
+            // need to compact the characters
+            String str = encodeBytes(source.array(), source.arrayOffset() + source.position(), source.remaining(), options);
+            source.position(source.limit());
+            return str;
+        }
+        java.nio.CharBuffer out = java.nio.CharBuffer.allocate(encodedLength(source.remaining(), options));
+        encode(source, out, options);
+        return new String(out.array());
+    }
+
+    /**
+     * Encodes the remaining bytes of a buffer directly into a writer, with
+     * line breaks as {@link #encodeBytes(byte[], int)} produces them.
+     *
+     * @param source the data to encode
+     * @param out the writer
+     * @param options Specified options. Only {@code DONT_BREAK_LINES} is
+     * supported.
+     */
+    public static void encode(java.nio.ByteBuffer source, java.io.Writer out, int options) throws java.io.IOException {
+        encode(source, out, options, "\n");
+    }
+
+    /**
+     * Encodes the remaining bytes of a buffer directly into a writer, without
+     * creating the encoded string.
+     * <p>
+     * The data is encoded in chunks of a few kilobytes. The position of the
+     * source buffer is advanced to its limit.
+     *
+     * @param source the data to encode
+     * @param out the writer
+     * @param options Specified options. Only {@code DONT_BREAK_LINES} is
+     * supported.
+     * @param lineSeparator the text which is written after every
+     * {@link #MAX_LINE_LENGTH} characters instead of a line feed, for example
+     * a character reference, if the data is written into an XML attribute.
+     */
+    public static void encode(java.nio.ByteBuffer source, java.io.Writer out, int options, String lineSeparator) throws java.io.IOException {
+        boolean breakLines = isBreakLines(options);
+        boolean isReplaceLineFeeds = breakLines && !lineSeparator.equals("\n");
+        int len = source.remaining();
+        byte[] in;
+        int off;
+        if (source.hasArray()) {
+            in = source.array();
+            off = source.arrayOffset() + source.position();
+            source.position(source.limit());
+        } else {
+            in = new byte[Math.min(CHUNK_BYTES, len)];
+            off = 0;
+        }
+        char[] chars = new char[encodedLength(Math.min(CHUNK_BYTES, len), options)];
+        for (int done = 0; done < len;) {
+            int k = Math.min(CHUNK_BYTES, len - done);
+            int n;
+            if (source.hasArray()) {
+                n = encodeChunk(in, off + done, k, chars, 0, breakLines);
+            } else {
+                source.get(in, 0, k);
+                n = encodeChunk(in, 0, k, chars, 0, breakLines);
+            }
+            if (isReplaceLineFeeds) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (chars[i] == '\n') {
+                        out.write(chars, start, i - start);
+                        out.write(lineSeparator);
+                        start = i + 1;
+                    }
+                }
+                out.write(chars, start, n - start);
+            } else {
+                out.write(chars, 0, n);
+            }
+            done += k;
+        }
+    }
+
+    /**
+     * Decodes characters into bytes. White space is skipped, and decoding
+     * stops at the first equals sign.
+     *
+     * @return the number of bytes, or -1 if a character is not valid.
+     */
+    private static int decode(char[] source, int start, int end, byte[] destination, int destOffset) {
+        int e = destOffset;
+        int outBuff = 0;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = source[i];
+            byte sbiDecode = (c < DECODABET.length) ? DECODABET[c] : -9;
+            if (sbiDecode >= 0) {
+                outBuff = outBuff << 6 | sbiDecode;
+                if (++count == 4) {
+                    destination[e] = (byte) (outBuff >> 16);
+                    destination[e + 1] = (byte) (outBuff >> 8);
+                    destination[e + 2] = (byte) outBuff;
+                    e += 3;
+                    outBuff = 0;
+                    count = 0;
+                }
+            } else if (sbiDecode == EQUALS_SIGN_ENC) {
+                break;
+            } else if (sbiDecode != WHITE_SPACE_ENC) {
+                return -1;
+            }
+        }
+        // Decode the last group before the padding
+        if (count == 2) {
+            destination[e++] = (byte) (outBuff >> 4);
+        } else if (count == 3) {
+            destination[e++] = (byte) (outBuff >> 10);
+            destination[e++] = (byte) (outBuff >> 2);
+        }
+        return e - destOffset;
+    }
+
+    private static char[] toCharArray(CharSequence source, int off, int len) {
+        char[] chars = new char[len];
+        if (source instanceof String) {
+            ((String) source).getChars(off, off + len, chars, 0);
+        } else if (source instanceof java.nio.CharBuffer) {
+            java.nio.CharBuffer buf = ((java.nio.CharBuffer) source).duplicate();
+            buf.position(buf.position() + off);
+            buf.get(chars);
+        } else {
+            for (int i = 0; i < len; i++) {
+                chars[i] = source.charAt(off + i);
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Decodes a range of characters from Base64 notation, without encoding
+     * them into an intermediate byte array. Does not support automatically
+     * gunzipping.
+     *
+     * @param source The Base64 encoded data
+     * @param off The offset of where to begin decoding
+     * @param len The length of characters to decode
+     * @return decoded data, or null if the data contains a character which
+     * is not valid.
+     */
+    public static byte[] decode(CharSequence source, int off, int len) {
+        char[] chars;
+        if (source instanceof java.nio.CharBuffer && ((java.nio.CharBuffer) source).hasArray()) {
+            java.nio.CharBuffer buf = (java.nio.CharBuffer) source;
+            chars = buf.array();
+            off += buf.arrayOffset() + buf.position();
+        } else {
+            chars = toCharArray(source, off, len);
+            off = 0;
+        }
+        byte[] out = new byte[(len + 3) / 4 * 3];
+        int n = decode(chars, off, off + len, out, 0);
+        if (n < 0) {
+            System.err.println("Bad Base64 input character");
+            return null;
+        }
+        if (n == out.length) {
+            return out;
+        }
+        byte[] trimmed = new byte[n];
+        System.arraycopy(out, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /**
+     * Decodes the remaining characters of a buffer from Base64 notation into
+     * a byte buffer. White space is skipped, and decoding stops at the first
+     * equals sign. Does not support automatically gunzipping.
+     * <p>
+     * The position of the source buffer is advanced to its limit, and the
+     * position of the destination buffer by the number of bytes.
+     *
+     * @param source The Base64 encoded data
+     * @param destination the buffer which receives the bytes.
+     * @return the number of bytes
+     * @throws IllegalArgumentException if the data contains a character
+     * which is not valid.
+     * @throws java.nio.BufferOverflowException if the destination buffer
+     * has not enough room.
+     */
+    public static int decode(java.nio.CharBuffer source, java.nio.ByteBuffer destination) {
+        int len = source.remaining();
+        int max = (len + 3) / 4 * 3;
+        char[] chars;
+        int off;
+        if (source.hasArray()) {
+            chars = source.array();
+            off = source.arrayOffset() + source.position();
+        } else {
+            chars = toCharArray(source, 0, len);
+            off = 0;
+        }
+        int n;
+        if (destination.hasArray() && destination.remaining() >= max) {
+            n = decode(chars, off, off + len, destination.array(), destination.arrayOffset() + destination.position());
+            if (n >= 0) {
+                destination.position(destination.position() + n);
+            }
+        } else {
+            byte[] out = new byte[max];
+            n = decode(chars, off, off + len, out, 0);
+            if (n >= 0) {
+                destination.put(out, 0, n);
+            }
+        }
+        if (n < 0) {
+            throw new IllegalArgumentException("Bad Base64 input character.");
+        }
+        source.position(source.limit());
+        return n;
+    }
+
     /* ********  I N N E R   C L A S S   I N P U T S T R E A M  ******** */
     /**
      * A {@link Base64.InputStream} will read data from another
@@ -1043,6 +1380,7 @@ public class Base64 {
         private int lineLength;
         private boolean breakLines;
         private byte[] b4; // Scratch used in a few places
+        private byte[] chunk; // Scratch used for encoding in bulk
         private boolean suspendEncoding;
 
         /**
@@ -1136,8 +1474,9 @@ public class Base64 {
         }
 
         /**
-         * Calls {@link #write(int)} repeatedly until <var>len</var>
-         * bytes are written.
+         * Writes <var>len</var> bytes. When encoding, whole groups of three
+         * bytes are encoded in bulk and written to the output stream in
+         * chunks. Otherwise, calls {@link #write(int)} repeatedly.
          *
          * @param theBytes array from which to read bytes
          * @param off offset for array
@@ -1151,8 +1490,33 @@ public class Base64 {
                 super.out.write(theBytes, off, len);
                 return;
             }
-            for (int i = 0; i < len; i++) {
-                write(theBytes[off + i]);
+            int end = off + len;
+            if (encode) {
+                // Complete the buffered group
+                while (off < end && position != 0) {
+                    write(theBytes[off++]);
+                }
+                if (end - off >= 3) {
+                    if (chunk == null) {
+                        chunk = new byte[CHUNK_BYTES / 3 * 4 + CHUNK_BYTES / LINE_BYTES];
+                    }
+                    while (end - off >= 3) {
+                        int e = 0;
+                        for (; end - off >= 3 && e + 5 <= chunk.length; off += 3) {
+                            encode3to4(theBytes, off, 3, chunk, e);
+                            e += 4;
+                            lineLength += 4;
+                            if (breakLines && lineLength >= MAX_LINE_LENGTH) {
+                                chunk[e++] = NEW_LINE;
+                                lineLength = 0;
+                            }
+                        }
+                        out.write(chunk, 0, e);
+                    }
+                }
+            }
+            while (off < end) {
+                write(theBytes[off++]);
             }
         }
 
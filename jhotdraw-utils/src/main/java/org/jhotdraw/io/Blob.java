@@ -0,0 +1,204 @@
+/*
+ * @(#)Blob.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable sequence of bytes in a {@link BlobStore}.
+ * <p>
+ * A blob is identified by the hash of its content. The store hands out the
+ * same blob for the same content, so that equal data is only stored once.
+ * The bytes are either kept on the heap, or in a memory-mapped file outside
+ * of the heap.
+ * <p>
+ * When a blob is serialized, its content is written. When it is
+ * deserialized, it is put into the default store.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public final class Blob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final transient byte[] hash;
+    /**
+     * The content if it is kept on the heap, or null.
+     */
+    private final transient byte[] bytes;
+    /**
+     * The content. This is a read-only buffer, which is not shared with
+     * clients of the blob.
+     */
+    private final transient ByteBuffer buffer;
+    /**
+     * A copy of the content, if the content is kept in a memory-mapped
+     * file. The copy is discarded when the heap runs low.
+     */
+    private transient volatile SoftReference<byte[]> copy;
+
+    Blob(byte[] hash, byte[] bytes, ByteBuffer buffer) {
+        this.hash = hash;
+        this.bytes = bytes;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the number of bytes.
+     */
+    public int size() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns true if the content is kept in a memory-mapped file.
+     */
+    public boolean isMapped() {
+        return bytes == null;
+    }
+
+    /**
+     * Returns a new read-only buffer over the content.
+     */
+    public ByteBuffer asByteBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Returns the content as an array.
+     * <p>
+     * Note: For performance reasons this method returns the internally used
+     * array, if the content is kept on the heap. If the content is kept in a
+     * memory-mapped file, the array is a copy, which is reused by subsequent
+     * invocations until it is garbage collected. Do not modify this array.
+     * Use {@link #openStream} or {@link #asByteBuffer} to read the content
+     * without copying it.
+     */
+    public byte[] getBytes() {
+        if (bytes != null) {
+            return bytes;
+        }
+        SoftReference<byte[]> ref = copy;
+        byte[] b = (ref == null) ? null : ref.get();
+        if (b == null) {
+            b = new byte[size()];
+            asByteBuffer().get(b);
+            copy = new SoftReference<>(b);
+        }
+        return b;
+    }
+
+    /**
+     * Returns a new input stream which reads the content.
+     */
+    public InputStream openStream() {
+        final ByteBuffer buf = asByteBuffer();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buf.hasRemaining() ? buf.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buf.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, buf.remaining());
+                buf.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+                buf.position(buf.position() + k);
+                return k;
+            }
+
+            @Override
+            public int available() {
+                return buf.remaining();
+            }
+        };
+    }
+
+    /**
+     * Writes the content to the specified output stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (bytes != null) {
+            out.write(bytes);
+            return;
+        }
+        ByteBuffer buf = asByteBuffer();
+        byte[] b = new byte[Math.min(8192, buf.remaining())];
+        while (buf.hasRemaining()) {
+            int n = Math.min(b.length, buf.remaining());
+            buf.get(b, 0, n);
+            out.write(b, 0, n);
+        }
+    }
+
+    /**
+     * Returns the hash of the content. Do not modify this array.
+     */
+    byte[] getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof Blob)) {
+            return false;
+        }
+        Blob that = (Blob) o;
+        return that.size() == size() && Arrays.equals(that.hash, hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return (hash[0] & 0xff) | (hash[1] & 0xff) << 8 | (hash[2] & 0xff) << 16 | (hash[3] & 0xff) << 24;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializedBlob(getBytes());
+    }
+
+    /**
+     * The serialized form of a blob.
+     */
+    private static class SerializedBlob implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final byte[] bytes;
+
+        public SerializedBlob(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return BlobStore.getDefault().put(bytes);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * @(#)BlobStore.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A content-addressed store of immutable byte sequences, such as the data of
+ * images which are embedded in a drawing.
+ * <p>
+ * {@link #put} returns the same {@link Blob} for equal content, as long as
+ * the blob is referenced. Thus copies of a figure, and figures which have
+ * been pasted or loaded with the same data, share one blob.
+ * <p>
+ * Blobs which are at least as large as the spill threshold are written into
+ * a temporary file, and are read back through a memory-mapped buffer, so
+ * that they do not occupy the heap. The file is split into segments. A
+ * segment is deleted when it is full and none of its blobs is referenced
+ * anymore. If a blob can not be written into the file, it is kept on the
+ * heap.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class BlobStore {
+
+    private static final BlobStore DEFAULT = new BlobStore(64 << 10, 256L << 20);
+    private final int spillThreshold;
+    private final long maxSegmentSize;
+    private final HashMap<Key, BlobReference> blobs = new HashMap<>();
+    private final ReferenceQueue<Blob> queue = new ReferenceQueue<>();
+    private FileChannel segment;
+    private long segmentSize;
+
+    /**
+     * The hash of the content of a blob.
+     */
+    private static class Key {
+
+        private final byte[] hash;
+        private final int size;
+
+        public Key(byte[] hash, int size) {
+            this.hash = hash;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return that.size == size && Arrays.equals(that.hash, hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return (hash[0] & 0xff) | (hash[1] & 0xff) << 8 | (hash[2] & 0xff) << 16 | (hash[3] & 0xff) << 24;
+        }
+    }
+
+    private static class BlobReference extends WeakReference<Blob> {
+
+        private final Key key;
+
+        public BlobReference(Blob blob, Key key, ReferenceQueue<Blob> queue) {
+            super(blob, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param spillThreshold blobs with at least this number of bytes are
+     * stored in a memory-mapped file.
+     * @param maxSegmentSize the maximal number of bytes of a segment of the
+     * file.
+     */
+    public BlobStore(int spillThreshold, long maxSegmentSize) {
+        this.spillThreshold = spillThreshold;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Returns the store which is shared by all figures.
+     */
+    public static BlobStore getDefault() {
+        return DEFAULT;
+    }
+
+    private static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new InternalError(e);
+        }
+    }
+
+    /**
+     * Returns the blob for the specified content.
+     * <p>
+     * Note: For performance reasons this method may store a reference to the
+     * data array instead of copying it. Do not modify the data array after
+     * invoking this method.
+     *
+     * @param data the content.
+     * @return the blob, which is shared with all other clients of the store
+     * that have put the same content.
+     */
+    public Blob put(byte[] data) {
+        Key key = new Key(hash(data), data.length);
+        synchronized (this) {
+            expungeStaleEntries();
+            BlobReference ref = blobs.get(key);
+            Blob blob = (ref == null) ? null : ref.get();
+            if (blob == null) {
+                ByteBuffer mapped = null;
+                if (data.length >= spillThreshold) {
+                    try {
+                        mapped = spill(data);
+                    } catch (IOException ex) {
+                        // Keep the blob on the heap
+                        Logger.getLogger(BlobStore.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+                blob = (mapped == null)
+                        ? new Blob(key.hash, data, ByteBuffer.wrap(data).asReadOnlyBuffer())
+                        : new Blob(key.hash, null, mapped);
+                blobs.put(key, new BlobReference(blob, key, queue));
+            }
+            return blob;
+        }
+    }
+
+    /**
+     * Returns the number of blobs in the store.
+     */
+    public synchronized int size() {
+        expungeStaleEntries();
+        return blobs.size();
+    }
+
+    /**
+     * Writes data into the current segment of the file, and maps it into
+     * memory. If the data can not be written, the segment is closed, so that
+     * the next blob is written into a new file. Must be called while holding
+     * the lock.
+     *
+     * @return a read-only buffer.
+     * @throws IOException if the data could not be written.
+     */
+    private ByteBuffer spill(byte[] data) throws IOException {
+        boolean success = false;
+        try {
+            if (segment != null && segmentSize + data.length > maxSegmentSize) {
+                // The mapped buffers stay valid after the channel is closed.
+                // The operating system releases the space of the segment,
+                // when all buffers have been garbage collected.
+                closeSegment();
+            }
+            if (segment == null) {
+                File file = File.createTempFile("jhotdraw-blobs", ".tmp");
+                @SuppressWarnings("resource")
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                segment = raf.getChannel();
+                segmentSize = 0;
+                // Delete the file right away where the platform allows it, so
+                // that it is removed even if the application crashes.
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+            ByteBuffer src = ByteBuffer.wrap(data);
+            long pos = segmentSize;
+            while (src.hasRemaining()) {
+                pos += segment.write(src, pos);
+            }
+            ByteBuffer mapped = segment.map(FileChannel.MapMode.READ_ONLY, segmentSize, data.length);
+            segmentSize = pos;
+            success = true;
+            return mapped;
+        } finally {
+            if (!success && segment != null) {
+                try {
+                    closeSegment();
+                } catch (IOException ex) {
+                    Logger.getLogger(BlobStore.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the current segment. Must be called while holding the lock.
+     */
+    private void closeSegment() throws IOException {
+        FileChannel channel = segment;
+        segment = null;
+        channel.close();
+    }
+
+    /**
+     * Removes the entries of blobs which have been garbage collected. Must be
+     * called while holding the lock.
+     */
+    private void expungeStaleEntries() {
+        for (Reference<? extends Blob> r = queue.poll(); r != null; r = queue.poll()) {
+            BlobReference ref = (BlobReference) r;
+            if (blobs.get(ref.key) == ref) {
+                blobs.remove(ref.key);
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * @(#)NumberScanner.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Scans numbers, flags and single characters from a character sequence, as
+ * they appear in SVG path data, point lists and transform lists.
+ * <p>
+ * Numbers may have a sign, a fraction and an exponent. They may be separated
+ * by white space and commas, or by nothing at all if the next number starts
+ * with a sign or with a second decimal point; for example {@code 1.5.5-2}
+ * consists of the numbers 1.5, 0.5 and -2. Flags, such as the arc flags in
+ * path data, consist of a single digit and need not be separated either.
+ * <p>
+ * The scanner works directly on the characters of the sequence. Numbers are
+ * converted without creating intermediate strings, unless they have more
+ * significant digits or a larger exponent than can be converted exactly
+ * with double arithmetic. The results are the same as with
+ * {@link Double#parseDouble}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public final class NumberScanner {
+
+    /**
+     * The powers of ten which can be represented exactly as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+    /**
+     * The largest mantissa which can be represented exactly as a double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /**
+     * Digits are accumulated in the mantissa only while it is below this
+     * limit, so that the mantissa can not overflow.
+     */
+    private static final long MANTISSA_LIMIT = Long.MAX_VALUE / 10 - 9;
+    private static final int MAX_EXPONENT = 9999;
+    private final CharSequence str;
+    private final int end;
+    private int pos;
+
+    /**
+     * Creates a scanner for the specified characters.
+     */
+    public NumberScanner(CharSequence str) {
+        this(str, 0, str.length());
+    }
+
+    /**
+     * Creates a scanner for a range of the specified characters.
+     *
+     * @param str the characters.
+     * @param start the index of the first character.
+     * @param end the index after the last character.
+     */
+    public NumberScanner(CharSequence str, int start, int end) {
+        this.str = str;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns the index of the next character.
+     */
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Skips white space and commas.
+     *
+     * @return true if there are more characters.
+     */
+    public boolean skipSeparators() {
+        while (pos < end) {
+            char c = str.charAt(pos);
+            if (c > ' ' && c != ',') {
+                return true;
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the next character without consuming it, or -1 if there are no
+     * more characters.
+     */
+    public int peek() {
+        return (pos < end) ? str.charAt(pos) : -1;
+    }
+
+    /**
+     * Returns and consumes the next character, or returns -1 if there are no
+     * more characters.
+     */
+    public int nextChar() {
+        return (pos < end) ? str.charAt(pos++) : -1;
+    }
+
+    /**
+     * Returns true if a number starts at the current position.
+     */
+    public boolean isNumberStart() {
+        int i = pos;
+        if (i < end && (str.charAt(i) == '+' || str.charAt(i) == '-')) {
+            i++;
+        }
+        if (i < end && str.charAt(i) == '.') {
+            i++;
+            return i < end && isDigit(str.charAt(i));
+        }
+        return i < end && isDigit(str.charAt(i));
+    }
+
+    /**
+     * Skips separators and returns true if a number follows.
+     */
+    public boolean hasNextNumber() {
+        return skipSeparators() && isNumberStart();
+    }
+
+    /**
+     * Skips separators and returns the next number.
+     *
+     * @throws IOException if no number follows.
+     */
+    public double nextNumber() throws IOException {
+        if (!hasNextNumber()) {
+            throw new IOException("Number expected at position " + pos);
+        }
+        int start = pos;
+        int i = pos;
+        boolean negative = false;
+        char c = str.charAt(i);
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        boolean exact = true;
+        while (i < end && isDigit(c = str.charAt(i))) {
+            if (mantissa < MANTISSA_LIMIT) {
+                mantissa = mantissa * 10 + (c - '0');
+            } else {
+                exponent++;
+                exact = false;
+            }
+            i++;
+        }
+        if (i < end && str.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(c = str.charAt(i))) {
+                if (mantissa < MANTISSA_LIMIT) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                i++;
+            }
+        }
+        if (i < end && (str.charAt(i) == 'e' || str.charAt(i) == 'E')) {
+            // An 'e' which is not followed by digits does not belong to the number
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < end && (str.charAt(j) == '+' || str.charAt(j) == '-')) {
+                negativeExponent = str.charAt(j) == '-';
+                j++;
+            }
+            if (j < end && isDigit(str.charAt(j))) {
+                int e = 0;
+                while (j < end && isDigit(c = str.charAt(j))) {
+                    if (e < MAX_EXPONENT) {
+                        e = e * 10 + (c - '0');
+                    }
+                    j++;
+                }
+                exponent += negativeExponent ? -e : e;
+                i = j;
+            }
+        }
+        pos = i;
+
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (exact && mantissa <= MAX_EXACT_MANTISSA
+                && exponent >= -22 && exponent <= 22) {
+            // Both operands are exact, so the result is correctly rounded
+            value = (exponent >= 0)
+                    ? mantissa * POWERS_OF_TEN[exponent]
+                    : mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return Double.parseDouble(str.subSequence(start, i).toString());
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Skips separators and returns the next flag, which is a single '0' or
+     * '1' character.
+     *
+     * @throws IOException if no flag follows.
+     */
+    public boolean nextFlag() throws IOException {
+        skipSeparators();
+        int c = peek();
+        if (c != '0' && c != '1') {
+            throw new IOException("Flag expected at position " + pos);
+        }
+        pos++;
+        return c == '1';
+    }
+
+    /**
+     * Skips separators, and consumes the specified keyword if it follows and
+     * is not followed by another letter.
+     *
+     * @return true if the keyword was consumed.
+     */
+    public boolean nextKeyword(String keyword) {
+        skipSeparators();
+        int n = keyword.length();
+        if (end - pos < n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (str.charAt(pos + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        if (pos + n < end && Character.isLetter(str.charAt(pos + n))) {
+            return false;
+        }
+        pos += n;
+        return true;
+    }
+
+    /**
+     * Returns all numbers of the specified characters, or null if the
+     * characters contain something else than numbers and separators.
+     */
+    public static double[] toNumbers(CharSequence str) {
+        NumberScanner s = new NumberScanner(str);
+        double[] numbers = new double[16];
+        int count = 0;
+        try {
+            while (s.skipSeparators()) {
+                if (!s.isNumberStart()) {
+                    return null;
+                }
+                if (count == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, count * 2);
+                }
+                numbers[count++] = s.nextNumber();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return (count == numbers.length) ? numbers : Arrays.copyOf(numbers, count);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
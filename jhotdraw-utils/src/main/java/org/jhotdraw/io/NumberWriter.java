@@ -0,0 +1,195 @@
+/*
+ * @(#)NumberWriter.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+/**
+ * Appends numbers in plain decimal notation to a {@code StringBuilder}, as
+ * they are used in XML attributes, SVG path data and point lists.
+ * <p>
+ * A writer either writes a fixed maximal number of fraction digits, or the
+ * shortest representation which reads back as the same value, with double
+ * or with float precision. Trailing zeros and the decimal point of integral
+ * values are omitted, so that 2.0 is written as "2".
+ * <p>
+ * The digits are computed with long arithmetic and appended directly to the
+ * buffer. Only values, which can not be represented with at most 17
+ * significant digits in plain notation, such as very large or very small
+ * values, are written with {@link Double#toString}, which allocates an
+ * intermediate string and may use scientific notation.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public final class NumberWriter {
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+        100000000L, 1000000000L, 10000000000L, 100000000000L,
+        1000000000000L, 10000000000000L, 100000000000000L,
+        1000000000000000L, 10000000000000000L, 100000000000000000L
+    };
+    /**
+     * Scaled values must be below this limit, so that they and the powers of
+     * ten are exact doubles.
+     */
+    private static final double MAX_EXACT = 1L << 53;
+    private final int fractionDigits;
+    private final boolean isFloatPrecision;
+
+    /**
+     * Creates a writer which writes the shortest representation that reads
+     * back as the same double value.
+     */
+    public NumberWriter() {
+        this(-1, false);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fractionDigits the maximal number of fraction digits. A
+     * negative value selects the shortest representation which reads back
+     * as the same value.
+     * @param isFloatPrecision whether the shortest representation needs to
+     * read back as the same float value only.
+     */
+    public NumberWriter(int fractionDigits, boolean isFloatPrecision) {
+        this.fractionDigits = Math.min(fractionDigits, POWERS_OF_TEN.length - 1);
+        this.isFloatPrecision = isFloatPrecision;
+    }
+
+    /**
+     * Returns the maximal number of fraction digits, or -1 if the shortest
+     * representation is written.
+     */
+    public int getFractionDigits() {
+        return fractionDigits < 0 ? -1 : fractionDigits;
+    }
+
+    public boolean isFloatPrecision() {
+        return isFloatPrecision;
+    }
+
+    /**
+     * Appends the specified value to the buffer.
+     *
+     * @return the buffer.
+     */
+    public StringBuilder append(StringBuilder buf, double value) {
+        if (value == 0) {
+            // Includes negative zero
+            buf.append('0');
+            return buf;
+        }
+        if (isFloatPrecision && fractionDigits < 0) {
+            value = (float) value;
+        }
+        double abs = Math.abs(value);
+        if (Double.isNaN(abs) || abs >= MAX_EXACT) {
+            return appendDouble(buf, value);
+        }
+        if (fractionDigits >= 0) {
+            double scaled = abs * POWERS_OF_TEN[fractionDigits];
+            if (scaled >= MAX_EXACT) {
+                return appendDouble(buf, value);
+            }
+            long digits = round(scaled);
+            if (digits != 0 && value < 0) {
+                buf.append('-');
+            }
+            return appendDigits(buf, digits, fractionDigits);
+        }
+        // A representation with more fraction digits is at least as close to
+        // the value, so the shortest one can be found by binary search. The
+        // upper bound has enough significant digits for all values.
+        int integerDigits = 0;
+        while (integerDigits < POWERS_OF_TEN.length && abs >= POWERS_OF_TEN[integerDigits]) {
+            integerDigits++;
+        }
+        int hi = Math.max(0, (isFloatPrecision ? 9 : 17) - integerDigits);
+        while (hi >= POWERS_OF_TEN.length || abs * POWERS_OF_TEN[hi] >= MAX_EXACT) {
+            hi--;
+        }
+        if (!isRoundTrip(abs, hi)) {
+            return appendDouble(buf, value);
+        }
+        int lo = 0;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (isRoundTrip(abs, mid)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        if (value < 0) {
+            buf.append('-');
+        }
+        return appendDigits(buf, round(abs * POWERS_OF_TEN[hi]), hi);
+    }
+
+    /**
+     * Returns true if the value reads back as the same value, when it is
+     * written with the specified number of fraction digits.
+     */
+    private boolean isRoundTrip(double abs, int fractionDigits) {
+        double p = POWERS_OF_TEN[fractionDigits];
+        // The division of two exact doubles is correctly rounded, like
+        // Double.parseDouble of the decimal representation
+        double readBack = round(abs * p) / p;
+        return isFloatPrecision ? (float) readBack == (float) abs : readBack == abs;
+    }
+
+    /**
+     * Rounds a non-negative value below {@code MAX_EXACT} half up.
+     */
+    private static long round(double value) {
+        return (long) (value + 0.5);
+    }
+
+    /**
+     * Returns the specified value as a string.
+     */
+    public String toString(double value) {
+        return append(new StringBuilder(24), value).toString();
+    }
+
+    /**
+     * Appends digits with the specified number of fraction digits, without
+     * trailing zeros.
+     */
+    private static StringBuilder appendDigits(StringBuilder buf, long digits, int fractionDigits) {
+        long p = POWERS_OF_TEN[fractionDigits];
+        buf.append(digits / p);
+        long fraction = digits % p;
+        if (fraction != 0) {
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                fractionDigits--;
+            }
+            buf.append('.');
+            for (int i = fractionDigits - 1; i > 0 && fraction < POWERS_OF_TEN[i]; i--) {
+                buf.append('0');
+            }
+            buf.append(fraction);
+        }
+        return buf;
+    }
+
+    private StringBuilder appendDouble(StringBuilder buf, double value) {
+        String str = isFloatPrecision ? Float.toString((float) value) : Double.toString(value);
+        if (str.endsWith(".0")) {
+            buf.append(str, 0, str.length() - 2);
+        } else {
+            buf.append(str);
+        }
+        return buf;
+    }
+}
@@ -32,7 +32,7 @@ import javax.swing.undo.*;
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class CompositeEdit extends CompoundEdit {
+public class CompositeEdit extends CompoundEdit implements SizedEdit {
 
     private static final long serialVersionUID = 1L;
     private String presentationName;
@@ -168,4 +168,17 @@ public class CompositeEdit extends CompoundEdit {
     public void setSignificant(boolean newValue) {
         isSignificant = newValue;
     }
+
+    /**
+     * Returns the sum of the estimated sizes of the edits of this
+     * CompositeEdit.
+     */
+    @Override
+    public long getEstimatedSize() {
+        long size = 32;
+        for (UndoableEdit edit : edits) {
+            size += UndoRedoManager.estimateSize(edit);
+        }
+        return size;
+    }
 }
@@ -0,0 +1,37 @@
+/*
+ * @(#)MergeableEdit.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.undo;
+
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An {@code UndoableEdit} which can absorb the edit that has been done
+ * directly after it.
+ * <p>
+ * Unlike {@link UndoableEdit#addEdit}, which is only invoked on the last edit
+ * when a new edit arrives, this method is used by the {@link UndoRedoManager}
+ * to compact older edits when it runs out of memory. For example, many
+ * consecutive transforms of the same figures can be merged into a single
+ * transform.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public interface MergeableEdit extends UndoableEdit {
+
+    /**
+     * Merges the specified edit into this edit. Both edits have been done, and
+     * the specified edit has been done directly after this edit. After a
+     * successful merge, undoing this edit undoes both edits, and the specified
+     * edit is discarded.
+     *
+     * @param nextEdit the edit which has been done after this edit.
+     * @return true if the edit has been merged.
+     */
+    public boolean merge(UndoableEdit nextEdit);
+}
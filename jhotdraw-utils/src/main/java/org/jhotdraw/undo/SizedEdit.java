@@ -0,0 +1,31 @@
+/*
+ * @(#)SizedEdit.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.undo;
+
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An {@code UndoableEdit} which can estimate how much memory it retains.
+ * <p>
+ * The {@link UndoRedoManager} uses the estimates to keep its edits within a
+ * memory limit. Edits which do not implement this interface are assumed to
+ * retain {@link UndoRedoManager#DEFAULT_EDIT_SIZE} bytes.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public interface SizedEdit extends UndoableEdit {
+
+    /**
+     * Returns an estimate of the number of bytes, which are retained by this
+     * edit, and which can be freed when the edit is discarded.
+     * <p>
+     * The estimate is requested often, and must therefore be cheap to compute.
+     */
+    public long getEstimatedSize();
+}
@@ -17,6 +17,12 @@ import org.jhotdraw.util.*;
 /**
  * Same as javax.swing.UndoManager but provides actions for undo and
  * redo operations.
+ * <p>
+ * In addition to the limit on the number of edits, the manager can keep its
+ * edits within a memory limit. The memory retained by an edit is estimated
+ * with {@link SizedEdit#getEstimatedSize}. When the limit is exceeded, the
+ * manager first compacts older edits, which implement {@link MergeableEdit},
+ * and then discards the oldest edits.
  *
  * @author Werner Randelshofer
  * @version $Id$
@@ -44,6 +50,29 @@ public class UndoRedoManager extends UndoManager { //javax.swing.undo.UndoManage
      * this flag is true.
      */
     private boolean undoOrRedoInProgress;
+    /**
+     * The estimated size of an edit which does not implement
+     * {@link SizedEdit}.
+     */
+    public static final long DEFAULT_EDIT_SIZE = 256;
+    /**
+     * The number of most recent edits which are not compacted, so that the
+     * user can still undo them one by one.
+     */
+    private static final int UNCOMPACTED_EDIT_COUNT = 10;
+    /**
+     * The maximal number of bytes which the edits may retain.
+     */
+    private long memoryLimit = Long.MAX_VALUE;
+    /**
+     * The estimated sizes of the edits, as they were when the edits were
+     * added or merged.
+     */
+    private IdentityHashMap<UndoableEdit, Long> editSizes = new IdentityHashMap<>();
+    /**
+     * The sum of the values in {@code editSizes}.
+     */
+    private long estimatedSize;
     /**
      * Sending this UndoableEdit event to the UndoRedoManager
      * disables the Undo and Redo functions of the manager.
@@ -148,7 +177,11 @@ public class UndoRedoManager extends UndoManager { //javax.swing.undo.UndoManage
      */
     @Override
     public void discardAllEdits() {
-        super.discardAllEdits();
+        synchronized (this) {
+            super.discardAllEdits();
+            editSizes.clear();
+            estimatedSize = 0;
+        }
         updateActions();
         setHasSignificantEdits(false);
     }
@@ -194,7 +227,24 @@ public class UndoRedoManager extends UndoManager { //javax.swing.undo.UndoManage
             anEdit.die();
             return true;
         }
-        boolean success = super.addEdit(anEdit);
+        boolean success;
+        synchronized (this) {
+            UndoableEdit previous = lastEdit();
+            success = super.addEdit(anEdit);
+            if (success) {
+                UndoableEdit last = lastEdit();
+                if (previous != null && previous != last
+                        && (edits.size() < 2 || edits.get(edits.size() - 2) != previous)) {
+                    // The new edit has replaced the previous edit
+                    forgetSize(previous);
+                }
+                // The last edit may have absorbed the new edit
+                updateSize(last);
+                if (memoryLimit != Long.MAX_VALUE) {
+                    trimForMemoryLimit();
+                }
+            }
+        }
         updateActions();
         if (success && anEdit.isSignificant() && editToBeUndone() == anEdit) {
             setHasSignificantEdits(true);
@@ -202,6 +252,132 @@ public class UndoRedoManager extends UndoManager { //javax.swing.undo.UndoManage
         return success;
     }
 
+    /**
+     * Sets the maximal number of bytes which the edits may retain. The
+     * default value is {@code Long.MAX_VALUE}, which means that only the
+     * number of edits is limited.
+     */
+    public synchronized void setMemoryLimit(long newValue) {
+        long oldValue = memoryLimit;
+        memoryLimit = newValue;
+        if (newValue != Long.MAX_VALUE) {
+            trimForMemoryLimit();
+            updateActions();
+        }
+        firePropertyChange("memoryLimit", oldValue, newValue);
+    }
+
+    /**
+     * Returns the maximal number of bytes which the edits may retain.
+     */
+    public synchronized long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Returns the estimated number of bytes which are retained by the edits
+     * of this manager.
+     */
+    public synchronized long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Estimates the size of the specified edit again, and updates the
+     * estimated size of this manager.
+     */
+    private void updateSize(UndoableEdit edit) {
+        if (edit != null) {
+            long newSize = estimateSize(edit);
+            Long oldSize = editSizes.put(edit, newSize);
+            estimatedSize += newSize - ((oldSize == null) ? 0 : oldSize);
+        }
+    }
+
+    /**
+     * Removes the size of the specified edit from the estimated size of this
+     * manager.
+     */
+    private void forgetSize(UndoableEdit edit) {
+        Long oldSize = editSizes.remove(edit);
+        if (oldSize != null) {
+            estimatedSize -= oldSize;
+        }
+    }
+
+    @Override
+    protected synchronized void trimEdits(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            forgetSize(edits.get(i));
+        }
+        super.trimEdits(from, to);
+    }
+
+    /**
+     * Returns the estimated number of bytes which are retained by the
+     * specified edit.
+     */
+    public static long estimateSize(UndoableEdit edit) {
+        return (edit instanceof SizedEdit) ? ((SizedEdit) edit).getEstimatedSize() : DEFAULT_EDIT_SIZE;
+    }
+
+    /**
+     * Merges consecutive edits, which implement {@link MergeableEdit}. The
+     * most recent edits are not merged, so that they can still be undone one
+     * by one.
+     */
+    public synchronized void compact() {
+        int end = getIndexOfNextAdd() - UNCOMPACTED_EDIT_COUNT;
+        int i = 0;
+        while (i < end - 1) {
+            UndoableEdit edit = edits.get(i);
+            // Merge the run of edits which follow the edit, and remove the
+            // run at once
+            int j = i + 1;
+            if (edit instanceof MergeableEdit && edit.canUndo()) {
+                while (j < end && edits.get(j).canUndo()
+                        && ((MergeableEdit) edit).merge(edits.get(j))) {
+                    j++;
+                }
+            }
+            if (j > i + 1) {
+                trimEdits(i + 1, j - 1);
+                updateSize(edit);
+                end -= j - i - 1;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Compacts the edits, and then discards the oldest edits, until the edits
+     * fit into the memory limit. The last edit to be undone is never
+     * discarded.
+     */
+    private synchronized void trimForMemoryLimit() {
+        if (estimatedSize > memoryLimit) {
+            compact();
+            long size = estimatedSize;
+            int count = 0;
+            for (int n = getIndexOfNextAdd() - 1; count < n && size > memoryLimit; count++) {
+                Long editSize = editSizes.get(edits.get(count));
+                size -= (editSize == null) ? 0 : editSize;
+            }
+            if (count > 0) {
+                trimEdits(0, count - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the index after the last edit which can be undone. Trailing
+     * insignificant edits are not included.
+     */
+    private int getIndexOfNextAdd() {
+        UndoableEdit edit = editToBeUndone();
+        return (edit == null) ? 0 : edits.indexOf(edit) + 1;
+    }
+
     /**
      * Gets the undo action for use as an Undo menu item.
      */
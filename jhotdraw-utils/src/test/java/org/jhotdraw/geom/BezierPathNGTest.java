@@ -18,9 +18,11 @@
  */
 package org.jhotdraw.geom;
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import static org.testng.Assert.*;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
@@ -135,4 +137,114 @@ public class BezierPathNGTest {
             pathIterator.next();
         }
     }
+
+    private static BezierPath createCurvedPath() {
+        BezierPath path = new BezierPath();
+        path.add(new BezierPath.Node(BezierPath.C0_MASK, 0, 0, 0, 0, 0, 0));
+        path.add(new BezierPath.Node(BezierPath.C1_MASK, 10, 0, 8, -3, 10, 0));
+        path.add(new BezierPath.Node(BezierPath.C2_MASK, 20, 5, 20, 5, 25, 10));
+        path.add(new BezierPath.Node(BezierPath.C1C2_MASK, 10, 20, 15, 22, 5, 18));
+        path.get(1).keepColinear = false;
+        path.get(3).keepColinear = false;
+        return path;
+    }
+
+    private static void assertSameNodes(BezierPath actual, BezierPath expected) {
+        assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            BezierPath.Node a = actual.get(i);
+            BezierPath.Node e = expected.get(i);
+            assertEquals(a.mask, e.mask, "mask of node " + i);
+            assertEquals(a.keepColinear, e.keepColinear, "keepColinear of node " + i);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(a.x[c], e.x[c], 0.0, "x" + c + " of node " + i);
+                assertEquals(a.y[c], e.y[c], 0.0, "y" + c + " of node " + i);
+            }
+        }
+    }
+
+    private static void assertSameShape(BezierPath actual, BezierPath expected) {
+        PathIterator ai = actual.toGeneralPath().getPathIterator(null);
+        PathIterator ei = expected.toGeneralPath().getPathIterator(null);
+        double[] ac = new double[6];
+        double[] ec = new double[6];
+        while (!ei.isDone()) {
+            assertFalse(ai.isDone());
+            assertEquals(ai.currentSegment(ac), ei.currentSegment(ec));
+            for (int j = 0; j < 6; j++) {
+                assertEquals(ac[j], ec[j], 0.0);
+            }
+            ai.next();
+            ei.next();
+        }
+        assertTrue(ai.isDone());
+    }
+
+    /**
+     * Test of toPackedArray and setTo(double[]) with a closed path.
+     */
+    @Test
+    public void testPackedArrayRoundTripOfClosedPath() {
+        BezierPath instance = createCurvedPath();
+        instance.setClosed(true);
+        double[] packed = instance.toPackedArray();
+        assertEquals(packed.length, 4 * BezierPath.PACKED_NODE_SIZE);
+
+        BezierPath copy = new BezierPath();
+        copy.setClosed(true);
+        copy.setTo(packed);
+        assertSameNodes(copy, instance);
+        assertSameShape(copy, instance);
+    }
+
+    /**
+     * Test of setTo(double[]) with a path which has more or fewer nodes than
+     * the packed array.
+     */
+    @Test
+    public void testPackedArrayRoundTripOfMultiSegmentPath() {
+        BezierPath instance = createCurvedPath();
+        double[] packed = instance.toPackedArray();
+
+        BezierPath longer = createCurvedPath();
+        longer.add(new BezierPath.Node(100, 100));
+        longer.add(new BezierPath.Node(200, 100));
+        longer.setTo(packed);
+        assertSameNodes(longer, instance);
+        assertSameShape(longer, instance);
+
+        BezierPath shorter = new BezierPath();
+        shorter.add(new BezierPath.Node(100, 100));
+        shorter.setTo(packed);
+        assertSameNodes(shorter, instance);
+        assertSameShape(shorter, instance);
+
+        BezierPath empty = new BezierPath();
+        empty.setTo(new BezierPath().toPackedArray());
+        assertEquals(empty.size(), 0);
+    }
+
+    /**
+     * Test of setTo(double[]) after the path has been transformed. The masks
+     * and the keepColinear flags of all nodes, and the cached bounds, must be
+     * restored.
+     */
+    @Test
+    public void testPackedArrayRestoresTransformedPath() {
+        BezierPath instance = createCurvedPath();
+        BezierPath original = createCurvedPath();
+        double[] packed = instance.toPackedArray();
+        Rectangle2D.Double bounds = instance.getBounds2D();
+
+        AffineTransform tx = AffineTransform.getRotateInstance(0.7);
+        tx.scale(3, 0.25);
+        instance.transform(tx);
+        instance.get(0).mask = BezierPath.C1C2_MASK;
+        instance.get(1).keepColinear = true;
+        instance.setTo(packed);
+
+        assertSameNodes(instance, original);
+        assertSameShape(instance, original);
+        assertEquals(instance.getBounds2D(), bounds);
+    }
 }
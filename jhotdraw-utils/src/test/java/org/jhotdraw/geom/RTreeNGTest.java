@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Compares the results of {@link RTree} with a linear search.
+ */
+public class RTreeNGTest {
+
+    public RTreeNGTest() {
+    }
+
+    private static Rectangle2D.Double randomRect(Random r) {
+        return new Rectangle2D.Double(
+                r.nextDouble() * 4000 - 1000, r.nextDouble() * 4000 - 1000,
+                r.nextDouble() * 100, r.nextDouble() * 100);
+    }
+
+    private static void assertQueries(RTree<Integer> tree, Map<Integer, Rectangle2D.Double> expected, Random r) {
+        assertEquals(tree.size(), expected.size());
+        for (int i = 0; i < 50; i++) {
+            Rectangle2D.Double q = randomRect(r);
+            q.width *= 5;
+            q.height *= 5;
+            Point2D.Double p = new Point2D.Double(q.x, q.y);
+            Set<Integer> intersects = new HashSet<>();
+            Set<Integer> inside = new HashSet<>();
+            Set<Integer> contains = new HashSet<>();
+            for (Map.Entry<Integer, Rectangle2D.Double> e : expected.entrySet()) {
+                if (e.getValue().intersects(q)) {
+                    intersects.add(e.getKey());
+                }
+                if (q.contains(e.getValue())) {
+                    inside.add(e.getKey());
+                }
+                if (e.getValue().contains(p)) {
+                    contains.add(e.getKey());
+                }
+            }
+            assertEquals(new HashSet<>(tree.findIntersects(q)), intersects);
+            assertEquals(new HashSet<>(tree.findInside(q)), inside);
+            assertEquals(new HashSet<>(tree.findContains(p)), contains);
+        }
+    }
+
+    @Test
+    public void testAddRemove() {
+        Random r = new Random(1);
+        RTree<Integer> tree = new RTree<>(4);
+        Map<Integer, Rectangle2D.Double> expected = new HashMap<>();
+        assertQueries(tree, expected, r);
+        for (int i = 0; i < 2000; i++) {
+            Rectangle2D.Double b = randomRect(r);
+            tree.add(i, b);
+            expected.put(i, b);
+            if (i % 500 == 0) {
+                assertQueries(tree, expected, r);
+            }
+        }
+        assertQueries(tree, expected, r);
+        for (int i = 0; i < 2000; i += 3) {
+            tree.remove(i);
+            expected.remove(i);
+        }
+        assertQueries(tree, expected, r);
+        tree.pack();
+        assertQueries(tree, expected, r);
+    }
+
+    @Test
+    public void testUpdate() {
+        Random r = new Random(2);
+        RTree<Integer> tree = new RTree<>(4);
+        Map<Integer, Rectangle2D.Double> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            Rectangle2D.Double b = randomRect(r);
+            tree.add(i, b);
+            expected.put(i, b);
+        }
+        tree.pack();
+        for (int round = 0; round < 20; round++) {
+            Map<Integer, Rectangle2D.Double> moved = new HashMap<>();
+            for (int i = round; i < 1000; i += 7) {
+                Rectangle2D.Double b = (Rectangle2D.Double) expected.get(i).clone();
+                b.x += r.nextDouble() * 200 - 100;
+                b.y += r.nextDouble() * 200 - 100;
+                moved.put(i, b);
+            }
+            tree.updateAll(moved);
+            expected.putAll(moved);
+            assertQueries(tree, expected, r);
+        }
+    }
+
+    @Test
+    public void testAddExisting() {
+        RTree<String> tree = new RTree<>();
+        tree.add("a", new Rectangle2D.Double(0, 0, 10, 10));
+        tree.add("a", new Rectangle2D.Double(100, 100, 10, 10));
+        assertEquals(tree.size(), 1);
+        assertTrue(tree.findContains(new Point2D.Double(5, 5)).isEmpty());
+        assertTrue(tree.findContains(new Point2D.Double(105, 105)).contains("a"));
+    }
+
+    @Test
+    public void testResultsAreSortedByOrder() {
+        RTree<String> tree = new RTree<>();
+        tree.add("a", new Rectangle2D.Double(0, 0, 10, 10), 30);
+        tree.add("b", new Rectangle2D.Double(0, 0, 10, 10), 10);
+        tree.add("c", new Rectangle2D.Double(0, 0, 10, 10), 20);
+        assertEquals(tree.findContains(new Point2D.Double(5, 5)), Arrays.asList("b", "c", "a"));
+        tree.setOrder("b", 40);
+        assertEquals(tree.getOrder("b"), 40L);
+        assertEquals(tree.findIntersects(new Rectangle2D.Double(0, 0, 5, 5)), Arrays.asList("c", "a", "b"));
+    }
+
+    private static boolean touches(Rectangle2D.Double a, Rectangle2D.Double b) {
+        return a.x <= b.x + b.width && a.y <= b.y + b.height
+                && a.x + a.width >= b.x && a.y + a.height >= b.y;
+    }
+
+    @Test
+    public void testTouchesFindsEmptyBounds() {
+        Random r = new Random(3);
+        RTree<Integer> tree = new RTree<>(4);
+        Map<Integer, Rectangle2D.Double> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            Rectangle2D.Double b = randomRect(r);
+            // Points, and horizontal and vertical lines
+            switch (i % 4) {
+                case 0:
+                    b.width = b.height = 0;
+                    break;
+                case 1:
+                    b.width = 0;
+                    break;
+                case 2:
+                    b.height = 0;
+                    break;
+                default:
+                    break;
+            }
+            tree.add(i, b);
+            expected.put(i, b);
+        }
+        tree.pack();
+        for (int i = 0; i < 50; i++) {
+            Rectangle2D.Double q = randomRect(r);
+            q.width *= 5;
+            q.height *= (i % 5 == 0) ? 0 : 5;
+            Set<Integer> touches = new HashSet<>();
+            for (Map.Entry<Integer, Rectangle2D.Double> e : expected.entrySet()) {
+                if (touches(e.getValue(), q)) {
+                    touches.add(e.getKey());
+                }
+            }
+            assertEquals(new HashSet<>(tree.findTouches(q)), touches);
+        }
+        // An empty rectangle on the border of the query is found
+        tree.add(-1, new Rectangle2D.Double(10, 20, 0, 0));
+        assertTrue(tree.findTouches(new Rectangle2D.Double(10, 0, 5, 20)).contains(-1));
+        assertFalse(tree.findIntersects(new Rectangle2D.Double(0, 0, 100, 100)).contains(-1));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the buffer methods of {@link Base64}.
+ */
+public class Base64NGTest {
+
+    public Base64NGTest() {
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    @DataProvider
+    public Object[][] sizes() {
+        return new Object[][]{
+            {0}, {1}, {2}, {3}, {56}, {57}, {58}, {114}, {1000}, {57 * 64}, {57 * 64 + 1}, {100000}
+        };
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testEncodeMatchesEncodeBytes(int size) throws Exception {
+        byte[] data = randomBytes(size, size);
+        for (int options : new int[]{Base64.NO_OPTIONS, Base64.DONT_BREAK_LINES}) {
+            String expected = Base64.encodeBytes(data, options);
+            assertEquals(Base64.encodedLength(size, options), expected.length());
+            assertEquals(Base64.encodeToString(ByteBuffer.wrap(data), options), expected);
+            // Direct buffers take the path without arrays
+            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+            direct.put(data).flip();
+            CharBuffer chars = CharBuffer.allocate(expected.length() + 1);
+            chars.put('>');
+            Base64.encode(direct, chars, options);
+            assertFalse(direct.hasRemaining());
+            assertEquals(chars.flip().toString(), ">" + expected);
+
+            StringWriter w = new StringWriter();
+            Base64.encode(ByteBuffer.wrap(data), w, options);
+            assertEquals(w.toString(), expected);
+            w = new StringWriter();
+            direct.rewind();
+            Base64.encode(direct, w, options, "&#10;");
+            assertEquals(w.toString(), expected.replace("\n", "&#10;"));
+        }
+        assertEquals(Base64.encodeToString(ByteBuffer.wrap(data), Base64.DONT_BREAK_LINES),
+                java.util.Base64.getEncoder().encodeToString(data));
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testDecode(int size) throws Exception {
+        byte[] data = randomBytes(size, size);
+        String encoded = Base64.encodeBytes(data);
+        assertEquals(Base64.decode(encoded, 0, encoded.length()), data);
+        assertEquals(Base64.decode(" " + encoded + " ", 1, encoded.length()), data);
+        assertEquals(Base64.decode(encoded), data);
+        assertEquals(Base64.decode(java.util.Base64.getMimeEncoder().encodeToString(data)), data);
+
+        ByteBuffer bytes = ByteBuffer.allocate(size + 1);
+        bytes.put((byte) 42);
+        CharBuffer chars = CharBuffer.wrap(encoded);
+        assertEquals(Base64.decode(chars, bytes), size);
+        assertFalse(chars.hasRemaining());
+        bytes.flip();
+        assertEquals(bytes.get(), 42);
+        byte[] decoded = new byte[size];
+        bytes.get(decoded);
+        assertEquals(decoded, data);
+    }
+
+    @Test
+    public void testDecodeWithoutPadding() {
+        assertEquals(Base64.decode("QUJD", 0, 4), "ABC".getBytes());
+        assertEquals(Base64.decode("QUI", 0, 3), "AB".getBytes());
+        assertEquals(Base64.decode("QQ", 0, 2), "A".getBytes());
+    }
+
+    @Test
+    public void testDecodeBadCharacter() {
+        assertNull(Base64.decode("QU*D", 0, 4));
+        assertNull(Base64.decode("QU\u00e9D", 0, 4));
+        try {
+            Base64.decode(CharBuffer.wrap("QU*D"), ByteBuffer.allocate(3));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOutputStreamMatchesEncodeBytes() throws Exception {
+        byte[] data = randomBytes(10000, 7);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (Base64.OutputStream out = new Base64.OutputStream(buf)) {
+            // Mix single bytes with bulk writes of odd length
+            out.write(data, 0, 1);
+            out.write(data, 1, 200);
+            out.write(data[201]);
+            out.write(data, 202, data.length - 202);
+        }
+        assertEquals(buf.toString("US-ASCII"), Base64.encodeBytes(data));
+        assertEquals(Base64.decode(buf.toString("US-ASCII")), data);
+    }
+}
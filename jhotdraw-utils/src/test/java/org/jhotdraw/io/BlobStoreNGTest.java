@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link BlobStore}.
+ */
+public class BlobStoreNGTest {
+
+    public BlobStoreNGTest() {
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    @Test
+    public void testEqualContentIsStoredOnce() {
+        BlobStore store = new BlobStore(1024, 1 << 20);
+        byte[] data = randomBytes(100, 1);
+        Blob a = store.put(data);
+        Blob b = store.put(data.clone());
+        Blob c = store.put(randomBytes(100, 2));
+        assertSame(b, a);
+        assertNotSame(c, a);
+        assertFalse(a.isMapped());
+        assertSame(a.getBytes(), data);
+        assertEquals(store.size(), 2);
+    }
+
+    @Test
+    public void testLargeBlobsAreMapped() throws Exception {
+        BlobStore store = new BlobStore(1024, 4096);
+        byte[][] data = new byte[4][];
+        Blob[] blobs = new Blob[data.length];
+        for (int i = 0; i < data.length; i++) {
+            // Three blobs do not fit into one segment
+            data[i] = randomBytes(1500 + i, i);
+            blobs[i] = store.put(data[i]);
+        }
+        for (int i = 0; i < data.length; i++) {
+            assertTrue(blobs[i].isMapped());
+            assertEquals(blobs[i].size(), data[i].length);
+            assertEquals(blobs[i].getBytes(), data[i]);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = blobs[i].openStream()) {
+                byte[] buf = new byte[100];
+                for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                    out.write(buf, 0, n);
+                }
+            }
+            assertEquals(out.toByteArray(), data[i]);
+        }
+        assertSame(store.put(data[0].clone()), blobs[0]);
+    }
+
+    @Test
+    public void testMappedContentIsCopiedOnce() {
+        BlobStore store = new BlobStore(1024, 1 << 20);
+        byte[] data = randomBytes(2000, 4);
+        Blob blob = store.put(data);
+        assertTrue(blob.isMapped());
+        byte[] copy = blob.getBytes();
+        assertNotSame(copy, data);
+        assertEquals(copy, data);
+        assertSame(blob.getBytes(), copy);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        Blob blob = BlobStore.getDefault().put(randomBytes(100, 3));
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+            out.writeObject(blob);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+            assertSame(in.readObject(), blob);
+        }
+    }
+}
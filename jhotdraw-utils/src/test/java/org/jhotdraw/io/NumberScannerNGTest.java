@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.io;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link NumberScanner}.
+ */
+public class NumberScannerNGTest {
+
+    public NumberScannerNGTest() {
+    }
+
+    @Test
+    public void testSeparators() {
+        assertEquals(NumberScanner.toNumbers(" 1,2 3\t,\n4 "), new double[]{1, 2, 3, 4});
+        assertEquals(NumberScanner.toNumbers("1.5.5-2+3e2"), new double[]{1.5, .5, -2, 300});
+        assertEquals(NumberScanner.toNumbers("-.5e-1.25E+1"), new double[]{-.05, .25e1});
+        assertEquals(NumberScanner.toNumbers(""), new double[0]);
+        assertNull(NumberScanner.toNumbers("1px 2"));
+        assertNull(NumberScanner.toNumbers("1 - 2"));
+    }
+
+    @Test
+    public void testFlags() throws IOException {
+        NumberScanner s = new NumberScanner("5 0 0110 10");
+        assertEquals(s.nextNumber(), 5.0);
+        assertEquals(s.nextNumber(), 0.0);
+        assertFalse(s.nextFlag());
+        assertTrue(s.nextFlag());
+        assertEquals(s.nextNumber(), 10.0);
+        assertEquals(s.nextNumber(), 10.0);
+        assertFalse(s.skipSeparators());
+    }
+
+    @Test
+    public void testKeywordsAndExponents() throws IOException {
+        NumberScanner s = new NumberScanner("scaleX(1e) scale(2em)");
+        assertFalse(s.nextKeyword("scale"));
+        assertTrue(s.nextKeyword("scaleX"));
+        assertEquals(s.nextChar(), '(');
+        assertEquals(s.nextNumber(), 1.0);
+        assertEquals(s.nextChar(), 'e');
+        assertEquals(s.nextChar(), ')');
+        assertTrue(s.nextKeyword("scale"));
+        assertEquals(s.nextChar(), '(');
+        assertEquals(s.nextNumber(), 2.0);
+        assertEquals(s.peek(), (int) 'e');
+    }
+
+    @Test
+    public void testSameAsParseDouble() throws IOException {
+        Random r = new Random(0);
+        String[] fixed = {"0", "-0", "0.1", "123456789012345678901234567890",
+            "0.000000000000000000000000000001", "9007199254740993", "1e308",
+            "2e-308", "4.9e-324", "1.7976931348623157e308", "3.141592653589793"};
+        for (String str : fixed) {
+            assertEquals(new NumberScanner(str).nextNumber(), Double.parseDouble(str), str);
+        }
+        for (int i = 0; i < 10000; i++) {
+            double d = r.nextGaussian() * Math.pow(10, r.nextInt(40) - 20);
+            for (String str : new String[]{Double.toString(d), String.format(Locale.ENGLISH, "%.5f", d), String.format(Locale.ENGLISH, "%.3e", d)}) {
+                assertEquals(new NumberScanner(str).nextNumber(), Double.parseDouble(str), str);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.io;
+
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link NumberWriter}.
+ */
+public class NumberWriterNGTest {
+
+    public NumberWriterNGTest() {
+    }
+
+    @Test
+    public void testShortest() {
+        NumberWriter w = new NumberWriter();
+        assertEquals(w.toString(0), "0");
+        assertEquals(w.toString(-0d), "0");
+        assertEquals(w.toString(2), "2");
+        assertEquals(w.toString(-1.5), "-1.5");
+        assertEquals(w.toString(0.1), "0.1");
+        assertEquals(w.toString(0.1 + 0.2), "0.30000000000000004");
+        assertEquals(w.toString(0.0625), "0.0625");
+        assertEquals(w.toString(1e7), "10000000");
+        assertEquals(w.toString(1e300), "1.0E300");
+
+        NumberWriter f = new NumberWriter(-1, true);
+        assertEquals(f.toString(0.1f), "0.1");
+        assertEquals(f.toString(1 / 3d), "0.33333334");
+        assertEquals(f.toString(Math.PI), "3.1415927");
+    }
+
+    @Test
+    public void testFixed() {
+        NumberWriter w = new NumberWriter(3, false);
+        assertEquals(w.toString(1.23456), "1.235");
+        assertEquals(w.toString(-0.0004), "0");
+        assertEquals(w.toString(-0.0005), "-0.001");
+        assertEquals(w.toString(2.5), "2.5");
+        assertEquals(w.toString(0.05), "0.05");
+        assertEquals(new NumberWriter(0, false).toString(7.6), "8");
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random r = new Random(0);
+        NumberWriter w = new NumberWriter();
+        NumberWriter f = new NumberWriter(-1, true);
+        for (int i = 0; i < 100000; i++) {
+            double d = r.nextGaussian() * Math.pow(10, r.nextInt(30) - 15);
+            assertEquals(Double.parseDouble(w.toString(d)), d);
+            assertEquals((float) Double.parseDouble(f.toString(d)), (float) d);
+            if (Math.abs(d) >= 1e-3 && Math.abs(d) < 1e7) {
+                // Not longer than Float.toString without ".0"
+                assertTrue(f.toString(d).length() <= Float.toString((float) d).length(), f.toString(d));
+            }
+        }
+    }
+}
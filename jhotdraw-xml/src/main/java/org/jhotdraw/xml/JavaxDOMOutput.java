@@ -13,6 +13,7 @@ import javax.xml.parsers.*;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.*;
 import javax.xml.transform.stream.*;
+import org.jhotdraw.io.NumberWriter;
 import org.w3c.dom.*;
 
 /**
@@ -28,6 +29,12 @@ import org.w3c.dom.*;
  */
 public class JavaxDOMOutput implements DOMOutput {
 
+    /**
+     * Writes numbers without the awkward .0 at the end of integral values.
+     */
+    private static final NumberWriter DOUBLE_WRITER = new NumberWriter();
+    private static final NumberWriter FLOAT_WRITER = new NumberWriter(-1, true);
+
     /**
      * The doctype of the XML document.
      */
@@ -192,12 +199,7 @@ public class JavaxDOMOutput implements DOMOutput {
      */
     @Override
     public void addAttribute(String name, float value) {
-        // Remove the awkard .0 at the end of each number
-        String str = Float.toString(value);
-        if (str.endsWith(".0")) {
-            str = str.substring(0, str.length() - 2);
-        }
-        ((Element) current).setAttribute(name, str);
+        ((Element) current).setAttribute(name, FLOAT_WRITER.toString(value));
     }
 
     /**
@@ -205,12 +207,7 @@ public class JavaxDOMOutput implements DOMOutput {
      */
     @Override
     public void addAttribute(String name, double value) {
-        // Remove the awkard .0 at the end of each number
-        String str = Double.toString(value);
-        if (str.endsWith(".0")) {
-            str = str.substring(0, str.length() - 2);
-        }
-        ((Element) current).setAttribute(name, str);
+        ((Element) current).setAttribute(name, DOUBLE_WRITER.toString(value));
     }
 
     @Override